@@ -0,0 +1,76 @@
+package com.yihu.agent.ai.batch;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+
+/**
+ * 批量作业检查点
+ *
+ * 结果文件本身就是检查点：每条结果一行，以 {"line":N, ...} 开头，写完一行立即刷盘。
+ * 重启时读出已完成的行号，跳过这些输入行；最后一行未写完（进程中途退出）时截掉该行
+ */
+final class BatchCheckpoint {
+
+    private static final String LINE_PREFIX = "{\"line\":";
+
+    private BatchCheckpoint() {
+    }
+
+    /**
+     * 读取已完成的输入行号，并截掉结果文件末尾不完整的一行
+     */
+    static BitSet load(Path results) throws IOException {
+        BitSet done = new BitSet();
+        if (!Files.exists(results)) {
+            return done;
+        }
+        truncateTornTail(results);
+        try (var lines = Files.lines(results, StandardCharsets.UTF_8)) {
+            lines.forEach(line -> {
+                int lineNo = lineNumberOf(line);
+                if (lineNo > 0) {
+                    done.set(lineNo);
+                }
+            });
+        }
+        return done;
+    }
+
+    /**
+     * 结果行的输入行号；不是结果行时返回 -1
+     */
+    static int lineNumberOf(String resultLine) {
+        if (!resultLine.startsWith(LINE_PREFIX)) {
+            return -1;
+        }
+        int end = LINE_PREFIX.length();
+        while (end < resultLine.length() && Character.isDigit(resultLine.charAt(end))) {
+            end++;
+        }
+        if (end == LINE_PREFIX.length()) {
+            return -1;
+        }
+        return Integer.parseInt(resultLine.substring(LINE_PREFIX.length(), end));
+    }
+
+    private static void truncateTornTail(Path results) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(results.toFile(), "rw")) {
+            long length = file.length();
+            long keep = length;
+            while (keep > 0) {
+                file.seek(keep - 1);
+                if (file.read() == '\n') {
+                    break;
+                }
+                keep--;
+            }
+            if (keep < length) {
+                file.setLength(keep);
+            }
+        }
+    }
+}
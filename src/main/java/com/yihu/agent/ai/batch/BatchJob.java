@@ -0,0 +1,147 @@
+package com.yihu.agent.ai.batch;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量作业的状态与进度
+ *
+ * 文件布局（目录 {healthcare.batch.dir}/{jobId}）：
+ * - input.ndjson：上传的原始输入，每行一个条目
+ * - results.ndjson：每个条目一行结果，同时作为检查点
+ * - status：作业结束（COMPLETED / CANCELLED / FAILED）时写入，没有该文件的作业在重启后可继续
+ */
+public class BatchJob {
+
+    /**
+     * 作业状态
+     */
+    public enum Status {
+        /** 等待执行线程 */
+        QUEUED,
+        /** 执行中 */
+        RUNNING,
+        /** 已处理完全部条目 */
+        COMPLETED,
+        /** 已取消 */
+        CANCELLED,
+        /** 进程重启前未完成，可从检查点继续 */
+        INTERRUPTED,
+        /** 读写作业文件失败 */
+        FAILED
+    }
+
+    private final String id;
+
+    private final Path directory;
+
+    private final int total;
+
+    private final long createdAtMillis;
+
+    private final AtomicInteger completed = new AtomicInteger();
+
+    private final AtomicInteger errors = new AtomicInteger();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile Status status;
+
+    private volatile boolean paused;
+
+    private volatile boolean cancelRequested;
+
+    private volatile long finishedAtMillis;
+
+    BatchJob(String id, Path directory, int total, long createdAtMillis, Status status) {
+        this.id = id;
+        this.directory = directory;
+        this.total = total;
+        this.createdAtMillis = createdAtMillis;
+        this.status = status;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    Path input() {
+        return directory.resolve("input.ndjson");
+    }
+
+    Path results() {
+        return directory.resolve("results.ndjson");
+    }
+
+    /**
+     * 结果文件（NDJSON）
+     */
+    public Path getResultsFile() {
+        return results();
+    }
+
+    Path statusFile() {
+        return directory.resolve("status");
+    }
+
+    int getTotal() {
+        return total;
+    }
+
+    AtomicInteger completed() {
+        return completed;
+    }
+
+    AtomicInteger errors() {
+        return errors;
+    }
+
+    AtomicInteger inFlight() {
+        return inFlight;
+    }
+
+    void setStatus(Status status) {
+        this.status = status;
+        if (status == Status.COMPLETED || status == Status.CANCELLED || status == Status.FAILED) {
+            finishedAtMillis = System.currentTimeMillis();
+        }
+    }
+
+    void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    boolean isCancelRequested() {
+        return cancelRequested;
+    }
+
+    void requestCancel() {
+        cancelRequested = true;
+    }
+
+    /**
+     * 作业进度
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("jobId", id);
+        stats.put("status", status);
+        stats.put("paused", paused);
+        stats.put("total", total);
+        stats.put("completed", completed.get());
+        stats.put("errors", errors.get());
+        stats.put("inFlight", inFlight.get());
+        stats.put("progressPercent", total > 0 ? completed.get() * 100 / total : 100);
+        stats.put("createdAt", createdAtMillis);
+        if (finishedAtMillis > 0) {
+            stats.put("finishedAt", finishedAtMillis);
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,428 @@
+package com.yihu.agent.ai.batch;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yihu.agent.ai.model.ChatRequest;
+import com.yihu.agent.ai.model.ChatResponse;
+import com.yihu.agent.ai.overload.DegradationLevel;
+import com.yihu.agent.ai.overload.OverloadController;
+import com.yihu.agent.ai.scheduling.AiTurnScheduler;
+import com.yihu.agent.ai.service.ChatMemoryService;
+import com.yihu.agent.websocket.ratelimit.TokenBucket;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * 批量分诊作业
+ *
+ * 上传 NDJSON（每行 {"id": "...", "userId": "...", "message": "..."}），逐条经 {@link AiTurnScheduler} 执行状态图，
+ * 结果按完成顺序追加到 results.ndjson（每行带输入行号）。不影响交互式对话的措施：
+ * 1. 一律以 LOW 优先级进入共享的 AI 轮次队列，排在交互式轮次之后
+ * 2. 每个作业同时在途的条目不超过 parallelism，远小于调度器线程数
+ * 3. 全部作业共用一个令牌桶，按 rate-per-minute 匀速向模型服务商发起调用
+ * 4. 过载控制不在 NORMAL 级别时暂停取新条目；排队已满或回复繁忙的条目退避后由作业线程重新提交，
+ *    与新条目一样经过过载暂停与令牌桶
+ *
+ * 每个条目使用独立的会话并在完成后清除记忆，条目之间互不影响，也不需要按会话路由到归属节点。
+ * 进程重启后，未结束的作业从检查点（已写入的结果）继续
+ */
+@Slf4j
+@Service
+public class BatchJobService {
+
+    /**
+     * 作业线程等待并发名额时检查退避到期条目的间隔
+     */
+    private static final long RETRY_POLL_MS = 100;
+
+    private final AiTurnScheduler turnScheduler;
+    private final OverloadController overloadController;
+    private final ChatMemoryService memoryService;
+    private final ObjectMapper objectMapper;
+    private final Path root;
+    private final int parallelism;
+    private final long backoffMs;
+    private final boolean resumeOnStartup;
+    private final TokenBucket pacing;
+    private final ExecutorService runners;
+    private final ScheduledExecutorService retryTimer;
+    private final Map<String, BatchJob> jobs = new ConcurrentHashMap<>();
+
+    public BatchJobService(AiTurnScheduler turnScheduler,
+                           OverloadController overloadController,
+                           ChatMemoryService memoryService,
+                           ObjectMapper objectMapper,
+                           @Value("${healthcare.batch.dir:./data/batch-jobs}") String directory,
+                           @Value("${healthcare.batch.parallelism:4}") int parallelism,
+                           @Value("${healthcare.batch.rate-per-minute:120}") double ratePerMinute,
+                           @Value("${healthcare.batch.burst:4}") int burst,
+                           @Value("${healthcare.batch.backoff-ms:5000}") long backoffMs,
+                           @Value("${healthcare.batch.max-running-jobs:1}") int maxRunningJobs,
+                           @Value("${healthcare.batch.resume-on-startup:true}") boolean resumeOnStartup) {
+        this.turnScheduler = turnScheduler;
+        this.overloadController = overloadController;
+        this.memoryService = memoryService;
+        this.objectMapper = objectMapper;
+        this.root = Paths.get(directory);
+        this.parallelism = parallelism;
+        this.backoffMs = backoffMs;
+        this.resumeOnStartup = resumeOnStartup;
+        this.pacing = new TokenBucket(ratePerMinute, burst, System.nanoTime());
+        AtomicInteger runnerIndex = new AtomicInteger();
+        this.runners = Executors.newFixedThreadPool(maxRunningJobs, runnable -> {
+            Thread thread = new Thread(runnable, "batch-job-" + runnerIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.retryTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "batch-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 加载已有作业；未结束的作业标记为 INTERRUPTED，按配置自动继续
+     */
+    @PostConstruct
+    public void load() throws IOException {
+        Files.createDirectories(root);
+        try (Stream<Path> dirs = Files.list(root)) {
+            for (Path dir : dirs.filter(Files::isDirectory).sorted().toList()) {
+                if (!Files.exists(dir.resolve("input.ndjson"))) {
+                    continue;
+                }
+                BatchJob job = open(dir);
+                jobs.put(job.getId(), job);
+                if (job.getStatus() == BatchJob.Status.INTERRUPTED && resumeOnStartup) {
+                    start(job);
+                }
+            }
+        }
+        log.info("批量作业已加载: dir={}, 作业数={}", root.toAbsolutePath(), jobs.size());
+    }
+
+    @PreDestroy
+    public void stop() {
+        // 不写 status 文件，下次启动时从检查点继续
+        runners.shutdownNow();
+        retryTimer.shutdownNow();
+    }
+
+    /**
+     * 保存上传的 NDJSON 并开始作业
+     */
+    public BatchJob submit(InputStream ndjson) throws IOException {
+        String id = UUID.randomUUID().toString();
+        Path dir = root.resolve(id);
+        Files.createDirectories(dir);
+        Files.copy(ndjson, dir.resolve("input.ndjson"));
+        BatchJob job = new BatchJob(id, dir, countItems(dir.resolve("input.ndjson")),
+            System.currentTimeMillis(), BatchJob.Status.QUEUED);
+        jobs.put(id, job);
+        log.info("批量作业已创建 - jobId={}, 条目数={}", id, job.getTotal());
+        start(job);
+        return job;
+    }
+
+    public Optional<BatchJob> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    public List<BatchJob> getJobs() {
+        return jobs.values().stream()
+            .sorted(Comparator.comparing(BatchJob::getId))
+            .toList();
+    }
+
+    /**
+     * 从检查点继续已中断、失败或取消的作业
+     *
+     * @return 作业不存在或仍在执行时返回 false
+     */
+    public boolean resume(String jobId) throws IOException {
+        BatchJob job = jobs.get(jobId);
+        if (job == null || job.getStatus() == BatchJob.Status.QUEUED || job.getStatus() == BatchJob.Status.RUNNING
+            || job.getStatus() == BatchJob.Status.COMPLETED) {
+            return false;
+        }
+        Files.deleteIfExists(job.statusFile());
+        BatchJob resumed = open(job.input().getParent());
+        resumed.setStatus(BatchJob.Status.QUEUED);
+        jobs.put(jobId, resumed);
+        log.info("批量作业继续执行 - jobId={}, 已完成 {}/{}", jobId, resumed.completed().get(), resumed.getTotal());
+        start(resumed);
+        return true;
+    }
+
+    /**
+     * 取消作业：不再取新条目，在途条目完成后结束
+     */
+    public boolean cancel(String jobId) {
+        BatchJob job = jobs.get(jobId);
+        if (job == null || (job.getStatus() != BatchJob.Status.QUEUED && job.getStatus() != BatchJob.Status.RUNNING)) {
+            return false;
+        }
+        job.requestCancel();
+        log.info("批量作业取消中 - jobId={}", jobId);
+        return true;
+    }
+
+    private void start(BatchJob job) {
+        job.setStatus(BatchJob.Status.QUEUED);
+        runners.execute(() -> run(job));
+    }
+
+    // ==================== 执行 ====================
+
+    private void run(BatchJob job) {
+        if (job.isCancelRequested()) {
+            finish(job, BatchJob.Status.CANCELLED);
+            return;
+        }
+        job.setStatus(BatchJob.Status.RUNNING);
+        Semaphore permits = new Semaphore(parallelism);
+        BlockingQueue<BatchItem> retries = new LinkedBlockingQueue<>();
+        try {
+            BitSet done = BatchCheckpoint.load(job.results());
+            job.completed().set(done.cardinality());
+            try (BufferedReader reader = Files.newBufferedReader(job.input(), StandardCharsets.UTF_8);
+                 BufferedWriter writer = Files.newBufferedWriter(job.results(), StandardCharsets.UTF_8,
+                     StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                String line;
+                int lineNo = 0;
+                while ((line = reader.readLine()) != null && !job.isCancelRequested()) {
+                    lineNo++;
+                    if (line.isBlank() || done.get(lineNo)) {
+                        continue;
+                    }
+                    acquire(job, permits, 1, retries, writer);
+                    awaitCapacity(job);
+                    if (job.isCancelRequested()) {
+                        permits.release();
+                        break;
+                    }
+                    dispatch(job, lineNo, line, writer, permits, retries);
+                }
+                // 等待在途条目（包括退避中的条目）全部写入结果
+                acquire(job, permits, parallelism, retries, writer);
+            }
+            finish(job, job.isCancelRequested() ? BatchJob.Status.CANCELLED : BatchJob.Status.COMPLETED);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // 不写 status 文件：与进程重启一样，下次启动或调用 resume 时从检查点继续
+            job.setStatus(BatchJob.Status.INTERRUPTED);
+            log.info("批量作业被中断，下次启动时从检查点继续 - jobId={}", job.getId());
+        } catch (IOException | RuntimeException e) {
+            log.error("批量作业执行失败 - jobId={}", job.getId(), e);
+            finish(job, BatchJob.Status.FAILED);
+        }
+    }
+
+    /**
+     * 等待 count 个并发名额；等待期间重新提交退避到期的条目
+     */
+    private void acquire(BatchJob job, Semaphore permits, int count, BlockingQueue<BatchItem> retries,
+                         BufferedWriter writer) throws InterruptedException {
+        while (!permits.tryAcquire(count, RETRY_POLL_MS, TimeUnit.MILLISECONDS)) {
+            BatchItem item;
+            while ((item = retries.poll()) != null) {
+                awaitCapacity(job);
+                if (job.isCancelRequested()) {
+                    // 取消时不再提交，不写结果，继续作业时重新处理
+                    release(job, item, permits);
+                } else {
+                    execute(job, item, writer, permits, retries);
+                }
+            }
+        }
+    }
+
+    /**
+     * 过载时暂停，之后按令牌桶匀速放行
+     */
+    private void awaitCapacity(BatchJob job) throws InterruptedException {
+        while (!job.isCancelRequested()) {
+            if (overloadController.getLevel() != DegradationLevel.NORMAL) {
+                job.setPaused(true);
+                Thread.sleep(backoffMs);
+                continue;
+            }
+            long waitNanos = pacing.tryAcquire(System.nanoTime());
+            if (waitNanos == 0) {
+                break;
+            }
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+        job.setPaused(false);
+    }
+
+    private void dispatch(BatchJob job, int lineNo, String line, BufferedWriter writer, Semaphore permits,
+                          BlockingQueue<BatchItem> retries) {
+        ChatRequest request;
+        String itemId;
+        try {
+            JsonNode item = objectMapper.readTree(line);
+            String message = item.path("message").asText("");
+            if (message.isBlank()) {
+                throw new IllegalArgumentException("缺少 message");
+            }
+            itemId = item.path("id").asText(String.valueOf(lineNo));
+            request = new ChatRequest(item.path("userId").asText("batch-" + job.getId()), message,
+                "batch-" + job.getId() + "-" + lineNo);
+            request.setBackground(true);
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            writeResult(job, writer, lineNo, null, null, "输入行无法解析: " + e.getMessage());
+            permits.release();
+            return;
+        }
+        job.inFlight().incrementAndGet();
+        execute(job, new BatchItem(lineNo, itemId, request), writer, permits, retries);
+    }
+
+    /**
+     * 已解析、占用一个并发名额的条目
+     */
+    private record BatchItem(int lineNo, String itemId, ChatRequest request) {}
+
+    /**
+     * 提交一个条目；排队已满或回复繁忙时退避 backoff-ms 后放入 retries，由作业线程重新提交
+     */
+    private void execute(BatchJob job, BatchItem item, BufferedWriter writer, Semaphore permits,
+                         BlockingQueue<BatchItem> retries) {
+        turnScheduler.submitBackground(item.request()).whenComplete((response, e) -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            boolean busy = cause instanceof RejectedExecutionException
+                || (cause == null && response.getType() == ChatResponse.MessageType.BUSY);
+            if (busy && !job.isCancelRequested()) {
+                log.debug("批量条目暂缓 - jobId={}, line={}", job.getId(), item.lineNo());
+                retryTimer.schedule(() -> retries.add(item), backoffMs, TimeUnit.MILLISECONDS);
+                return;
+            }
+            try {
+                // 取消时被拒绝的条目不写结果，继续作业时重新处理
+                if (!busy) {
+                    writeResult(job, writer, item.lineNo(), item.itemId(), response,
+                        cause != null ? String.valueOf(cause.getMessage()) : null);
+                }
+            } finally {
+                release(job, item, permits);
+            }
+        });
+    }
+
+    private void release(BatchJob job, BatchItem item, Semaphore permits) {
+        memoryService.clearMemory(item.request().getSessionId());
+        job.inFlight().decrementAndGet();
+        permits.release();
+    }
+
+    /**
+     * 追加一行结果并刷盘；行首为 {"line":N 作为检查点
+     */
+    private void writeResult(BatchJob job, BufferedWriter writer, int lineNo, String itemId,
+                             ChatResponse response, String error) {
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("line", lineNo);
+        result.put("id", itemId);
+        if (response != null && response.getType() != ChatResponse.MessageType.ERROR) {
+            result.put("status", "ok");
+            result.put("type", response.getType());
+            result.put("reply", response.getMessage());
+            result.put("metadata", response.getMetadata());
+        } else {
+            result.put("status", "error");
+            result.put("error", response != null ? response.getMessage() : error);
+            job.errors().incrementAndGet();
+        }
+        try {
+            String json = objectMapper.writeValueAsString(result);
+            synchronized (writer) {
+                writer.write(json);
+                writer.write('\n');
+                writer.flush();
+            }
+            job.completed().incrementAndGet();
+        } catch (IOException e) {
+            log.error("写入批量结果失败 - jobId={}, line={}", job.getId(), lineNo, e);
+        }
+    }
+
+    private void finish(BatchJob job, BatchJob.Status status) {
+        try {
+            Files.writeString(job.statusFile(), status.name());
+        } catch (IOException e) {
+            log.error("写入批量作业状态失败 - jobId={}", job.getId(), e);
+        }
+        job.setStatus(status);
+        log.info("批量作业结束 - jobId={}, status={}, 完成 {}/{}, 失败 {}",
+            job.getId(), status, job.completed().get(), job.getTotal(), job.errors().get());
+    }
+
+    // ==================== 加载 ====================
+
+    private BatchJob open(Path dir) throws IOException {
+        Path statusFile = dir.resolve("status");
+        BatchJob.Status status = Files.exists(statusFile)
+            ? BatchJob.Status.valueOf(Files.readString(statusFile).trim())
+            : BatchJob.Status.INTERRUPTED;
+        BatchJob job = new BatchJob(dir.getFileName().toString(), dir, countItems(dir.resolve("input.ndjson")),
+            Files.getLastModifiedTime(dir.resolve("input.ndjson")).toMillis(), status);
+        job.completed().set(BatchCheckpoint.load(job.results()).cardinality());
+        return job;
+    }
+
+    private static int countItems(Path input) throws IOException {
+        try (Stream<String> lines = Files.lines(input, StandardCharsets.UTF_8)) {
+            return (int) lines.filter(line -> !line.isBlank()).count();
+        }
+    }
+
+    /**
+     * 各状态的作业数与节流配置
+     */
+    public Map<String, Object> getStats() {
+        Map<BatchJob.Status, Integer> byStatus = new EnumMap<>(BatchJob.Status.class);
+        jobs.values().forEach(job -> byStatus.merge(job.getStatus(), 1, Integer::sum));
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("jobs", byStatus);
+        stats.put("parallelism", parallelism);
+        stats.put("overloadLevel", overloadController.getLevel());
+        return stats;
+    }
+}
@@ -0,0 +1,183 @@
+package com.yihu.agent.ai.circuit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 单个模型的熔断器
+ *
+ * 按最近 windowSize 次调用的结果（计数滑动窗口）统计失败率与慢调用率：
+ * 1. CLOSED：窗口内调用数达到 minCalls 后，失败率或慢调用率超过阈值即打开
+ * 2. OPEN：直接拒绝调用，openNanos 后转为半开
+ * 3. HALF_OPEN：只放行 halfOpenProbes 个探测调用，全部成功则关闭并清空窗口，任一失败或过慢则重新打开
+ *
+ * 调用量只有每秒几十次，状态变更用 synchronized 保护即可
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final byte FAILED = 1;
+
+    private static final byte SLOW = 2;
+
+    private final String name;
+
+    private final int minCalls;
+
+    private final int failureRatePercent;
+
+    private final int slowRatePercent;
+
+    private final long slowCallNanos;
+
+    private final long openNanos;
+
+    private final int halfOpenProbes;
+
+    private final byte[] window;
+
+    private int next;
+
+    private int size;
+
+    private int failures;
+
+    private int slows;
+
+    private State state = State.CLOSED;
+
+    private long openedAt;
+
+    private int probesInFlight;
+
+    private int probesSucceeded;
+
+    private long rejected;
+
+    private long openings;
+
+    public CircuitBreaker(String name, int windowSize, int minCalls, int failureRatePercent,
+                          int slowRatePercent, long slowCallNanos, long openNanos, int halfOpenProbes) {
+        this.name = name;
+        this.window = new byte[windowSize];
+        this.minCalls = Math.min(minCalls, windowSize);
+        this.failureRatePercent = failureRatePercent;
+        this.slowRatePercent = slowRatePercent;
+        this.slowCallNanos = slowCallNanos;
+        this.openNanos = openNanos;
+        this.halfOpenProbes = halfOpenProbes;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 申请一次调用许可；返回 true 后必须以 {@link #onSuccess}、{@link #onFailure} 或 {@link #release} 之一结束
+     */
+    public synchronized boolean tryAcquire(long nowNanos) {
+        if (state == State.OPEN && nowNanos - openedAt >= openNanos) {
+            state = State.HALF_OPEN;
+            probesInFlight = 0;
+            probesSucceeded = 0;
+        }
+        if (state == State.CLOSED) {
+            return true;
+        }
+        if (state == State.HALF_OPEN && probesInFlight + probesSucceeded < halfOpenProbes) {
+            probesInFlight++;
+            return true;
+        }
+        rejected++;
+        return false;
+    }
+
+    public synchronized void onSuccess(long durationNanos, long nowNanos) {
+        record(durationNanos >= slowCallNanos ? SLOW : 0, nowNanos);
+    }
+
+    public synchronized void onFailure(long durationNanos, long nowNanos) {
+        record((byte) (FAILED | (durationNanos >= slowCallNanos ? SLOW : 0)), nowNanos);
+    }
+
+    /**
+     * 归还许可，不计入统计（调用被取消）
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN && probesInFlight > 0) {
+            probesInFlight--;
+        }
+    }
+
+    private void record(byte outcome, long nowNanos) {
+        if (state == State.HALF_OPEN) {
+            probesInFlight = Math.max(0, probesInFlight - 1);
+            if (outcome != 0) {
+                open(nowNanos);
+            } else if (++probesSucceeded >= halfOpenProbes) {
+                close();
+            }
+            return;
+        }
+        if (state == State.OPEN) {
+            // 打开前已放行的调用，结果不再影响状态
+            return;
+        }
+
+        if (size == window.length) {
+            byte evicted = window[next];
+            failures -= evicted & FAILED;
+            slows -= (evicted & SLOW) >> 1;
+        } else {
+            size++;
+        }
+        window[next] = outcome;
+        next = (next + 1) % window.length;
+        failures += outcome & FAILED;
+        slows += (outcome & SLOW) >> 1;
+
+        if (size >= minCalls
+                && (failures * 100 >= failureRatePercent * size || slows * 100 >= slowRatePercent * size)) {
+            open(nowNanos);
+        }
+    }
+
+    private void open(long nowNanos) {
+        log.warn("模型熔断器打开 - model={}, from={}, 失败 {}/{}，慢调用 {}/{}", name, state, failures, size, slows, size);
+        state = State.OPEN;
+        openedAt = nowNanos;
+        openings++;
+    }
+
+    private void close() {
+        log.info("模型熔断器关闭 - model={}", name);
+        state = State.CLOSED;
+        next = 0;
+        size = 0;
+        failures = 0;
+        slows = 0;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("state", state);
+        stats.put("calls", size);
+        stats.put("failureRate", size == 0 ? 0 : failures * 100 / size);
+        stats.put("slowCallRate", size == 0 ? 0 : slows * 100 / size);
+        stats.put("rejected", rejected);
+        stats.put("openings", openings);
+        return stats;
+    }
+}
@@ -0,0 +1,72 @@
+package com.yihu.agent.ai.circuit;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按模型名称划分的熔断器
+ *
+ * 主模型与降级用的便宜模型各自熔断，一个模型不可用时不影响另一个
+ */
+@Slf4j
+@Component
+public class ModelCircuitBreakers {
+
+    @Value("${healthcare.ai.circuit-breaker.enabled:true}")
+    private boolean enabled;
+
+    @Value("${healthcare.ai.circuit-breaker.window-size:20}")
+    private int windowSize;
+
+    @Value("${healthcare.ai.circuit-breaker.min-calls:10}")
+    private int minCalls;
+
+    @Value("${healthcare.ai.circuit-breaker.failure-rate-percent:50}")
+    private int failureRatePercent;
+
+    @Value("${healthcare.ai.circuit-breaker.slow-call-rate-percent:80}")
+    private int slowRatePercent;
+
+    @Value("${healthcare.ai.circuit-breaker.slow-call-ms:20000}")
+    private long slowCallMs;
+
+    @Value("${healthcare.ai.circuit-breaker.open-ms:30000}")
+    private long openMs;
+
+    @Value("${healthcare.ai.circuit-breaker.half-open-probes:3}")
+    private int halfOpenProbes;
+
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * 模型对应的熔断器；熔断关闭时返回 null
+     */
+    public CircuitBreaker forModel(String modelName) {
+        if (!enabled) {
+            return null;
+        }
+        return breakers.computeIfAbsent(modelName, name -> {
+            log.info("创建模型熔断器 - model={}", name);
+            return new CircuitBreaker(name, windowSize, minCalls, failureRatePercent, slowRatePercent,
+                TimeUnit.MILLISECONDS.toNanos(slowCallMs), TimeUnit.MILLISECONDS.toNanos(openMs), halfOpenProbes);
+        });
+    }
+
+    /**
+     * 各模型熔断器的状态与窗口统计
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        Map<String, Object> models = new HashMap<>();
+        breakers.forEach((name, breaker) -> models.put(name, breaker.snapshot()));
+        stats.put("models", models);
+        return stats;
+    }
+}
@@ -1,20 +1,30 @@
 package com.yihu.agent.ai.config;
 
+import com.yihu.agent.ai.http.PooledModelHttpClient;
+import com.yihu.agent.ai.http.SharedHttpClientBuilder;
+import com.yihu.agent.ai.routing.ModelRegistry;
+import com.yihu.agent.ai.routing.ModelTier;
+import dev.langchain4j.http.client.HttpClient;
 import dev.langchain4j.memory.ChatMemory;
 import dev.langchain4j.memory.chat.MessageWindowChatMemory;
 import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 
 import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
 
 /**
  * LangChain4j 配置类
- * 配置 ChatModel 和 ChatMemory
+ * 配置 ChatModel、模型档位、模型使用的 HTTP 客户端和 ChatMemory
  * 支持从 application.yml 读取配置
  */
+@Slf4j
 @Configuration
 public class LangChainConfig {
     
@@ -33,7 +43,10 @@ public class LangChainConfig {
     @Value("${langchain4j.open-ai.chat-model.timeout:60s}")
     private String timeout;
     
-    @Value("${langchain4j.open-ai.chat-model.max-retries:3}")
+    /**
+     * 客户端内部的同步重试默认关闭，重试由 {@link com.yihu.agent.ai.retry.RetryPolicy} 统一控制
+     */
+    @Value("${langchain4j.open-ai.chat-model.max-retries:0}")
     private Integer maxRetries;
     
     @Value("${langchain4j.open-ai.chat-model.log-requests:true}")
@@ -45,6 +58,47 @@ public class LangChainConfig {
     @Value("${healthcare.chat.memory.max-messages:10}")
     private Integer maxMessages;
     
+    @Value("${healthcare.ai.models.economy:qwen-turbo}")
+    private String economyModelName;
+    
+    @Value("${healthcare.ai.models.fast:${langchain4j.open-ai.chat-model.model-name:gpt-4}}")
+    private String fastModelName;
+    
+    @Value("${healthcare.ai.models.strong:${langchain4j.open-ai.chat-model.model-name:gpt-4}}")
+    private String strongModelName;
+    
+    @Value("${healthcare.ai.http.version:HTTP_2}")
+    private java.net.http.HttpClient.Version httpVersion;
+    
+    @Value("${healthcare.ai.http.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+    
+    @Value("${healthcare.ai.http.pool-size:0}")
+    private int poolSize;
+    
+    @Value("${healthcare.ai.http.keep-alive-seconds:300}")
+    private int keepAliveSeconds;
+    
+    /**
+     * 模型调用使用的 HTTP 客户端（Reactor Netty 连接池）
+     * 
+     * 协议版本（HTTP/2 多路复用，服务端不支持时自动回退 HTTP/1.1）、连接超时与读超时分别配置；
+     * 连接池大小与空闲保活时间在客户端构建器上设置，只作用于模型调用的连接池；
+     * 模型与启动预热共用这一个实例，预热建立的连接直接被模型调用复用
+     */
+    @Bean
+    public HttpClient modelHttpClient() {
+        log.info("模型 HTTP 客户端 - version={}, connectTimeout={}ms, readTimeout={}, poolSize={}, keepAlive={}s", 
+                httpVersion, connectTimeoutMs, timeout, poolSize, keepAliveSeconds);
+        return PooledModelHttpClient.builder()
+                .http2(httpVersion == java.net.http.HttpClient.Version.HTTP_2)
+                .maxConnections(poolSize)
+                .maxIdleTime(Duration.ofSeconds(keepAliveSeconds))
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .readTimeout(parseDuration(timeout))
+                .build();
+    }
+    
     /**
      * 配置 OpenAI Compatible ChatModel
      * 支持 OpenAI API 和兼容的服务（如阿里云 DashScope）
@@ -53,19 +107,51 @@ public class LangChainConfig {
      */
     @Bean
     @Primary
-    public OpenAiChatModel chatLanguageModel() {
+    public OpenAiChatModel chatLanguageModel(HttpClient modelHttpClient) {
         return OpenAiChatModel.builder()
+                .httpClientBuilder(new SharedHttpClientBuilder(modelHttpClient, 
+                        Duration.ofMillis(connectTimeoutMs), parseDuration(timeout)))
                 .baseUrl(baseUrl)
                 .apiKey(apiKey)
                 .modelName(modelName)
                 .temperature(temperature)
-                .timeout(parseDuration(timeout))
                 .maxRetries(maxRetries)
                 .logRequests(logRequests)
                 .logResponses(logResponses)
                 .build();
     }
     
+    /**
+     * 流式 ChatModel（SSE 接口使用），与 chatLanguageModel 共用 HTTP 客户端与连接池
+     * 流式输出开始后无法重试，不设置客户端内部重试
+     */
+    @Bean
+    public OpenAiStreamingChatModel streamingChatModel(HttpClient modelHttpClient) {
+        return OpenAiStreamingChatModel.builder()
+                .httpClientBuilder(new SharedHttpClientBuilder(modelHttpClient, 
+                        Duration.ofMillis(connectTimeoutMs), parseDuration(timeout)))
+                .baseUrl(baseUrl)
+                .apiKey(apiKey)
+                .modelName(modelName)
+                .temperature(temperature)
+                .logRequests(logRequests)
+                .logResponses(logResponses)
+                .build();
+    }
+    
+    /**
+     * 模型档位：各档位共用 chatLanguageModel，调用时按请求指定模型名称
+     * 路由规则见 {@link com.yihu.agent.ai.routing.ModelRouter}
+     */
+    @Bean
+    public ModelRegistry modelRegistry() {
+        Map<ModelTier, String> models = new EnumMap<>(ModelTier.class);
+        models.put(ModelTier.ECONOMY, economyModelName);
+        models.put(ModelTier.FAST, fastModelName);
+        models.put(ModelTier.STRONG, strongModelName);
+        return new ModelRegistry(models);
+    }
+    
     /**
      * ChatMemory 工厂方法
      * 为每个会话创建独立的记忆实例
@@ -62,6 +62,12 @@ public class AgentState {
     @Builder.Default
     private Integer conversationTurn = 0;
     
+    /**
+     * 本轮第几次执行（从 0 开始，大模型调用失败重试时递增）
+     */
+    @Builder.Default
+    private Integer attempt = 0;
+    
     /**
      * 是否结束对话
      */
@@ -96,13 +102,15 @@ public class AgentState {
     }
     
     /**
-     * 添加症状
+     * 添加症状（已有的不重复添加）
      */
     public void addSymptom(String symptom) {
         if (this.symptoms == null) {
             this.symptoms = new ArrayList<>();
         }
-        this.symptoms.add(symptom);
+        if (!this.symptoms.contains(symptom)) {
+            this.symptoms.add(symptom);
+        }
     }
     
     /**
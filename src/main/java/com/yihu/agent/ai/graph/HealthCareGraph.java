@@ -2,12 +2,19 @@ package com.yihu.agent.ai.graph;
 
 import com.yihu.agent.ai.graph.nodes.GeneralChatNode;
 import com.yihu.agent.ai.graph.nodes.InitialNode;
+import com.yihu.agent.ai.graph.nodes.QuestionnaireNode;
+import com.yihu.agent.ai.graph.nodes.SymptomExtractionNode;
+import com.yihu.agent.ai.retry.RetryableLlmException;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.CancellationException;
 
 /**
  * HealthCare LangGraph 状态机
- * V1 简化版：Initial -> GeneralChat -> END
+ * V1 简化版：Initial -> SymptomExtraction -> Questionnaire -> GeneralChat -> END
+ * Questionnaire 节点本地追问时直接结束本轮，不进入 GeneralChat
  * 
  * 注意：当前版本 (1.7.1) 暂时简化为直接调用节点
  * 后续版本将完整实现 LangGraph 状态机
@@ -17,10 +24,15 @@ import org.springframework.stereotype.Component;
 public class HealthCareGraph {
     
     private final InitialNode initialNode;
+    private final SymptomExtractionNode symptomExtractionNode;
+    private final QuestionnaireNode questionnaireNode;
     private final GeneralChatNode generalChatNode;
     
-    public HealthCareGraph(InitialNode initialNode, GeneralChatNode generalChatNode) {
+    public HealthCareGraph(InitialNode initialNode, SymptomExtractionNode symptomExtractionNode,
+                           QuestionnaireNode questionnaireNode, GeneralChatNode generalChatNode) {
         this.initialNode = initialNode;
+        this.symptomExtractionNode = symptomExtractionNode;
+        this.questionnaireNode = questionnaireNode;
         this.generalChatNode = generalChatNode;
     }
     
@@ -36,16 +48,27 @@ public class HealthCareGraph {
             AgentState state = initialNode.apply(initialState);
             log.debug("InitialNode 执行完成");
             
-            // 2. 执行 GeneralChat 节点
-            state = generalChatNode.apply(state);
-            log.debug("GeneralChatNode 执行完成");
+            // 2. 执行 SymptomExtraction 节点
+            state = symptomExtractionNode.apply(state);
+            
+            // 3. 执行 Questionnaire 节点
+            state = questionnaireNode.apply(state);
+            
+            // 4. 执行 GeneralChat 节点（本地追问时跳过）
+            if (!Boolean.TRUE.equals(state.getFinished())) {
+                state = generalChatNode.apply(state);
+                log.debug("GeneralChatNode 执行完成");
+            }
             
-            // 3. 标记完成
+            // 5. 标记完成
             state.setFinished(true);
             
             log.info("状态图执行完成 - sessionId={}", state.getSessionId());
             return state;
             
+        } catch (CancellationException | RetryableLlmException e) {
+            // 轮次已取消，不再生成回复；或大模型调用失败，交给调度器稍后重试
+            throw e;
         } catch (Exception e) {
             log.error("执行状态图时发生错误", e);
             
@@ -55,5 +78,25 @@ public class HealthCareGraph {
             return initialState;
         }
     }
+    
+    /**
+     * 流式执行图：节点顺序与 {@link #execute} 相同，GeneralChat 节点逐段输出回复
+     * 订阅时才开始执行；流结束后 state 中为完整回复
+     */
+    public Flux<String> stream(AgentState initialState) {
+        return Flux.defer(() -> {
+            log.info("开始流式执行状态图 - sessionId={}", initialState.getSessionId());
+            AgentState state = questionnaireNode.apply(symptomExtractionNode.apply(initialNode.apply(initialState)));
+            if (Boolean.TRUE.equals(state.getFinished())) {
+                return Flux.just(state.getAiResponse());
+            }
+            return generalChatNode.stream(state);
+        }).onErrorResume(e -> {
+            log.error("流式执行状态图时发生错误", e);
+            initialState.setAiResponse("抱歉，系统遇到了问题。如有紧急情况请立即拨打120。");
+            initialState.setFinished(true);
+            return Flux.just(initialState.getAiResponse());
+        });
+    }
 }
 
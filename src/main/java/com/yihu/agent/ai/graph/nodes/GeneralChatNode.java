@@ -1,36 +1,92 @@
 package com.yihu.agent.ai.graph.nodes;
 
+import com.yihu.agent.ai.circuit.CircuitBreaker;
+import com.yihu.agent.ai.circuit.ModelCircuitBreakers;
 import com.yihu.agent.ai.graph.AgentState;
+import com.yihu.agent.ai.http.StreamCancellation;
+import com.yihu.agent.ai.overload.DegradationLevel;
+import com.yihu.agent.ai.overload.DegradedAnswers;
+import com.yihu.agent.ai.overload.OverloadController;
+import com.yihu.agent.ai.retry.LlmFailure;
+import com.yihu.agent.ai.retry.RetryPolicy;
+import com.yihu.agent.ai.retry.RetryableLlmException;
+import com.yihu.agent.ai.routing.ModelRouter;
+import com.yihu.agent.ai.scheduling.PriorityTaskExecutor;
 import com.yihu.agent.ai.service.ChatMemoryService;
 import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.data.message.SystemMessage;
 import dev.langchain4j.data.message.UserMessage;
 import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.chat.request.ChatRequest;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
 import dev.langchain4j.model.openai.OpenAiChatModel;
+import dev.langchain4j.model.openai.OpenAiStreamingChatModel;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.core.io.ClassPathResource;
 import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 
 /**
  * 通用对话节点
  * 调用 LLM 生成回复
+ * 
+ * 过载时按 {@link OverloadController} 的降级级别缩短输出、换用便宜模型，或不调用模型直接返回
+ * 缓存 / 模板答案（不写入会话记忆）；紧急轮次始终按正常级别处理
+ * 
+ * 模型调用失败时按 {@link RetryPolicy} 决定是否重试：获准重试时抛出 {@link RetryableLlmException}，
+ * 由调度器退避后重新执行本轮；不重试时回复固定提示，不写入会话记忆
+ * 
+ * 每个模型的调用经过各自的熔断器（{@link ModelCircuitBreakers}）：熔断期间不调用模型，
+ * 立即返回缓存答案或提示并附上急救指引
+ * 
+ * 调用的模型由 {@link ModelRouter} 按意图、风险等级与输入长度选择，选择结果记录在回复元数据中
+ * 
+ * {@link #stream} 为 SSE 接口提供流式输出，规则与 {@link #apply} 相同
  */
 @Slf4j
 @Component
 public class GeneralChatNode implements Function<AgentState, AgentState> {
     
+    private static final String FAILURE_REPLY =
+            "抱歉，我暂时无法回复。关于您提到的问题，我建议您详细描述症状，以便我给出更准确的建议。如果症状严重，请立即就医。";
+    
+    private static final String ERROR_REPLY =
+            "抱歉，我遇到了一些技术问题。请稍后再试，或者如果是紧急情况，请立即拨打急救电话120。";
+    
     private final OpenAiChatModel chatModel;
+    private final OpenAiStreamingChatModel streamingChatModel;
     private final ChatMemoryService memoryService;
+    private final OverloadController overloadController;
+    private final DegradedAnswers degradedAnswers;
+    private final RetryPolicy retryPolicy;
+    private final ModelCircuitBreakers circuitBreakers;
+    private final ModelRouter modelRouter;
     private final String systemPrompt;
     
-    public GeneralChatNode(OpenAiChatModel chatModel, ChatMemoryService memoryService) {
+    public GeneralChatNode(OpenAiChatModel chatModel, OpenAiStreamingChatModel streamingChatModel,
+                           ChatMemoryService memoryService,
+                           OverloadController overloadController, DegradedAnswers degradedAnswers,
+                           RetryPolicy retryPolicy, ModelCircuitBreakers circuitBreakers,
+                           ModelRouter modelRouter) {
         this.chatModel = chatModel;
+        this.streamingChatModel = streamingChatModel;
         this.memoryService = memoryService;
+        this.overloadController = overloadController;
+        this.degradedAnswers = degradedAnswers;
+        this.retryPolicy = retryPolicy;
+        this.circuitBreakers = circuitBreakers;
+        this.modelRouter = modelRouter;
         this.systemPrompt = loadSystemPrompt();
     }
     
@@ -39,61 +95,303 @@ public class GeneralChatNode implements Function<AgentState, AgentState> {
         log.info("GeneralChatNode: 生成AI回复 - sessionId={}", state.getSessionId());
         
         try {
-            // 获取会话记忆
-            ChatMemory memory = memoryService.getOrCreateMemory(state.getSessionId());
-            
-            // 如果是第一轮对话，添加系统提示词
-            if (state.getConversationTurn() == 1) {
-                memory.add(SystemMessage.from(systemPrompt));
+            PreparedTurn turn = prepare(state);
+            if (turn == null) {
+                return state;
             }
             
-            // 添加用户消息
-            UserMessage userMessage = UserMessage.from(state.getUserInput());
-            memory.add(userMessage);
-            
             // 调用 LLM 生成回复 - 传递完整的对话历史
             String aiReply;
+            boolean fromModel = true;
             try {
-                // 获取所有历史消息
-                List<ChatMessage> messages = memory.messages();
-                log.debug("发送消息到 LLM，历史消息数量: {}", messages.size());
-                
-                // 构建包含历史的上下文提示并调用 LLM
-                String contextPrompt = buildContextPrompt(messages);
-                aiReply = chatModel.chat(contextPrompt);
-                log.debug("LLM 回复成功（包含 {} 条历史消息的上下文）", messages.size());
+                if (state.getAttempt() == 0) {
+                    retryPolicy.recordCall();
+                }
+                aiReply = chat(turn.prompt(), turn.model(), turn.level(), turn.breaker());
+                log.debug("LLM 回复成功（包含 {} 条历史消息的上下文）", turn.contextSize());
             } catch (Exception e) {
-                log.error("调用 LLM 失败", e);
-                // 最后的备选方案：使用简单的 chat 方法（无上下文）
-                try {
-                    aiReply = chatModel.chat(state.getUserInput());
-                } catch (Exception e2) {
-                    log.error("备选方案也失败", e2);
-                    aiReply = "抱歉，我暂时无法回复。关于您提到的问题，我建议您详细描述症状，以便我给出更准确的建议。如果症状严重，请立即就医。";
+                checkCancelled();
+                LlmFailure failure = LlmFailure.classify(e);
+                long delayMs = retryPolicy.retryDelay(state.getAttempt(), failure);
+                if (delayMs >= 0) {
+                    log.warn("调用 LLM 失败，{}ms 后重试 - sessionId={}, attempt={}, failure={}: {}", 
+                            delayMs, state.getSessionId(), state.getAttempt(), failure, e.getMessage());
+                    throw new RetryableLlmException(failure, delayMs, e);
                 }
+                log.error("调用 LLM 失败，不再重试 - sessionId={}, attempt={}, failure={}", 
+                        state.getSessionId(), state.getAttempt(), failure, e);
+                aiReply = FAILURE_REPLY;
+                fromModel = false;
             }
             
-            // 将 AI 回复添加到记忆
-            dev.langchain4j.data.message.AiMessage aiMessage = 
-                    dev.langchain4j.data.message.AiMessage.from(aiReply);
-            memory.add(aiMessage);
-            
-            // 设置回复到状态
-            state.setAiResponse(aiReply);
-            state.setIntent(AgentState.IntentType.GENERAL);
-            state.setFinished(true);
-            
-            log.info("GeneralChatNode: 回复生成成功 - length={}", aiReply.length());
+            // 轮次已被取消时不写入记忆，也不再回复
+            checkCancelled();
+            complete(state, turn, aiReply, fromModel);
             
+        } catch (CancellationException e) {
+            log.info("GeneralChatNode: 轮次已取消 - sessionId={}", state.getSessionId());
+            throw e;
+        } catch (RetryableLlmException e) {
+            throw e;
         } catch (Exception e) {
             log.error("GeneralChatNode: 生成回复时发生错误", e);
-            state.setAiResponse("抱歉，我遇到了一些技术问题。请稍后再试，或者如果是紧急情况，请立即拨打急救电话120。");
+            state.setAiResponse(ERROR_REPLY);
             state.setFinished(true);
         }
         
         return state;
     }
     
+    /**
+     * 流式生成回复
+     * 
+     * 降级、模型路由、熔断与记忆写入规则与 {@link #apply} 相同：逐段推送模型输出，完成后写入记忆并设置 state。
+     * 不调用模型的答案（降级、熔断）作为唯一一段推送。订阅被取消（客户端断开）后中止上游响应，不写入记忆。
+     * 调用失败时不重试（已推送的片段无法撤回），state 中为失败提示
+     * 
+     * 订阅时才准备本轮并取得熔断器许可；调用结束或订阅被取消（包括模型调用开始前）时交还许可
+     */
+    public Flux<String> stream(AgentState state) {
+        return Flux.defer(() -> {
+            log.info("GeneralChatNode: 流式生成AI回复 - sessionId={}", state.getSessionId());
+            
+            PreparedTurn turn;
+            try {
+                turn = prepare(state);
+            } catch (Exception e) {
+                log.error("GeneralChatNode: 生成回复时发生错误", e);
+                state.setAiResponse(ERROR_REPLY);
+                state.setFinished(true);
+                return Flux.just(ERROR_REPLY);
+            }
+            if (turn == null) {
+                return Flux.just(state.getAiResponse());
+            }
+            
+            // 许可只交还一次：模型回调与取消以 settled 区分先后
+            AtomicBoolean settled = new AtomicBoolean();
+            return streamModel(state, turn, settled).doOnCancel(() -> {
+                if (settled.compareAndSet(false, true)) {
+                    if (turn.breaker() != null) {
+                        turn.breaker().release();
+                    }
+                    log.info("GeneralChatNode: 流式回复已取消，上游响应已中止 - sessionId={}", state.getSessionId());
+                }
+            });
+        });
+    }
+    
+    /**
+     * 流式调用模型；取消时中止上游响应（熔断器许可由 {@link #stream} 交还）
+     */
+    private Flux<String> streamModel(AgentState state, PreparedTurn turn, AtomicBoolean settled) {
+        retryPolicy.recordCall();
+        return Flux.create(sink -> {
+            CircuitBreaker breaker = turn.breaker();
+            long start = System.nanoTime();
+            Disposable.Composite upstream = Disposables.composite();
+            sink.onCancel(upstream);
+            
+            StreamingChatResponseHandler handler = new StreamingChatResponseHandler() {
+                @Override
+                public void onPartialResponse(String partialResponse) {
+                    if (!settled.get()) {
+                        sink.next(partialResponse);
+                    }
+                }
+                
+                @Override
+                public void onCompleteResponse(dev.langchain4j.model.chat.response.ChatResponse completeResponse) {
+                    if (!settled.compareAndSet(false, true)) {
+                        return;
+                    }
+                    long now = System.nanoTime();
+                    if (breaker != null) {
+                        breaker.onSuccess(now - start, now);
+                    }
+                    complete(state, turn, completeResponse.aiMessage().text(), true);
+                    sink.complete();
+                }
+                
+                @Override
+                public void onError(Throwable error) {
+                    if (!settled.compareAndSet(false, true)) {
+                        return;
+                    }
+                    long now = System.nanoTime();
+                    LlmFailure failure = LlmFailure.classify(error);
+                    if (breaker != null) {
+                        if (failure.isRetryable()) {
+                            breaker.onFailure(now - start, now);
+                        } else {
+                            breaker.release();
+                        }
+                    }
+                    log.error("流式调用 LLM 失败 - sessionId={}, failure={}", state.getSessionId(), failure, error);
+                    complete(state, turn, FAILURE_REPLY, false);
+                    sink.complete();
+                }
+            };
+            try {
+                StreamCancellation.bind(upstream,
+                        () -> streamingChatModel.chat(request(turn.prompt(), turn.model(), turn.level()), handler));
+            } catch (RuntimeException e) {
+                handler.onError(e);
+            }
+        }, FluxSink.OverflowStrategy.BUFFER);
+    }
+    
+    /**
+     * 本轮模型调用所需的上下文
+     */
+    private record PreparedTurn(DegradationLevel level, String model, CircuitBreaker breaker, ChatMemory memory,
+                                List<ChatMessage> turnMessages, String prompt, int contextSize, boolean firstAnswer) {}
+    
+    /**
+     * 确定降级级别、模型与熔断状态，读取会话记忆并构建上下文提示
+     * 
+     * @return 需要调用模型时返回调用上下文（已取得熔断器许可）；降级或熔断时已把答案写入 state，返回 null
+     */
+    private PreparedTurn prepare(AgentState state) {
+        DegradationLevel level = overloadController.getLevel(state.getIntent() == AgentState.IntentType.EMERGENCY);
+        if (level != DegradationLevel.NORMAL) {
+            state.putMetadata("degradation", level);
+        }
+        
+        // 模板级别及以上不调用模型（SHED 之前已入队的轮次同样处理）
+        if (level.compareTo(DegradationLevel.TEMPLATE_ONLY) >= 0) {
+            state.setAiResponse(degradedAnswers.answer(state));
+            state.setFinished(true);
+            log.info("GeneralChatNode: 降级回复 - sessionId={}, level={}", state.getSessionId(), level);
+            return null;
+        }
+        
+        // 选择模型：ECONOMY_MODEL 级别一律用最便宜的模型
+        ModelRouter.Route route = level == DegradationLevel.ECONOMY_MODEL ? modelRouter.economy() : modelRouter.route(state);
+        String model = route.model();
+        state.putMetadata("model", model);
+        state.putMetadata("modelTier", route.tier());
+        state.putMetadata("modelRoute", route.reason());
+        
+        // 获取会话记忆（模型回复成功后才写入本轮消息）
+        ChatMemory memory = memoryService.getOrCreateMemory(state.getSessionId());
+        
+        // 本轮待写入的消息：如果是第一轮对话，先加系统提示词
+        List<ChatMessage> turnMessages = new ArrayList<>(2);
+        if (state.getConversationTurn() == 1) {
+            turnMessages.add(SystemMessage.from(systemPrompt));
+        }
+        turnMessages.add(UserMessage.from(state.getUserInput()));
+        
+        // 历史消息加上本轮消息，构建包含历史的上下文提示
+        List<ChatMessage> messages = withTurn(memory.messages(), turnMessages);
+        log.debug("发送消息到 LLM，历史消息数量: {}", messages.size());
+        boolean firstAnswer = messages.stream().noneMatch(m -> m instanceof dev.langchain4j.data.message.AiMessage);
+        String prompt = buildContextPrompt(messages);
+        
+        // 模型熔断中：不等待超时，立即返回备用答案
+        // 许可最后取得，之前的步骤抛出异常时不会占用许可
+        CircuitBreaker breaker = circuitBreakers.forModel(model);
+        if (breaker != null && !breaker.tryAcquire(System.nanoTime())) {
+            state.putMetadata("circuitOpen", model);
+            state.setAiResponse(degradedAnswers.unavailable(state));
+            state.setFinished(true);
+            log.warn("GeneralChatNode: 模型熔断中，返回备用回复 - sessionId={}, model={}", state.getSessionId(), model);
+            return null;
+        }
+        return new PreparedTurn(level, model, breaker, memory, turnMessages, prompt, messages.size(), firstAnswer);
+    }
+    
+    /**
+     * 设置回复；模型回复时把本轮消息与 AI 回复一起写入记忆，失败时记忆保持不变
+     */
+    private void complete(AgentState state, PreparedTurn turn, String aiReply, boolean fromModel) {
+        if (fromModel) {
+            // 首轮问题（无历史回复）的正常答案留作降级时的缓存答案
+            if (turn.level() == DegradationLevel.NORMAL && turn.firstAnswer()) {
+                degradedAnswers.remember(state.getUserInput(), aiReply);
+            }
+            turn.turnMessages().forEach(turn.memory()::add);
+            turn.memory().add(dev.langchain4j.data.message.AiMessage.from(aiReply));
+        }
+        
+        // 设置回复到状态
+        state.setAiResponse(aiReply);
+        if (state.getIntent() == null) {
+            state.setIntent(AgentState.IntentType.GENERAL);
+        }
+        state.setFinished(true);
+        
+        log.info("GeneralChatNode: 回复生成成功 - length={}", aiReply.length());
+    }
+    
+    /**
+     * 历史消息加上本轮消息；历史中已有系统提示词时不再重复
+     */
+    private static List<ChatMessage> withTurn(List<ChatMessage> history, List<ChatMessage> turnMessages) {
+        List<ChatMessage> messages = new ArrayList<>(history);
+        boolean hasSystemMessage = history.stream().anyMatch(SystemMessage.class::isInstance);
+        for (ChatMessage message : turnMessages) {
+            if (!(message instanceof SystemMessage) || !hasSystemMessage) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+    
+    /**
+     * 客户端取消或断开连接后，轮次所在任务被取消（执行线程同时被中断以中止上游 HTTP 请求）
+     */
+    private static void checkCancelled() {
+        if (PriorityTaskExecutor.isCurrentTaskCancelled() || Thread.currentThread().isInterrupted()) {
+            throw new CancellationException("轮次已取消");
+        }
+    }
+    
+    /**
+     * 调用模型并把结果计入熔断器：限流、5xx、超时计为失败；取消与请求本身的错误（4xx）不计入
+     */
+    private String chat(String prompt, String model, DegradationLevel level, CircuitBreaker breaker) {
+        if (breaker == null) {
+            return chat(prompt, model, level);
+        }
+        long start = System.nanoTime();
+        try {
+            String reply = chat(prompt, model, level);
+            long now = System.nanoTime();
+            breaker.onSuccess(now - start, now);
+            return reply;
+        } catch (RuntimeException e) {
+            long now = System.nanoTime();
+            if (PriorityTaskExecutor.isCurrentTaskCancelled() || !LlmFailure.classify(e).isRetryable()) {
+                breaker.release();
+            } else {
+                breaker.onFailure(now - start, now);
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * 用指定模型调用
+     */
+    private String chat(String prompt, String model, DegradationLevel level) {
+        return chatModel.chat(request(prompt, model, level)).aiMessage().text();
+    }
+    
+    /**
+     * 模型请求：降级时限制最大输出 token 数
+     */
+    private ChatRequest request(String prompt, String model, DegradationLevel level) {
+        ChatRequest.Builder request = ChatRequest.builder()
+                .messages(UserMessage.from(prompt))
+                .modelName(model);
+        if (level != DegradationLevel.NORMAL) {
+            request.maxOutputTokens(overloadController.getReducedMaxTokens());
+        }
+        return request.build();
+    }
+    
     /**
      * 构建包含历史上下文的提示
      * 当 generate 方法不可用时使用此方法
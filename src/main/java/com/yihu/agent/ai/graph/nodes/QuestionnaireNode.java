@@ -0,0 +1,85 @@
+package com.yihu.agent.ai.graph.nodes;
+
+import com.yihu.agent.ai.graph.AgentState;
+import com.yihu.agent.ai.questionnaire.QuestionnaireService;
+import com.yihu.agent.ai.questionnaire.QuestionnaireSession;
+import com.yihu.agent.ai.service.ChatMemoryService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.function.Function;
+
+/**
+ * 结构化问诊节点
+ *
+ * 位于 Initial 与 GeneralChat 之间：
+ * 1. 追问：直接以问题作为回复并结束本轮（finished=true），不调用模型；问答写入会话记忆
+ * 2. 问诊完成：把结构化摘要作为本轮输入交给 GeneralChat，症状与风险等级写入 state；
+ *    这一轮模型调用失败重试时（从原始请求重新执行状态图）同样使用摘要
+ * 3. 放弃问诊或不进行问诊：原样交给 GeneralChat
+ *
+ * 只有一般医疗咨询会开始问诊，高风险咨询直接交给模型；紧急情况作废进行中的问诊；批量作业等后台轮次（metadata.background）不进行问诊
+ */
+@Slf4j
+@Component
+public class QuestionnaireNode implements Function<AgentState, AgentState> {
+
+    private final QuestionnaireService questionnaireService;
+    private final ChatMemoryService memoryService;
+
+    public QuestionnaireNode(QuestionnaireService questionnaireService, ChatMemoryService memoryService) {
+        this.questionnaireService = questionnaireService;
+        this.memoryService = memoryService;
+    }
+
+    @Override
+    public AgentState apply(AgentState state) {
+        if (Boolean.TRUE.equals(state.getMetadata().get("background"))) {
+            return state;
+        }
+        if (state.getIntent() == AgentState.IntentType.EMERGENCY) {
+            questionnaireService.discard(state.getSessionId());
+            return state;
+        }
+
+        // 高风险咨询不开始新的问诊，直接交给模型
+        boolean canStart = state.getIntent() == AgentState.IntentType.MEDICAL && !"HIGH".equals(state.getRiskLevel());
+        QuestionnaireService.Turn turn = questionnaireService.handle(state.getSessionId(), state.getUserInput(), canStart,
+                state.getAttempt() != null && state.getAttempt() > 0);
+        if (turn == null) {
+            return state;
+        }
+
+        QuestionnaireSession session = turn.session();
+        session.getSymptoms().forEach(state::addSymptom);
+        state.setRiskLevel(QuestionnaireSession.maxRisk(state.getRiskLevel(), session.getRiskLevel()));
+        state.putMetadata("riskLevel", state.getRiskLevel());
+        state.putMetadata("questionnaire", session.getDefinition().id());
+        state.putMetadata("chiefComplaint", session.getDefinition().chiefComplaint());
+        state.putMetadata("questionnaireStep", turn.step().kind());
+
+        switch (turn.step().kind()) {
+            case ASK, REASK -> {
+                memoryService.addUserMessage(state.getSessionId(), state.getUserInput());
+                memoryService.addAiMessage(state.getSessionId(), turn.step().text());
+                state.setIntent(AgentState.IntentType.MEDICAL);
+                state.setAiResponse(turn.step().text());
+                state.setFinished(true);
+                log.info("QuestionnaireNode: 本地追问 - sessionId={}, step={}", state.getSessionId(), turn.step().kind());
+            }
+            case DONE -> {
+                if (session.isEmergency()) {
+                    state.setIntent(AgentState.IntentType.EMERGENCY);
+                } else if (state.getIntent() != AgentState.IntentType.EMERGENCY) {
+                    state.setIntent(AgentState.IntentType.MEDICAL);
+                }
+                state.putMetadata("answers", session.getAnswers());
+                state.setUserInput(session.summary());
+                log.info("QuestionnaireNode: 问诊完成，交给模型 - sessionId={}, symptoms={}, risk={}",
+                        state.getSessionId(), state.getSymptoms(), state.getRiskLevel());
+            }
+            case ABANDONED -> log.info("QuestionnaireNode: 回答无法识别，放弃问诊 - sessionId={}", state.getSessionId());
+        }
+        return state;
+    }
+}
@@ -0,0 +1,88 @@
+package com.yihu.agent.ai.graph.nodes;
+
+import com.yihu.agent.ai.graph.AgentState;
+import com.yihu.agent.ai.questionnaire.QuestionnaireSession;
+import com.yihu.agent.ai.symptom.SymptomExtractor;
+import com.yihu.agent.ai.symptom.SymptomLexicon;
+import com.yihu.agent.ai.symptom.SymptomMatches;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 症状提取节点
+ *
+ * 位于 Initial 与 Questionnaire 之间，用本地词典从用户输入中提取症状（不调用模型）：
+ * 1. 未被否定的症状写入 state.symptoms，供模型路由、风险评估与问诊记录使用
+ * 2. 被否定的症状、提到的部位、病程与体温写入 metadata（negatedSymptoms / bodyParts / durationMinutes / temperature）
+ * 3. 词典标注了风险等级的症状提升本轮风险等级；一般对话中提取到症状时按医疗咨询处理
+ */
+@Slf4j
+@Component
+public class SymptomExtractionNode implements Function<AgentState, AgentState> {
+
+    private static final ThreadLocal<SymptomMatches> MATCHES = ThreadLocal.withInitial(SymptomMatches::new);
+
+    private final SymptomExtractor extractor;
+
+    public SymptomExtractionNode(SymptomExtractor extractor) {
+        this.extractor = extractor;
+    }
+
+    @Override
+    public AgentState apply(AgentState state) {
+        if (!extractor.isEnabled() || state.getUserInput() == null) {
+            return state;
+        }
+        SymptomMatches matches = MATCHES.get();
+        extractor.extract(state.getUserInput(), matches);
+        if (matches.isEmpty()) {
+            return state;
+        }
+
+        SymptomLexicon lexicon = extractor.getLexicon();
+        List<String> negated = new ArrayList<>();
+        String risk = null;
+        int found = 0;
+        for (int i = 0; i < matches.size(); i++) {
+            String name = extractor.symptomName(matches, i);
+            if (matches.isNegated(i)) {
+                negated.add(name);
+                continue;
+            }
+            state.addSymptom(name);
+            risk = QuestionnaireSession.maxRisk(risk, lexicon.risk(matches.term(i)));
+            found++;
+        }
+        if (!negated.isEmpty()) {
+            state.putMetadata("negatedSymptoms", negated);
+        }
+        if (matches.bodyPartCount() > 0) {
+            List<String> bodyParts = new ArrayList<>(matches.bodyPartCount());
+            for (int i = 0; i < matches.bodyPartCount(); i++) {
+                bodyParts.add(lexicon.name(matches.bodyPartAt(i)));
+            }
+            state.putMetadata("bodyParts", bodyParts);
+        }
+        if (matches.durationMinutes() >= 0) {
+            state.putMetadata("durationMinutes", matches.durationMinutes());
+        }
+        if (matches.temperatureTenths() >= 0) {
+            state.putMetadata("temperature", matches.temperatureTenths() / 10.0);
+        }
+        if (risk != null) {
+            state.setRiskLevel(QuestionnaireSession.maxRisk(state.getRiskLevel(), risk));
+            state.putMetadata("riskLevel", state.getRiskLevel());
+        }
+        if (found > 0 && (state.getIntent() == null || state.getIntent() == AgentState.IntentType.GENERAL)) {
+            state.setIntent(AgentState.IntentType.MEDICAL);
+        }
+
+        log.debug("SymptomExtractionNode: 提取完成 - sessionId={}, symptoms={}, negated={}, risk={}",
+                state.getSessionId(), state.getSymptoms(), negated, state.getRiskLevel());
+        return state;
+    }
+}
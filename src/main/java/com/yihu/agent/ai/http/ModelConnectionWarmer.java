@@ -0,0 +1,192 @@
+package com.yihu.agent.ai.http;
+
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpMethod;
+import dev.langchain4j.http.client.HttpRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 模型连接预热
+ *
+ * 作为生命周期组件在 Web 服务器启动（开始监听端口）之前运行：通过模型使用的同一个 HTTP 客户端
+ * 并发请求 {base-url}/models，提前完成 DNS 解析、TLS 握手与连接建立
+ * （HTTP/1.1 下并发数即建立的连接数，HTTP/2 下多路复用同一连接），预热完成或超过 warmup-timeout-ms 后
+ * 才继续启动，第一批请求直接复用已建立的连接。
+ * 之后按 keep-warm-interval-ms 定期重复，避免空闲连接被关闭后首个请求重新建连
+ *
+ * 只要收到任何 HTTP 响应（包括 4xx）即视为连接已建立
+ */
+@Slf4j
+@Component
+public class ModelConnectionWarmer implements SmartLifecycle {
+
+    /**
+     * 早于 Web 服务器的启动阶段（DEFAULT_PHASE - 2048）
+     */
+    static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+    private final HttpClient httpClient;
+
+    private final String modelsUrl;
+
+    private final String apiKey;
+
+    private final int connections;
+
+    private final long keepWarmIntervalMs;
+
+    private final long warmupTimeoutMs;
+
+    private final ExecutorService warmupPool;
+
+    private final ScheduledExecutorService keepWarmTimer;
+
+    private final AtomicLong warmups = new AtomicLong();
+
+    private final AtomicInteger lastConnected = new AtomicInteger();
+
+    private volatile long lastElapsedMs;
+
+    private volatile boolean running;
+
+    public ModelConnectionWarmer(HttpClient modelHttpClient,
+                                 @Value("${langchain4j.open-ai.chat-model.base-url:https://api.openai.com/v1}") String baseUrl,
+                                 @Value("${langchain4j.open-ai.chat-model.api-key}") String apiKey,
+                                 @Value("${healthcare.ai.http.warmup-connections:4}") int connections,
+                                 @Value("${healthcare.ai.http.keep-warm-interval-ms:60000}") long keepWarmIntervalMs,
+                                 @Value("${healthcare.ai.http.warmup-timeout-ms:10000}") long warmupTimeoutMs) {
+        this.httpClient = modelHttpClient;
+        this.modelsUrl = (baseUrl.endsWith("/") ? baseUrl : baseUrl + "/") + "models";
+        this.apiKey = apiKey;
+        this.connections = connections;
+        this.keepWarmIntervalMs = keepWarmIntervalMs;
+        this.warmupTimeoutMs = warmupTimeoutMs;
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.warmupPool = Executors.newFixedThreadPool(Math.max(1, connections), runnable -> {
+            Thread thread = new Thread(runnable, "model-warmup-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.keepWarmTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "model-keep-warm");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 启动阶段同步预热，完成后 Web 服务器才开始接收流量
+     */
+    @Override
+    public void start() {
+        running = true;
+        warmUp();
+        if (keepWarmIntervalMs > 0) {
+            keepWarmTimer.scheduleWithFixedDelay(this::warmUp, keepWarmIntervalMs, keepWarmIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        keepWarmTimer.shutdownNow();
+        warmupPool.shutdownNow();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    /**
+     * 并发发出 warmup-connections 个请求并等待完成（最多等待 warmup-timeout-ms）
+     *
+     * @return 收到 HTTP 响应的请求数
+     */
+    public int warmUp() {
+        long start = System.nanoTime();
+        long deadline = start + TimeUnit.MILLISECONDS.toNanos(warmupTimeoutMs);
+        List<Future<Boolean>> requests = new ArrayList<>(connections);
+        for (int i = 0; i < connections; i++) {
+            requests.add(warmupPool.submit(this::touch));
+        }
+        int connected = 0;
+        for (Future<Boolean> request : requests) {
+            try {
+                if (request.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                    connected++;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (TimeoutException e) {
+                request.cancel(true);
+                log.debug("模型连接预热请求超过 {}ms，不再等待", warmupTimeoutMs);
+            } catch (Exception e) {
+                log.debug("模型连接预热请求异常: {}", e.getMessage());
+            }
+        }
+        warmups.incrementAndGet();
+        lastConnected.set(connected);
+        lastElapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (connected == 0) {
+            log.warn("模型连接预热失败 - url={}, 耗时 {}ms", modelsUrl, lastElapsedMs);
+        } else {
+            log.info("模型连接预热完成 - url={}, 成功 {}/{}, 耗时 {}ms", modelsUrl, connected, connections, lastElapsedMs);
+        }
+        return connected;
+    }
+
+    private boolean touch() {
+        HttpRequest request = HttpRequest.builder()
+                .method(HttpMethod.GET)
+                .url(modelsUrl)
+                .addHeader("Authorization", "Bearer " + apiKey)
+                .build();
+        try {
+            httpClient.execute(request);
+            return true;
+        } catch (HttpException e) {
+            // 非 2xx 响应同样说明连接已建立
+            return true;
+        } catch (RuntimeException e) {
+            log.debug("模型连接预热请求失败 - url={}: {}", modelsUrl, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 预热次数与最近一次的结果
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("url", modelsUrl);
+        stats.put("connections", connections);
+        stats.put("warmups", warmups.get());
+        stats.put("lastConnected", lastConnected.get());
+        stats.put("lastElapsedMs", lastElapsedMs);
+        return stats;
+    }
+}
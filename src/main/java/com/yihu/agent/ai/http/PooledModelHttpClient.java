@@ -0,0 +1,318 @@
+package com.yihu.agent.ai.http;
+
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.TimeoutException;
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpClientBuilder;
+import dev.langchain4j.http.client.HttpRequest;
+import dev.langchain4j.http.client.SuccessfulHttpResponse;
+import dev.langchain4j.http.client.sse.ServerSentEvent;
+import dev.langchain4j.http.client.sse.ServerSentEventListener;
+import dev.langchain4j.http.client.sse.ServerSentEventParser;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelOption;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.ReactorClientHttpRequestFactory;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.RestClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.ByteArrayOutputStream;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 模型调用使用的 HTTP 客户端（Reactor Netty 连接池）
+ *
+ * 连接池大小与空闲连接保活时间在构建时设置，只作用于这个客户端的连接池，不修改 JVM 全局属性；
+ * 同步调用与流式调用（SSE）共用同一个连接池，预热建立的连接被之后的模型调用复用。
+ *
+ * 流式响应不占用线程：在 Netty 事件循环上逐块接收并按行解析 SSE（规则与 DefaultServerSentEventParser 相同），
+ * 事件回调在事件循环线程上执行。调用方经 {@link StreamCancellation} 绑定的取消句柄可中止上游响应并关闭连接
+ */
+@Slf4j
+public class PooledModelHttpClient implements HttpClient, AutoCloseable {
+
+    private final RestClient restClient;
+
+    private final ConnectionProvider connectionProvider;
+
+    /**
+     * 流式调用直接使用的 Reactor Netty 客户端（与 restClient 共用连接池）
+     */
+    private final reactor.netty.http.client.HttpClient streamingClient;
+
+    private PooledModelHttpClient(Builder builder) {
+        ConnectionProvider.Builder pool = ConnectionProvider.builder("model-http")
+                .maxIdleTime(builder.maxIdleTime)
+                // 并发由 AI 调度队列控制，等待连接的请求不设上限
+                .pendingAcquireMaxCount(-1);
+        if (builder.maxConnections > 0) {
+            pool.maxConnections(builder.maxConnections);
+        }
+        this.connectionProvider = pool.build();
+
+        reactor.netty.http.client.HttpClient nettyClient = reactor.netty.http.client.HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) builder.connectTimeout.toMillis());
+        if (builder.http2) {
+            // HTTPS 通过 ALPN 协商 HTTP/2，服务端不支持时使用 HTTP/1.1；明文连接只使用 HTTP/1.1
+            nettyClient = nettyClient.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        }
+        ReactorClientHttpRequestFactory requestFactory = new ReactorClientHttpRequestFactory(nettyClient);
+        requestFactory.setReadTimeout(builder.readTimeout);
+        this.restClient = RestClient.builder().requestFactory(requestFactory).build();
+        // 读超时按两次读取之间的间隔计算，流式响应只要持续有输出就不会超时
+        this.streamingClient = nettyClient.responseTimeout(builder.readTimeout);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public SuccessfulHttpResponse execute(HttpRequest request) throws HttpException {
+        try {
+            return toSpringRequest(request).exchange((springRequest, response) -> {
+                int status = response.getStatusCode().value();
+                String body = StreamUtils.copyToString(response.getBody(), StandardCharsets.UTF_8);
+                if (!isSuccessful(status)) {
+                    throw new HttpException(status, body);
+                }
+                return SuccessfulHttpResponse.builder()
+                        .statusCode(status)
+                        .headers(headersOf(response))
+                        .body(body)
+                        .build();
+            });
+        } catch (HttpException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw translate(e);
+        }
+    }
+
+    /**
+     * 流式调用：立即返回，响应在事件循环上逐块解析
+     *
+     * parser 不使用：LangChain4j 传入的是阻塞读取 InputStream 的 DefaultServerSentEventParser，
+     * 这里按相同规则增量解析，避免每个进行中的流占用一个线程
+     */
+    @Override
+    public void execute(HttpRequest request, ServerSentEventParser parser, ServerSentEventListener listener) {
+        EventStreamDecoder decoder = new EventStreamDecoder(listener);
+        Disposable subscription = streamingClient
+                .headers(headers -> request.headers().forEach(headers::add))
+                .request(io.netty.handler.codec.http.HttpMethod.valueOf(request.method().name()))
+                .uri(request.url())
+                .send(ByteBufFlux.fromString(Mono.justOrEmpty(request.body()), StandardCharsets.UTF_8,
+                        io.netty.buffer.ByteBufAllocator.DEFAULT))
+                .response((response, content) -> {
+                    int status = response.status().code();
+                    if (!isSuccessful(status)) {
+                        return content.aggregate().asString(StandardCharsets.UTF_8).defaultIfEmpty("")
+                                .flatMap(body -> Mono.error(new HttpException(status, body)));
+                    }
+                    Map<String, List<String>> headers = new HashMap<>();
+                    response.responseHeaders().names().forEach(name -> headers.put(name, response.responseHeaders().getAll(name)));
+                    listener.onOpen(SuccessfulHttpResponse.builder()
+                            .statusCode(status)
+                            .headers(headers)
+                            .build());
+                    return content.doOnNext(decoder::feed).then(Mono.fromRunnable(decoder::finish));
+                })
+                .subscribe(
+                        ignored -> { },
+                        error -> listener.onError(error instanceof HttpException ? error : translate(error)),
+                        listener::onClose);
+        StreamCancellation.register(subscription);
+    }
+
+    /**
+     * 关闭连接池（Spring 销毁 Bean 时调用）
+     */
+    @Override
+    public void close() {
+        connectionProvider.dispose();
+    }
+
+    private RestClient.RequestBodySpec toSpringRequest(HttpRequest request) {
+        RestClient.RequestBodySpec spec = restClient.method(HttpMethod.valueOf(request.method().name()))
+                .uri(request.url())
+                .headers(headers -> request.headers().forEach(headers::addAll));
+        if (request.body() != null) {
+            spec.body(request.body());
+        }
+        return spec;
+    }
+
+    private static Map<String, List<String>> headersOf(ClientHttpResponse response) {
+        Map<String, List<String>> headers = new HashMap<>();
+        response.getHeaders().forEach(headers::put);
+        return headers;
+    }
+
+    private static boolean isSuccessful(int status) {
+        return status >= 200 && status < 300;
+    }
+
+    /**
+     * 超时统一转换为 LangChain4j 的 TimeoutException，重试与熔断按超时处理
+     */
+    private static RuntimeException translate(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException
+                    || cause instanceof java.util.concurrent.TimeoutException
+                    || cause instanceof io.netty.handler.timeout.TimeoutException) {
+                return new TimeoutException(e);
+            }
+        }
+        return e instanceof RuntimeException runtime ? runtime : new RuntimeException(e);
+    }
+
+    /**
+     * SSE 增量解析：按字节切行（UTF-8 字符可能跨块），空行结束一个事件；
+     * "event:" / "data:" 的处理与 DefaultServerSentEventParser 相同，多行 data 以换行连接。
+     * 同一个响应的数据块按顺序到达，不需要同步
+     */
+    private static final class EventStreamDecoder {
+
+        private final ServerSentEventListener listener;
+
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream(256);
+
+        private final StringBuilder data = new StringBuilder();
+
+        private String event;
+
+        EventStreamDecoder(ServerSentEventListener listener) {
+            this.listener = listener;
+        }
+
+        void feed(ByteBuf chunk) {
+            while (chunk.isReadable()) {
+                byte b = chunk.readByte();
+                if (b == '\n') {
+                    onLine(line.toString(StandardCharsets.UTF_8));
+                    line.reset();
+                } else {
+                    line.write(b);
+                }
+            }
+        }
+
+        void finish() {
+            if (line.size() > 0) {
+                onLine(line.toString(StandardCharsets.UTF_8));
+                line.reset();
+            }
+            dispatch();
+        }
+
+        private void onLine(String text) {
+            if (text.endsWith("\r")) {
+                text = text.substring(0, text.length() - 1);
+            }
+            if (text.isEmpty()) {
+                dispatch();
+            } else if (text.startsWith("event:")) {
+                event = text.substring("event:".length()).trim();
+            } else if (text.startsWith("data:")) {
+                if (!data.isEmpty()) {
+                    data.append('\n');
+                }
+                data.append(text.substring("data:".length()).trim());
+            }
+        }
+
+        private void dispatch() {
+            if (data.isEmpty()) {
+                return;
+            }
+            ServerSentEvent sse = new ServerSentEvent(event, data.toString());
+            data.setLength(0);
+            event = null;
+            try {
+                listener.onEvent(sse);
+            } catch (RuntimeException e) {
+                log.warn("处理模型流式事件失败", e);
+            }
+        }
+    }
+
+    /**
+     * 客户端构建器：协议、超时与连接池设置都在这里指定
+     */
+    public static class Builder implements HttpClientBuilder {
+
+        private Duration connectTimeout = Duration.ofSeconds(5);
+
+        private Duration readTimeout = Duration.ofSeconds(60);
+
+        private boolean http2 = true;
+
+        private int maxConnections;
+
+        private Duration maxIdleTime = Duration.ofMinutes(5);
+
+        @Override
+        public Duration connectTimeout() {
+            return connectTimeout;
+        }
+
+        @Override
+        public Builder connectTimeout(Duration timeout) {
+            this.connectTimeout = timeout;
+            return this;
+        }
+
+        @Override
+        public Duration readTimeout() {
+            return readTimeout;
+        }
+
+        @Override
+        public Builder readTimeout(Duration timeout) {
+            this.readTimeout = timeout;
+            return this;
+        }
+
+        /**
+         * 是否协商 HTTP/2（仅 HTTPS）
+         */
+        public Builder http2(boolean http2) {
+            this.http2 = http2;
+            return this;
+        }
+
+        /**
+         * 每个目标地址的最大连接数，0 使用 Reactor Netty 的默认值
+         */
+        public Builder maxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+            return this;
+        }
+
+        /**
+         * 空闲连接保留时间，超过后关闭
+         */
+        public Builder maxIdleTime(Duration maxIdleTime) {
+            this.maxIdleTime = maxIdleTime;
+            return this;
+        }
+
+        @Override
+        public PooledModelHttpClient build() {
+            return new PooledModelHttpClient(this);
+        }
+    }
+}
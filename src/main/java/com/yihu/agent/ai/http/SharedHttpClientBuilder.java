@@ -0,0 +1,54 @@
+package com.yihu.agent.ai.http;
+
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpClientBuilder;
+
+import java.time.Duration;
+
+/**
+ * 始终返回同一个 {@link HttpClient} 的构建器
+ *
+ * 模型与 {@link ModelConnectionWarmer} 共用一个客户端（同一个连接池），预热建立的连接才能被模型调用复用。
+ * 超时在共享客户端创建时已确定，这里的设置只记录不生效
+ */
+public class SharedHttpClientBuilder implements HttpClientBuilder {
+
+    private final HttpClient httpClient;
+
+    private Duration connectTimeout;
+
+    private Duration readTimeout;
+
+    public SharedHttpClientBuilder(HttpClient httpClient, Duration connectTimeout, Duration readTimeout) {
+        this.httpClient = httpClient;
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    public Duration connectTimeout() {
+        return connectTimeout;
+    }
+
+    @Override
+    public HttpClientBuilder connectTimeout(Duration timeout) {
+        this.connectTimeout = timeout;
+        return this;
+    }
+
+    @Override
+    public Duration readTimeout() {
+        return readTimeout;
+    }
+
+    @Override
+    public HttpClientBuilder readTimeout(Duration timeout) {
+        this.readTimeout = timeout;
+        return this;
+    }
+
+    @Override
+    public HttpClient build() {
+        return httpClient;
+    }
+}
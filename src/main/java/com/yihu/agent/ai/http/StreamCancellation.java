@@ -0,0 +1,45 @@
+package com.yihu.agent.ai.http;
+
+import reactor.core.Disposable;
+
+/**
+ * 流式模型调用的取消句柄
+ *
+ * LangChain4j 的流式回调接口没有取消方法，但流式调用在调用方线程上同步发起：
+ * 调用方在 {@link #bind} 中发起调用，{@link PooledModelHttpClient} 把上游响应的订阅登记到当前线程绑定的句柄上，
+ * 之后 dispose 句柄即中止上游响应并关闭连接（句柄已 dispose 时登记的订阅立即中止）
+ */
+public final class StreamCancellation {
+
+    private static final ThreadLocal<Disposable.Composite> CURRENT = new ThreadLocal<>();
+
+    private StreamCancellation() {
+    }
+
+    /**
+     * 在当前线程上执行 call，其中发起的流式调用绑定到 cancellation
+     */
+    public static void bind(Disposable.Composite cancellation, Runnable call) {
+        Disposable.Composite previous = CURRENT.get();
+        CURRENT.set(cancellation);
+        try {
+            call.run();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 登记上游订阅；当前线程没有绑定句柄时不登记（流运行到结束）
+     */
+    static void register(Disposable subscription) {
+        Disposable.Composite cancellation = CURRENT.get();
+        if (cancellation != null) {
+            cancellation.add(subscription);
+        }
+    }
+}
@@ -32,11 +32,35 @@ public class ChatRequest {
      */
     private Long timestamp;
     
+    /**
+     * 客户端生成的消息ID（可选）：超时重发时保持不变，服务端据此去重，重发不会重复调用模型或写入会话记忆
+     */
+    private String messageId;
+    
+    /**
+     * 操作类型：为空时为普通对话；cancel - 取消该会话正在生成的回复（message 可为空）
+     */
+    private String action;
+    
+    /**
+     * 后台轮次（批量作业）：单轮处理，不进行多轮结构化问诊
+     */
+    private boolean background;
+    
+    public static final String ACTION_CANCEL = "cancel";
+    
     public ChatRequest(String userId, String message, String sessionId) {
         this.userId = userId;
         this.message = message;
         this.sessionId = sessionId;
         this.timestamp = System.currentTimeMillis();
     }
+    
+    /**
+     * 是否为取消请求
+     */
+    public boolean isCancel() {
+        return ACTION_CANCEL.equalsIgnoreCase(action);
+    }
 }
 
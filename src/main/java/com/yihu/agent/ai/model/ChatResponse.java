@@ -5,6 +5,8 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.util.Map;
+
 /**
  * AI 对话响应消息
  */
@@ -25,7 +27,7 @@ public class ChatResponse {
     private String message;
     
     /**
-     * 消息类型：NORMAL-正常回复, EMERGENCY-紧急警告, THINKING-思考中, ERROR-错误
+     * 消息类型：NORMAL-正常回复, EMERGENCY-紧急警告, THINKING-思考中, ERROR-错误, THROTTLED-请求过于频繁, BUSY-服务繁忙, CANCELLED-已取消, DELTA-流式输出片段
      */
     private MessageType type;
     
@@ -43,7 +45,11 @@ public class ChatResponse {
         NORMAL,      // 正常回复
         EMERGENCY,   // 紧急警告
         THINKING,    // 思考中
-        ERROR        // 错误
+        ERROR,       // 错误
+        THROTTLED,   // 限流
+        BUSY,        // 服务繁忙
+        CANCELLED,   // 已取消
+        DELTA        // 流式输出片段（message 为新增的文本）
     }
     
     /**
@@ -93,5 +99,53 @@ public class ChatResponse {
                 .timestamp(System.currentTimeMillis())
                 .build();
     }
+    
+    /**
+     * 创建限流响应，metadata.retryAfterMs 为建议的重试等待时间（毫秒）
+     */
+    public static ChatResponse throttled(String sessionId, long retryAfterMs) {
+        return ChatResponse.builder()
+                .sessionId(sessionId)
+                .message("请求过于频繁，请稍后再试。")
+                .type(MessageType.THROTTLED)
+                .timestamp(System.currentTimeMillis())
+                .metadata(Map.of("retryAfterMs", retryAfterMs))
+                .build();
+    }
+    
+    /**
+     * 创建繁忙响应（过载降级或队列已满时快速拒绝）
+     */
+    public static ChatResponse busy(String sessionId) {
+        return ChatResponse.builder()
+                .sessionId(sessionId)
+                .message("当前咨询人数较多，请稍后再试。如有紧急情况，请立即拨打急救电话120。")
+                .type(MessageType.BUSY)
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
+    
+    /**
+     * 创建流式输出片段
+     */
+    public static ChatResponse delta(String sessionId, String text) {
+        return ChatResponse.builder()
+                .sessionId(sessionId)
+                .message(text)
+                .type(MessageType.DELTA)
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
+    
+    /**
+     * 创建取消确认
+     */
+    public static ChatResponse cancelled(String sessionId) {
+        return ChatResponse.builder()
+                .sessionId(sessionId)
+                .message("已取消本次回复")
+                .type(MessageType.CANCELLED)
+                .timestamp(System.currentTimeMillis())
+                .build();
+    }
 }
-
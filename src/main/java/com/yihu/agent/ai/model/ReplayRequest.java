@@ -0,0 +1,30 @@
+package com.yihu.agent.ai.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 断线重连补发请求
+ * 客户端重新订阅 /user/queue/ai-reply 后发送，携带已收到的最大序号
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplayRequest {
+    
+    /**
+     * 用户ID（已通过 STOMP 连接认证时以连接身份为准）
+     */
+    private String userId;
+    
+    /**
+     * 客户端已收到的最大序号（帧头 seq）
+     */
+    private Long lastSeq;
+    
+    /**
+     * 客户端记录的序号纪元（帧头 epoch）
+     */
+    private Long epoch;
+}
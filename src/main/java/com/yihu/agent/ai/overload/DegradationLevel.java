@@ -0,0 +1,32 @@
+package com.yihu.agent.ai.overload;
+
+/**
+ * 降级级别，逐级加重；紧急轮次在任何级别下都按 NORMAL 处理
+ */
+public enum DegradationLevel {
+
+    /**
+     * 正常服务
+     */
+    NORMAL,
+
+    /**
+     * 缩短最大输出 token 数
+     */
+    REDUCED_TOKENS,
+
+    /**
+     * 缩短输出并改用更便宜的模型
+     */
+    ECONOMY_MODEL,
+
+    /**
+     * 不调用模型，只返回缓存答案或模板答案
+     */
+    TEMPLATE_ONLY,
+
+    /**
+     * 入队前直接回复"繁忙"
+     */
+    SHED
+}
@@ -0,0 +1,101 @@
+package com.yihu.agent.ai.overload;
+
+import com.yihu.agent.ai.graph.AgentState;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 降级时不调用模型的答案来源
+ *
+ * 1. 正常服务期间，会话首轮（无历史）的问题与模型答案按归一化后的问题缓存（LRU）
+ * 2. TEMPLATE_ONLY 及以上级别先查缓存，未命中时按分诊结果返回模板答案
+ * 3. 模型熔断期间同样先查缓存，并附上急救指引
+ */
+@Component
+public class DegradedAnswers {
+
+    private static final String GENERAL_TEMPLATE =
+        "当前咨询量较大，智能助手暂时以简化模式服务。请稍后再发送您的问题，我们会尽快为您详细解答。";
+
+    private static final String MEDICAL_TEMPLATE =
+        "当前咨询量较大，暂时无法为您详细分析。建议您记录症状出现的时间、部位和程度；如症状持续或加重，请及时到医院就诊。";
+
+    private static final String HIGH_RISK_TEMPLATE =
+        "您描述的情况可能需要尽快就医。当前咨询量较大，建议您尽快前往医院或联系医生；如出现意识改变、剧烈疼痛或呼吸困难，请立即拨打急救电话120。";
+
+    private static final String UNAVAILABLE_TEMPLATE =
+        "抱歉，智能助手暂时无法连接，请稍后再试。";
+
+    private static final String EMERGENCY_GUIDANCE =
+        "如出现胸痛、呼吸困难、大出血、意识不清等紧急情况，请立即拨打急救电话120或前往最近的医院急诊。";
+
+    private final Map<String, String> cache;
+
+    public DegradedAnswers(@Value("${healthcare.overload.answer-cache-size:1000}") int cacheSize) {
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * 缓存首轮问题的模型答案
+     */
+    public void remember(String question, String answer) {
+        String key = normalize(question);
+        if (key.isEmpty() || answer == null || answer.isBlank()) {
+            return;
+        }
+        synchronized (cache) {
+            cache.put(key, answer);
+        }
+    }
+
+    /**
+     * 降级答案：缓存命中时返回缓存，否则按风险等级返回模板
+     */
+    public String answer(AgentState state) {
+        String cached;
+        synchronized (cache) {
+            cached = cache.get(normalize(state.getUserInput()));
+        }
+        if (cached != null) {
+            return cached;
+        }
+        if ("HIGH".equals(state.getRiskLevel())) {
+            return HIGH_RISK_TEMPLATE;
+        }
+        return state.getIntent() == AgentState.IntentType.MEDICAL ? MEDICAL_TEMPLATE : GENERAL_TEMPLATE;
+    }
+
+    /**
+     * 模型不可用（熔断）时的答案：缓存命中时返回缓存，否则返回提示；两者都附上急救指引
+     */
+    public String unavailable(AgentState state) {
+        String cached;
+        synchronized (cache) {
+            cached = cache.get(normalize(state.getUserInput()));
+        }
+        return (cached != null ? cached : UNAVAILABLE_TEMPLATE) + "\n\n" + EMERGENCY_GUIDANCE;
+    }
+
+    /**
+     * 去掉空白与标点、统一大小写，让措辞略有差异的同一问题命中同一条缓存
+     */
+    private static String normalize(String question) {
+        if (question == null) {
+            return "";
+        }
+        StringBuilder key = new StringBuilder(question.length());
+        question.codePoints()
+            .filter(Character::isLetterOrDigit)
+            .map(Character::toLowerCase)
+            .forEach(key::appendCodePoint);
+        return key.toString();
+    }
+}
@@ -0,0 +1,239 @@
+package com.yihu.agent.ai.overload;
+
+import com.yihu.agent.ai.scheduling.PriorityTaskExecutor;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 过载控制
+ *
+ * 定期采样三个信号，各自按阈值映射到一个降级级别，取最高者作为目标级别：
+ * 1. 排队最久的 AI 轮次已等待的时长
+ * 2. 在途轮次数（执行中 + 排队中 + 进行中的流式轮次）
+ * 3. 堆使用率（优先取老年代上次 GC 后的占用，排除尚未回收的垃圾）
+ *
+ * 目标级别高于当前级别时立即升级；低于当前级别并持续 recover-after-ms 后才降一级，避免来回抖动
+ *
+ * 紧急轮次不受降级影响，调用方通过 {@link #getLevel(boolean)} 取级别
+ */
+@Slf4j
+@Component
+public class OverloadController {
+
+    @Value("${healthcare.overload.enabled:true}")
+    private boolean enabled;
+
+    @Value("${healthcare.overload.sample-interval-ms:500}")
+    private long sampleIntervalMs;
+
+    @Value("${healthcare.overload.recover-after-ms:10000}")
+    private long recoverAfterMs;
+
+    /**
+     * 各信号进入 REDUCED_TOKENS、ECONOMY_MODEL、TEMPLATE_ONLY、SHED 的阈值
+     */
+    @Value("${healthcare.overload.queue-wait-ms:2000,5000,10000,20000}")
+    private long[] queueWaitThresholds;
+
+    @Value("${healthcare.overload.in-flight:32,64,160,320}")
+    private long[] inFlightThresholds;
+
+    @Value("${healthcare.overload.heap-percent:75,82,88,94}")
+    private long[] heapPercentThresholds;
+
+    /**
+     * 降级时的最大输出 token 数
+     */
+    @Value("${healthcare.overload.reduced-max-tokens:512}")
+    private int reducedMaxTokens;
+
+    private volatile DegradationLevel level = DegradationLevel.NORMAL;
+
+    private volatile PriorityTaskExecutor executor;
+
+    private volatile long lastQueueWaitMs;
+
+    private volatile int lastInFlight;
+
+    /**
+     * 不经过执行器的流式轮次（SSE），计入在途轮次数
+     */
+    private final AtomicInteger activeStreams = new AtomicInteger();
+
+    private volatile long lastHeapPercent;
+
+    private long belowSinceMillis;
+
+    private final LongAdder transitions = new LongAdder();
+
+    private ScheduledExecutorService sampler;
+
+    @PostConstruct
+    public void start() {
+        sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "overload-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleWithFixedDelay(this::sample, sampleIntervalMs, sampleIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sampler.shutdown();
+    }
+
+    /**
+     * 监控 AI 轮次执行器的排队与在途数
+     */
+    public void watch(PriorityTaskExecutor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 流式轮次开始调用模型；结束（完成、失败或取消）时必须调用 {@link #streamFinished()}
+     */
+    public void streamStarted() {
+        activeStreams.incrementAndGet();
+    }
+
+    public void streamFinished() {
+        activeStreams.decrementAndGet();
+    }
+
+    public int getReducedMaxTokens() {
+        return reducedMaxTokens;
+    }
+
+    /**
+     * 当前降级级别
+     */
+    public DegradationLevel getLevel() {
+        return enabled ? level : DegradationLevel.NORMAL;
+    }
+
+    /**
+     * 某一轮次适用的降级级别：紧急轮次在任何级别下都按 NORMAL 处理（不拒绝、不降级）
+     */
+    public DegradationLevel getLevel(boolean emergency) {
+        return emergency ? DegradationLevel.NORMAL : getLevel();
+    }
+
+    // ==================== 采样 ====================
+
+    private void sample() {
+        try {
+            PriorityTaskExecutor watched = executor;
+            sample(watched != null ? watched.oldestWaitMillis() : 0,
+                (watched != null ? watched.inFlight() : 0) + activeStreams.get(),
+                heapPercent(),
+                System.currentTimeMillis());
+        } catch (Exception e) {
+            log.error("过载采样失败", e);
+        }
+    }
+
+    /**
+     * 按一次采样的信号值调整级别
+     *
+     * @param now 采样时间（毫秒），用于判断恢复前的持续时长
+     */
+    void sample(long queueWaitMs, int inFlight, long heapPercent, long now) {
+        lastQueueWaitMs = queueWaitMs;
+        lastInFlight = inFlight;
+        lastHeapPercent = heapPercent;
+
+        int target = Math.max(levelFor(queueWaitMs, queueWaitThresholds),
+            Math.max(levelFor(inFlight, inFlightThresholds), levelFor(heapPercent, heapPercentThresholds)));
+        update(DegradationLevel.values()[target], now);
+    }
+
+    private void update(DegradationLevel target, long now) {
+        DegradationLevel current = level;
+        if (target.compareTo(current) > 0) {
+            changeTo(current, target);
+            belowSinceMillis = 0;
+        } else if (target.compareTo(current) < 0) {
+            if (belowSinceMillis == 0) {
+                belowSinceMillis = now;
+            } else if (now - belowSinceMillis >= recoverAfterMs) {
+                changeTo(current, DegradationLevel.values()[current.ordinal() - 1]);
+                belowSinceMillis = now;
+            }
+        } else {
+            belowSinceMillis = 0;
+        }
+    }
+
+    private void changeTo(DegradationLevel from, DegradationLevel to) {
+        level = to;
+        transitions.increment();
+        if (to.compareTo(from) > 0) {
+            log.warn("AI 服务降级: {} -> {}（排队等待 {}ms，在途 {}，堆使用 {}%）", from, to, lastQueueWaitMs, lastInFlight, lastHeapPercent);
+        } else {
+            log.info("AI 服务恢复: {} -> {}", from, to);
+        }
+    }
+
+    /**
+     * 信号值达到的最高阈值对应的级别
+     */
+    static int levelFor(long value, long[] thresholds) {
+        int result = 0;
+        for (int i = 0; i < thresholds.length && i < DegradationLevel.values().length - 1; i++) {
+            if (value >= thresholds[i]) {
+                result = i + 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 老年代上次 GC 后的占用率；取不到时退回整个堆的当前占用率
+     */
+    private static long heapPercent() {
+        MemoryPoolMXBean oldGen = null;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()
+                && pool.getUsage().getMax() > 0
+                && (oldGen == null || pool.getUsage().getMax() > oldGen.getUsage().getMax())) {
+                oldGen = pool;
+            }
+        }
+        MemoryUsage usage = oldGen != null && oldGen.getCollectionUsage() != null
+            ? oldGen.getCollectionUsage()
+            : ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long max = usage.getMax() > 0 ? usage.getMax() : Runtime.getRuntime().maxMemory();
+        return max > 0 ? usage.getUsed() * 100 / max : 0;
+    }
+
+    /**
+     * 当前级别与最近一次采样的信号值
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("level", getLevel());
+        stats.put("queueWaitMs", lastQueueWaitMs);
+        stats.put("inFlight", lastInFlight);
+        stats.put("activeStreams", activeStreams.get());
+        stats.put("heapPercent", lastHeapPercent);
+        stats.put("transitions", transitions.sum());
+        return stats;
+    }
+}
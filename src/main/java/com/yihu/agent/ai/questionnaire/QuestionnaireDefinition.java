@@ -0,0 +1,62 @@
+package com.yihu.agent.ai.questionnaire;
+
+import java.util.List;
+
+/**
+ * 一个主诉的结构化问诊表（classpath:questionnaires/*.json）
+ *
+ * 问题之间构成状态机：从 start 开始，回答命中的选项可指定下一题（next），否则按问题的 next 继续；
+ * next 为空或 "END" 时问诊结束
+ *
+ * @param id             问诊表标识
+ * @param chiefComplaint 主诉，同时记为第一个症状
+ * @param triggers       触发该问诊表的关键词（如"头疼"、"头痛"）
+ * @param start          第一题的 id
+ * @param questions      全部问题
+ */
+public record QuestionnaireDefinition(String id, String chiefComplaint, List<String> triggers, String start,
+                                      List<Question> questions) {
+
+    public static final String END = "END";
+
+    public Question question(String questionId) {
+        for (Question question : questions) {
+            if (question.id().equals(questionId)) {
+                return question;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 问题类型
+     */
+    public enum QuestionType {
+        /** 单选，按选项关键词识别回答 */
+        CHOICE,
+        /** 是 / 否（选项 value 为"是"、"否"），识别时另加默认的肯定 / 否定词 */
+        YES_NO,
+        /** 自由文本，原样记录 */
+        TEXT
+    }
+
+    /**
+     * 问题
+     *
+     * @param label 写入问诊摘要时的名称（如"持续时间"）
+     */
+    public record Question(String id, String label, String text, QuestionType type, List<Answer> options, String next) {}
+
+    /**
+     * 选项
+     *
+     * @param value     记录的回答
+     * @param keywords  识别该选项的关键词，value 本身也参与识别
+     * @param symptom   选中时记录的症状
+     * @param risk      选中时至少提升到的风险等级（LOW / MEDIUM / HIGH / EMERGENCY）
+     * @param next      选中时的下一题，覆盖问题的 next
+     * @param emergency 选中时立即结束问诊并按紧急情况处理
+     */
+    public record Answer(String value, List<String> keywords, String symptom, String risk, String next,
+                         boolean emergency) {}
+}
@@ -0,0 +1,121 @@
+package com.yihu.agent.ai.questionnaire;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yihu.agent.ai.questionnaire.QuestionnaireDefinition.Answer;
+import com.yihu.agent.ai.questionnaire.QuestionnaireDefinition.Question;
+import com.yihu.agent.ai.questionnaire.QuestionnaireDefinition.QuestionType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 问诊表注册表：启动时加载 classpath*:questionnaires/*.json
+ *
+ * 加载时校验问题 id 与跳转目标，配置错误直接启动失败；YES_NO 题的"是" / "否"选项在配置的关键词之外补上默认的肯定 / 否定词
+ */
+@Slf4j
+@Component
+public class QuestionnaireRegistry {
+
+    private static final String LOCATION = "classpath*:questionnaires/*.json";
+
+    static final List<String> YES_WORDS = List.of("有", "是", "对", "会", "经常", "嗯");
+
+    static final List<String> NO_WORDS = List.of("没有", "没", "无", "不是", "不会", "不", "否");
+
+    private final List<QuestionnaireDefinition> definitions;
+
+    @Autowired
+    public QuestionnaireRegistry(ObjectMapper objectMapper) throws IOException {
+        List<QuestionnaireDefinition> loaded = new ArrayList<>();
+        for (Resource resource : new PathMatchingResourcePatternResolver().getResources(LOCATION)) {
+            try (InputStream in = resource.getInputStream()) {
+                loaded.add(normalize(objectMapper.readValue(in, QuestionnaireDefinition.class), resource.getFilename()));
+            }
+        }
+        this.definitions = List.copyOf(loaded);
+        log.info("问诊表已加载: {}", definitions.stream().map(QuestionnaireDefinition::id).toList());
+    }
+
+    QuestionnaireRegistry(List<QuestionnaireDefinition> definitions) {
+        this.definitions = definitions.stream().map(d -> normalize(d, d.id())).toList();
+    }
+
+    /**
+     * 按触发词匹配问诊表，多个命中时取触发词在输入中最先出现的
+     *
+     * @return 匹配的问诊表；没有时为 null
+     */
+    public QuestionnaireDefinition match(String input) {
+        QuestionnaireDefinition best = null;
+        int bestIndex = Integer.MAX_VALUE;
+        for (QuestionnaireDefinition definition : definitions) {
+            for (String trigger : definition.triggers()) {
+                int index = input.indexOf(trigger);
+                if (index >= 0 && index < bestIndex) {
+                    best = definition;
+                    bestIndex = index;
+                }
+            }
+        }
+        return best;
+    }
+
+    public List<QuestionnaireDefinition> getDefinitions() {
+        return definitions;
+    }
+
+    /**
+     * 校验并补全默认值
+     */
+    private static QuestionnaireDefinition normalize(QuestionnaireDefinition definition, String source) {
+        if (definition.id() == null || definition.chiefComplaint() == null
+            || definition.questions() == null || definition.questions().isEmpty()) {
+            throw new IllegalStateException("问诊表缺少 id、chiefComplaint 或 questions: " + source);
+        }
+        Set<String> ids = new HashSet<>();
+        definition.questions().forEach(q -> ids.add(q.id()));
+        if (!ids.contains(definition.start())) {
+            throw new IllegalStateException("问诊表 " + definition.id() + " 的 start 不存在: " + definition.start());
+        }
+
+        List<Question> questions = new ArrayList<>();
+        for (Question question : definition.questions()) {
+            checkTarget(definition, ids, question.next());
+            QuestionType type = question.type() != null ? question.type() : QuestionType.CHOICE;
+            List<Answer> options = new ArrayList<>();
+            for (Answer option : question.options() != null ? question.options() : List.<Answer>of()) {
+                checkTarget(definition, ids, option.next());
+                List<String> keywords = new ArrayList<>(option.keywords() != null ? option.keywords() : List.of());
+                if (type == QuestionType.YES_NO) {
+                    keywords.addAll("否".equals(option.value()) ? NO_WORDS : YES_WORDS);
+                }
+                options.add(new Answer(option.value(), List.copyOf(keywords), option.symptom(), option.risk(), option.next(),
+                    option.emergency()));
+            }
+            if (type != QuestionType.TEXT && options.isEmpty()) {
+                throw new IllegalStateException("问诊表 " + definition.id() + " 的问题 " + question.id() + " 没有选项");
+            }
+            questions.add(new Question(question.id(), question.label(), question.text(), type, List.copyOf(options),
+                question.next()));
+        }
+        return new QuestionnaireDefinition(definition.id(), definition.chiefComplaint(),
+            definition.triggers() != null ? definition.triggers() : List.of(definition.chiefComplaint()),
+            definition.start(), List.copyOf(questions));
+    }
+
+    private static void checkTarget(QuestionnaireDefinition definition, Set<String> ids, String next) {
+        if (next != null && !QuestionnaireDefinition.END.equals(next) && !ids.contains(next)) {
+            throw new IllegalStateException("问诊表 " + definition.id() + " 跳转到不存在的问题: " + next);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package com.yihu.agent.ai.questionnaire;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 结构化问诊
+ *
+ * 医疗咨询命中某个主诉的问诊表时，先在本地按问诊表逐题追问（不调用模型），
+ * 问完后把结构化摘要交给模型一次性给出建议。每个会话同时只有一份问诊，
+ * 问完或放弃后保留到 ttl-minutes 过期，期间同一会话不再重新开始问诊；
+ * 问完的那一轮在模型调用失败后重试时，仍以摘要调用模型。
+ *
+ * 问诊进度只保存在本节点：会话按归属节点路由（见 SessionAffinityService），
+ * 归属变化时进行中的问诊作废，后续消息按普通对话处理
+ */
+@Slf4j
+@Service
+public class QuestionnaireService {
+
+    private final QuestionnaireRegistry registry;
+
+    private final boolean enabled;
+
+    private final long ttlMs;
+
+    private final int maxReasks;
+
+    private final Map<String, QuestionnaireSession> sessions = new ConcurrentHashMap<>();
+
+    private final LongAdder started = new LongAdder();
+
+    private final LongAdder questionsAsked = new LongAdder();
+
+    private final LongAdder completed = new LongAdder();
+
+    private final LongAdder abandoned = new LongAdder();
+
+    private ScheduledExecutorService sweeper;
+
+    public QuestionnaireService(QuestionnaireRegistry registry,
+                                @Value("${healthcare.questionnaire.enabled:true}") boolean enabled,
+                                @Value("${healthcare.questionnaire.ttl-minutes:30}") long ttlMinutes,
+                                @Value("${healthcare.questionnaire.max-reasks:1}") int maxReasks) {
+        this.registry = registry;
+        this.enabled = enabled;
+        this.ttlMs = TimeUnit.MINUTES.toMillis(ttlMinutes);
+        this.maxReasks = maxReasks;
+    }
+
+    @PostConstruct
+    public void start() {
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "questionnaire-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sweeper.shutdown();
+    }
+
+    /**
+     * 本轮的问诊结果
+     */
+    public record Turn(QuestionnaireSession session, QuestionnaireSession.Step step) {}
+
+    /**
+     * 处理一轮输入：有进行中的问诊时作为回答处理；没有问诊且是医疗咨询时按主诉开始问诊
+     *
+     * @param medical 本轮是否为医疗咨询（只有医疗咨询会开始新的问诊）
+     * @param retry 本轮是否为模型调用失败后的重试
+     * @return 问诊结果；不进行问诊时为 null
+     */
+    public Turn handle(String sessionId, String input, boolean medical, boolean retry) {
+        if (!enabled || sessionId == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        QuestionnaireSession session = sessions.get(sessionId);
+        if (session != null) {
+            if (session.isFinished()) {
+                // 重试不重复计数
+                QuestionnaireSession.Step step = session.afterFinished(input, retry);
+                return step != null ? new Turn(session, step) : null;
+            }
+            return count(new Turn(session, session.answer(input, maxReasks, now)));
+        }
+        if (!medical) {
+            return null;
+        }
+        QuestionnaireDefinition definition = registry.match(input);
+        if (definition == null) {
+            return null;
+        }
+        session = new QuestionnaireSession(definition, input, now);
+        if (sessions.putIfAbsent(sessionId, session) != null) {
+            return null;
+        }
+        started.increment();
+        log.info("开始结构化问诊 - sessionId={}, questionnaire={}", sessionId, definition.id());
+        return count(new Turn(session, session.start()));
+    }
+
+    /**
+     * 会话是否有进行中的问诊
+     */
+    public boolean isActive(String sessionId) {
+        QuestionnaireSession session = sessionId != null ? sessions.get(sessionId) : null;
+        return session != null && !session.isFinished();
+    }
+
+    /**
+     * 作废会话的问诊（紧急情况、清除会话）
+     */
+    public void discard(String sessionId) {
+        if (sessionId != null && sessions.remove(sessionId) != null) {
+            log.info("结构化问诊已作废 - sessionId={}", sessionId);
+        }
+    }
+
+    private Turn count(Turn turn) {
+        switch (turn.step().kind()) {
+            case ASK, REASK -> questionsAsked.increment();
+            case DONE -> completed.increment();
+            case ABANDONED -> abandoned.increment();
+        }
+        return turn;
+    }
+
+    private void sweep() {
+        long expireBefore = System.currentTimeMillis() - ttlMs;
+        sessions.values().removeIf(session -> session.getLastActivityMillis() < expireBefore);
+    }
+
+    /**
+     * 问诊统计：本地追问数即节省的模型调用数
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("questionnaires", registry.getDefinitions().size());
+        stats.put("sessions", sessions.size());
+        stats.put("started", started.sum());
+        stats.put("questionsAsked", questionsAsked.sum());
+        stats.put("completed", completed.sum());
+        stats.put("abandoned", abandoned.sum());
+        return stats;
+    }
+}
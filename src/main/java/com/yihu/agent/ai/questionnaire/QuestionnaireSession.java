@@ -0,0 +1,277 @@
+package com.yihu.agent.ai.questionnaire;
+
+import com.yihu.agent.ai.questionnaire.QuestionnaireDefinition.Answer;
+import com.yihu.agent.ai.questionnaire.QuestionnaireDefinition.Question;
+import com.yihu.agent.ai.questionnaire.QuestionnaireDefinition.QuestionType;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一个会话的问诊进度
+ *
+ * 按问诊表逐题推进：识别出回答后记录答案、症状与风险等级并进入下一题；
+ * 无法识别时重复提问，重复次数用完后放弃问诊，交给模型处理
+ */
+public class QuestionnaireSession {
+
+    private static final List<String> RISK_ORDER = List.of("LOW", "MEDIUM", "HIGH", "EMERGENCY");
+
+    private static final List<String> UNSURE_WORDS = List.of("不知道", "不清楚", "不确定", "说不清", "跳过");
+
+    private static final String UNSURE = "不确定";
+
+    /**
+     * 本轮处理结果
+     *
+     * @param kind 结果类型
+     * @param text 需要向用户提出的问题（ASK / REASK）
+     */
+    public record Step(Kind kind, String text) {}
+
+    public enum Kind {
+        /** 提出下一题 */
+        ASK,
+        /** 回答无法识别，重复提问 */
+        REASK,
+        /** 问诊完成，交给模型给出建议 */
+        DONE,
+        /** 放弃问诊，交给模型处理用户原话 */
+        ABANDONED
+    }
+
+    private final QuestionnaireDefinition definition;
+
+    private final String chiefInput;
+
+    private final Map<String, String> answers = new LinkedHashMap<>();
+
+    private final List<String> symptoms = new ArrayList<>();
+
+    private Question current;
+
+    private String riskLevel;
+
+    private boolean emergency;
+
+    private boolean finished;
+
+    private int reasks;
+
+    /**
+     * 完成问诊的那一轮输入；之后的新一轮开始前，这一轮的重试仍以摘要调用模型
+     */
+    private String summarizedInput;
+
+    private volatile long lastActivityMillis;
+
+    public QuestionnaireSession(QuestionnaireDefinition definition, String chiefInput, long nowMillis) {
+        this.definition = definition;
+        this.chiefInput = chiefInput;
+        this.current = definition.question(definition.start());
+        this.lastActivityMillis = nowMillis;
+        symptoms.add(definition.chiefComplaint());
+    }
+
+    /**
+     * 开始问诊：首条消息已能回答的单选题直接记录，返回第一个需要提问的问题
+     */
+    public synchronized Step start() {
+        while (current != null && current.type() == QuestionType.CHOICE) {
+            Answer answer = match(current, chiefInput);
+            if (answer == null || UNSURE.equals(answer.value())) {
+                break;
+            }
+            record(answer);
+            if (finished) {
+                return done(chiefInput);
+            }
+        }
+        if (current == null) {
+            finished = true;
+            return done(chiefInput);
+        }
+        return new Step(Kind.ASK, current.text());
+    }
+
+    /**
+     * 处理对当前问题的回答
+     *
+     * @param maxReasks 无法识别时最多重复提问的次数
+     */
+    public synchronized Step answer(String input, int maxReasks, long nowMillis) {
+        lastActivityMillis = nowMillis;
+        if (finished) {
+            return new Step(Kind.DONE, null);
+        }
+        Answer answer = match(current, input);
+        if (answer == null) {
+            if (reasks >= maxReasks) {
+                finished = true;
+                return new Step(Kind.ABANDONED, null);
+            }
+            reasks++;
+            return new Step(Kind.REASK, "抱歉，我没有理解您的回答。" + current.text() + optionsHint(current));
+        }
+        reasks = 0;
+        record(answer);
+        return finished ? done(input) : new Step(Kind.ASK, current.text());
+    }
+
+    /**
+     * 问诊结束后的一轮输入：完成问诊的那一轮因模型调用失败重新执行时仍返回 DONE，重试同样以摘要调用模型；
+     * 新的一轮输入不再进行问诊
+     *
+     * @param retry 是否为同一轮的重试
+     * @return DONE；不进行问诊时为 null
+     */
+    public synchronized Step afterFinished(String input, boolean retry) {
+        if (!retry) {
+            summarizedInput = null;
+            return null;
+        }
+        return summarizedInput != null && summarizedInput.equals(input) ? new Step(Kind.DONE, null) : null;
+    }
+
+    private Step done(String input) {
+        summarizedInput = input;
+        return new Step(Kind.DONE, null);
+    }
+
+    private void record(Answer answer) {
+        answers.put(current.label() != null ? current.label() : current.text(), answer.value());
+        if (answer.symptom() != null && !symptoms.contains(answer.symptom())) {
+            symptoms.add(answer.symptom());
+        }
+        if (answer.risk() != null) {
+            riskLevel = higherRisk(riskLevel, answer.risk());
+        }
+        if (answer.emergency()) {
+            emergency = true;
+            finished = true;
+            return;
+        }
+        String next = answer.next() != null ? answer.next() : current.next();
+        current = next == null || QuestionnaireDefinition.END.equals(next) ? null : definition.question(next);
+        if (current == null) {
+            finished = true;
+        }
+    }
+
+    /**
+     * 识别回答：选项序号（超出选项数时按关键词识别，如体温"39"）、"不知道"等，或关键词（最长的关键词优先，同样长时取在回答中最先出现的）
+     *
+     * @return 识别出的选项；无法识别时为 null
+     */
+    static Answer match(Question question, String input) {
+        String text = input == null ? "" : input.trim();
+        if (text.isEmpty()) {
+            return null;
+        }
+        if (question.type() == QuestionType.TEXT) {
+            return new Answer(text, List.of(), null, null, null, false);
+        }
+        List<Answer> options = question.options();
+        if (text.length() <= 2 && text.chars().allMatch(Character::isDigit)) {
+            int index = Integer.parseInt(text) - 1;
+            if (index >= 0 && index < options.size()) {
+                return options.get(index);
+            }
+        }
+        for (String word : UNSURE_WORDS) {
+            if (text.contains(word)) {
+                return new Answer(UNSURE, List.of(), null, null, null, false);
+            }
+        }
+
+        Answer best = null;
+        int bestLength = 0;
+        int bestIndex = Integer.MAX_VALUE;
+        for (Answer option : options) {
+            for (int k = -1; k < option.keywords().size(); k++) {
+                String keyword = k < 0 ? option.value() : option.keywords().get(k);
+                int index = text.indexOf(keyword);
+                if (index < 0) {
+                    continue;
+                }
+                if (keyword.length() > bestLength || (keyword.length() == bestLength && index < bestIndex)) {
+                    best = option;
+                    bestLength = keyword.length();
+                    bestIndex = index;
+                }
+            }
+        }
+        return best;
+    }
+
+    private static String optionsHint(Question question) {
+        if (question.type() == QuestionType.TEXT) {
+            return "";
+        }
+        StringBuilder hint = new StringBuilder("（请回答");
+        List<Answer> options = question.options();
+        for (int i = 0; i < options.size(); i++) {
+            hint.append(i == 0 ? "：" : " / ").append(i + 1).append(". ").append(options.get(i).value());
+        }
+        return hint.append("）").toString();
+    }
+
+    private static String higherRisk(String current, String candidate) {
+        if (current == null) {
+            return candidate;
+        }
+        return RISK_ORDER.indexOf(candidate) > RISK_ORDER.indexOf(current) ? candidate : current;
+    }
+
+    /**
+     * 交给模型的结构化问诊摘要
+     */
+    public synchronized String summary() {
+        StringBuilder summary = new StringBuilder("【结构化问诊】\n主诉：").append(definition.chiefComplaint()).append('\n');
+        answers.forEach((label, value) -> summary.append("- ").append(label).append("：").append(value).append('\n'));
+        summary.append("已识别症状：").append(String.join("、", symptoms)).append('\n');
+        summary.append("患者原话：").append(chiefInput).append('\n');
+        summary.append("请根据以上问诊信息分析可能的原因，给出居家护理建议，并说明是否需要就医、就诊科室与紧急程度。");
+        return summary.toString();
+    }
+
+    public QuestionnaireDefinition getDefinition() {
+        return definition;
+    }
+
+    public synchronized List<String> getSymptoms() {
+        return List.copyOf(symptoms);
+    }
+
+    public synchronized Map<String, String> getAnswers() {
+        return new LinkedHashMap<>(answers);
+    }
+
+    /**
+     * 回答中出现的最高风险等级；没有时为 null
+     */
+    public synchronized String getRiskLevel() {
+        return riskLevel;
+    }
+
+    public synchronized boolean isEmergency() {
+        return emergency;
+    }
+
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    public long getLastActivityMillis() {
+        return lastActivityMillis;
+    }
+
+    /**
+     * 较高的风险等级（LOW < MEDIUM < HIGH < EMERGENCY）
+     */
+    public static String maxRisk(String a, String b) {
+        return b == null ? a : higherRisk(a, b);
+    }
+}
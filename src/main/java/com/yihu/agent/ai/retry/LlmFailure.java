@@ -0,0 +1,79 @@
+package com.yihu.agent.ai.retry;
+
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.InternalServerException;
+import dev.langchain4j.exception.RateLimitException;
+
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+
+/**
+ * 大模型调用失败的分类，决定是否值得重试
+ */
+public enum LlmFailure {
+
+    /**
+     * 429：上游限流，退避时间加倍
+     */
+    RATE_LIMITED(true),
+
+    /**
+     * 5xx 或连接失败：上游暂时不可用
+     */
+    SERVER_ERROR(true),
+
+    /**
+     * 请求超时
+     */
+    TIMEOUT(true),
+
+    /**
+     * 鉴权失败、参数错误等 4xx 及其他错误：重试也不会成功
+     */
+    NOT_RETRYABLE(false);
+
+    private final boolean retryable;
+
+    LlmFailure(boolean retryable) {
+        this.retryable = retryable;
+    }
+
+    public boolean isRetryable() {
+        return retryable;
+    }
+
+    /**
+     * 沿异常链查找第一个可识别的原因
+     */
+    public static LlmFailure classify(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RateLimitException) {
+                return RATE_LIMITED;
+            }
+            if (cause instanceof InternalServerException || cause instanceof ConnectException) {
+                return SERVER_ERROR;
+            }
+            if (cause instanceof dev.langchain4j.exception.TimeoutException
+                    || cause instanceof HttpTimeoutException
+                    || cause instanceof SocketTimeoutException
+                    || cause instanceof java.util.concurrent.TimeoutException) {
+                return TIMEOUT;
+            }
+            if (cause instanceof HttpException http) {
+                return ofStatus(http.statusCode());
+            }
+        }
+        return NOT_RETRYABLE;
+    }
+
+    static LlmFailure ofStatus(int statusCode) {
+        if (statusCode == 429) {
+            return RATE_LIMITED;
+        }
+        if (statusCode == 408) {
+            return TIMEOUT;
+        }
+        return statusCode >= 500 ? SERVER_ERROR : NOT_RETRYABLE;
+    }
+}
@@ -0,0 +1,133 @@
+package com.yihu.agent.ai.retry;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 大模型调用的重试策略
+ *
+ * 1. 只重试限流（429）、5xx / 连接失败与超时，其他错误直接放弃
+ * 2. 退避采用指数退避加全抖动：在 [0, min(max-delay, base-delay * 2^n)] 内随机取值，
+ *    限流错误的基数加倍，避免同一时刻失败的轮次同时重试
+ * 3. 全局重试预算：每次首次调用存入 budget-ratio 个令牌，每次重试取出一个，
+ *    令牌最多积累 budget-burst 个。上游持续故障时重试量被限制在流量的 budget-ratio 以内，
+ *    不会因重试放大负载把局部故障变成全面故障
+ */
+@Slf4j
+@Component
+public class RetryPolicy {
+
+    /**
+     * 预算令牌的定点精度：1000 表示一次重试
+     */
+    private static final long TOKEN = 1000;
+
+    private final int maxAttempts;
+
+    private final long baseDelayMs;
+
+    private final long maxDelayMs;
+
+    private final long depositPerCall;
+
+    private final long budgetCap;
+
+    private final AtomicLong budget;
+
+    private final Map<LlmFailure, LongAdder> failures = new EnumMap<>(LlmFailure.class);
+
+    private final LongAdder retries = new LongAdder();
+
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    private final LongAdder attemptsExhausted = new LongAdder();
+
+    public RetryPolicy(@Value("${healthcare.ai.retry.max-attempts:3}") int maxAttempts,
+                       @Value("${healthcare.ai.retry.base-delay-ms:500}") long baseDelayMs,
+                       @Value("${healthcare.ai.retry.max-delay-ms:8000}") long maxDelayMs,
+                       @Value("${healthcare.ai.retry.budget-ratio:0.1}") double budgetRatio,
+                       @Value("${healthcare.ai.retry.budget-burst:10}") int budgetBurst) {
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.depositPerCall = Math.round(budgetRatio * TOKEN);
+        this.budgetCap = budgetBurst * TOKEN;
+        this.budget = new AtomicLong(budgetCap);
+        for (LlmFailure failure : LlmFailure.values()) {
+            failures.put(failure, new LongAdder());
+        }
+    }
+
+    /**
+     * 记录一次首次调用，向重试预算存入令牌
+     */
+    public void recordCall() {
+        budget.accumulateAndGet(depositPerCall, (current, deposit) -> Math.min(budgetCap, current + deposit));
+    }
+
+    /**
+     * 第 attempt 次调用（从 0 开始）失败后是否重试
+     *
+     * @return 重试前的等待时间（毫秒）；不重试时为 -1
+     */
+    public long retryDelay(int attempt, LlmFailure failure) {
+        failures.get(failure).increment();
+        if (!failure.isRetryable()) {
+            return -1;
+        }
+        if (attempt + 1 >= maxAttempts) {
+            attemptsExhausted.increment();
+            return -1;
+        }
+        if (!withdraw()) {
+            budgetExhausted.increment();
+            log.warn("重试预算已耗尽，放弃重试 - failure={}", failure);
+            return -1;
+        }
+        retries.increment();
+        return backoff(attempt, failure);
+    }
+
+    private boolean withdraw() {
+        long current;
+        do {
+            current = budget.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!budget.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+
+    /**
+     * 指数退避加全抖动
+     */
+    long backoff(int attempt, LlmFailure failure) {
+        long base = failure == LlmFailure.RATE_LIMITED ? baseDelayMs * 2 : baseDelayMs;
+        long ceiling = Math.min(maxDelayMs, base << Math.min(attempt, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    /**
+     * 重试次数、预算余额与各类失败计数
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("retries", retries.sum());
+        stats.put("budgetRemaining", budget.get() / (double) TOKEN);
+        stats.put("budgetExhausted", budgetExhausted.sum());
+        stats.put("attemptsExhausted", attemptsExhausted.sum());
+        Map<String, Long> byFailure = new HashMap<>();
+        failures.forEach((failure, count) -> byFailure.put(failure.name(), count.sum()));
+        stats.put("failures", byFailure);
+        return stats;
+    }
+}
@@ -0,0 +1,31 @@
+package com.yihu.agent.ai.retry;
+
+/**
+ * 大模型调用失败且已获准重试
+ *
+ * 由 GeneralChatNode 抛出，经状态图与 {@link com.yihu.agent.ai.service.HealthCareAgentService} 原样传出，
+ * {@link com.yihu.agent.ai.scheduling.AiTurnScheduler} 在 delayMillis 后把轮次重新放回优先级队列，
+ * 等待期间不占用执行线程
+ */
+public class RetryableLlmException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final LlmFailure failure;
+
+    private final long delayMillis;
+
+    public RetryableLlmException(LlmFailure failure, long delayMillis, Throwable cause) {
+        super("大模型调用失败（" + failure + "），" + delayMillis + "ms 后重试", cause);
+        this.failure = failure;
+        this.delayMillis = delayMillis;
+    }
+
+    public LlmFailure getFailure() {
+        return failure;
+    }
+
+    public long getDelayMillis() {
+        return delayMillis;
+    }
+}
@@ -0,0 +1,33 @@
+package com.yihu.agent.ai.routing;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * 模型档位到模型名称的映射
+ *
+ * 所有档位共用同一个 OpenAI 兼容客户端（同一个连接池），调用时按请求指定模型名称；
+ * 由 {@link com.yihu.agent.ai.config.LangChainConfig} 按配置创建
+ */
+public class ModelRegistry {
+
+    private final Map<ModelTier, String> models;
+
+    public ModelRegistry(Map<ModelTier, String> models) {
+        for (ModelTier tier : ModelTier.values()) {
+            if (!models.containsKey(tier)) {
+                throw new IllegalArgumentException("未配置模型档位: " + tier);
+            }
+        }
+        this.models = Collections.unmodifiableMap(new EnumMap<>(models));
+    }
+
+    public String modelFor(ModelTier tier) {
+        return models.get(tier);
+    }
+
+    public Map<ModelTier, String> getModels() {
+        return models;
+    }
+}
@@ -0,0 +1,82 @@
+package com.yihu.agent.ai.routing;
+
+import com.yihu.agent.ai.graph.AgentState;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 按意图、风险等级与输入长度选择模型档位
+ *
+ * 1. 紧急情况或高风险：强模型
+ * 2. 医疗咨询：同时提到多个症状或描述较详细时用强模型，否则（如"头疼怎么办"）用快速模型
+ * 3. 通用闲聊：快速模型；输入很长时改用强模型
+ *
+ * 医疗关键词与症状词典大部分重合，医疗咨询几乎都能提取到症状，因此单个症状不足以改用强模型；
+ * 词典标注了风险的症状已把风险等级提升为 HIGH，按第 1 条处理
+ */
+@Component
+public class ModelRouter {
+
+    private final ModelRegistry registry;
+
+    /**
+     * 医疗咨询提取到的症状达到该数量时改用强模型
+     */
+    @Value("${healthcare.ai.routing.medical-symptom-count:2}")
+    private int medicalSymptomCount;
+
+    /**
+     * 医疗咨询达到该长度（字符）视为详细描述
+     */
+    @Value("${healthcare.ai.routing.medical-detail-chars:20}")
+    private int medicalDetailChars;
+
+    /**
+     * 通用闲聊达到该长度（字符）改用强模型
+     */
+    @Value("${healthcare.ai.routing.long-input-chars:300}")
+    private int longInputChars;
+
+    public ModelRouter(ModelRegistry registry) {
+        this.registry = registry;
+    }
+
+    /**
+     * 路由结果
+     *
+     * @param reason 选择该档位的依据，记录在回复元数据中
+     */
+    public record Route(ModelTier tier, String model, String reason) {}
+
+    public Route route(AgentState state) {
+        int length = state.getUserInput() != null ? state.getUserInput().length() : 0;
+        if (state.getIntent() == AgentState.IntentType.EMERGENCY) {
+            return to(ModelTier.STRONG, "emergency");
+        }
+        if ("HIGH".equals(state.getRiskLevel())) {
+            return to(ModelTier.STRONG, "high-risk");
+        }
+        if (state.getIntent() == AgentState.IntentType.MEDICAL) {
+            if (state.getSymptoms() != null && state.getSymptoms().size() >= medicalSymptomCount) {
+                return to(ModelTier.STRONG, "medical-symptoms");
+            }
+            return length >= medicalDetailChars
+                ? to(ModelTier.STRONG, "medical-detail")
+                : to(ModelTier.FAST, "medical-brief");
+        }
+        return length >= longInputChars
+            ? to(ModelTier.STRONG, "long-input")
+            : to(ModelTier.FAST, "general");
+    }
+
+    /**
+     * 过载降级时使用的最便宜模型
+     */
+    public Route economy() {
+        return to(ModelTier.ECONOMY, "overload");
+    }
+
+    private Route to(ModelTier tier, String reason) {
+        return new Route(tier, registry.modelFor(tier), reason);
+    }
+}
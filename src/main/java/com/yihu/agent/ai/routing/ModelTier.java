@@ -0,0 +1,10 @@
+package com.yihu.agent.ai.routing;
+
+/**
+ * 模型档位，由 {@link ModelRegistry} 映射到具体的模型名称
+ */
+public enum ModelTier {
+    ECONOMY,    // 最便宜：过载降级、摘要等对质量要求不高的任务
+    FAST,       // 快速：通用闲聊
+    STRONG      // 强模型：医疗咨询、高风险与紧急情况
+}
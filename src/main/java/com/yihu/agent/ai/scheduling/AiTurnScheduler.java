@@ -0,0 +1,156 @@
+package com.yihu.agent.ai.scheduling;
+
+import com.yihu.agent.ai.graph.AgentState;
+import com.yihu.agent.ai.model.ChatRequest;
+import com.yihu.agent.ai.model.ChatResponse;
+import com.yihu.agent.ai.overload.DegradationLevel;
+import com.yihu.agent.ai.overload.OverloadController;
+import com.yihu.agent.ai.questionnaire.QuestionnaireService;
+import com.yihu.agent.ai.retry.RetryPolicy;
+import com.yihu.agent.ai.retry.RetryableLlmException;
+import com.yihu.agent.ai.service.HealthCareAgentService;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AI 对话轮次调度器
+ *
+ * 位于 {@link HealthCareAgentService#processMessage} 之前的工作队列：
+ * 每轮对话先分诊（{@link TriageClassifier}），再按优先级进入 {@link PriorityTaskExecutor}。
+ * 大模型通道饱和时，紧急轮次不必排在大量通用聊天之后，且总有预留线程可用
+ * 
+ * 过载控制处于 SHED 级别时，非紧急轮次不入队，直接回复"繁忙"
+ * 
+ * 大模型调用失败且 {@link RetryPolicy} 准许重试时，轮次在退避时间后按原优先级重新入队：
+ * 等待由定时器完成，不占用执行线程
+ */
+@Slf4j
+@Service
+public class AiTurnScheduler {
+
+    private final HealthCareAgentService agentService;
+    private final TriageClassifier triageClassifier;
+    private final OverloadController overloadController;
+    private final RetryPolicy retryPolicy;
+    private final QuestionnaireService questionnaireService;
+    private final PriorityTaskExecutor executor;
+    private final ScheduledExecutorService retryTimer;
+    private final LongAdder shedTurns = new LongAdder();
+
+    public AiTurnScheduler(HealthCareAgentService agentService,
+                           TriageClassifier triageClassifier,
+                           OverloadController overloadController,
+                           RetryPolicy retryPolicy,
+                           QuestionnaireService questionnaireService,
+                           @Value("${healthcare.ai.scheduler.workers:16}") int workers,
+                           @Value("${healthcare.ai.scheduler.reserved-emergency-workers:4}") int reservedWorkers,
+                           @Value("${healthcare.ai.scheduler.queue-capacity:500}") int queueCapacity,
+                           @Value("${healthcare.ai.scheduler.grace-high-ms:0}") long graceHighMs,
+                           @Value("${healthcare.ai.scheduler.grace-normal-ms:5000}") long graceNormalMs,
+                           @Value("${healthcare.ai.scheduler.grace-low-ms:15000}") long graceLowMs) {
+        this.agentService = agentService;
+        this.triageClassifier = triageClassifier;
+        this.overloadController = overloadController;
+        this.retryPolicy = retryPolicy;
+        this.questionnaireService = questionnaireService;
+        Map<TurnPriority, Long> graceMillis = new EnumMap<>(TurnPriority.class);
+        graceMillis.put(TurnPriority.HIGH, graceHighMs);
+        graceMillis.put(TurnPriority.NORMAL, graceNormalMs);
+        graceMillis.put(TurnPriority.LOW, graceLowMs);
+        this.executor = new PriorityTaskExecutor("ai-turn", workers, reservedWorkers, queueCapacity, graceMillis);
+        overloadController.watch(executor);
+        this.retryTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ai-turn-retry");
+            thread.setDaemon(true);
+            return thread;
+        });
+        log.info("AI 轮次调度器已启动 - 共享线程: {}, 紧急预留线程: {}, 队列上限: {}", workers, reservedWorkers, queueCapacity);
+    }
+
+    @PreDestroy
+    public void stop() {
+        retryTimer.shutdownNow();
+        executor.shutdown();
+    }
+
+    /**
+     * 分诊后按优先级排队处理一轮对话
+     *
+     * @return 回复；队列已满时以 {@link java.util.concurrent.RejectedExecutionException} 失败
+     */
+    public CompletableFuture<ChatResponse> submit(ChatRequest request) {
+        TriageClassifier.Triage triage = triageClassifier.classify(request.getMessage());
+        // 问诊中的回答（如"三天了"）通常不含医疗关键词，仍按医疗咨询排队，追问不落在通用聊天之后
+        if (triage.priority().compareTo(TurnPriority.NORMAL) > 0 && questionnaireService.isActive(request.getSessionId())) {
+            triage = new TriageClassifier.Triage(AgentState.IntentType.MEDICAL, "MEDIUM", TurnPriority.NORMAL);
+        }
+        CompletableFuture<ChatResponse> result = new CompletableFuture<>();
+        attempt(request, triage, 0, result);
+        return result;
+    }
+
+    /**
+     * 批量作业的轮次：分诊结果只用于意图与风险等级，一律按 LOW 优先级排队，排在交互式轮次之后
+     */
+    public CompletableFuture<ChatResponse> submitBackground(ChatRequest request) {
+        TriageClassifier.Triage triage = triageClassifier.classify(request.getMessage());
+        CompletableFuture<ChatResponse> result = new CompletableFuture<>();
+        attempt(request, new TriageClassifier.Triage(triage.intent(), triage.riskLevel(), TurnPriority.LOW), 0, result);
+        return result;
+    }
+
+    /**
+     * 执行第 attempt 次（从 0 开始），失败且获准重试时退避后再次入队；result 被取消时同时取消正在排队或执行的任务
+     */
+    private void attempt(ChatRequest request, TriageClassifier.Triage triage, int attempt, CompletableFuture<ChatResponse> result) {
+        if (overloadController.getLevel(triage.priority() == TurnPriority.EMERGENCY) == DegradationLevel.SHED) {
+            shedTurns.increment();
+            result.complete(ChatResponse.busy(request.getSessionId()));
+            return;
+        }
+        log.debug("轮次入队 - sessionId={}, priority={}, attempt={}", request.getSessionId(), triage.priority(), attempt);
+        CompletableFuture<ChatResponse> task = executor.submit(triage.priority(),
+            () -> agentService.processMessage(request, triage, attempt));
+        result.whenComplete((response, e) -> {
+            if (result.isCancelled()) {
+                task.cancel(true);
+            }
+        });
+        task.whenComplete((response, e) -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof RetryableLlmException retry && !result.isDone()) {
+                retryTimer.schedule(() -> {
+                    if (!result.isDone()) {
+                        attempt(request, triage, attempt + 1, result);
+                    }
+                }, retry.getDelayMillis(), TimeUnit.MILLISECONDS);
+            } else if (cause != null) {
+                result.completeExceptionally(cause);
+            } else {
+                result.complete(response);
+            }
+        });
+    }
+
+    /**
+     * 各优先级的排队与耗时统计，以及过载控制状态
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = executor.snapshot();
+        stats.put("shedTurns", shedTurns.sum());
+        stats.put("overload", overloadController.snapshot());
+        stats.put("retry", retryPolicy.snapshot());
+        return stats;
+    }
+}
@@ -0,0 +1,370 @@
+package com.yihu.agent.ai.scheduling;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 带优先级与预留线程的任务执行器
+ *
+ * 1. EMERGENCY 任务进入单独的 FIFO 队列，任何空闲线程都先取它
+ * 2. 另有 reservedWorkers 个预留线程只执行 EMERGENCY 任务：共享线程全部被慢调用占满时，
+ *    紧急任务仍能立即开始
+ * 3. 其余任务按虚拟截止时间（入队时间 + 该级别的宽限期）排序：宽限期短的先执行，
+ *    低优先级任务等得足够久后截止时间早于新到的高优先级任务，自然获得执行机会（老化）
+ * 4. 非紧急任务的排队数有上限，超出时立即拒绝；紧急任务从不因容量被拒绝
+ * 5. 取消返回的 future（cancel）时：排队中的任务立即移出队列；执行中的任务中断其线程，
+ *    任务代码可通过 {@link #isCurrentTaskCancelled()} 判断是否已被取消
+ */
+public class PriorityTaskExecutor {
+
+    private static final TurnPriority[] PRIORITIES = TurnPriority.values();
+
+    private static final ThreadLocal<Task<?>> CURRENT_TASK = new ThreadLocal<>();
+
+    private final int capacity;
+
+    private final long[] graceNanos = new long[PRIORITIES.length];
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition emergencyReady = lock.newCondition();
+
+    private final Condition anyReady = lock.newCondition();
+
+    private final ArrayDeque<Task<?>> emergencyQueue = new ArrayDeque<>();
+
+    private final PriorityQueue<Task<?>> queue = new PriorityQueue<>(
+        Comparator.<Task<?>>comparingLong(task -> task.deadlineNanos).thenComparingLong(task -> task.seq));
+
+    private final int[] queued = new int[PRIORITIES.length];
+
+    private long nextSeq;
+
+    private boolean shutdown;
+
+    private final List<Thread> workers = new ArrayList<>();
+
+    private final AtomicInteger busySharedWorkers = new AtomicInteger();
+
+    private final AtomicInteger busyReservedWorkers = new AtomicInteger();
+
+    private final LongAdder[] submitted = newAdders();
+
+    private final LongAdder[] completed = newAdders();
+
+    private final LongAdder[] rejected = newAdders();
+
+    private final LongAdder[] cancelled = newAdders();
+
+    private final LongAdder[] waitNanos = newAdders();
+
+    /**
+     * @param name            线程名前缀
+     * @param sharedWorkers   执行所有优先级任务的线程数
+     * @param reservedWorkers 只执行 EMERGENCY 任务的预留线程数
+     * @param capacity        非紧急任务的最大排队数
+     * @param graceMillis     各优先级的宽限期（毫秒），未配置的级别为 0
+     */
+    public PriorityTaskExecutor(String name, int sharedWorkers, int reservedWorkers, int capacity,
+                                Map<TurnPriority, Long> graceMillis) {
+        this.capacity = capacity;
+        graceMillis.forEach((priority, millis) -> graceNanos[priority.ordinal()] = TimeUnit.MILLISECONDS.toNanos(millis));
+        for (int i = 0; i < Math.max(1, sharedWorkers); i++) {
+            workers.add(newWorker(name + "-" + i, false));
+        }
+        for (int i = 0; i < reservedWorkers; i++) {
+            workers.add(newWorker(name + "-emergency-" + i, true));
+        }
+        workers.forEach(Thread::start);
+    }
+
+    /**
+     * 提交任务
+     *
+     * @return 任务结果；队列已满或执行器已关闭时以 {@link RejectedExecutionException} 失败
+     */
+    public <T> CompletableFuture<T> submit(TurnPriority priority, Callable<T> callable) {
+        int level = priority.ordinal();
+        submitted[level].increment();
+        long now = System.nanoTime();
+        Task<T> task;
+        lock.lock();
+        try {
+            if (shutdown) {
+                rejected[level].increment();
+                return CompletableFuture.failedFuture(new RejectedExecutionException("任务执行器已关闭"));
+            }
+            task = new Task<>(priority, callable, now, now + graceNanos[level], nextSeq++);
+            if (priority == TurnPriority.EMERGENCY) {
+                emergencyQueue.add(task);
+                emergencyReady.signal();
+            } else {
+                if (queue.size() >= capacity) {
+                    rejected[level].increment();
+                    return CompletableFuture.failedFuture(new RejectedExecutionException("任务队列已满"));
+                }
+                queue.add(task);
+            }
+            queued[level]++;
+            anyReady.signal();
+        } finally {
+            lock.unlock();
+        }
+        task.future.whenComplete((result, e) -> {
+            if (task.future.isCancelled()) {
+                onCancelled(task);
+            }
+        });
+        return task.future;
+    }
+
+    /**
+     * 当前线程正在执行的任务是否已被取消（不在本执行器的线程上调用时返回 false）
+     * 中断标记可能被途中的阻塞调用清除，需要可靠判断时使用本方法
+     */
+    public static boolean isCurrentTaskCancelled() {
+        Task<?> task = CURRENT_TASK.get();
+        return task != null && task.future.isCancelled();
+    }
+
+    /**
+     * 任务被取消：仍在排队则移出队列，正在执行则中断执行线程
+     */
+    private void onCancelled(Task<?> task) {
+        int level = task.priority.ordinal();
+        cancelled[level].increment();
+        lock.lock();
+        try {
+            if (emergencyQueue.remove(task) || queue.remove(task)) {
+                queued[level]--;
+            }
+        } finally {
+            lock.unlock();
+        }
+        task.interrupt();
+    }
+
+    /**
+     * 关闭执行器：不再接收新任务，排队中的任务以拒绝失败；正在执行的任务继续完成
+     */
+    public void shutdown() {
+        List<Task<?>> drained = new ArrayList<>();
+        lock.lock();
+        try {
+            shutdown = true;
+            drained.addAll(emergencyQueue);
+            drained.addAll(queue);
+            emergencyQueue.clear();
+            queue.clear();
+            Arrays.fill(queued, 0);
+            emergencyReady.signalAll();
+            anyReady.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        drained.forEach(task -> task.future.completeExceptionally(new RejectedExecutionException("任务执行器已关闭")));
+    }
+
+    // ==================== 工作线程 ====================
+
+    private Thread newWorker(String threadName, boolean reserved) {
+        Thread thread = new Thread(() -> workerLoop(reserved), threadName);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    private void workerLoop(boolean reserved) {
+        AtomicInteger busy = reserved ? busyReservedWorkers : busySharedWorkers;
+        while (true) {
+            Task<?> task;
+            try {
+                task = take(reserved);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (task == null) {
+                return;
+            }
+            busy.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                busy.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 取下一个任务：先取紧急队列；预留线程只取紧急队列
+     *
+     * @return 执行器已关闭时为 null
+     */
+    private Task<?> take(boolean reserved) throws InterruptedException {
+        lock.lock();
+        try {
+            while (true) {
+                if (shutdown) {
+                    return null;
+                }
+                Task<?> task = emergencyQueue.poll();
+                if (task == null && !reserved) {
+                    task = queue.poll();
+                }
+                if (task != null) {
+                    queued[task.priority.ordinal()]--;
+                    return task;
+                }
+                (reserved ? emergencyReady : anyReady).await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ==================== 查询 ====================
+
+    /**
+     * 正在执行与排队中的任务总数
+     */
+    public int inFlight() {
+        int total = busySharedWorkers.get() + busyReservedWorkers.get();
+        lock.lock();
+        try {
+            return total + emergencyQueue.size() + queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 排队最久的任务已等待的时长（毫秒），队列为空时为 0
+     */
+    public long oldestWaitMillis() {
+        long now = System.nanoTime();
+        long oldest = now;
+        lock.lock();
+        try {
+            Task<?> emergency = emergencyQueue.peek();
+            if (emergency != null) {
+                oldest = emergency.enqueuedNanos;
+            }
+            for (Task<?> task : queue) {
+                if (task.enqueuedNanos - oldest < 0) {
+                    oldest = task.enqueuedNanos;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(now - oldest);
+    }
+
+    /**
+     * 各优先级的排队数、完成数、拒绝数与平均排队耗时
+     */
+    public Map<String, Object> snapshot() {
+        int[] queuedNow;
+        lock.lock();
+        try {
+            queuedNow = queued.clone();
+        } finally {
+            lock.unlock();
+        }
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("busySharedWorkers", busySharedWorkers.get());
+        stats.put("busyReservedWorkers", busyReservedWorkers.get());
+        Map<TurnPriority, Object> byPriority = new EnumMap<>(TurnPriority.class);
+        for (TurnPriority priority : PRIORITIES) {
+            int level = priority.ordinal();
+            long done = completed[level].sum();
+            Map<String, Object> levelStats = new HashMap<>();
+            levelStats.put("queued", queuedNow[level]);
+            levelStats.put("submitted", submitted[level].sum());
+            levelStats.put("completed", done);
+            levelStats.put("rejected", rejected[level].sum());
+            levelStats.put("cancelled", cancelled[level].sum());
+            levelStats.put("avgWaitMs", done > 0 ? waitNanos[level].sum() / 1_000_000.0 / done : 0.0);
+            byPriority.put(priority, levelStats);
+        }
+        stats.put("priorities", byPriority);
+        return stats;
+    }
+
+    private static LongAdder[] newAdders() {
+        LongAdder[] adders = new LongAdder[PRIORITIES.length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    /**
+     * 排队中的任务
+     */
+    private final class Task<T> {
+
+        private final TurnPriority priority;
+        private final Callable<T> callable;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final long enqueuedNanos;
+        private final long deadlineNanos;
+        private final long seq;
+        private Thread runner;
+
+        private Task(TurnPriority priority, Callable<T> callable, long enqueuedNanos, long deadlineNanos, long seq) {
+            this.priority = priority;
+            this.callable = callable;
+            this.enqueuedNanos = enqueuedNanos;
+            this.deadlineNanos = deadlineNanos;
+            this.seq = seq;
+        }
+
+        private void run() {
+            synchronized (this) {
+                // 出队与取消之间的竞争：已被取消的任务不再执行
+                if (future.isDone()) {
+                    return;
+                }
+                runner = Thread.currentThread();
+            }
+            int level = priority.ordinal();
+            waitNanos[level].add(System.nanoTime() - enqueuedNanos);
+            CURRENT_TASK.set(this);
+            try {
+                future.complete(callable.call());
+            } catch (Throwable e) {
+                future.completeExceptionally(e);
+            } finally {
+                CURRENT_TASK.remove();
+                synchronized (this) {
+                    runner = null;
+                }
+                // 清除取消遗留的中断标记，不影响该线程执行下一个任务
+                Thread.interrupted();
+                completed[level].increment();
+            }
+        }
+
+        private synchronized void interrupt() {
+            if (runner != null) {
+                runner.interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.yihu.agent.ai.scheduling;
+
+import com.yihu.agent.ai.graph.AgentState;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * 入队前的分诊
+ *
+ * 按关键词给每轮对话确定意图类型、风险等级与调度优先级（不调用大模型，入队时即可完成）：
+ * 1. 命中紧急关键词：EMERGENCY / 风险 EMERGENCY / 优先级 EMERGENCY
+ * 2. 命中高风险关键词：MEDICAL / 风险 HIGH / 优先级 HIGH
+ * 3. 命中医疗关键词：MEDICAL / 风险 MEDIUM / 优先级 NORMAL
+ * 4. 其余：GENERAL / 风险 LOW / 优先级 LOW
+ */
+@Slf4j
+@Component
+public class TriageClassifier {
+
+    @Value("${healthcare.emergency.keywords:}")
+    private String[] emergencyKeywords;
+
+    @Value("${healthcare.triage.high-risk-keywords:}")
+    private String[] highRiskKeywords;
+
+    @Value("${healthcare.triage.medical-keywords:}")
+    private String[] medicalKeywords;
+
+    /**
+     * 对用户输入分诊
+     */
+    public Triage classify(String message) {
+        if (message == null || message.isBlank()) {
+            return Triage.GENERAL;
+        }
+        if (containsAny(message, emergencyKeywords)) {
+            return Triage.EMERGENCY;
+        }
+        if (containsAny(message, highRiskKeywords)) {
+            return Triage.HIGH_RISK;
+        }
+        if (containsAny(message, medicalKeywords)) {
+            return Triage.MEDICAL;
+        }
+        return Triage.GENERAL;
+    }
+
+    private static boolean containsAny(String message, String[] keywords) {
+        for (String keyword : keywords) {
+            if (!keyword.isBlank() && message.contains(keyword.trim())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 分诊结果
+     *
+     * @param intent    意图类型
+     * @param riskLevel 风险等级：LOW, MEDIUM, HIGH, EMERGENCY
+     * @param priority  调度优先级
+     */
+    public record Triage(AgentState.IntentType intent, String riskLevel, TurnPriority priority) {
+
+        static final Triage EMERGENCY = new Triage(AgentState.IntentType.EMERGENCY, "EMERGENCY", TurnPriority.EMERGENCY);
+
+        static final Triage HIGH_RISK = new Triage(AgentState.IntentType.MEDICAL, "HIGH", TurnPriority.HIGH);
+
+        static final Triage MEDICAL = new Triage(AgentState.IntentType.MEDICAL, "MEDIUM", TurnPriority.NORMAL);
+
+        static final Triage GENERAL = new Triage(AgentState.IntentType.GENERAL, "LOW", TurnPriority.LOW);
+    }
+}
@@ -0,0 +1,30 @@
+package com.yihu.agent.ai.scheduling;
+
+/**
+ * AI 对话轮次的调度优先级
+ *
+ * EMERGENCY 严格优先且有预留线程；其余级别按"虚拟截止时间"（入队时间 + 宽限期）排序，
+ * 低优先级任务等待超过宽限期差值后会排到新到的高优先级任务前面，不会被饿死
+ */
+public enum TurnPriority {
+
+    /**
+     * 紧急情况（命中紧急关键词）
+     */
+    EMERGENCY,
+
+    /**
+     * 高风险医疗咨询
+     */
+    HIGH,
+
+    /**
+     * 一般医疗咨询
+     */
+    NORMAL,
+
+    /**
+     * 通用聊天
+     */
+    LOW
+}
@@ -2,21 +2,30 @@ package com.yihu.agent.ai.service;
 
 import com.yihu.agent.ai.config.LangChainConfig;
 import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
 import dev.langchain4j.data.message.UserMessage;
 import dev.langchain4j.memory.ChatMemory;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * 对话记忆管理服务
  * 基于内存的会话管理，支持自动清理过期会话
+ * 集群部署时每个会话只保存在归属节点上（见 {@link SessionAffinityService}），
+ * 归属变化时通过 {@link #beginExport} / {@link #importMessages} 整体移交；
+ * 导出后仍在进行的轮次写入的消息会被记录，由 {@link #finishExport} 取出补发，确认无新写入后才删除本地副本
  */
 @Slf4j
 @Service
@@ -25,26 +34,34 @@ public class ChatMemoryService {
     /**
      * 会话记忆存储：sessionId -> ChatMemory
      */
-    private final Map<String, ChatMemory> sessionMemories = new ConcurrentHashMap<>();
+    private final Map<String, TrackedMemory> sessionMemories = new ConcurrentHashMap<>();
     
     /**
      * 会话最后活跃时间：sessionId -> timestamp
      */
     private final Map<String, Long> sessionLastActivity = new ConcurrentHashMap<>();
     
-    private final LangChainConfig langChainConfig;
+    private final Supplier<ChatMemory> memoryFactory;
     
     @Value("${healthcare.chat.session-timeout:30m}")
     private String sessionTimeoutStr;
     
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
     
+    @Autowired
     public ChatMemoryService(LangChainConfig langChainConfig) {
-        this.langChainConfig = langChainConfig;
+        this(langChainConfig::createChatMemory);
         // 启动定时清理任务，每5分钟清理一次过期会话
         scheduler.scheduleAtFixedRate(this::cleanupExpiredSessions, 5, 5, TimeUnit.MINUTES);
     }
     
+    /**
+     * 测试用：指定记忆工厂，不启动定时清理
+     */
+    ChatMemoryService(Supplier<ChatMemory> memoryFactory) {
+        this.memoryFactory = memoryFactory;
+    }
+    
     /**
      * 获取或创建会话的 ChatMemory
      */
@@ -53,7 +70,7 @@ public class ChatMemoryService {
         
         return sessionMemories.computeIfAbsent(sessionId, id -> {
             log.info("创建新的会话记忆: sessionId={}", id);
-            return langChainConfig.createChatMemory();
+            return new TrackedMemory(memoryFactory.get());
         });
     }
     
@@ -84,6 +101,73 @@ public class ChatMemoryService {
         log.info("清除会话记忆: sessionId={}", sessionId);
     }
     
+    /**
+     * 本节点持有的全部会话ID
+     */
+    public Set<String> getSessionIds() {
+        return Set.copyOf(sessionMemories.keySet());
+    }
+    
+    /**
+     * 开始移交：导出会话的全部消息，并记录此后写入的消息，会话不存在时返回 null
+     */
+    public List<ChatMessage> beginExport(String sessionId) {
+        TrackedMemory memory = sessionMemories.get(sessionId);
+        return memory != null ? memory.beginExport() : null;
+    }
+    
+    /**
+     * 对方已导入后结束移交：导出后没有新写入时删除本地副本并返回空列表；
+     * 有新写入时保留本地副本，返回这些消息（调用方补发给对方后再次调用），并从此刻重新记录
+     */
+    public List<ChatMessage> finishExport(String sessionId) {
+        List<ChatMessage> written = new ArrayList<>();
+        sessionMemories.computeIfPresent(sessionId, (id, memory) -> {
+            written.addAll(memory.drainExportWrites());
+            if (written.isEmpty()) {
+                sessionLastActivity.remove(id);
+                return null;
+            }
+            return memory;
+        });
+        return written;
+    }
+    
+    /**
+     * 移交失败：停止记录，保留本地副本，下次移交时重新导出
+     */
+    public void abortExport(String sessionId) {
+        TrackedMemory memory = sessionMemories.get(sessionId);
+        if (memory != null) {
+            memory.abortExport();
+        }
+    }
+    
+    /**
+     * 导入其他节点移交的会话消息
+     * 本节点在移交到达前已为该会话创建了记忆时，移交的历史排在本地消息之前
+     */
+    public void importMessages(String sessionId, List<ChatMessage> messages) {
+        sessionLastActivity.put(sessionId, System.currentTimeMillis());
+        sessionMemories.compute(sessionId, (id, existing) -> {
+            TrackedMemory memory = new TrackedMemory(memoryFactory.get());
+            messages.forEach(memory::add);
+            if (existing != null) {
+                existing.messages().forEach(memory::add);
+            }
+            return memory;
+        });
+        log.debug("导入会话记忆: sessionId={}, 消息数={}", sessionId, messages.size());
+    }
+    
+    /**
+     * 追加其他节点在移交后补发的消息（原节点导出后仍在进行的轮次写入的消息），排在已有消息之后
+     */
+    public void appendMessages(String sessionId, List<ChatMessage> messages) {
+        getOrCreateMemory(sessionId).add(messages);
+        log.debug("追加移交补发的会话消息: sessionId={}, 消息数={}", sessionId, messages.size());
+    }
+    
     /**
      * 获取当前活跃会话数
      */
@@ -109,6 +193,65 @@ public class ChatMemoryService {
         });
     }
     
+    /**
+     * 记录移交期间写入的会话记忆
+     * 轮次在开始时取得记忆引用、模型回复后才写入，移交导出时可能仍有轮次在进行
+     */
+    private static final class TrackedMemory implements ChatMemory {
+        
+        private final ChatMemory delegate;
+        
+        /**
+         * 导出后写入的消息；未在移交时为 null
+         */
+        private List<ChatMessage> exportWrites;
+        
+        private TrackedMemory(ChatMemory delegate) {
+            this.delegate = delegate;
+        }
+        
+        @Override
+        public Object id() {
+            return delegate.id();
+        }
+        
+        @Override
+        public synchronized void add(ChatMessage message) {
+            delegate.add(message);
+            if (exportWrites != null) {
+                exportWrites.add(message);
+            }
+        }
+        
+        @Override
+        public synchronized List<ChatMessage> messages() {
+            return delegate.messages();
+        }
+        
+        @Override
+        public synchronized void clear() {
+            delegate.clear();
+        }
+        
+        synchronized List<ChatMessage> beginExport() {
+            exportWrites = new ArrayList<>();
+            return List.copyOf(delegate.messages());
+        }
+        
+        synchronized List<ChatMessage> drainExportWrites() {
+            if (exportWrites == null || exportWrites.isEmpty()) {
+                return List.of();
+            }
+            List<ChatMessage> written = exportWrites;
+            exportWrites = new ArrayList<>();
+            return written;
+        }
+        
+        synchronized void abortExport() {
+            exportWrites = null;
+        }
+    }
+    
     /**
      * 解析超时时间字符串为毫秒
      */
@@ -0,0 +1,126 @@
+package com.yihu.agent.ai.service;
+
+import com.yihu.agent.ai.model.ChatRequest;
+import com.yihu.agent.ai.model.ChatResponse;
+import com.yihu.agent.ai.overload.DegradationLevel;
+import com.yihu.agent.ai.overload.OverloadController;
+import com.yihu.agent.ai.scheduling.TriageClassifier;
+import com.yihu.agent.ai.scheduling.TurnPriority;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 流式 AI 对话（SSE 接口）
+ *
+ * 1. 分诊后直接发起流式模型调用，不进入 AI 轮次调度队列：等待模型输出期间不占用执行线程与容器线程；
+ *    进行中的流计入过载控制的在途轮次数，降级级别（限制 token、经济模型、模板回复）在开始调用模型前按当前级别生效
+ * 2. 同时进行的流数超过 max-concurrent，或过载控制处于 SHED 级别（紧急情况除外）时立即回复繁忙
+ * 3. 会话归属其他节点时经 {@link SessionAffinityService} 转发给归属节点处理（非流式，完整回复一次返回），
+ *    保证会话记忆只在归属节点上
+ * 4. 客户端断开时取消订阅：中止上游模型响应、不写入会话记忆；转发的轮次同时取消
+ * 5. 本地进行中的流登记为会话的在途轮次，会话记忆移交给新归属节点时等流结束后再补发
+ */
+@Slf4j
+@Service
+public class ChatStreamService {
+
+    private final HealthCareAgentService agentService;
+    private final SessionAffinityService sessionAffinityService;
+    private final TriageClassifier triageClassifier;
+    private final OverloadController overloadController;
+    private final int maxConcurrent;
+
+    private final AtomicInteger activeStreams = new AtomicInteger();
+    private final AtomicInteger peakStreams = new AtomicInteger();
+    private final LongAdder completedStreams = new LongAdder();
+    private final LongAdder cancelledStreams = new LongAdder();
+    private final LongAdder rejectedStreams = new LongAdder();
+    private final LongAdder forwardedStreams = new LongAdder();
+
+    public ChatStreamService(HealthCareAgentService agentService,
+                             SessionAffinityService sessionAffinityService,
+                             TriageClassifier triageClassifier,
+                             OverloadController overloadController,
+                             @Value("${healthcare.ai.stream.max-concurrent:2000}") int maxConcurrent) {
+        this.agentService = agentService;
+        this.sessionAffinityService = sessionAffinityService;
+        this.triageClassifier = triageClassifier;
+        this.overloadController = overloadController;
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    /**
+     * 流式处理一轮对话：若干 DELTA 片段后跟一条完整回复；订阅时才开始处理
+     */
+    public Flux<ChatResponse> stream(ChatRequest request) {
+        return Flux.defer(() -> {
+            if (request.getSessionId() == null || request.getSessionId().isBlank()) {
+                request.setSessionId(UUID.randomUUID().toString());
+            }
+            TriageClassifier.Triage triage = triageClassifier.classify(request.getMessage());
+            if (overloadController.getLevel(triage.priority() == TurnPriority.EMERGENCY) == DegradationLevel.SHED) {
+                rejectedStreams.increment();
+                return Flux.just(ChatResponse.busy(request.getSessionId()));
+            }
+
+            if (!sessionAffinityService.isLocal(request.getSessionId())) {
+                forwardedStreams.increment();
+                return Mono.fromFuture(() -> sessionAffinityService.process(request, null))
+                        .onErrorResume(RejectedExecutionException.class, e -> Mono.just(ChatResponse.busy(request.getSessionId())))
+                        .flux();
+            }
+
+            int active = activeStreams.incrementAndGet();
+            if (active > maxConcurrent) {
+                activeStreams.decrementAndGet();
+                rejectedStreams.increment();
+                log.warn("流式对话数已达上限 - sessionId={}, max={}", request.getSessionId(), maxConcurrent);
+                return Flux.just(ChatResponse.busy(request.getSessionId()));
+            }
+            peakStreams.accumulateAndGet(active, Math::max);
+            overloadController.streamStarted();
+            CompletableFuture<ChatResponse> inFlight = sessionAffinityService.trackStream(request.getSessionId());
+            return Flux.defer(() -> agentService.streamMessage(request, triage))
+                    .doFinally(signal -> {
+                        activeStreams.decrementAndGet();
+                        overloadController.streamFinished();
+                        inFlight.complete(null);
+                        if (signal == SignalType.CANCEL) {
+                            cancelledStreams.increment();
+                            log.info("客户端断开，流式对话已取消 - sessionId={}", request.getSessionId());
+                        } else {
+                            completedStreams.increment();
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 流式对话统计；jvmThreads 用于观察连接数增长时线程数是否随之增长
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("activeStreams", activeStreams.get());
+        stats.put("peakStreams", peakStreams.get());
+        stats.put("completedStreams", completedStreams.sum());
+        stats.put("cancelledStreams", cancelledStreams.sum());
+        stats.put("rejectedStreams", rejectedStreams.sum());
+        stats.put("forwardedStreams", forwardedStreams.sum());
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("jvmThreads", ManagementFactory.getThreadMXBean().getThreadCount());
+        return stats;
+    }
+}
@@ -4,8 +4,15 @@ import com.yihu.agent.ai.graph.AgentState;
 import com.yihu.agent.ai.graph.HealthCareGraph;
 import com.yihu.agent.ai.model.ChatRequest;
 import com.yihu.agent.ai.model.ChatResponse;
+import com.yihu.agent.ai.questionnaire.QuestionnaireService;
+import com.yihu.agent.ai.retry.RetryableLlmException;
+import com.yihu.agent.ai.scheduling.TriageClassifier;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.CancellationException;
 
 /**
  * HealthCare AI Agent 核心服务
@@ -17,29 +24,30 @@ public class HealthCareAgentService {
     
     private final HealthCareGraph healthCareGraph;
     private final ChatMemoryService memoryService;
+    private final QuestionnaireService questionnaireService;
     
     public HealthCareAgentService(HealthCareGraph healthCareGraph, 
-                                   ChatMemoryService memoryService) {
+                                   ChatMemoryService memoryService,
+                                   QuestionnaireService questionnaireService) {
         this.healthCareGraph = healthCareGraph;
         this.memoryService = memoryService;
+        this.questionnaireService = questionnaireService;
     }
     
     /**
      * 处理用户消息并生成回复
+     * 
+     * @param triage 入队时的分诊结果，作为初始意图与风险等级
+     * @param attempt 本轮第几次执行（从 0 开始）
+     * @throws RetryableLlmException 大模型调用失败且已获准重试
      */
-    public ChatResponse processMessage(ChatRequest request) {
+    public ChatResponse processMessage(ChatRequest request, TriageClassifier.Triage triage, int attempt) {
         log.info("处理用户消息 - userId={}, sessionId={}, message={}", 
                 request.getUserId(), request.getSessionId(), request.getMessage());
         
         try {
             // 构建初始状态
-            AgentState initialState = AgentState.builder()
-                    .userId(request.getUserId())
-                    .sessionId(request.getSessionId())
-                    .userInput(request.getMessage())
-                    .conversationTurn(0)
-                    .finished(false)
-                    .build();
+            AgentState initialState = initialState(request, triage, attempt);
             
             // 执行状态图
             AgentState finalState = healthCareGraph.execute(initialState);
@@ -52,6 +60,8 @@ public class HealthCareAgentService {
             
             return response;
             
+        } catch (CancellationException | RetryableLlmException e) {
+            throw e;
         } catch (Exception e) {
             log.error("处理消息时发生错误", e);
             return ChatResponse.error(
@@ -61,6 +71,42 @@ public class HealthCareAgentService {
         }
     }
     
+    /**
+     * 流式处理用户消息
+     * 
+     * 先逐段输出 DELTA 片段，最后输出完整回复（类型与 {@link #processMessage} 相同，message 为完整文本，客户端以此为准）
+     * 
+     * @param triage 分诊结果，作为初始意图与风险等级
+     */
+    public Flux<ChatResponse> streamMessage(ChatRequest request, TriageClassifier.Triage triage) {
+        log.info("流式处理用户消息 - userId={}, sessionId={}, message={}", 
+                request.getUserId(), request.getSessionId(), request.getMessage());
+        
+        AgentState initialState = initialState(request, triage, 0);
+        return healthCareGraph.stream(initialState)
+                .map(text -> ChatResponse.delta(request.getSessionId(), text))
+                .concatWith(Mono.fromSupplier(() -> buildResponse(initialState)));
+    }
+    
+    private AgentState initialState(ChatRequest request, TriageClassifier.Triage triage, int attempt) {
+        AgentState state = AgentState.builder()
+                .userId(request.getUserId())
+                .sessionId(request.getSessionId())
+                .userInput(request.getMessage())
+                .intent(triage.intent())
+                .riskLevel(triage.riskLevel())
+                .conversationTurn(0)
+                .attempt(attempt)
+                .finished(false)
+                .build();
+        state.putMetadata("riskLevel", triage.riskLevel());
+        state.putMetadata("priority", triage.priority());
+        if (request.isBackground()) {
+            state.putMetadata("background", true);
+        }
+        return state;
+    }
+    
     /**
      * 根据最终状态构建响应
      */
@@ -91,6 +137,7 @@ public class HealthCareAgentService {
      */
     public void clearSession(String sessionId) {
         memoryService.clearMemory(sessionId);
+        questionnaireService.discard(sessionId);
         log.info("会话已清除 - sessionId={}", sessionId);
     }
     
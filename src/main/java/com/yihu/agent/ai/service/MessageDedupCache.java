@@ -0,0 +1,163 @@
+package com.yihu.agent.ai.service;
+
+import com.yihu.agent.ai.model.ChatRequest;
+import com.yihu.agent.ai.model.ChatResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 客户端消息去重表
+ *
+ * 客户端超时重发时带上相同的 messageId，按 (发起者身份, sessionId, messageId) 去重：
+ * 1. 原消息仍在处理：重发的请求等待同一个结果
+ * 2. 原消息已完成：直接重放已生成的回复，不再调用模型、不再写入会话记忆
+ *
+ * 表项按插入顺序保存，超过 ttl-ms 或条数超过 max-entries 时从最旧的开始淘汰。
+ * 失败、繁忙或被取消的结果不保留，客户端重发时会重新处理
+ *
+ * 发起者身份取自连接的认证身份（与取消轮次相同），而不是消息体中的 userId：
+ * 否则任何人都可以填写他人的 userId、sessionId 与 messageId，取走他人的回复。
+ * 没有身份的请求（如未认证的 SSE 流）不去重
+ */
+@Slf4j
+@Component
+public class MessageDedupCache {
+
+    private final long ttlMs;
+
+    private final int maxEntries;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    public MessageDedupCache(@Value("${healthcare.ai.dedup.ttl-ms:600000}") long ttlMs,
+                             @Value("${healthcare.ai.dedup.max-entries:100000}") int maxEntries) {
+        this.ttlMs = ttlMs;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * 查找重复消息的结果
+     *
+     * @param ownerId 发起者的认证身份
+     * @return 原消息的结果；没有 messageId、没有身份或不是重复消息时为 null
+     */
+    public CompletableFuture<ChatResponse> lookup(ChatRequest request, String ownerId) {
+        String key = keyOf(request, ownerId);
+        if (key == null) {
+            return null;
+        }
+        synchronized (entries) {
+            evictExpired(System.currentTimeMillis());
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.turn;
+        }
+    }
+
+    /**
+     * 不是重复消息时执行 turn 并登记结果，是重复消息时返回原结果
+     *
+     * @param ownerId 发起者的认证身份；为 null 时不去重，直接执行 turn
+     */
+    public CompletableFuture<ChatResponse> computeIfAbsent(ChatRequest request, String ownerId,
+                                                          Supplier<CompletableFuture<ChatResponse>> turn) {
+        String key = keyOf(request, ownerId);
+        if (key == null) {
+            return turn.get();
+        }
+
+        Entry entry;
+        synchronized (entries) {
+            long now = System.currentTimeMillis();
+            evictExpired(now);
+            Entry existing = entries.get(key);
+            if (existing != null) {
+                hits.incrementAndGet();
+                log.info("重复消息，复用原结果 - sessionId={}, messageId={}", request.getSessionId(), request.getMessageId());
+                return existing.turn;
+            }
+            // 先占位再执行，并发到达的重复消息等待同一个结果
+            entry = new Entry(new CompletableFuture<>(), now);
+            entries.put(key, entry);
+            if (entries.size() > maxEntries) {
+                Iterator<Entry> eldest = entries.values().iterator();
+                eldest.next();
+                eldest.remove();
+            }
+        }
+
+        CompletableFuture<ChatResponse> result;
+        try {
+            result = turn.get();
+        } catch (RuntimeException e) {
+            result = CompletableFuture.failedFuture(e);
+        }
+        result.whenComplete((response, e) -> {
+            if (e != null || !isReplayable(response)) {
+                remove(key, entry);
+            }
+        });
+        TurnFutures.relay(result, entry.turn);
+        return entry.turn;
+    }
+
+    private void remove(String key, Entry entry) {
+        synchronized (entries) {
+            entries.remove(key, entry);
+        }
+    }
+
+    /**
+     * 繁忙与错误回复不重放，客户端重发时重新处理
+     */
+    private static boolean isReplayable(ChatResponse response) {
+        return response != null
+                && response.getType() != ChatResponse.MessageType.BUSY
+                && response.getType() != ChatResponse.MessageType.ERROR;
+    }
+
+    private void evictExpired(long now) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().createdAtMillis < ttlMs) {
+                break;
+            }
+            iterator.remove();
+        }
+    }
+
+    private static String keyOf(ChatRequest request, String ownerId) {
+        if (ownerId == null || request.getMessageId() == null || request.getMessageId().isEmpty()) {
+            return null;
+        }
+        return ownerId + '\u0000' + request.getSessionId() + '\u0000' + request.getMessageId();
+    }
+
+    /**
+     * 去重统计
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (entries) {
+            stats.put("entries", entries.size());
+        }
+        stats.put("hits", hits.get());
+        return stats;
+    }
+
+    private record Entry(CompletableFuture<ChatResponse> turn, long createdAtMillis) {}
+}
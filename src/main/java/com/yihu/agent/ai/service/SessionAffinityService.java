@@ -0,0 +1,468 @@
+package com.yihu.agent.ai.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yihu.agent.ai.model.ChatRequest;
+import com.yihu.agent.ai.model.ChatResponse;
+import com.yihu.agent.ai.scheduling.AiTurnScheduler;
+import com.yihu.agent.websocket.cluster.ClusterRouter;
+import com.yihu.agent.websocket.cluster.ConsistentHashRing;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * 会话亲和服务
+ *
+ * 会话记忆只保存在归属节点的堆内存中，归属由一致性哈希环（sessionId -> 节点）决定：
+ * 1. 轮次落在归属节点时直接本地处理；落在其他节点时整轮转发给归属节点，应答原路返回
+ * 2. 扩容时只有约 1/N 的会话改变归属，原节点把这些会话的记忆批量移交给新归属节点；
+ *    导出时仍在本节点进行的轮次，等其结束后把导出之后写入的消息补发给新归属节点，再删除本地副本
+ * 3. 节点主动下线前，把本地全部会话移交给去掉本节点后的归属节点
+ *
+ * 归属节点不可达时在本节点处理该轮（缺少历史，但保证有回复）
+ * 
+ * 本地处理的轮次（含其他节点转发来的）都交给 {@link AiTurnScheduler} 按优先级排队，整条链路异步，
+ * 等待大模型时不占用 STOMP 入站线程与集群入站线程
+ * 
+ * 取消（客户端发送 cancel 或断开连接）按会话进行，会话归属其他节点时通知归属节点一并取消；
+ * 每个轮次登记发起者身份，只取消发起者与取消请求者相同的轮次
+ */
+@Slf4j
+@Service
+public class SessionAffinityService {
+
+    static final String TURN_TOPIC = "ai.turn";
+
+    static final String HANDOFF_TOPIC = "ai.memory-handoff";
+
+    static final String HANDOFF_TAIL_TOPIC = "ai.memory-handoff-tail";
+
+    static final String CANCEL_TOPIC = "ai.cancel";
+
+    /**
+     * 最多转发跳数：各节点成员视图短暂不一致时，最多再转发一次，避免来回转发
+     */
+    private static final int MAX_HOPS = 2;
+
+    private final AiTurnScheduler turnScheduler;
+    private final MessageDedupCache dedupCache;
+    private final ChatMemoryService memoryService;
+    private final ClusterRouter clusterRouter;
+    private final ObjectMapper objectMapper;
+    private final ConsistentHashRing ring;
+
+    @Value("${healthcare.cluster.turn-timeout-ms:90000}")
+    private long turnTimeoutMs;
+
+    @Value("${healthcare.cluster.handoff-timeout-ms:10000}")
+    private long handoffTimeoutMs;
+
+    /**
+     * 各会话正在处理的轮次及其发起者（供取消使用）
+     */
+    private final Map<String, Set<InFlightTurn>> inFlightTurns = new ConcurrentHashMap<>();
+
+    private final AtomicLong forwardedTurns = new AtomicLong();
+    private final AtomicLong receivedTurns = new AtomicLong();
+    private final AtomicLong handedOffSessions = new AtomicLong();
+    private final AtomicLong receivedSessions = new AtomicLong();
+    private final AtomicLong cancelledTurns = new AtomicLong();
+    private final AtomicLong refusedCancels = new AtomicLong();
+
+    public SessionAffinityService(AiTurnScheduler turnScheduler,
+                                  MessageDedupCache dedupCache,
+                                  ChatMemoryService memoryService,
+                                  ClusterRouter clusterRouter,
+                                  ObjectMapper objectMapper,
+                                  @Value("${healthcare.cluster.virtual-nodes:160}") int virtualNodes) {
+        this.turnScheduler = turnScheduler;
+        this.dedupCache = dedupCache;
+        this.memoryService = memoryService;
+        this.clusterRouter = clusterRouter;
+        this.objectMapper = objectMapper;
+        this.ring = new ConsistentHashRing(virtualNodes);
+    }
+
+    @PostConstruct
+    public void start() {
+        clusterRouter.registerRequestHandler(TURN_TOPIC, this::onForwardedTurn);
+        clusterRouter.registerRequestHandler(HANDOFF_TOPIC, this::onHandoff);
+        clusterRouter.registerRequestHandler(HANDOFF_TAIL_TOPIC, this::onHandoffTail);
+        clusterRouter.registerRequestHandler(CANCEL_TOPIC, this::onCancel);
+        clusterRouter.addMembershipListener(this::onMembershipChanged);
+    }
+
+    @PreDestroy
+    public void stop() {
+        String localNodeId = clusterRouter.getLocalNodeId();
+        List<CompletableFuture<Void>> handoffs = handOff(sessionId -> ring.ownerOfExcluding(sessionId, localNodeId));
+        try {
+            CompletableFuture.allOf(handoffs.toArray(new CompletableFuture[0])).get(handoffTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            log.warn("下线前会话移交未全部完成: {}", e.getMessage());
+        }
+    }
+
+    // ==================== 轮次路由 ====================
+
+    /**
+     * 处理一轮对话：本节点是会话归属节点时本地处理，否则转发给归属节点
+     * 带 messageId 的重发消息复用原消息的结果，不再调用模型
+     *
+     * @param ownerId 发起者身份（认证身份，而不是消息体中的 userId），只有同一身份可以取消该轮次；
+     *                为 null 时不接受取消请求（仍随客户端断开而取消）
+     */
+    public CompletableFuture<ChatResponse> process(ChatRequest request, String ownerId) {
+        return track(request.getSessionId(), ownerId,
+            dedupCache.computeIfAbsent(request, ownerId, () -> processTurn(request, ownerId, 0)));
+    }
+
+    /**
+     * 同一发起者重发消息对应的原结果（处理中或已完成）；不是重发消息时为 null
+     *
+     * @param ownerId 发起者身份，与 {@link #process} 的 ownerId 相同
+     */
+    public CompletableFuture<ChatResponse> findDuplicate(ChatRequest request, String ownerId) {
+        return dedupCache.lookup(request, ownerId);
+    }
+
+    /**
+     * 取消会话中由 ownerId 发起、正在处理的轮次；其他身份发起的轮次不受影响
+     * 本节点登记的轮次直接取消：本地执行的中断执行线程，转发中的不再回落本地处理；
+     * 会话归属其他节点时同时通知归属节点取消它正在执行的轮次
+     *
+     * @param ownerId 取消请求者的身份，与 {@link #process} 登记的发起者比较
+     * @return 本节点取消的轮次数
+     */
+    public int cancel(String sessionId, String ownerId) {
+        if (ownerId == null) {
+            return 0;
+        }
+        int cancelled = cancelLocal(sessionId, ownerId);
+        String owner = ring.ownerOf(sessionId);
+        if (owner != null && !owner.equals(clusterRouter.getLocalNodeId())) {
+            clusterRouter.request(owner, CANCEL_TOPIC, serialize(new CancelRequest(sessionId, ownerId)), handoffTimeoutMs)
+                .exceptionally(e -> {
+                    log.warn("通知节点 {} 取消轮次失败 - sessionId={}: {}", owner, sessionId, e.getMessage());
+                    return null;
+                });
+        }
+        return cancelled;
+    }
+
+    /**
+     * 登记本地进行中的流式轮次：流式轮次不经调度器，但同样写入会话记忆，记忆移交需等它结束后再补发
+     * 流结束（完成、出错或取消）时调用方完成返回的 future；流随客户端断开取消，不接受 cancel 请求
+     */
+    public CompletableFuture<ChatResponse> trackStream(String sessionId) {
+        return track(sessionId, null, new CompletableFuture<>());
+    }
+
+    /**
+     * 会话的归属节点
+     */
+    public String ownerOf(String sessionId) {
+        return ring.ownerOf(sessionId);
+    }
+
+    /**
+     * 会话是否归属本节点（单节点部署时总是 true）
+     */
+    public boolean isLocal(String sessionId) {
+        String owner = ring.ownerOf(sessionId);
+        return owner == null || owner.equals(clusterRouter.getLocalNodeId());
+    }
+
+    private CompletableFuture<ChatResponse> processTurn(ChatRequest request, String ownerId, int hops) {
+        String owner = request.getSessionId() != null ? ring.ownerOf(request.getSessionId()) : null;
+        if (owner == null || owner.equals(clusterRouter.getLocalNodeId()) || hops >= MAX_HOPS) {
+            return turnScheduler.submit(request);
+        }
+
+        forwardedTurns.incrementAndGet();
+        log.debug("转发对话轮次 - sessionId={}, owner={}, hops={}", request.getSessionId(), owner, hops);
+        CompletableFuture<ChatResponse> result = new CompletableFuture<>();
+        clusterRouter.request(owner, TURN_TOPIC, serialize(new ForwardedTurn(hops + 1, request, ownerId)), turnTimeoutMs)
+            .thenApply(reply -> deserialize(reply, new TypeReference<ChatResponse>() {}))
+            .whenComplete((response, e) -> {
+                if (e == null) {
+                    result.complete(response);
+                } else if (!result.isDone()) {
+                    // 已取消的轮次不再回落本地处理
+                    log.warn("会话归属节点 {} 处理失败，改为本地处理 - sessionId={}: {}", owner, request.getSessionId(), e.getMessage());
+                    TurnFutures.relay(turnScheduler.submit(request), result);
+                }
+            });
+        return result;
+    }
+
+    /**
+     * 接收其他节点转发的轮次，进入本节点的优先级队列（不占用集群入站线程）
+     */
+    private CompletableFuture<String> onForwardedTurn(String fromNodeId, String payload) {
+        receivedTurns.incrementAndGet();
+        ForwardedTurn turn;
+        try {
+            turn = deserialize(payload, new TypeReference<>() {});
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        // 重发消息可能经由不同节点转发过来，在归属节点上同样去重
+        ChatRequest request = turn.request();
+        return track(request.getSessionId(), turn.ownerId(),
+                dedupCache.computeIfAbsent(request, turn.ownerId(), () -> processTurn(request, turn.ownerId(), turn.hops())))
+            .thenApply(this::serialize);
+    }
+
+    private CompletableFuture<String> onCancel(String fromNodeId, String payload) {
+        CancelRequest request;
+        try {
+            request = deserialize(payload, new TypeReference<>() {});
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        if (request.ownerId() == null) {
+            return CompletableFuture.completedFuture("0");
+        }
+        return CompletableFuture.completedFuture(String.valueOf(cancelLocal(request.sessionId(), request.ownerId())));
+    }
+
+    // ==================== 轮次取消 ====================
+
+    /**
+     * 登记正在处理的轮次及其发起者，完成后自动移除
+     */
+    private CompletableFuture<ChatResponse> track(String sessionId, String ownerId, CompletableFuture<ChatResponse> turn) {
+        if (sessionId == null) {
+            return turn;
+        }
+        InFlightTurn inFlight = new InFlightTurn(ownerId, turn);
+        inFlightTurns.compute(sessionId, (id, turns) -> {
+            Set<InFlightTurn> tracked = turns != null ? turns : ConcurrentHashMap.newKeySet();
+            tracked.add(inFlight);
+            return tracked;
+        });
+        turn.whenComplete((response, e) -> inFlightTurns.computeIfPresent(sessionId, (id, turns) -> {
+            turns.remove(inFlight);
+            return turns.isEmpty() ? null : turns;
+        }));
+        return turn;
+    }
+
+    /**
+     * 取消本节点登记的、由 ownerId 发起的轮次；其他身份发起的轮次保留并计入拒绝次数
+     */
+    private int cancelLocal(String sessionId, String ownerId) {
+        List<InFlightTurn> matched = new ArrayList<>();
+        int[] refused = new int[1];
+        inFlightTurns.computeIfPresent(sessionId, (id, turns) -> {
+            for (InFlightTurn turn : turns) {
+                if (ownerId.equals(turn.ownerId())) {
+                    matched.add(turn);
+                } else {
+                    refused[0]++;
+                }
+            }
+            turns.removeAll(matched);
+            return turns.isEmpty() ? null : turns;
+        });
+        if (refused[0] > 0) {
+            refusedCancels.addAndGet(refused[0]);
+            log.warn("拒绝取消会话 {} 中其他用户发起的 {} 个轮次 - 请求者={}", sessionId, refused[0], ownerId);
+        }
+        int cancelled = 0;
+        for (InFlightTurn turn : matched) {
+            if (turn.future().cancel(true)) {
+                cancelled++;
+            }
+        }
+        cancelledTurns.addAndGet(cancelled);
+        log.info("已取消会话 {} 的 {} 个轮次", sessionId, cancelled);
+        return cancelled;
+    }
+
+    // ==================== 记忆移交 ====================
+
+    private void onMembershipChanged(Set<String> members) {
+        if (!ring.setMembers(members)) {
+            return;
+        }
+        log.info("会话哈希环已更新，成员: {}", members);
+        handOff(ring::ownerOf);
+    }
+
+    /**
+     * 把归属已不在本节点的会话按新归属节点分组，每个节点一次请求批量移交
+     * 对方确认导入后，等这些会话在本节点进行中的轮次结束，再补发导出之后写入的消息，
+     * 确认没有新写入后才删除本地副本；移交失败时保留本地副本，下次成员变化时重试
+     */
+    private List<CompletableFuture<Void>> handOff(UnaryOperator<String> ownerOf) {
+        String localNodeId = clusterRouter.getLocalNodeId();
+        Map<String, Map<String, String>> byOwner = new HashMap<>();
+        for (String sessionId : memoryService.getSessionIds()) {
+            String owner = ownerOf.apply(sessionId);
+            if (owner == null || owner.equals(localNodeId)) {
+                continue;
+            }
+            List<ChatMessage> messages = memoryService.beginExport(sessionId);
+            if (messages != null) {
+                byOwner.computeIfAbsent(owner, id -> new HashMap<>())
+                    .put(sessionId, ChatMessageSerializer.messagesToJson(messages));
+            }
+        }
+
+        List<CompletableFuture<Void>> handoffs = new ArrayList<>(byOwner.size());
+        byOwner.forEach((owner, sessions) -> {
+            log.info("移交 {} 个会话记忆给节点 {}", sessions.size(), owner);
+            handoffs.add(clusterRouter.request(owner, HANDOFF_TOPIC, serialize(sessions), handoffTimeoutMs)
+                .thenCompose(reply -> finishHandOff(owner, sessions.keySet()))
+                .exceptionally(e -> {
+                    log.warn("移交会话记忆给节点 {} 失败，保留本地副本: {}", owner, e.getMessage());
+                    sessions.keySet().forEach(memoryService::abortExport);
+                    return null;
+                }));
+        });
+        return handoffs;
+    }
+
+    /**
+     * 对方已导入：等这些会话在本节点进行中的轮次结束，把导出之后写入的消息补发给对方，
+     * 直到没有新写入，再删除本地副本
+     */
+    private CompletableFuture<Void> finishHandOff(String owner, Set<String> sessionIds) {
+        return awaitInFlight(sessionIds).thenCompose(ignored -> {
+            Map<String, String> tails = new HashMap<>();
+            for (String sessionId : sessionIds) {
+                List<ChatMessage> written = memoryService.finishExport(sessionId);
+                if (written.isEmpty()) {
+                    handedOffSessions.incrementAndGet();
+                } else {
+                    tails.put(sessionId, ChatMessageSerializer.messagesToJson(written));
+                }
+            }
+            if (tails.isEmpty()) {
+                return CompletableFuture.completedFuture(null);
+            }
+            log.info("补发 {} 个会话在移交期间写入的消息给节点 {}", tails.size(), owner);
+            return clusterRouter.request(owner, HANDOFF_TAIL_TOPIC, serialize(tails), handoffTimeoutMs)
+                .thenCompose(reply -> finishHandOff(owner, tails.keySet()));
+        });
+    }
+
+    /**
+     * 等待会话在本节点登记的轮次结束（最长等待一轮的超时时间，超时后按当前状态继续）
+     */
+    private CompletableFuture<Void> awaitInFlight(Set<String> sessionIds) {
+        List<CompletableFuture<ChatResponse>> turns = new ArrayList<>();
+        for (String sessionId : sessionIds) {
+            Set<InFlightTurn> tracked = inFlightTurns.get(sessionId);
+            if (tracked != null) {
+                tracked.forEach(turn -> turns.add(turn.future()));
+            }
+        }
+        if (turns.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.allOf(turns.toArray(new CompletableFuture[0]))
+            .orTimeout(turnTimeoutMs, TimeUnit.MILLISECONDS)
+            .handle((ignored, e) -> null);
+    }
+
+    private CompletableFuture<String> onHandoff(String fromNodeId, String payload) {
+        Map<String, String> sessions = deserialize(payload, new TypeReference<>() {});
+        sessions.forEach((sessionId, messagesJson) ->
+            memoryService.importMessages(sessionId, ChatMessageDeserializer.messagesFromJson(messagesJson)));
+        receivedSessions.addAndGet(sessions.size());
+        log.info("接收节点 {} 移交的 {} 个会话记忆", fromNodeId, sessions.size());
+        return CompletableFuture.completedFuture(String.valueOf(sessions.size()));
+    }
+
+    private CompletableFuture<String> onHandoffTail(String fromNodeId, String payload) {
+        Map<String, String> sessions = deserialize(payload, new TypeReference<>() {});
+        sessions.forEach((sessionId, messagesJson) ->
+            memoryService.appendMessages(sessionId, ChatMessageDeserializer.messagesFromJson(messagesJson)));
+        log.info("接收节点 {} 补发的 {} 个会话消息", fromNodeId, sessions.size());
+        return CompletableFuture.completedFuture(String.valueOf(sessions.size()));
+    }
+
+    // ==================== 查询 ====================
+
+    /**
+     * 会话亲和统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("ringMembers", ring.getMembers());
+        stats.put("localSessions", memoryService.getActiveSessionCount());
+        stats.put("forwardedTurns", forwardedTurns.get());
+        stats.put("receivedTurns", receivedTurns.get());
+        stats.put("handedOffSessions", handedOffSessions.get());
+        stats.put("receivedSessions", receivedSessions.get());
+        stats.put("inFlightSessions", inFlightTurns.size());
+        stats.put("cancelledTurns", cancelledTurns.get());
+        stats.put("refusedCancels", refusedCancels.get());
+        stats.put("dedup", dedupCache.snapshot());
+        return stats;
+    }
+
+    // ==================== 辅助方法 ====================
+
+    private String serialize(Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("序列化失败", e);
+        }
+    }
+
+    private <T> T deserialize(String json, TypeReference<T> type) {
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("反序列化失败", e);
+        }
+    }
+
+    /**
+     * 转发的对话轮次
+     *
+     * @param hops    已转发的跳数
+     * @param request 原始请求
+     * @param ownerId 发起者身份，归属节点据此校验取消请求
+     */
+    record ForwardedTurn(int hops, ChatRequest request, String ownerId) {}
+
+    /**
+     * 发给归属节点的取消请求
+     *
+     * @param sessionId 会话ID
+     * @param ownerId   取消请求者的身份
+     */
+    record CancelRequest(String sessionId, String ownerId) {}
+
+    /**
+     * 正在处理的轮次
+     *
+     * @param ownerId 发起者身份
+     * @param future  轮次结果
+     */
+    private record InFlightTurn(String ownerId, CompletableFuture<ChatResponse> future) {}
+}
@@ -0,0 +1,33 @@
+package com.yihu.agent.ai.service;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 轮次结果的转交
+ *
+ * 去重表与会话亲和服务都先返回一个占位结果，再把实际处理的结果转交过去；
+ * 客户端取消占位结果时，取消要传回实际处理的轮次
+ */
+final class TurnFutures {
+
+    private TurnFutures() {
+    }
+
+    /**
+     * 把 source 的结果转交给 target；target 被取消时同时取消 source
+     */
+    static <T> void relay(CompletableFuture<T> source, CompletableFuture<T> target) {
+        source.whenComplete((value, e) -> {
+            if (e == null) {
+                target.complete(value);
+            } else {
+                target.completeExceptionally(e);
+            }
+        });
+        target.whenComplete((value, e) -> {
+            if (target.isCancelled()) {
+                source.cancel(true);
+            }
+        });
+    }
+}
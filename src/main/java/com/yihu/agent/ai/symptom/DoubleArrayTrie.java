@@ -0,0 +1,207 @@
+package com.yihu.agent.ai.symptom;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * 双数组 Trie（只读）
+ *
+ * 状态 s 经字符 c 转移到 t = base[s] + code(c)，当且仅当 check[t] == s；
+ * 词尾用编码 0 的转移表示，该位置的 base 存 -(值 + 1)。
+ * 字符编码按字典序从 1 开始紧凑分配，词典之外的字符编码为 0，查找时直接结束。
+ *
+ * 构建后不可变，可被多个线程同时查找；查找不分配对象
+ */
+public final class DoubleArrayTrie {
+
+    private static final int FREE = -1;
+
+    private final char[] codes = new char[Character.MAX_VALUE + 1];
+
+    private int[] base;
+
+    private int[] check;
+
+    private int nextCheckPos = 1;
+
+    private final String[] keys;
+
+    private final int[] values;
+
+    private int size;
+
+    /**
+     * 构建 Trie
+     *
+     * @param entries 词 -> 值（值 >= 0），词不能为空
+     */
+    public DoubleArrayTrie(Map<String, Integer> entries) {
+        TreeMap<String, Integer> sorted = new TreeMap<>(entries);
+        if (sorted.isEmpty() || sorted.firstKey().isEmpty()) {
+            throw new IllegalArgumentException("词典为空或包含空词");
+        }
+        this.keys = sorted.keySet().toArray(new String[0]);
+        this.values = new int[keys.length];
+        int k = 0;
+        for (int value : sorted.values()) {
+            if (value < 0) {
+                throw new IllegalArgumentException("值不能为负数: " + keys[k]);
+            }
+            values[k++] = value;
+        }
+
+        TreeSet<Character> alphabet = new TreeSet<>();
+        for (String key : keys) {
+            for (int i = 0; i < key.length(); i++) {
+                alphabet.add(key.charAt(i));
+            }
+        }
+        char code = 1;
+        for (char c : alphabet) {
+            codes[c] = code++;
+        }
+
+        int capacity = Math.max(1024, alphabet.size() * 4);
+        base = new int[capacity];
+        check = new int[capacity];
+        Arrays.fill(check, FREE);
+        check[0] = 0;
+        insert(0, 0, keys.length, 0);
+
+        base = Arrays.copyOf(base, size + 1);
+        check = Arrays.copyOf(check, size + 1);
+    }
+
+    /**
+     * 把 keys[lo, hi) 中第 depth 个字符起的后缀挂到状态 parent 下（keys 已排序，同一前缀的词连续）
+     */
+    private void insert(int parent, int lo, int hi, int depth) {
+        int[] childCodes = new int[hi - lo];
+        int[] childStarts = new int[hi - lo + 1];
+        int children = 0;
+        for (int i = lo; i < hi; i++) {
+            int c = keys[i].length() == depth ? 0 : codes[keys[i].charAt(depth)];
+            if (children == 0 || childCodes[children - 1] != c) {
+                childCodes[children] = c;
+                childStarts[children] = i;
+                children++;
+            }
+        }
+        childStarts[children] = hi;
+
+        int b = findBase(childCodes, children);
+        base[parent] = b;
+        for (int j = 0; j < children; j++) {
+            check[b + childCodes[j]] = parent;
+            size = Math.max(size, b + childCodes[j]);
+        }
+        for (int j = 0; j < children; j++) {
+            int state = b + childCodes[j];
+            if (childCodes[j] == 0) {
+                base[state] = -values[childStarts[j]] - 1;
+            } else {
+                insert(state, childStarts[j], childStarts[j + 1], depth + 1);
+            }
+        }
+    }
+
+    /**
+     * 找一个 base，使所有子节点的位置都空闲
+     */
+    private int findBase(int[] childCodes, int children) {
+        int first = childCodes[0];
+        int pos = Math.max(nextCheckPos, first + 1) - 1;
+        boolean dense = true;
+        while (true) {
+            pos++;
+            ensureCapacity(pos + 1);
+            if (check[pos] != FREE) {
+                continue;
+            }
+            if (dense) {
+                // 从第一个空位开始找，之前的位置已全部占用
+                nextCheckPos = pos;
+                dense = false;
+            }
+            int b = pos - first;
+            if (b < 1) {
+                continue;
+            }
+            ensureCapacity(b + childCodes[children - 1] + 1);
+            boolean fits = true;
+            for (int j = 1; j < children; j++) {
+                if (check[b + childCodes[j]] != FREE) {
+                    fits = false;
+                    break;
+                }
+            }
+            if (fits) {
+                return b;
+            }
+        }
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= check.length) {
+            return;
+        }
+        int capacity = Math.max(required, check.length * 2);
+        int old = check.length;
+        base = Arrays.copyOf(base, capacity);
+        check = Arrays.copyOf(check, capacity);
+        Arrays.fill(check, old, capacity, FREE);
+    }
+
+    /**
+     * 从 start 开始的最长匹配
+     *
+     * @return 命中时为 (结束位置 << 32) | 值；没有命中时为 -1
+     */
+    public long longestMatch(CharSequence text, int start) {
+        long best = -1;
+        int state = 0;
+        int length = text.length();
+        for (int i = start; i < length; i++) {
+            int code = codes[text.charAt(i)];
+            if (code == 0) {
+                break;
+            }
+            int next = base[state] + code;
+            if (next >= check.length || check[next] != state) {
+                break;
+            }
+            state = next;
+            int terminal = base[state];
+            if (terminal > 0 && terminal < check.length && check[terminal] == state) {
+                best = ((long) (i + 1) << 32) | (-base[terminal] - 1);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 精确查找
+     *
+     * @return 词对应的值；不存在时为 -1
+     */
+    public int get(CharSequence key) {
+        long match = longestMatch(key, 0);
+        return match >= 0 && (int) (match >>> 32) == key.length() ? (int) match : -1;
+    }
+
+    /**
+     * 词数
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * 双数组占用的槽位数（base 与 check 各一份）
+     */
+    public int capacity() {
+        return check.length;
+    }
+}
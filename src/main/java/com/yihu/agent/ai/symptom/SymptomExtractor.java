@@ -0,0 +1,341 @@
+package com.yihu.agent.ai.symptom;
+
+import com.yihu.agent.ai.symptom.SymptomLexicon.Category;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 本地症状提取
+ *
+ * 用症状词典构建的双数组 Trie 从左到右扫描一遍输入，每个位置取最长匹配，不调用模型：
+ * 1. 症状：同义词归一到标准名，如"脑袋疼" -> 头痛
+ * 2. 否定：否定词之后到分句结束（标点或转折词）的症状记为否定，如"没有发烧，但是咳嗽" -> 否定发热，咳嗽
+ * 3. 部位：泛化症状紧跟在部位后（间隔不超过 2 个字）时组合，如"膝盖有点疼" -> 膝盖 + 疼痛
+ * 4. 病程：数字或中文数字 + 单位（分钟 / 小时 / 天 / 周 / 星期 / 个月 / 年），如"两个多星期"、"半个月"、"3天"，以及"昨天"等时间词
+ * 5. 体温：数字 + 度 / ℃，37.3 度及以上记为发热，39 度及以上记为高热
+ *
+ * 结果写入调用方传入的 {@link SymptomMatches}，提取过程不分配内存
+ */
+@Slf4j
+@Component
+public class SymptomExtractor {
+
+    private static final int GENERIC_GAP = 2;
+
+    private static final int MAX_NUMBER = 999;
+
+    private final SymptomLexicon lexicon;
+
+    private final DoubleArrayTrie trie;
+
+    private final Category[] categories;
+
+    private final int[] durations;
+
+    private final int feverTerm;
+
+    private final int highFeverTerm;
+
+    private final boolean enabled;
+
+    private final LongAdder extractions = new LongAdder();
+
+    private final LongAdder symptomsFound = new LongAdder();
+
+    private final LongAdder negatedFound = new LongAdder();
+
+    @Autowired
+    public SymptomExtractor(@Value("${healthcare.symptom.lexicon:symptoms/lexicon.txt}") String lexiconPath,
+                            @Value("${healthcare.symptom.enabled:true}") boolean enabled) throws IOException {
+        this(load(lexiconPath), enabled);
+        log.info("症状词典已加载: path={}, terms={}, words={}, trieSlots={}",
+                lexiconPath, lexicon.termCount(), lexicon.wordCount(), trie.capacity());
+    }
+
+    public SymptomExtractor(SymptomLexicon lexicon, boolean enabled) {
+        this.lexicon = lexicon;
+        this.trie = lexicon.getTrie();
+        this.enabled = enabled;
+        this.categories = new Category[lexicon.termCount()];
+        this.durations = new int[lexicon.termCount()];
+        for (int term = 0; term < categories.length; term++) {
+            categories[term] = lexicon.category(term);
+            durations[term] = lexicon.durationMinutes(term);
+        }
+        this.feverTerm = lexicon.termOf("发热");
+        this.highFeverTerm = lexicon.termOf("高热");
+    }
+
+    private static SymptomLexicon load(String path) throws IOException {
+        try (InputStream in = new ClassPathResource(path).getInputStream()) {
+            return SymptomLexicon.load(in);
+        }
+    }
+
+    /**
+     * 从输入中提取症状、部位、病程与体温，结果写入 out（先清空）
+     */
+    public void extract(CharSequence text, SymptomMatches out) {
+        out.reset();
+        if (text == null) {
+            return;
+        }
+        boolean negated = false;
+        int bodyPart = -1;
+        int bodyPartEnd = -1;
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (isClauseBreak(c)) {
+                negated = false;
+                bodyPart = -1;
+                i++;
+                continue;
+            }
+            int end = scanQuantity(text, i, negated, out);
+            if (end > i) {
+                i = end;
+                continue;
+            }
+            long match = trie.longestMatch(text, i);
+            if (match < 0) {
+                i++;
+                continue;
+            }
+            end = (int) (match >>> 32);
+            int term = (int) match;
+            switch (categories[term]) {
+                case SYMPTOM -> out.addSymptom(term, -1, negated);
+                case GENERIC -> out.addSymptom(term, bodyPart >= 0 && i - bodyPartEnd <= GENERIC_GAP ? bodyPart : -1,
+                        negated);
+                case BODY_PART -> {
+                    out.addBodyPart(term);
+                    bodyPart = term;
+                    bodyPartEnd = end;
+                }
+                case NEGATION -> negated = true;
+                case CONTRAST -> negated = false;
+                case DURATION -> out.addDuration(durations[term]);
+                case NEUTRAL -> {
+                }
+            }
+            i = end;
+        }
+
+        extractions.increment();
+        for (int k = 0; k < out.size(); k++) {
+            (out.isNegated(k) ? negatedFound : symptomsFound).increment();
+        }
+    }
+
+    /**
+     * 识别 start 处的数量：病程（数字 + 单位）或体温（数字 + 度）
+     *
+     * @return 识别出时为数量之后的位置；阿拉伯数字没有单位时跳过整串数字；否则为 start
+     */
+    private int scanQuantity(CharSequence text, int start, boolean negated, SymptomMatches out) {
+        int length = text.length();
+        int i = start;
+        int tenths;
+        char c = text.charAt(i);
+        if (digit(c) >= 0) {
+            int value = 0;
+            while (i < length && digit(text.charAt(i)) >= 0) {
+                value = Math.min(value * 10 + digit(text.charAt(i)), MAX_NUMBER + 1);
+                i++;
+            }
+            tenths = value * 10;
+            if (i + 1 < length && text.charAt(i) == '.' && digit(text.charAt(i + 1)) >= 0) {
+                tenths += digit(text.charAt(i + 1));
+                i += 2;
+                while (i < length && digit(text.charAt(i)) >= 0) {
+                    i++;
+                }
+            }
+            if (value > MAX_NUMBER) {
+                return i;
+            }
+            int end = scanUnit(text, i, tenths, negated, out);
+            return end > 0 ? end : i;
+        }
+
+        // 中文数字：十、二十三、十几、两；"半"单独出现时为 0.5
+        int value = 0;
+        int current = 0;
+        boolean any = false;
+        while (i < length) {
+            c = text.charAt(i);
+            int d = chineseDigit(c);
+            if (d >= 0) {
+                current = d;
+            } else if (c == '十') {
+                value += (current == 0 ? 1 : current) * 10;
+                current = 0;
+            } else {
+                break;
+            }
+            any = true;
+            i++;
+        }
+        tenths = (value + current) * 10;
+        if (!any) {
+            if (c != '半') {
+                return start;
+            }
+            tenths = 5;
+            i++;
+        }
+        int end = scanUnit(text, i, tenths, negated, out);
+        return end > 0 ? end : start;
+    }
+
+    /**
+     * 识别数量之后的单位（可带"多"、"个"、"半"，如"两个多月"、"一个半月"）
+     *
+     * @return 识别出时为单位之后的位置；否则为 -1
+     */
+    private int scanUnit(CharSequence text, int start, int tenths, boolean negated, SymptomMatches out) {
+        int length = text.length();
+        int i = start;
+        if (i < length && (text.charAt(i) == '度' || text.charAt(i) == '℃')) {
+            if (tenths < 350 || tenths > 430) {
+                return -1;
+            }
+            out.addTemperature(tenths);
+            if (tenths >= 390 && highFeverTerm >= 0) {
+                out.addSymptom(highFeverTerm, -1, negated);
+            } else if (tenths >= 373 && feverTerm >= 0) {
+                out.addSymptom(feverTerm, -1, negated);
+            }
+            return i + 1;
+        }
+        if (i < length && (text.charAt(i) == '多' || text.charAt(i) == '来')) {
+            i++;
+        }
+        if (i < length && text.charAt(i) == '个') {
+            i++;
+            if (i < length && text.charAt(i) == '半') {
+                tenths += 5;
+                i++;
+            }
+            if (i < length && text.charAt(i) == '多') {
+                i++;
+            }
+        }
+        if (i >= length) {
+            return -1;
+        }
+        int unit;
+        int unitLength = 1;
+        switch (text.charAt(i)) {
+            case '天', '日' -> unit = 1440;
+            case '周' -> unit = 10080;
+            case '月' -> unit = 43200;
+            case '年' -> unit = 525600;
+            case '分' -> {
+                unit = i + 1 < length && text.charAt(i + 1) == '钟' ? 1 : -1;
+                unitLength = 2;
+            }
+            case '小' -> {
+                unit = i + 1 < length && text.charAt(i + 1) == '时' ? 60 : -1;
+                unitLength = 2;
+            }
+            case '钟' -> {
+                unit = i + 1 < length && text.charAt(i + 1) == '头' ? 60 : -1;
+                unitLength = 2;
+            }
+            case '星' -> {
+                unit = i + 1 < length && text.charAt(i + 1) == '期' ? 10080 : -1;
+                unitLength = 2;
+            }
+            case '礼' -> {
+                unit = i + 1 < length && text.charAt(i + 1) == '拜' ? 10080 : -1;
+                unitLength = 2;
+            }
+            default -> unit = -1;
+        }
+        if (unit < 0 || tenths <= 0) {
+            return -1;
+        }
+        out.addDuration((int) Math.min(Integer.MAX_VALUE, (long) tenths * unit / 10));
+        return i + unitLength;
+    }
+
+    private static int digit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= '０' && c <= '９') {
+            return c - '０';
+        }
+        return -1;
+    }
+
+    /**
+     * 中文数字；"几"按 3 计（"几天"约为 3 天，"十几天"约为 13 天）
+     */
+    private static int chineseDigit(char c) {
+        return switch (c) {
+            case '零' -> 0;
+            case '一' -> 1;
+            case '二', '两' -> 2;
+            case '三', '几' -> 3;
+            case '四' -> 4;
+            case '五' -> 5;
+            case '六' -> 6;
+            case '七' -> 7;
+            case '八' -> 8;
+            case '九' -> 9;
+            default -> -1;
+        };
+    }
+
+    private static boolean isClauseBreak(char c) {
+        return switch (c) {
+            case '，', ',', '。', '.', '；', ';', '！', '!', '？', '?', '\n', '\r' -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * 结果中第 index 个症状的名称：泛化症状与部位组合时为"部位 + 标准名"，如"膝盖疼痛"
+     */
+    public String symptomName(SymptomMatches matches, int index) {
+        int bodyPart = matches.bodyPart(index);
+        String name = lexicon.name(matches.term(index));
+        return bodyPart >= 0 ? lexicon.name(bodyPart) + name : name;
+    }
+
+    public SymptomLexicon getLexicon() {
+        return lexicon;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 提取统计
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("terms", lexicon.termCount());
+        stats.put("words", lexicon.wordCount());
+        stats.put("trieSlots", trie.capacity());
+        stats.put("extractions", extractions.sum());
+        stats.put("symptomsFound", symptomsFound.sum());
+        stats.put("negatedFound", negatedFound.sum());
+        return stats;
+    }
+}
@@ -0,0 +1,199 @@
+package com.yihu.agent.ai.symptom;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 症状词典：从 symptoms/lexicon.txt 加载，标准名按出现顺序编号，所有同义词（含标准名本身）指向标准名的编号
+ *
+ * 文件格式见 lexicon.txt 开头的注释
+ */
+public final class SymptomLexicon {
+
+    /**
+     * 词的类别
+     */
+    public enum Category {
+        /** 症状 */
+        SYMPTOM,
+        /** 泛化症状（疼、肿、痒等），可与前面的部位组合 */
+        GENERIC,
+        /** 部位 */
+        BODY_PART,
+        /** 否定词 */
+        NEGATION,
+        /** 转折词，结束否定范围 */
+        CONTRAST,
+        /** 只占位的词 */
+        NEUTRAL,
+        /** 时间词 */
+        DURATION
+    }
+
+    private final List<String> names = new ArrayList<>();
+
+    private final List<Category> categories = new ArrayList<>();
+
+    private final List<String> risks = new ArrayList<>();
+
+    private final List<Integer> minutes = new ArrayList<>();
+
+    private final Map<String, Integer> words = new HashMap<>();
+
+    private final DoubleArrayTrie trie;
+
+    private SymptomLexicon(BufferedReader reader) throws IOException {
+        Category section = null;
+        String line;
+        int lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            line = (comment >= 0 ? line.substring(0, comment) : line).strip();
+            if (line.isEmpty()) {
+                continue;
+            }
+            if (line.startsWith("[") && line.endsWith("]")) {
+                section = section(line.substring(1, line.length() - 1), lineNumber);
+                continue;
+            }
+            if (section == null) {
+                throw new IllegalStateException("症状词典第 " + lineNumber + " 行不在任何分组内");
+            }
+            parseLine(section, line, lineNumber);
+        }
+        this.trie = new DoubleArrayTrie(words);
+    }
+
+    /**
+     * 加载词典并构建 Trie
+     */
+    public static SymptomLexicon load(InputStream in) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            return new SymptomLexicon(reader);
+        }
+    }
+
+    private static Category section(String name, int lineNumber) {
+        return switch (name) {
+            case "symptom" -> Category.SYMPTOM;
+            case "generic" -> Category.GENERIC;
+            case "body" -> Category.BODY_PART;
+            case "negation" -> Category.NEGATION;
+            case "contrast" -> Category.CONTRAST;
+            case "neutral" -> Category.NEUTRAL;
+            case "duration" -> Category.DURATION;
+            default -> throw new IllegalStateException("症状词典第 " + lineNumber + " 行分组未知: " + name);
+        };
+    }
+
+    private void parseLine(Category section, String line, int lineNumber) {
+        switch (section) {
+            case NEGATION, CONTRAST, NEUTRAL -> {
+                // 词表：每个词单独作为一项
+                for (String word : line.split(",")) {
+                    int term = addTerm(word.strip(), section, null, 0);
+                    addWord(word.strip(), term, lineNumber);
+                }
+            }
+            case DURATION -> {
+                String[] parts = line.split("=", 2);
+                if (parts.length != 2) {
+                    throw new IllegalStateException("症状词典第 " + lineNumber + " 行缺少分钟数");
+                }
+                String word = parts[0].strip();
+                addWord(word, addTerm(word, section, null, Integer.parseInt(parts[1].strip())), lineNumber);
+            }
+            default -> {
+                String risk = null;
+                int mark = line.indexOf('!');
+                if (mark >= 0) {
+                    risk = line.substring(mark + 1).strip();
+                    line = line.substring(0, mark).strip();
+                }
+                String[] parts = line.split("=", 2);
+                String name = parts[0].strip();
+                int term = addTerm(name, section, risk, 0);
+                addWord(name, term, lineNumber);
+                if (parts.length == 2) {
+                    for (String synonym : parts[1].split(",")) {
+                        addWord(synonym.strip(), term, lineNumber);
+                    }
+                }
+            }
+        }
+    }
+
+    private int addTerm(String name, Category category, String risk, int durationMinutes) {
+        names.add(name);
+        categories.add(category);
+        risks.add(risk);
+        minutes.add(durationMinutes);
+        return names.size() - 1;
+    }
+
+    private void addWord(String word, int term, int lineNumber) {
+        if (word.isEmpty()) {
+            throw new IllegalStateException("症状词典第 " + lineNumber + " 行有空词");
+        }
+        if (words.putIfAbsent(word, term) != null) {
+            throw new IllegalStateException("症状词典第 " + lineNumber + " 行的词重复: " + word);
+        }
+    }
+
+    /**
+     * 按标准名查编号
+     *
+     * @return 编号；不存在时为 -1
+     */
+    public int termOf(String name) {
+        return names.indexOf(name);
+    }
+
+    public String name(int term) {
+        return names.get(term);
+    }
+
+    public Category category(int term) {
+        return categories.get(term);
+    }
+
+    /**
+     * 未被否定时本轮风险至少为该等级；没有时为 null
+     */
+    public String risk(int term) {
+        return risks.get(term);
+    }
+
+    /**
+     * 时间词对应的分钟数
+     */
+    public int durationMinutes(int term) {
+        return minutes.get(term);
+    }
+
+    /**
+     * 标准名数
+     */
+    public int termCount() {
+        return names.size();
+    }
+
+    /**
+     * 词数（含同义词）
+     */
+    public int wordCount() {
+        return words.size();
+    }
+
+    public DoubleArrayTrie getTrie() {
+        return trie;
+    }
+}
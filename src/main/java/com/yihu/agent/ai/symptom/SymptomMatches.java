@@ -0,0 +1,137 @@
+package com.yihu.agent.ai.symptom;
+
+import java.util.Arrays;
+
+/**
+ * 一次提取的结果，可重复使用（每次提取前清空）
+ *
+ * 结果只记录词典编号，标准名通过 {@link SymptomLexicon#name} 查得；
+ * 数组容量不够时才扩容，之后同一个对象再提取不再分配内存。不是线程安全的，每个线程各用一个
+ */
+public final class SymptomMatches {
+
+    private int[] terms = new int[8];
+
+    private int[] bodyPartOf = new int[8];
+
+    private boolean[] negated = new boolean[8];
+
+    private int count;
+
+    private int[] bodyParts = new int[8];
+
+    private int bodyPartCount;
+
+    private int durationMinutes;
+
+    private int temperatureTenths;
+
+    public SymptomMatches() {
+        reset();
+    }
+
+    void reset() {
+        count = 0;
+        bodyPartCount = 0;
+        durationMinutes = -1;
+        temperatureTenths = -1;
+    }
+
+    /**
+     * 记录症状；同一症状出现多次时只保留一条，任何一处未被否定即视为未否定
+     */
+    void addSymptom(int term, int bodyPart, boolean isNegated) {
+        for (int i = 0; i < count; i++) {
+            if (terms[i] == term && bodyPartOf[i] == bodyPart) {
+                negated[i] &= isNegated;
+                return;
+            }
+        }
+        if (count == terms.length) {
+            terms = Arrays.copyOf(terms, count * 2);
+            bodyPartOf = Arrays.copyOf(bodyPartOf, count * 2);
+            negated = Arrays.copyOf(negated, count * 2);
+        }
+        terms[count] = term;
+        bodyPartOf[count] = bodyPart;
+        negated[count] = isNegated;
+        count++;
+    }
+
+    void addBodyPart(int term) {
+        for (int i = 0; i < bodyPartCount; i++) {
+            if (bodyParts[i] == term) {
+                return;
+            }
+        }
+        if (bodyPartCount == bodyParts.length) {
+            bodyParts = Arrays.copyOf(bodyParts, bodyPartCount * 2);
+        }
+        bodyParts[bodyPartCount++] = term;
+    }
+
+    /**
+     * 记录病程，多处提到时取最长的
+     */
+    void addDuration(int minutes) {
+        durationMinutes = Math.max(durationMinutes, minutes);
+    }
+
+    /**
+     * 记录体温，多处提到时取最高的
+     */
+    void addTemperature(int tenths) {
+        temperatureTenths = Math.max(temperatureTenths, tenths);
+    }
+
+    /**
+     * 症状数（含被否定的）
+     */
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0 && bodyPartCount == 0 && durationMinutes < 0 && temperatureTenths < 0;
+    }
+
+    public int term(int index) {
+        return terms[index];
+    }
+
+    /**
+     * 泛化症状组合的部位编号；没有时为 -1
+     */
+    public int bodyPart(int index) {
+        return bodyPartOf[index];
+    }
+
+    public boolean isNegated(int index) {
+        return negated[index];
+    }
+
+    public int bodyPartCount() {
+        return bodyPartCount;
+    }
+
+    /**
+     * 提到的部位编号
+     */
+    public int bodyPartAt(int index) {
+        return bodyParts[index];
+    }
+
+    /**
+     * 病程（分钟）；没有提到时为 -1
+     */
+    public int durationMinutes() {
+        return durationMinutes;
+    }
+
+    /**
+     * 体温（0.1 摄氏度）；没有提到时为 -1
+     */
+    public int temperatureTenths() {
+        return temperatureTenths;
+    }
+}
@@ -0,0 +1,29 @@
+package com.yihu.agent.config;
+
+import com.yihu.agent.websocket.cluster.ClusterBus;
+import com.yihu.agent.websocket.cluster.InJvmClusterBus;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.UUID;
+
+/**
+ * 集群配置
+ *
+ * 默认使用进程内集群总线：单实例部署时集群只有本节点；
+ * 接入真实的节点间传输时，提供自定义的 {@link ClusterBus} Bean 即可替换
+ */
+@Configuration
+public class ClusterConfig {
+
+    @Bean
+    @ConditionalOnMissingBean(ClusterBus.class)
+    public ClusterBus clusterBus(@Value("${healthcare.cluster.name:healthcare}") String clusterName,
+                                 @Value("${healthcare.cluster.node-id:}") String nodeId) {
+        // 未配置节点ID时随机生成，同一进程内启动多个应用上下文也不会冲突
+        String resolvedNodeId = nodeId.isEmpty() ? "node-" + UUID.randomUUID().toString().substring(0, 8) : nodeId;
+        return new InJvmClusterBus(clusterName, resolvedNodeId);
+    }
+}
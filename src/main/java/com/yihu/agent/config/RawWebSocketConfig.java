@@ -1,6 +1,11 @@
 package com.yihu.agent.config;
 
 import com.yihu.agent.websocket.ChatWebSocketHandler;
+import com.yihu.agent.websocket.batching.FrameBatching;
+import com.yihu.agent.websocket.compression.CompressionHandshakeHandler;
+import com.yihu.agent.websocket.compression.CompressionMetrics;
+import com.yihu.agent.websocket.handshake.HandshakeContextInterceptor;
+import com.yihu.agent.websocket.heartbeat.HeartbeatMonitor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.web.socket.config.annotation.EnableWebSocket;
@@ -18,6 +23,26 @@ public class RawWebSocketConfig implements WebSocketConfigurer {
     @Autowired
     private ChatWebSocketHandler chatHandler;
 
+    // permessage-deflate 协商（上下文接管参数）
+    @Autowired
+    private CompressionHandshakeHandler handshakeHandler;
+
+    // 压缩率与 CPU 开销统计
+    @Autowired
+    private CompressionMetrics compressionMetrics;
+
+    // 出站帧合并（客户端握手时带 batch=true 才生效）
+    @Autowired
+    private FrameBatching frameBatching;
+
+    // 心跳保活与死连接回收
+    @Autowired
+    private HeartbeatMonitor heartbeatMonitor;
+
+    // 握手时解析 userId、重连参数与客户端 IP 到会话属性
+    @Autowired
+    private HandshakeContextInterceptor handshakeContextInterceptor;
+
     /**
      * 注册 WebSocket 端点
      * @param registry WebSocketHandlerRegistry
@@ -26,7 +51,10 @@ public class RawWebSocketConfig implements WebSocketConfigurer {
     public void registerWebSocketHandlers(WebSocketHandlerRegistry registry) {
         // 注册 chatHandler 到 /ws/chat 路径
         // .setAllowedOrigins("*") 表示允许所有来源，MVP 阶段方便调试，正式环境建议收敛白名单
-        registry.addHandler(chatHandler, "/ws/chat-raw")
+        // 压缩指标在最外层，统计的是合并后实际写出的帧
+        registry.addHandler(compressionMetrics.decorate(frameBatching.decorateRaw(heartbeatMonitor.decorateRaw(chatHandler))), "/ws/chat-raw")
+                .setHandshakeHandler(handshakeHandler)
+                .addInterceptors(handshakeContextInterceptor)
                 .setAllowedOrigins("*");
     }
 }
\ No newline at end of file
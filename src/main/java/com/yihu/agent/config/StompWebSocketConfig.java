@@ -1,6 +1,15 @@
 package com.yihu.agent.config;
 
+import com.yihu.agent.websocket.batching.FrameBatching;
+import com.yihu.agent.websocket.compression.CompressionHandshakeHandler;
+import com.yihu.agent.websocket.compression.CompressionMetrics;
+import com.yihu.agent.websocket.group.GroupSubscriptionInterceptor;
+import com.yihu.agent.websocket.handshake.HandshakeContextInterceptor;
+import com.yihu.agent.websocket.heartbeat.HeartbeatMonitor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.lang.NonNull;
 import org.springframework.messaging.Message;
@@ -11,9 +20,11 @@ import org.springframework.messaging.simp.stomp.StompCommand;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.messaging.support.ChannelInterceptor;
 import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
 /**
  * STOMP WebSocket 配置 - 支持点对点消息
@@ -23,12 +34,43 @@ import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerCo
  * 2. 配置用户目的地前缀（/user）
  * 3. 用户身份认证（从连接参数获取 userId）
  * 4. 支持 SockJS 降级方案
+ * 5. permessage-deflate 压缩协商与压缩指标
+ * 6. 订阅匹配使用前缀树注册表（见 BrokerRegistryPostProcessor），每个会话的发送缓冲有界
+ * 7. 可选的出站帧合并：微窗口内发往同一会话的多个 STOMP 帧一次写出
+ * 8. 代理心跳保活，长时间没有任何入站帧（含心跳）的死连接由 HeartbeatMonitor 回收
  */
 @Configuration
 @EnableWebSocketMessageBroker
 @Slf4j
 public class StompWebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    @Autowired
+    private CompressionHandshakeHandler handshakeHandler;
+
+    @Autowired
+    private CompressionMetrics compressionMetrics;
+
+    @Autowired
+    private GroupSubscriptionInterceptor groupSubscriptionInterceptor;
+
+    @Autowired
+    private FrameBatching frameBatching;
+
+    @Autowired
+    private HeartbeatMonitor heartbeatMonitor;
+
+    @Autowired
+    private HandshakeContextInterceptor handshakeContextInterceptor;
+
+    @Value("${healthcare.websocket.heartbeat.stomp-heartbeat-ms:10000}")
+    private long stompHeartbeatMs;
+
+    @Value("${healthcare.broker.send-buffer-size-kb:512}")
+    private int sendBufferSizeKb;
+
+    @Value("${healthcare.broker.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
     /**
      * 配置消息代理
      * 
@@ -44,7 +86,10 @@ public class StompWebSocketConfig implements WebSocketMessageBrokerConfigurer {
         // 2. 启用简单消息代理
         // /topic - 广播消息（所有订阅者都会收到）
         // /queue - 点对点消息（只有目标用户会收到）
-        registry.enableSimpleBroker("/topic", "/queue");
+        // 心跳：[服务端发送间隔, 期望客户端发送间隔]，客户端在 CONNECT 帧中协商
+        registry.enableSimpleBroker("/topic", "/queue")
+                .setHeartbeatValue(new long[]{stompHeartbeatMs, stompHeartbeatMs})
+                .setTaskScheduler(brokerHeartbeatScheduler());
 
         // 3. 设置用户目的地前缀（重要！用于点对点消息）
         // 客户端订阅：/user/queue/private
@@ -52,6 +97,18 @@ public class StompWebSocketConfig implements WebSocketMessageBrokerConfigurer {
         registry.setUserDestinationPrefix("/user");
     }
 
+    /**
+     * 代理心跳调度器
+     */
+    @Bean
+    public ThreadPoolTaskScheduler brokerHeartbeatScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(1);
+        scheduler.setThreadNamePrefix("stomp-heartbeat-");
+        scheduler.setDaemon(true);
+        return scheduler;
+    }
+
     /**
      * 注册 STOMP 端点
      */
@@ -59,18 +116,41 @@ public class StompWebSocketConfig implements WebSocketMessageBrokerConfigurer {
     public void registerStompEndpoints(@NonNull StompEndpointRegistry registry) {
         // AI 对话端点
         registry.addEndpoint("/ws")
+                .setHandshakeHandler(handshakeHandler)
+                .addInterceptors(handshakeContextInterceptor)
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
         
         // 保留原有的聊天端点（兼容性）
         registry.addEndpoint("/ws/chat-stomp")
+                .setHandshakeHandler(handshakeHandler)
+                .addInterceptors(handshakeContextInterceptor)
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
     }
 
+    /**
+     * 配置 WebSocket 传输层
+     * 
+     * 1. 包装 STOMP 处理器以跟踪连接心跳、合并出站帧、统计出站帧的压缩指标
+     *    （后添加的装饰器在外层，压缩指标统计的是合并后实际写出的帧）
+     * 2. 每个会话的出站缓冲有上限：写出阻塞期间到达的帧进入该会话的缓冲，
+     *    持有发送锁的线程一次性把缓冲中的帧全部写出；超过大小或时间上限的慢客户端被断开，
+     *    不会拖住代理的出站线程池
+     */
+    @Override
+    public void configureWebSocketTransport(@NonNull WebSocketTransportRegistration registration) {
+        registration.addDecoratorFactory(heartbeatMonitor);
+        registration.addDecoratorFactory(frameBatching);
+        registration.addDecoratorFactory(compressionMetrics);
+        registration.setSendBufferSizeLimit(sendBufferSizeKb * 1024);
+        registration.setSendTimeLimit(sendTimeLimitMs);
+    }
+
     /**
      * 配置客户端入站通道拦截器
-     * 用于从连接参数中提取用户身份信息
+     * 1. 从连接参数中提取用户身份信息
+     * 2. 校验群组主题订阅权限（GroupSubscriptionInterceptor）
      */
     @Override
     public void configureClientInboundChannel(@NonNull ChannelRegistration registration) {
@@ -94,6 +174,6 @@ public class StompWebSocketConfig implements WebSocketMessageBrokerConfigurer {
                 
                 return message;
             }
-        });
+        }, groupSubscriptionInterceptor);
     }
 }
\ No newline at end of file
@@ -2,11 +2,30 @@ package com.yihu.agent.controller;
 
 import com.yihu.agent.ai.model.ChatRequest;
 import com.yihu.agent.ai.model.ChatResponse;
-import com.yihu.agent.ai.service.HealthCareAgentService;
+import com.yihu.agent.ai.model.ReplayRequest;
+import com.yihu.agent.ai.service.SessionAffinityService;
+import com.yihu.agent.websocket.delivery.ReplayBufferRegistry;
+import com.yihu.agent.websocket.delivery.ReplayRingBuffer;
+import com.yihu.agent.websocket.handshake.HandshakeContextInterceptor;
+import com.yihu.agent.websocket.ratelimit.RateLimitCategory;
+import com.yihu.agent.websocket.ratelimit.RateLimiter;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.event.EventListener;
 import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * AI 对话 WebSocket 控制器
@@ -16,41 +35,114 @@ import org.springframework.stereotype.Controller;
 @Controller
 public class AiChatController {
     
-    private final HealthCareAgentService agentService;
+    private static final String REPLY_DESTINATION = "/queue/ai-reply";
+    
+    private final SessionAffinityService sessionAffinityService;
     private final SimpMessagingTemplate messagingTemplate;
+    private final ReplayBufferRegistry replayRegistry;
+    private final RateLimiter rateLimiter;
     
-    public AiChatController(HealthCareAgentService agentService, 
-                           SimpMessagingTemplate messagingTemplate) {
-        this.agentService = agentService;
+    // STOMP 连接ID -> 该连接发起、仍在处理的轮次（断开时取消）
+    private final Map<String, Set<ConnectionTurn>> connectionTurns = new ConcurrentHashMap<>();
+    
+    public AiChatController(SessionAffinityService sessionAffinityService, 
+                           SimpMessagingTemplate messagingTemplate,
+                           ReplayBufferRegistry replayRegistry,
+                           RateLimiter rateLimiter) {
+        this.sessionAffinityService = sessionAffinityService;
         this.messagingTemplate = messagingTemplate;
+        this.replayRegistry = replayRegistry;
+        this.rateLimiter = rateLimiter;
     }
     
     /**
      * 处理 AI 对话消息
      * 客户端发送到: /app/chat/ai
      * 服务器回复到: /user/queue/ai-reply
+     * 
+     * 每条请求先按用户与 IP 的大模型预算取令牌，超出预算立即回复 THROTTLED，不调用模型；
+     * 用户维度按 STOMP 连接的认证身份计，而不是消息体中的 userId
+     * 
+     * 带 messageId 的重发消息（超时重发）不占预算：原消息处理中时等待同一结果，已完成时直接重放原回复
+     * 
+     * 处理是异步的：轮次按分诊优先级进入 AI 调度队列，完成后再推送回复，不占用 STOMP 入站线程
+     * 
+     * 取消：发送 {"action": "cancel", "sessionId": "..."} 中止该会话正在生成的回复（回复 CANCELLED）；
+     * STOMP 连接断开时自动取消该连接发起的轮次
      */
     @MessageMapping("/chat/ai")
-    public void handleAiChat(ChatRequest request) {
+    public void handleAiChat(ChatRequest request, SimpMessageHeaderAccessor headerAccessor) {
+        if (request.isCancel()) {
+            // 只取消本人发起的轮次：发起者身份与请求者身份都取自连接，不信任消息体中的 userId
+            int cancelled = request.getSessionId() != null
+                    ? sessionAffinityService.cancel(request.getSessionId(), callerId(headerAccessor.getUser(), headerAccessor.getSessionId()))
+                    : 0;
+            log.info("取消 AI 回复 - userId={}, sessionId={}, 取消轮次={}", 
+                    request.getUserId(), request.getSessionId(), cancelled);
+            sendToUser(request.getUserId(), ChatResponse.cancelled(request.getSessionId()));
+            return;
+        }
+        
         log.info("收到 AI 对话请求 - userId={}, sessionId={}, message={}", 
                 request.getUserId(), request.getSessionId(), request.getMessage());
         
-        try {
-            // 先发送"思考中"状态
-            ChatResponse thinkingResponse = ChatResponse.thinking(request.getSessionId());
-            sendToUser(request.getUserId(), thinkingResponse);
-            
-            // 处理消息并生成回复
-            ChatResponse response = agentService.processMessage(request);
-            
-            // 发送 AI 回复
-            sendToUser(request.getUserId(), response);
-            
-            log.info("AI 回复已发送 - userId={}, sessionId={}", 
-                    request.getUserId(), request.getSessionId());
+        // 去重按连接的认证身份区分，只复用本人发起的原消息结果
+        String ownerId = callerId(headerAccessor.getUser(), headerAccessor.getSessionId());
+        CompletableFuture<ChatResponse> duplicate = sessionAffinityService.findDuplicate(request, ownerId);
+        if (duplicate != null) {
+            log.info("重发消息，复用原结果 - userId={}, sessionId={}, messageId={}", 
+                    request.getUserId(), request.getSessionId(), request.getMessageId());
+            trackConnectionTurn(headerAccessor.getSessionId(), request.getSessionId(), duplicate);
+            replyWhenDone(request, duplicate);
+            return;
+        }
+        
+        // 用户预算按 CONNECT 时认证的身份计，不信任消息体中的 userId（可随意更换）；没有身份时只按 IP 限流
+        Principal user = headerAccessor.getUser();
+        RateLimiter.Decision decision = rateLimiter.acquire(RateLimitCategory.LLM, user != null ? user.getName() : null,
+                HandshakeContextInterceptor.clientIp(headerAccessor.getSessionAttributes()));
+        if (!decision.allowed()) {
+            log.warn("AI 对话请求被限流 - userId={}, 维度={}, retryAfterMs={}", 
+                    request.getUserId(), decision.limitedBy(), decision.retryAfterMs());
+            sendToUser(request.getUserId(), ChatResponse.throttled(request.getSessionId(), decision.retryAfterMs()));
+            return;
+        }
+        
+        // 先发送"思考中"状态
+        ChatResponse thinkingResponse = ChatResponse.thinking(request.getSessionId());
+        sendToUser(request.getUserId(), thinkingResponse);
+        
+        // 处理消息并生成回复（会话归属其他节点时转发给归属节点处理）
+        CompletableFuture<ChatResponse> turn = sessionAffinityService.process(request, ownerId);
+        trackConnectionTurn(headerAccessor.getSessionId(), request.getSessionId(), turn);
+        replyWhenDone(request, turn);
+    }
+    
+    /**
+     * 轮次完成后推送回复
+     */
+    private void replyWhenDone(ChatRequest request, CompletableFuture<ChatResponse> turn) {
+        turn.whenComplete((response, e) -> {
+            if (e == null) {
+                // 发送 AI 回复
+                sendToUser(request.getUserId(), response);
+                log.info("AI 回复已发送 - userId={}, sessionId={}", 
+                        request.getUserId(), request.getSessionId());
+                return;
+            }
             
-        } catch (Exception e) {
-            log.error("处理 AI 对话时发生错误", e);
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof CancellationException) {
+                // 客户端已取消或已断开，不再回复
+                log.debug("AI 轮次已取消 - userId={}, sessionId={}", request.getUserId(), request.getSessionId());
+                return;
+            }
+            if (cause instanceof RejectedExecutionException) {
+                log.warn("AI 调度队列已满 - userId={}, sessionId={}", request.getUserId(), request.getSessionId());
+                sendToUser(request.getUserId(), ChatResponse.busy(request.getSessionId()));
+                return;
+            }
+            log.error("处理 AI 对话时发生错误", cause);
             
             // 发送错误响应
             ChatResponse errorResponse = ChatResponse.error(
@@ -58,16 +150,139 @@ public class AiChatController {
                     "抱歉，处理您的消息时出现了问题。请稍后再试。"
             );
             sendToUser(request.getUserId(), errorResponse);
+        });
+    }
+    
+    /**
+     * STOMP 连接断开时取消该连接发起、仍在处理的轮次，释放模型调用与执行线程
+     * 客户端已在新连接上重发并等待同一轮次时不取消
+     */
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Set<ConnectionTurn> turns = connectionTurns.remove(event.getSessionId());
+        if (turns == null) {
+            return;
         }
+        String callerId = callerId(event.getUser(), event.getSessionId());
+        turns.stream()
+                .filter(turn -> !turn.future().isDone())
+                .filter(turn -> !isAwaitedElsewhere(turn.future()))
+                .map(ConnectionTurn::sessionId)
+                .distinct()
+                .forEach(sessionId -> {
+                    int cancelled = sessionAffinityService.cancel(sessionId, callerId);
+                    log.info("连接断开，取消 AI 回复 - sessionId={}, 取消轮次={}", sessionId, cancelled);
+                });
+    }
+    
+    /**
+     * 轮次发起者与取消请求者的身份：CONNECT 时认证的用户；未认证的连接只能取消本连接发起的轮次
+     */
+    private static String callerId(Principal user, String connectionId) {
+        if (user != null) {
+            return user.getName();
+        }
+        return connectionId != null ? "connection:" + connectionId : null;
+    }
+    
+    /**
+     * 是否还有其他连接在等待该轮次（重发消息复用了同一结果）
+     */
+    private boolean isAwaitedElsewhere(CompletableFuture<ChatResponse> future) {
+        return connectionTurns.values().stream()
+                .anyMatch(turns -> turns.stream().anyMatch(turn -> turn.future() == future));
+    }
+    
+    /**
+     * 登记 STOMP 连接发起的轮次，完成后自动移除
+     */
+    private void trackConnectionTurn(String connectionId, String sessionId, CompletableFuture<ChatResponse> future) {
+        if (connectionId == null || sessionId == null) {
+            return;
+        }
+        ConnectionTurn turn = new ConnectionTurn(sessionId, future);
+        connectionTurns.compute(connectionId, (id, turns) -> {
+            Set<ConnectionTurn> tracked = turns != null ? turns : ConcurrentHashMap.newKeySet();
+            tracked.add(turn);
+            return tracked;
+        });
+        future.whenComplete((response, e) -> connectionTurns.computeIfPresent(connectionId, (id, turns) -> {
+            turns.remove(turn);
+            return turns.isEmpty() ? null : turns;
+        }));
+    }
+    
+    /**
+     * 断线重连补发
+     * 客户端发送到: /app/chat/ai/replay
+     * 补发的帧回复到: /user/queue/ai-reply（帧头 seq 与原帧相同）
+     */
+    @MessageMapping("/chat/ai/replay")
+    public void handleReplay(ReplayRequest request, Principal principal) {
+        String userId = principal != null ? principal.getName() : request.getUserId();
+        if (userId == null || request.getLastSeq() == null) {
+            log.warn("补发请求缺少 userId 或 lastSeq");
+            return;
+        }
+        
+        ReplayRingBuffer<SequencedReply> buffer = replayRegistry.buffer(ReplayBufferRegistry.AI_CHANNEL, userId);
+        try {
+            int replayed = buffer.replay(
+                    request.getLastSeq(),
+                    request.getEpoch() != null ? request.getEpoch() : buffer.getEpoch(),
+                    reply -> send(userId, reply, buffer.getEpoch())
+            );
+            if (replayed >= 0) {
+                log.info("AI 回复补发完成 - userId={}, lastSeq={}, 补发={}", userId, request.getLastSeq(), replayed);
+                return;
+            }
+        } catch (IOException e) {
+            log.error("AI 回复补发失败 - userId={}", userId, e);
+            return;
+        }
+        
+        // 缺口已超出缓冲区或 epoch 不一致，通知客户端全量同步
+        log.info("AI 回复缺口无法补齐，通知全量同步 - userId={}, lastSeq={}", userId, request.getLastSeq());
+        messagingTemplate.convertAndSendToUser(userId, REPLY_DESTINATION, Map.of(
+                "type", "replay_reset",
+                "epoch", buffer.getEpoch(),
+                "seq", buffer.getLastSeq()
+        ));
     }
     
     /**
      * 发送消息给指定用户
+     * 每帧分配序号（帧头 seq/epoch）并记录到重放缓冲区，断线期间的回复可在重连后补发
      */
     private void sendToUser(String userId, ChatResponse response) {
-        String destination = "/queue/ai-reply";
-        messagingTemplate.convertAndSendToUser(userId, destination, response);
-        log.debug("消息已发送 - userId={}, destination={}", userId, destination);
+        ReplayRingBuffer<SequencedReply> buffer = replayRegistry.buffer(ReplayBufferRegistry.AI_CHANNEL, userId);
+        try {
+            long seq = buffer.append(
+                    s -> new SequencedReply(s, response),
+                    reply -> send(userId, reply, buffer.getEpoch())
+            );
+            log.debug("消息已发送 - userId={}, destination={}, seq={}", userId, REPLY_DESTINATION, seq);
+        } catch (IOException e) {
+            log.error("消息发送失败 - userId={}", userId, e);
+        }
+    }
+    
+    private void send(String userId, SequencedReply reply, long epoch) {
+        Map<String, Object> headers = Map.of(
+                "seq", reply.seq(),
+                "epoch", epoch
+        );
+        messagingTemplate.convertAndSendToUser(userId, REPLY_DESTINATION, reply.response(), headers);
     }
+    
+    /**
+     * 带序号的 AI 回复帧
+     */
+    private record SequencedReply(long seq, ChatResponse response) {}
+    
+    /**
+     * STOMP 连接发起、仍在处理的轮次
+     */
+    private record ConnectionTurn(String sessionId, CompletableFuture<ChatResponse> future) {}
 }
 
@@ -0,0 +1,143 @@
+package com.yihu.agent.controller;
+
+import com.yihu.agent.ai.batch.BatchJob;
+import com.yihu.agent.ai.batch.BatchJobService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 批量分诊作业 API
+ *
+ * 上传问卷自由文本等批量问题（NDJSON），后台以低优先级逐条执行对话状态图，
+ * 结果同样为 NDJSON，可随时下载已完成的部分
+ */
+@RestController
+@RequestMapping("/api/batch/jobs")
+@CrossOrigin(origins = "*")
+@Slf4j
+public class BatchJobController {
+
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    @Autowired
+    private BatchJobService batchJobService;
+
+    /**
+     * 创建作业
+     *
+     * POST /api/batch/jobs
+     * Content-Type: application/x-ndjson
+     * {"id": "q-1", "userId": "patient_1", "message": "最近总是头疼，晚上睡不好"}
+     * {"id": "q-2", "userId": "patient_2", "message": "孩子发烧三天了"}
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> submit(InputStream body) {
+        try {
+            BatchJob job = batchJobService.submit(body);
+            log.info("REST API: 创建批量作业 {}", job.getId());
+            return ResponseEntity.ok(createResponse(true, "作业已创建", job.snapshot()));
+        } catch (IOException e) {
+            log.error("保存批量作业输入失败", e);
+            return ResponseEntity.internalServerError().body(createResponse(false, "保存作业输入失败", null));
+        }
+    }
+
+    /**
+     * 查询全部作业
+     *
+     * GET /api/batch/jobs
+     */
+    @GetMapping
+    public ResponseEntity<Map<String, Object>> listJobs() {
+        Map<String, Object> data = batchJobService.getStats();
+        data.put("items", batchJobService.getJobs().stream().map(BatchJob::snapshot).toList());
+        return ResponseEntity.ok(createResponse(true, "查询成功", data));
+    }
+
+    /**
+     * 查询作业进度
+     *
+     * GET /api/batch/jobs/{jobId}
+     */
+    @GetMapping("/{jobId}")
+    public ResponseEntity<Map<String, Object>> getJob(@PathVariable String jobId) {
+        return batchJobService.getJob(jobId)
+            .map(job -> ResponseEntity.ok(createResponse(true, "查询成功", job.snapshot())))
+            .orElseGet(() -> ResponseEntity.status(404).body(createResponse(false, "作业不存在", null)));
+    }
+
+    /**
+     * 下载已完成的结果（NDJSON，按完成顺序，每行带输入行号 line）
+     *
+     * GET /api/batch/jobs/{jobId}/results
+     */
+    @GetMapping("/{jobId}/results")
+    public ResponseEntity<Resource> getResults(@PathVariable String jobId) {
+        Path results = batchJobService.getJob(jobId)
+            .map(BatchJob::getResultsFile)
+            .orElse(null);
+        if (results == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!Files.exists(results)) {
+            return ResponseEntity.noContent().build();
+        }
+        return ResponseEntity.ok().contentType(NDJSON).body(new FileSystemResource(results));
+    }
+
+    /**
+     * 从检查点继续已中断、失败或取消的作业
+     *
+     * POST /api/batch/jobs/{jobId}/resume
+     */
+    @PostMapping("/{jobId}/resume")
+    public ResponseEntity<Map<String, Object>> resume(@PathVariable String jobId) {
+        try {
+            if (!batchJobService.resume(jobId)) {
+                return ResponseEntity.badRequest().body(createResponse(false, "作业不存在或无需继续", null));
+            }
+        } catch (IOException e) {
+            log.error("继续批量作业失败 - jobId={}", jobId, e);
+            return ResponseEntity.internalServerError().body(createResponse(false, "读取作业检查点失败", null));
+        }
+        return ResponseEntity.ok(createResponse(true, "作业已继续", batchJobService.getJob(jobId).get().snapshot()));
+    }
+
+    /**
+     * 取消作业（在途条目完成后结束，可稍后继续）
+     *
+     * POST /api/batch/jobs/{jobId}/cancel
+     */
+    @PostMapping("/{jobId}/cancel")
+    public ResponseEntity<Map<String, Object>> cancel(@PathVariable String jobId) {
+        if (!batchJobService.cancel(jobId)) {
+            return ResponseEntity.badRequest().body(createResponse(false, "作业不存在或已结束", null));
+        }
+        return ResponseEntity.ok(createResponse(true, "作业取消中", null));
+    }
+
+    private Map<String, Object> createResponse(boolean success, String message, Map<String, Object> data) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", success);
+        response.put("message", message);
+        response.put("timestamp", System.currentTimeMillis());
+
+        if (data != null) {
+            response.put("data", data);
+        }
+
+        return response;
+    }
+}
@@ -0,0 +1,86 @@
+package com.yihu.agent.controller;
+
+import com.yihu.agent.ai.model.ChatRequest;
+import com.yihu.agent.ai.model.ChatResponse;
+import com.yihu.agent.ai.service.ChatStreamService;
+import com.yihu.agent.websocket.handshake.HandshakeContextInterceptor;
+import com.yihu.agent.websocket.ratelimit.RateLimitCategory;
+import com.yihu.agent.websocket.ratelimit.RateLimiter;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+import java.security.Principal;
+import java.util.Locale;
+
+/**
+ * 流式 AI 对话 HTTP 接口（小程序、合作方等非 WebSocket 客户端）
+ *
+ * POST /api/chat/stream
+ * {
+ *   "userId": "user123",
+ *   "sessionId": "session-abc",   // 可选，为空时生成，随每个事件返回
+ *   "message": "最近总是头疼怎么办"
+ * }
+ *
+ * 返回 text/event-stream，事件名为 ChatResponse 的类型（小写）：
+ * - delta：新增的回复片段
+ * - normal / emergency：完整回复（message 为完整文本，metadata 含风险等级与所用模型），之后连接关闭
+ * - throttled / busy / error：请求未被处理
+ *
+ * 大模型预算按请求的认证身份与客户端 IP 计，请求体中的 userId 不参与限流
+ *
+ * 客户端断开连接即取消本轮：不再调用或等待模型输出，也不写入会话记忆
+ */
+@Slf4j
+@RestController
+@RequestMapping("/api/chat")
+public class ChatStreamController {
+
+    private final ChatStreamService chatStreamService;
+    private final RateLimiter rateLimiter;
+    private final HandshakeContextInterceptor handshakeContextInterceptor;
+
+    public ChatStreamController(ChatStreamService chatStreamService,
+                                RateLimiter rateLimiter,
+                                HandshakeContextInterceptor handshakeContextInterceptor) {
+        this.chatStreamService = chatStreamService;
+        this.rateLimiter = rateLimiter;
+        this.handshakeContextInterceptor = handshakeContextInterceptor;
+    }
+
+    @PostMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<ChatResponse>> stream(@RequestBody ChatRequest request, HttpServletRequest httpRequest) {
+        log.info("收到流式 AI 对话请求 - userId={}, sessionId={}", request.getUserId(), request.getSessionId());
+
+        if (request.getMessage() == null || request.getMessage().isBlank()) {
+            return Flux.just(event(ChatResponse.error(request.getSessionId(), "消息内容不能为空")));
+        }
+
+        String clientIp = handshakeContextInterceptor.resolveClientIp(new ServletServerHttpRequest(httpRequest));
+        // 用户预算按请求的认证身份计，不信任请求体中的 userId（可随意更换）；没有身份时只按 IP 限流
+        Principal user = httpRequest.getUserPrincipal();
+        RateLimiter.Decision decision = rateLimiter.acquire(RateLimitCategory.LLM, user != null ? user.getName() : null,
+                clientIp);
+        if (!decision.allowed()) {
+            log.warn("流式 AI 对话请求被限流 - userId={}, 维度={}, retryAfterMs={}",
+                    request.getUserId(), decision.limitedBy(), decision.retryAfterMs());
+            return Flux.just(event(ChatResponse.throttled(request.getSessionId(), decision.retryAfterMs())));
+        }
+
+        return chatStreamService.stream(request).map(ChatStreamController::event);
+    }
+
+    private static ServerSentEvent<ChatResponse> event(ChatResponse response) {
+        return ServerSentEvent.builder(response)
+                .event(response.getType().name().toLowerCase(Locale.ROOT))
+                .build();
+    }
+}
@@ -0,0 +1,241 @@
+package com.yihu.agent.controller;
+
+import com.yihu.agent.websocket.group.ChatGroup;
+import com.yihu.agent.websocket.group.GroupMessagingService;
+import com.yihu.agent.websocket.group.GroupRegistry;
+import com.yihu.agent.websocket.group.GroupType;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 群组 API 控制器
+ * 
+ * 管理护理团队、患者队列等持久化群组，成员变更增量生效
+ * 
+ * 客户端订阅群组消息：stompClient.subscribe("/topic/group/{groupId}", callback)
+ * （仅群组成员可订阅，被移除后订阅立即失效，并在 /user/queue/group-events 收到通知）
+ */
+@RestController
+@RequestMapping("/api/groups")
+@CrossOrigin(origins = "*")
+@Slf4j
+public class GroupApiController {
+
+    @Autowired
+    private GroupRegistry groupRegistry;
+
+    @Autowired
+    private GroupMessagingService groupMessagingService;
+
+    /**
+     * 创建群组
+     * 
+     * POST /api/groups
+     * {
+     *   "groupId": "care-team-1024",
+     *   "name": "张三护理团队",
+     *   "type": "CARE_TEAM",
+     *   "memberIds": ["doctor_1", "nurse_2"]
+     * }
+     */
+    @PostMapping
+    public ResponseEntity<Map<String, Object>> createGroup(@RequestBody CreateGroupRequest request) {
+        log.info("REST API: 创建群组 {}", request.getGroupId());
+        try {
+            GroupType type = request.getType() != null ? GroupType.valueOf(request.getType()) : GroupType.CUSTOM;
+            ChatGroup group = groupRegistry.createGroup(request.getGroupId(), request.getName(), type);
+            if (request.getMemberIds() != null) {
+                groupRegistry.addMembers(group.getId(), request.getMemberIds());
+            }
+            return ResponseEntity.ok(createResponse(true, "群组已创建", toData(group)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(createResponse(false, e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 查询群组
+     * 
+     * GET /api/groups/{groupId}
+     */
+    @GetMapping("/{groupId}")
+    public ResponseEntity<Map<String, Object>> getGroup(@PathVariable String groupId) {
+        return groupRegistry.getGroup(groupId)
+            .map(group -> ResponseEntity.ok(createResponse(true, "查询成功", toData(group))))
+            .orElseGet(() -> ResponseEntity.status(404).body(createResponse(false, "群组不存在", null)));
+    }
+
+    /**
+     * 删除群组
+     * 
+     * DELETE /api/groups/{groupId}
+     */
+    @DeleteMapping("/{groupId}")
+    public ResponseEntity<Map<String, Object>> deleteGroup(@PathVariable String groupId) {
+        log.info("REST API: 删除群组 {}", groupId);
+        groupMessagingService.deleteGroup(groupId);
+        return ResponseEntity.ok(createResponse(true, "群组已删除", null));
+    }
+
+    /**
+     * 添加成员
+     * 
+     * POST /api/groups/{groupId}/members
+     * { "userIds": ["patient_1", "patient_2"] }
+     */
+    @PostMapping("/{groupId}/members")
+    public ResponseEntity<Map<String, Object>> addMembers(@PathVariable String groupId,
+                                                          @RequestBody MembersRequest request) {
+        if (request.getUserIds() == null || request.getUserIds().isEmpty()) {
+            return ResponseEntity.badRequest().body(createResponse(false, "userIds 不能为空", null));
+        }
+        try {
+            int added = groupRegistry.addMembers(groupId, request.getUserIds());
+            Map<String, Object> data = new HashMap<>();
+            data.put("addedCount", added);
+            return ResponseEntity.ok(createResponse(true, "成员已添加", data));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(createResponse(false, e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 移除成员（同时撤销其群组订阅）
+     * 
+     * POST /api/groups/{groupId}/members/remove
+     * { "userIds": ["patient_1"] }
+     */
+    @PostMapping("/{groupId}/members/remove")
+    public ResponseEntity<Map<String, Object>> removeMembers(@PathVariable String groupId,
+                                                             @RequestBody MembersRequest request) {
+        if (request.getUserIds() == null || request.getUserIds().isEmpty()) {
+            return ResponseEntity.badRequest().body(createResponse(false, "userIds 不能为空", null));
+        }
+        try {
+            int revoked = groupMessagingService.removeMembers(groupId, request.getUserIds());
+            Map<String, Object> data = new HashMap<>();
+            data.put("revokedSubscriptions", revoked);
+            return ResponseEntity.ok(createResponse(true, "成员已移除", data));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(createResponse(false, e.getMessage(), null));
+        }
+    }
+
+    /**
+     * 查询用户所在的群组
+     * 
+     * GET /api/groups/user/{userId}
+     */
+    @GetMapping("/user/{userId}")
+    public ResponseEntity<Map<String, Object>> getUserGroups(@PathVariable String userId) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("userId", userId);
+        data.put("groupIds", groupRegistry.groupsOf(userId));
+        return ResponseEntity.ok(createResponse(true, "查询成功", data));
+    }
+
+    /**
+     * 群组公告（系统身份发送）
+     * 
+     * POST /api/groups/{groupId}/announce
+     * { "message": "明早 8 点起开放复诊预约" }
+     */
+    @PostMapping("/{groupId}/announce")
+    public ResponseEntity<Map<String, Object>> announce(@PathVariable String groupId,
+                                                        @RequestBody AnnounceRequest request) {
+        if (groupRegistry.getGroup(groupId).isEmpty()) {
+            return ResponseEntity.status(404).body(createResponse(false, "群组不存在", null));
+        }
+        if (request.getMessage() == null || request.getMessage().isEmpty()) {
+            return ResponseEntity.badRequest().body(createResponse(false, "message 不能为空", null));
+        }
+
+        Map<String, Object> announcement = new HashMap<>();
+        announcement.put("type", "announcement");
+        announcement.put("fromUserId", "system");
+        announcement.put("toUserId", groupId);
+        announcement.put("content", request.getMessage());
+        announcement.put("timestamp", System.currentTimeMillis());
+
+        int subscribers = groupMessagingService.sendToGroup(groupId, announcement);
+        Map<String, Object> data = new HashMap<>();
+        data.put("onlineSubscribers", subscribers);
+        return ResponseEntity.ok(createResponse(true, "公告已发送", data));
+    }
+
+    // ==================== 辅助方法 ====================
+
+    private Map<String, Object> toData(ChatGroup group) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("groupId", group.getId());
+        data.put("name", group.getName());
+        data.put("type", group.getType());
+        data.put("memberCount", group.getMemberCount());
+        data.put("members", group.getMembers());
+        data.put("onlineSubscribers", groupRegistry.getSubscriberCount(group.getId()));
+        return data;
+    }
+
+    /**
+     * 创建统一的响应格式
+     */
+    private Map<String, Object> createResponse(boolean success, String message, Map<String, Object> data) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("success", success);
+        response.put("message", message);
+        response.put("timestamp", System.currentTimeMillis());
+        
+        if (data != null) {
+            response.put("data", data);
+        }
+        
+        return response;
+    }
+
+    // ==================== 请求DTO ====================
+
+    /**
+     * 创建群组请求
+     */
+    public static class CreateGroupRequest {
+        private String groupId;
+        private String name;
+        private String type;
+        private List<String> memberIds;
+
+        public String getGroupId() { return groupId; }
+        public void setGroupId(String groupId) { this.groupId = groupId; }
+        public String getName() { return name; }
+        public void setName(String name) { this.name = name; }
+        public String getType() { return type; }
+        public void setType(String type) { this.type = type; }
+        public List<String> getMemberIds() { return memberIds; }
+        public void setMemberIds(List<String> memberIds) { this.memberIds = memberIds; }
+    }
+
+    /**
+     * 成员变更请求
+     */
+    public static class MembersRequest {
+        private List<String> userIds;
+
+        public List<String> getUserIds() { return userIds; }
+        public void setUserIds(List<String> userIds) { this.userIds = userIds; }
+    }
+
+    /**
+     * 群组公告请求
+     */
+    public static class AnnounceRequest {
+        private String message;
+
+        public String getMessage() { return message; }
+        public void setMessage(String message) { this.message = message; }
+    }
+}
@@ -1,5 +1,9 @@
 package com.yihu.agent.controller;
 
+import com.yihu.agent.websocket.DeliveryStatus;
+import com.yihu.agent.websocket.cluster.ClusterRouter;
+import com.yihu.agent.websocket.group.GroupMessagingService;
+import com.yihu.agent.websocket.group.GroupRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.messaging.handler.annotation.MessageMapping;
@@ -20,6 +24,7 @@ import java.time.format.DateTimeFormatter;
  * 1. 广播消息 - 所有订阅者都会收到
  * 2. 点对点私信 - 只有目标用户会收到
  * 3. 消息回执 - 发送方收到确认
+ * 4. 群组消息 - 发到 /topic/group/{groupId}，由代理一次扇出给在线成员
  */
 @Controller
 @Slf4j
@@ -28,6 +33,15 @@ public class StompChatController {
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
+    @Autowired
+    private GroupMessagingService groupMessagingService;
+
+    @Autowired
+    private GroupRegistry groupRegistry;
+
+    @Autowired
+    private ClusterRouter clusterRouter;
+
     /**
      * 广播消息处理
      * 
@@ -81,33 +95,39 @@ public class StompChatController {
             LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
         );
 
-        // 发送给目标用户（核心方法！）
-        // convertAndSendToUser 会自动添加 /user/{toUser} 前缀
-        // 所以实际发送到：/user/{toUser}/queue/private
-        messagingTemplate.convertAndSendToUser(
-            toUser,           // 目标用户ID
-            "/queue/private", // 队列路径
-            response         // 消息内容
-        );
-
-        // 可选：给发送方发送回执
-        PrivateMessageResponse receipt = new PrivateMessageResponse(
-            "receipt",
-            "system",
-            fromUser,
-            "消息已发送给 " + toUser,
-            LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
-        );
-
-        messagingTemplate.convertAndSendToUser(
-            fromUser,
-            "/queue/receipt",
-            receipt
-        );
+        if (clusterRouter.hasLocalStompSession(toUser)) {
+            // 发送给目标用户（核心方法！）
+            // convertAndSendToUser 会自动添加 /user/{toUser} 前缀
+            // 所以实际发送到：/user/{toUser}/queue/private
+            messagingTemplate.convertAndSendToUser(
+                toUser,           // 目标用户ID
+                "/queue/private", // 队列路径
+                response         // 消息内容
+            );
+            sendReceipt(fromUser, "消息已发送给 " + toUser);
+        } else if (clusterRouter.isRemoteStompUser(toUser)) {
+            // 目标用户的 STOMP 会话在其他节点上，由所在节点投递到其用户队列，确认送达后才回执
+            clusterRouter.forwardToStompUser(toUser, "/queue/private", response).thenAccept(status -> {
+                if (status == DeliveryStatus.DELIVERED) {
+                    sendReceipt(fromUser, "消息已发送给 " + toUser);
+                } else {
+                    log.info("私信转发未确认 - 从: {} 到: {}, status={}", fromUser, toUser, status);
+                    sendReceipt(fromUser, "发送失败：用户 " + toUser + " 暂时无法接收消息");
+                }
+            });
+        } else {
+            // 目标用户没有任何 STOMP 会话（只连原生 WebSocket 的用户收不到用户队列消息）
+            log.info("私信目标用户 {} 没有 STOMP 会话，消息未送达", toUser);
+            sendReceipt(fromUser, "发送失败：用户 " + toUser + " 不在线");
+        }
     }
 
     /**
-     * 群发消息（发送给多个指定用户）
+     * 群发消息
+     * 
+     * 1. 指定 groupId：发送者须为群组成员，消息发到 /topic/group/{groupId}，
+     *    成员订阅该主题即可收到（只序列化一次、代理一次扇出）
+     * 2. 指定 toUserIds：发送给每个用户的 /user/queue/private，消息体只序列化一次
      * 
      * @param message 群发消息内容
      * @param principal 当前用户身份
@@ -116,40 +136,49 @@ public class StompChatController {
     public void handleGroupMessage(@Payload GroupMessage message, Principal principal) {
         String fromUser = principal != null ? principal.getName() : "匿名用户";
         String content = HtmlUtils.htmlEscape(message.content());
+        String groupId = message.groupId();
 
-        log.info("群发消息 - 发送者: {}, 目标用户: {}, 内容: {}", 
-            fromUser, message.toUserIds(), content);
+        log.info("群发消息 - 发送者: {}, 群组: {}, 目标用户: {}, 内容: {}", 
+            fromUser, groupId, message.toUserIds(), content);
 
         // 构造响应消息
         PrivateMessageResponse response = new PrivateMessageResponse(
             "group",
             fromUser,
-            "group",
+            groupId != null ? groupId : "group",
             content,
             LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
         );
 
-        // 发送给每个目标用户
-        int successCount = 0;
-        for (String toUser : message.toUserIds()) {
-            try {
-                messagingTemplate.convertAndSendToUser(
-                    toUser,
-                    "/queue/private",
-                    response
-                );
-                successCount++;
-            } catch (Exception e) {
-                log.error("发送群发消息失败，目标用户: {}", toUser, e);
+        String receiptContent;
+        if (groupId != null && !groupId.isEmpty()) {
+            if (!groupRegistry.isMember(groupId, fromUser)) {
+                log.warn("用户 {} 不是群组 {} 的成员，拒绝群发", fromUser, groupId);
+                receiptContent = "发送失败：您不是群组 " + groupId + " 的成员";
+            } else {
+                int subscribers = groupMessagingService.sendToGroup(groupId, response);
+                receiptContent = String.format("群组消息已发送，当前在线 %d 人", subscribers);
             }
+        } else if (message.toUserIds() != null && !message.toUserIds().isEmpty()) {
+            int successCount = groupMessagingService.sendToUsers(message.toUserIds(), "/queue/private", response);
+            receiptContent = String.format("群发消息已发送给 %d 个用户", successCount);
+        } else {
+            receiptContent = "发送失败：groupId 和 toUserIds 不能同时为空";
         }
 
         // 发送回执给发送方
+        sendReceipt(fromUser, receiptContent);
+    }
+
+    /**
+     * 给发送方的 /user/queue/receipt 发送回执
+     */
+    private void sendReceipt(String fromUser, String content) {
         PrivateMessageResponse receipt = new PrivateMessageResponse(
             "receipt",
             "system",
             fromUser,
-            String.format("群发消息已发送给 %d 个用户", successCount),
+            content,
             LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))
         );
 
@@ -214,9 +243,10 @@ record PrivateMessageResponse(
 ) {}
 
 /**
- * 群发消息
+ * 群发消息（groupId 与 toUserIds 二选一，优先 groupId）
  */
 record GroupMessage(
+    String groupId,
     java.util.List<String> toUserIds,
     String content
 ) {}
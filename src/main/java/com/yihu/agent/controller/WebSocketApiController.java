@@ -1,13 +1,30 @@
 package com.yihu.agent.controller;
 
+import com.yihu.agent.ai.circuit.ModelCircuitBreakers;
+import com.yihu.agent.ai.http.ModelConnectionWarmer;
+import com.yihu.agent.ai.questionnaire.QuestionnaireService;
+import com.yihu.agent.ai.scheduling.AiTurnScheduler;
+import com.yihu.agent.ai.service.ChatStreamService;
+import com.yihu.agent.ai.service.SessionAffinityService;
+import com.yihu.agent.ai.symptom.SymptomExtractor;
 import com.yihu.agent.websocket.ChatWebSocketHandler;
+import com.yihu.agent.websocket.DeliveryStatus;
+import com.yihu.agent.websocket.batching.FrameBatching;
+import com.yihu.agent.websocket.cluster.ClusterRouter;
+import com.yihu.agent.websocket.compression.CompressionHandshakeHandler;
+import com.yihu.agent.websocket.compression.CompressionMetrics;
+import com.yihu.agent.websocket.heartbeat.HeartbeatMonitor;
+import com.yihu.agent.websocket.presence.OnlinePresenceIndex;
+import com.yihu.agent.websocket.ratelimit.RateLimiter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * WebSocket API 控制器
@@ -29,6 +46,48 @@ public class WebSocketApiController {
     @Autowired
     private ChatWebSocketHandler webSocketHandler;
 
+    @Autowired
+    private OnlinePresenceIndex presenceIndex;
+
+    @Autowired
+    private CompressionHandshakeHandler compressionHandshakeHandler;
+
+    @Autowired
+    private CompressionMetrics compressionMetrics;
+
+    @Autowired
+    private FrameBatching frameBatching;
+
+    @Autowired
+    private HeartbeatMonitor heartbeatMonitor;
+
+    @Autowired
+    private ClusterRouter clusterRouter;
+
+    @Autowired
+    private SessionAffinityService sessionAffinityService;
+
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    @Autowired
+    private AiTurnScheduler turnScheduler;
+
+    @Autowired
+    private ModelCircuitBreakers circuitBreakers;
+
+    @Autowired
+    private ModelConnectionWarmer connectionWarmer;
+
+    @Autowired
+    private ChatStreamService chatStreamService;
+
+    @Autowired
+    private QuestionnaireService questionnaireService;
+
+    @Autowired
+    private SymptomExtractor symptomExtractor;
+
     /**
      * 发送消息给指定用户
      * 
@@ -39,27 +98,27 @@ public class WebSocketApiController {
      * }
      * 
      * @param request 请求体
-     * @return 发送结果
+     * @return 发送结果（用户在其他节点上时，目标节点确认后异步返回）
      */
     @PostMapping("/send")
-    public ResponseEntity<Map<String, Object>> sendToUser(@RequestBody SendMessageRequest request) {
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> sendToUser(@RequestBody SendMessageRequest request) {
         log.info("REST API: 发送消息给用户 {}, 内容: {}", request.getUserId(), request.getMessage());
         
         if (request.getUserId() == null || request.getUserId().isEmpty()) {
-            return ResponseEntity.badRequest().body(createResponse(false, "userId 不能为空", null));
+            return CompletableFuture.completedFuture(
+                ResponseEntity.badRequest().body(createResponse(false, "userId 不能为空", null)));
         }
         
         if (request.getMessage() == null || request.getMessage().isEmpty()) {
-            return ResponseEntity.badRequest().body(createResponse(false, "message 不能为空", null));
+            return CompletableFuture.completedFuture(
+                ResponseEntity.badRequest().body(createResponse(false, "message 不能为空", null)));
         }
         
-        boolean success = webSocketHandler.sendToUser(request.getUserId(), request.getMessage());
-        
-        if (success) {
-            return ResponseEntity.ok(createResponse(true, "消息已发送", null));
-        } else {
-            return ResponseEntity.status(404).body(createResponse(false, "用户不在线", null));
-        }
+        return webSocketHandler.sendToUser(request.getUserId(), request.getMessage()).thenApply(status -> switch (status) {
+            case DELIVERED -> ResponseEntity.ok(createResponse(true, "消息已发送", null));
+            case STORED -> ResponseEntity.status(202).body(createResponse(true, "用户不在线，消息已离线存储，上线后送达", null));
+            case FAILED -> ResponseEntity.status(500).body(createResponse(false, "消息发送失败", null));
+        });
     }
 
     /**
@@ -94,22 +153,56 @@ public class WebSocketApiController {
     }
 
     /**
-     * 检查用户是否在线
+     * 检查用户是否在线（集群范围）
      * 
      * GET /api/websocket/online/{userId}
      * 
      * @param userId 用户ID
-     * @return 在线状态
+     * @return 在线状态及所在节点
      */
     @GetMapping("/online/{userId}")
     public ResponseEntity<Map<String, Object>> checkUserOnline(@PathVariable String userId) {
         log.info("REST API: 检查用户在线状态: {}", userId);
         
-        boolean isOnline = webSocketHandler.isUserOnline(userId);
+        boolean isOnline = clusterRouter.getDirectory().isOnline(userId);
         
         Map<String, Object> data = new HashMap<>();
         data.put("userId", userId);
         data.put("isOnline", isOnline);
+        data.put("nodes", clusterRouter.getDirectory().nodesOf(userId));
+        
+        return ResponseEntity.ok(createResponse(true, "查询成功", data));
+    }
+
+    /**
+     * 批量查询用户在线状态（原生 WebSocket 与 STOMP 连接均计入）
+     * 
+     * POST /api/websocket/online/batch
+     * {
+     *   "userIds": ["patient001", "patient002", "patient003"]
+     * }
+     * 
+     * 基于在线位图索引计算 在线 ∩ 目标人群 与 目标人群 \ 在线，
+     * 一次请求代替逐个调用 /online/{userId}
+     * 
+     * @param request 请求体
+     * @return 在线与离线用户列表
+     */
+    @PostMapping("/online/batch")
+    public ResponseEntity<Map<String, Object>> batchCheckOnline(@RequestBody BatchOnlineRequest request) {
+        if (request.getUserIds() == null || request.getUserIds().isEmpty()) {
+            return ResponseEntity.badRequest().body(createResponse(false, "userIds 不能为空", null));
+        }
+        
+        log.info("REST API: 批量检查 {} 个用户的在线状态", request.getUserIds().size());
+        
+        OnlinePresenceIndex.CohortPresence presence = presenceIndex.query(request.getUserIds());
+        
+        Map<String, Object> data = new HashMap<>();
+        data.put("totalCount", request.getUserIds().size());
+        data.put("onlineCount", presence.onlineUserIds().size());
+        data.put("onlineUserIds", presence.onlineUserIds());
+        data.put("offlineUserIds", presence.offlineUserIds());
         
         return ResponseEntity.ok(createResponse(true, "查询成功", data));
     }
@@ -135,6 +228,155 @@ public class WebSocketApiController {
         return ResponseEntity.ok(createResponse(true, "查询成功", data));
     }
 
+    /**
+     * 获取集群状态
+     * 
+     * GET /api/websocket/cluster
+     * 
+     * @return 节点列表、各节点在线人数、转发统计与会话亲和统计
+     */
+    @GetMapping("/cluster")
+    public ResponseEntity<Map<String, Object>> getClusterStats() {
+        Map<String, Object> data = clusterRouter.getStats();
+        data.put("sessionAffinity", sessionAffinityService.getStats());
+        return ResponseEntity.ok(createResponse(true, "查询成功", data));
+    }
+
+    /**
+     * 获取 WebSocket 压缩统计
+     * 
+     * GET /api/websocket/compression/stats
+     * 
+     * @return 压缩配置、压缩率与 CPU 开销
+     */
+    @GetMapping("/compression/stats")
+    public ResponseEntity<Map<String, Object>> getCompressionStats() {
+        Map<String, Object> data = compressionMetrics.snapshot();
+        data.put("enabled", compressionHandshakeHandler.isEnabled());
+        
+        return ResponseEntity.ok(createResponse(true, "查询成功", data));
+    }
+
+    /**
+     * 获取出站帧合并统计
+     * 
+     * GET /api/websocket/batching/stats
+     * 
+     * @return 合并配置、写出次数与平均每次写出的帧数
+     */
+    @GetMapping("/batching/stats")
+    public ResponseEntity<Map<String, Object>> getBatchingStats() {
+        return ResponseEntity.ok(createResponse(true, "查询成功", frameBatching.snapshot()));
+    }
+
+    /**
+     * 获取原生端点各消息类型的处理统计
+     * 
+     * GET /api/websocket/dispatch/stats
+     * 
+     * @return 每种消息类型的执行方式、处理数、失败数、平均排队与处理耗时
+     */
+    @GetMapping("/dispatch/stats")
+    public ResponseEntity<Map<String, Object>> getDispatchStats() {
+        return ResponseEntity.ok(createResponse(true, "查询成功", webSocketHandler.getDispatchStats()));
+    }
+
+    /**
+     * 获取连接心跳统计
+     * 
+     * GET /api/websocket/heartbeat/stats
+     * 
+     * @return 被监控的连接数、发送的 ping 数与回收的死连接数
+     */
+    @GetMapping("/heartbeat/stats")
+    public ResponseEntity<Map<String, Object>> getHeartbeatStats() {
+        return ResponseEntity.ok(createResponse(true, "查询成功", heartbeatMonitor.snapshot()));
+    }
+
+    /**
+     * 获取限流统计
+     * 
+     * GET /api/websocket/rate-limit/stats
+     * 
+     * @return 各预算类别的放行数、按用户 / IP 拒绝数与活跃令牌桶数
+     */
+    @GetMapping("/rate-limit/stats")
+    public ResponseEntity<Map<String, Object>> getRateLimitStats() {
+        return ResponseEntity.ok(createResponse(true, "查询成功", rateLimiter.snapshot()));
+    }
+
+    /**
+     * 获取 AI 轮次调度统计
+     * 
+     * GET /api/websocket/ai-scheduler/stats
+     * 
+     * @return 忙碌线程数，以及各优先级的排队数、完成数、拒绝数与平均排队耗时
+     */
+    @GetMapping("/ai-scheduler/stats")
+    public ResponseEntity<Map<String, Object>> getAiSchedulerStats() {
+        return ResponseEntity.ok(createResponse(true, "查询成功", turnScheduler.getStats()));
+    }
+
+    /**
+     * 获取模型熔断器状态
+     * 
+     * GET /api/websocket/circuit-breakers/stats
+     * 
+     * @return 各模型熔断器的状态、窗口内失败率与慢调用率、拒绝次数与打开次数
+     */
+    @GetMapping("/circuit-breakers/stats")
+    public ResponseEntity<Map<String, Object>> getCircuitBreakerStats() {
+        return ResponseEntity.ok(createResponse(true, "查询成功", circuitBreakers.snapshot()));
+    }
+
+    /**
+     * 获取模型连接预热状态
+     * 
+     * GET /api/websocket/model-connections/stats
+     * 
+     * @return 预热地址、并发数、预热次数与最近一次成功数和耗时
+     */
+    @GetMapping("/model-connections/stats")
+    public ResponseEntity<Map<String, Object>> getModelConnectionStats() {
+        return ResponseEntity.ok(createResponse(true, "查询成功", connectionWarmer.snapshot()));
+    }
+
+    /**
+     * 获取流式对话（/api/chat/stream）统计
+     * 
+     * GET /api/websocket/chat-stream/stats
+     * 
+     * @return 进行中与峰值流数、完成 / 取消 / 拒绝 / 转发数，以及当前 JVM 线程数
+     */
+    @GetMapping("/chat-stream/stats")
+    public ResponseEntity<Map<String, Object>> getChatStreamStats() {
+        return ResponseEntity.ok(createResponse(true, "查询成功", chatStreamService.getStats()));
+    }
+
+    /**
+     * 获取结构化问诊统计
+     * 
+     * GET /api/websocket/questionnaires/stats
+     * 
+     * @return 已加载的问诊表数、进行中的问诊数，以及开始 / 本地追问 / 完成 / 放弃次数
+     */
+    @GetMapping("/questionnaires/stats")
+    public ResponseEntity<Map<String, Object>> getQuestionnaireStats() {
+        return ResponseEntity.ok(createResponse(true, "查询成功", questionnaireService.snapshot()));
+    }
+
+    /**
+     * 获取本地症状提取统计
+     * 
+     * GET /api/websocket/symptoms/stats
+     * 
+     * @return 词典规模、Trie 槽位数，以及提取次数与提取出的症状 / 否定症状数
+     */
+    @GetMapping("/symptoms/stats")
+    public ResponseEntity<Map<String, Object>> getSymptomStats() {
+        return ResponseEntity.ok(createResponse(true, "查询成功", symptomExtractor.snapshot()));
+    }
+
     /**
      * 批量发送消息
      * 
@@ -145,42 +387,51 @@ public class WebSocketApiController {
      * }
      * 
      * @param request 请求体
-     * @return 发送结果
+     * @return 发送结果（各用户的转发并发进行，全部确认或超时后返回）
      */
     @PostMapping("/batch-send")
-    public ResponseEntity<Map<String, Object>> batchSend(@RequestBody BatchSendRequest request) {
-        log.info("REST API: 批量发送消息给 {} 个用户", request.getUserIds().size());
-        
+    public CompletableFuture<ResponseEntity<Map<String, Object>>> batchSend(@RequestBody BatchSendRequest request) {
         if (request.getUserIds() == null || request.getUserIds().isEmpty()) {
-            return ResponseEntity.badRequest().body(createResponse(false, "userIds 不能为空", null));
+            return CompletableFuture.completedFuture(
+                ResponseEntity.badRequest().body(createResponse(false, "userIds 不能为空", null)));
         }
         
         if (request.getMessage() == null || request.getMessage().isEmpty()) {
-            return ResponseEntity.badRequest().body(createResponse(false, "message 不能为空", null));
+            return CompletableFuture.completedFuture(
+                ResponseEntity.badRequest().body(createResponse(false, "message 不能为空", null)));
         }
         
-        int successCount = 0;
-        int failCount = 0;
+        log.info("REST API: 批量发送消息给 {} 个用户", request.getUserIds().size());
         
-        for (String userId : request.getUserIds()) {
-            boolean success = webSocketHandler.sendToUser(userId, request.getMessage());
-            if (success) {
-                successCount++;
-            } else {
-                failCount++;
-            }
-        }
+        List<CompletableFuture<DeliveryStatus>> futures = request.getUserIds().stream()
+            .map(userId -> webSocketHandler.sendToUser(userId, request.getMessage()))
+            .toList();
         
-        Map<String, Object> data = new HashMap<>();
-        data.put("totalCount", request.getUserIds().size());
-        data.put("successCount", successCount);
-        data.put("failCount", failCount);
-        
-        return ResponseEntity.ok(createResponse(
-            true, 
-            String.format("发送完成：成功 %d，失败 %d", successCount, failCount), 
-            data
-        ));
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(ignored -> {
+            int successCount = 0;
+            int storedCount = 0;
+            int failCount = 0;
+            
+            for (CompletableFuture<DeliveryStatus> future : futures) {
+                switch (future.join()) {
+                    case DELIVERED -> successCount++;
+                    case STORED -> storedCount++;
+                    case FAILED -> failCount++;
+                }
+            }
+            
+            Map<String, Object> data = new HashMap<>();
+            data.put("totalCount", request.getUserIds().size());
+            data.put("successCount", successCount);
+            data.put("storedCount", storedCount);
+            data.put("failCount", failCount);
+            
+            return ResponseEntity.ok(createResponse(
+                true, 
+                String.format("发送完成：成功 %d，离线存储 %d，失败 %d", successCount, storedCount, failCount), 
+                data
+            ));
+        });
     }
 
     // ==================== 辅助方法 ====================
@@ -242,6 +493,21 @@ public class WebSocketApiController {
         }
     }
 
+    /**
+     * 批量在线状态查询请求
+     */
+    public static class BatchOnlineRequest {
+        private java.util.List<String> userIds;
+
+        public java.util.List<String> getUserIds() {
+            return userIds;
+        }
+
+        public void setUserIds(java.util.List<String> userIds) {
+            this.userIds = userIds;
+        }
+    }
+
     /**
      * 批量发送消息请求
      */
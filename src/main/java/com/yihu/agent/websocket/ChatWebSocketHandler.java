@@ -1,18 +1,41 @@
 package com.yihu.agent.websocket;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yihu.agent.ai.model.ChatResponse;
+import com.yihu.agent.websocket.codec.FrameCodec;
+import com.yihu.agent.websocket.codec.FrameCodecRegistry;
+import com.yihu.agent.websocket.codec.FrameReader;
+import com.yihu.agent.websocket.codec.PreEncodedFrame;
+import com.yihu.agent.websocket.delivery.ReplayBufferRegistry;
+import com.yihu.agent.websocket.delivery.ReplayRingBuffer;
+import com.yihu.agent.websocket.dispatch.DispatchMode;
+import com.yihu.agent.websocket.dispatch.MessageHandler;
+import com.yihu.agent.websocket.dispatch.MessageHandlerRegistry;
+import com.yihu.agent.websocket.handshake.HandshakeContextInterceptor;
+import com.yihu.agent.websocket.offline.OfflineMessage;
+import com.yihu.agent.websocket.offline.OfflineMessageLog;
+import com.yihu.agent.websocket.presence.OnlinePresenceIndex;
+import com.yihu.agent.websocket.ratelimit.RateLimitCategory;
+import com.yihu.agent.websocket.ratelimit.RateLimiter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.SubProtocolCapable;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
-import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
 
 import java.io.IOException;
-import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -31,22 +54,107 @@ import java.util.concurrent.ConcurrentHashMap;
  *   "toUserId": "接收者ID" (仅private类型需要),
  *   "content": "消息内容"
  * }
+ * 
+ * 传输编码（通过 Sec-WebSocket-Protocol 协商）：
+ * - healthcare.json.v1：JSON 文本帧（默认）
+ * - healthcare.cbor.v1：CBOR 二进制帧，出站帧为 {"seq": N, "frame": {...}}
+ * 
+ * 限流：私信 / 广播按用户与 IP 的聊天预算取令牌，超出时回复 type 为 THROTTLED 的帧（metadata.retryAfterMs）
+ * 
+ * 入站分发：连接参数在握手时由 {@link HandshakeContextInterceptor} 解析到会话属性；
+ * 消息用预构建的读取器解析后按 type 交给 {@link MessageHandlerRegistry} 中注册的处理器，
+ * 各类型有独立的线程池与统计，新类型通过 {@link #registerMessageHandler} 注册
+ * 
+ * 出站帧合并（healthcare.websocket.batching.enabled 且握手时带 batch=true）：
+ * 短时间内的多帧合并为一个数组帧（JSON 数组 / CBOR 数组）下发，客户端需按数组逐个处理
  */
 @Component
 @Slf4j
-public class ChatWebSocketHandler extends TextWebSocketHandler {
+public class ChatWebSocketHandler extends AbstractWebSocketHandler implements SubProtocolCapable {
     
     // 用户ID -> WebSocketSession 的映射（线程安全）
     private static final ConcurrentHashMap<String, WebSocketSession> userSessions = new ConcurrentHashMap<>();
     
-    // 用于 JSON 序列化/反序列化
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    // 按会话协商的子协议选择 JSON / CBOR 编解码器
+    @Autowired
+    private FrameCodecRegistry codecRegistry;
+    
+    // 本节点之外的投递（目标用户在其他节点时转发；由集群路由启动时注册）
+    private volatile RemoteDelivery remoteDelivery = RemoteDelivery.LOCAL_ONLY;
+
+    // 在线状态位图索引（供批量在线查询使用）
+    @Autowired
+    private OnlinePresenceIndex presenceIndex;
+
+    // 离线消息日志（目标用户不在线时存储，上线后投递）
+    @Autowired
+    private OfflineMessageLog offlineLog;
+
+    // 上线时每批投递的离线消息条数
+    @Value("${healthcare.offline.drain-batch-size:100}")
+    private int offlineDrainBatchSize;
+
+    // 出站帧序号与断线重放缓冲区
+    @Autowired
+    private ReplayBufferRegistry replayRegistry;
+
+    // 按用户与 IP 的消息限流
+    @Autowired
+    private RateLimiter rateLimiter;
+
+    // 私信 / 广播处理器的分段线程数
+    @Value("${healthcare.websocket.dispatch.threads:4}")
+    private int dispatchThreads;
+
+    // ChatMessage 的预构建读取器
+    private FrameReader<ChatMessage> chatMessageReader;
+
+    // 按消息类型注册的处理器
+    private MessageHandlerRegistry<ChatMessage> messageHandlers;
+
+    /**
+     * 注册内置的消息处理器
+     * 1. private / broadcast：转发、离线存储与扇出可能较慢，在各自的分段线程池上执行，同一会话内保持顺序
+     * 2. ping：只回复 pong，在接收线程上直接执行
+     */
+    @PostConstruct
+    public void initDispatch() {
+        chatMessageReader = codecRegistry.readerFor(ChatMessage.class);
+        messageHandlers = new MessageHandlerRegistry<>("ws-raw", this::replyHandlerError);
+        messageHandlers.register("private", DispatchMode.SESSION_ORDERED, dispatchThreads,
+            (session, message) -> handlePrivateMessage(message));
+        messageHandlers.register("broadcast", DispatchMode.SESSION_ORDERED, dispatchThreads,
+            (session, message) -> handleBroadcastMessage(message));
+        // 应用层心跳（浏览器无法发送 WebSocket ping 帧），活跃时间已由 HeartbeatMonitor 刷新
+        messageHandlers.register("ping", DispatchMode.INLINE, 0,
+            (session, message) -> sendUnsequenced(session, Map.of("type", "pong", "timestamp", System.currentTimeMillis())));
+    }
+
+    @PreDestroy
+    public void shutdownDispatch() {
+        messageHandlers.shutdown();
+    }
+
+    /**
+     * 注册（或替换）一种消息类型的处理器
+     */
+    public void registerMessageHandler(String type, DispatchMode mode, int threads, MessageHandler<ChatMessage> handler) {
+        messageHandlers.register(type, mode, threads, handler);
+    }
+
+    /**
+     * 各消息类型的处理统计
+     */
+    public Map<String, Object> getDispatchStats() {
+        return messageHandlers.snapshot();
+    }
 
     /**
      * 连接建立成功时调用
-     * 从 URL 参数中提取 userId，建立用户映射关系
+     * 读取握手时解析的 userId，建立用户映射关系
      * 
      * 连接示例：ws://localhost:8080/ws/chat-raw?userId=user123
+     * 断线重连：ws://localhost:8080/ws/chat-raw?userId=user123&lastSeq=42&epoch=1700000000000
      */
     @Override
     public void afterConnectionEstablished(@NonNull WebSocketSession session) throws Exception {
@@ -54,7 +162,7 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
         
         if (userId == null || userId.isEmpty()) {
             log.warn("连接缺少 userId 参数，拒绝连接: {}", session.getId());
-            session.sendMessage(new TextMessage("{\"error\": \"连接必须包含 userId 参数\"}"));
+            sendUnsequenced(session, Map.of("error", "连接必须包含 userId 参数"));
             session.close();
             return;
         }
@@ -63,62 +171,130 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
         WebSocketSession oldSession = userSessions.get(userId);
         if (oldSession != null && oldSession.isOpen()) {
             log.info("用户 {} 重复连接，关闭旧连接", userId);
-            oldSession.sendMessage(new TextMessage("{\"info\": \"您的账号在其他地方登录\"}"));
+            sendUnsequenced(oldSession, Map.of("info", "您的账号在其他地方登录"));
             oldSession.close();
         }
         
-        // 保存新连接
-        userSessions.put(userId, session);
-        log.info("用户 {} 连接成功，当前在线人数: {}", userId, userSessions.size());
+        // 会话在线期间保留重放缓冲区，不因长时间没有消息被回收
+        replayRegistry.sessionOpened(ReplayBufferRegistry.RAW_CHANNEL, userId, session.getId());
         
-        // 发送欢迎消息和在线用户列表
-        WelcomeMessage welcome = new WelcomeMessage(
-            "连接成功",
-            userId,
-            userSessions.size(),
-            userSessions.keySet()
-        );
-        session.sendMessage(new TextMessage(objectMapper.writeValueAsString(welcome)));
+        // 发布新连接、补发、欢迎消息与离线投递都在该用户的发送锁（重放缓冲区）内完成：
+        // 看到新连接的发送方要等离线消息投递完才能发送，保证积压的消息先于新消息到达
+        ReplayRingBuffer<EncodedFrame> buffer = replayRegistry.buffer(ReplayBufferRegistry.RAW_CHANNEL, userId);
+        WebSocketSession replaced;
+        synchronized (buffer) {
+            replaced = userSessions.put(userId, session);
+            
+            // 断线重连时先补发缺失的帧
+            replayMissedFrames(userId, session);
+            
+            // 发送欢迎消息和在线用户列表
+            WelcomeMessage welcome = new WelcomeMessage(
+                "连接成功",
+                userId,
+                userSessions.size(),
+                userSessions.keySet(),
+                buffer.getEpoch()
+            );
+            sendFrame(userId, session, welcome);
+            
+            // 投递离线期间积压的消息
+            deliverOfflineMessages(userId, session);
+        }
+        
+        // 先记录新连接再移除被替换的旧连接，避免在线状态闪断
+        presenceIndex.markOnline(userId, session.getId());
+        if (replaced != null) {
+            presenceIndex.markOffline(userId, replaced.getId());
+        }
+        log.info("用户 {} 连接成功，当前在线人数: {}", userId, userSessions.size());
         
-        // 通知其他用户有新用户上线
+        // 通知其他用户有新用户上线（在锁外进行，广播需要逐个获取其他用户的发送锁）
         notifyUserOnline(userId);
     }
 
     /**
-     * 处理接收到的文本消息
-     * 支持两种消息类型：
-     * 1. private - 点对点私信
-     * 2. broadcast - 广播消息
+     * 服务端支持的子协议（CBOR 优先）
+     */
+    @Override
+    @NonNull
+    public List<String> getSubProtocols() {
+        return codecRegistry.getSubProtocols();
+    }
+
+    /**
+     * 处理接收到的文本消息（JSON）
      */
     @Override
     protected void handleTextMessage(@NonNull WebSocketSession session, @NonNull TextMessage message) throws Exception {
-        String payload = message.getPayload();
+        if (log.isDebugEnabled()) {
+            log.debug("收到消息来自 {}: {}", getUserIdFromSession(session), message.getPayload());
+        }
+        dispatch(session, message);
+    }
+
+    /**
+     * 处理接收到的二进制消息（CBOR）
+     */
+    @Override
+    protected void handleBinaryMessage(@NonNull WebSocketSession session, @NonNull BinaryMessage message) throws Exception {
+        if (log.isDebugEnabled()) {
+            log.debug("收到二进制消息来自 {}: {} 字节", getUserIdFromSession(session), message.getPayloadLength());
+        }
+        dispatch(session, message);
+    }
+
+    /**
+     * 解码并分发消息，文本与二进制帧共用
+     * 内置消息类型：
+     * 1. private - 点对点私信
+     * 2. broadcast - 广播消息
+     * 3. ping - 应用层心跳，回复 pong（不占用序号）
+     */
+    private void dispatch(WebSocketSession session, WebSocketMessage<?> message) throws IOException {
         String fromUserId = getUserIdFromSession(session);
         
-        log.info("收到消息来自 {}: {}", fromUserId, payload);
-        
+        ChatMessage chatMessage;
         try {
-            // 解析消息
-            ChatMessage chatMessage = objectMapper.readValue(payload, ChatMessage.class);
-            
-            // 设置发送者ID（防止客户端伪造）
-            chatMessage.setFromUserId(fromUserId);
-            
-            // 根据消息类型分发
-            switch (chatMessage.getType()) {
-                case "private":
-                    handlePrivateMessage(chatMessage);
-                    break;
-                case "broadcast":
-                    handleBroadcastMessage(chatMessage);
-                    break;
-                default:
-                    log.warn("未知的消息类型: {}", chatMessage.getType());
-                    session.sendMessage(new TextMessage("{\"error\": \"未知的消息类型\"}"));
-            }
+            chatMessage = chatMessageReader.read(codecRegistry.forSession(session), message);
         } catch (Exception e) {
-            log.error("消息处理失败", e);
-            session.sendMessage(new TextMessage("{\"error\": \"消息格式错误: " + e.getMessage() + "\"}"));
+            log.warn("消息解析失败，用户: {}，错误: {}", fromUserId, e.getMessage());
+            sendFrame(fromUserId, session, Map.of("error", "消息格式错误: " + e.getMessage()));
+            return;
+        }
+        
+        // 设置发送者ID（防止客户端伪造）
+        chatMessage.setFromUserId(fromUserId);
+        
+        // 心跳不计入限流；超出聊天预算的消息直接回复限流帧（不占用序号）
+        if (!"ping".equals(chatMessage.getType())) {
+            RateLimiter.Decision decision = rateLimiter.acquire(RateLimitCategory.CHAT, fromUserId,
+                HandshakeContextInterceptor.clientIp(session));
+            if (!decision.allowed()) {
+                log.warn("消息被限流，用户: {}，维度: {}，retryAfterMs: {}", fromUserId, decision.limitedBy(), decision.retryAfterMs());
+                sendUnsequenced(session, ChatResponse.throttled(null, decision.retryAfterMs()));
+                return;
+            }
+        }
+        
+        if (!messageHandlers.dispatch(chatMessage.getType(), session, chatMessage)) {
+            log.warn("未知的消息类型: {}", chatMessage.getType());
+            sendFrame(fromUserId, session, Map.of("error", "未知的消息类型"));
+        }
+    }
+    
+    /**
+     * 处理器执行失败时给发送者回复错误帧
+     */
+    private void replyHandlerError(WebSocketSession session, Exception e) {
+        String userId = getUserIdFromSession(session);
+        if (userId == null || !session.isOpen()) {
+            return;
+        }
+        try {
+            sendFrame(userId, session, Map.of("error", "消息处理失败: " + e.getMessage()));
+        } catch (IOException ex) {
+            log.error("发送错误回复失败，用户: {}", userId, ex);
         }
     }
 
@@ -128,9 +304,13 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
     @Override
     public void afterConnectionClosed(@NonNull WebSocketSession session, @NonNull CloseStatus status) throws Exception {
         String userId = getUserIdFromSession(session);
-        
         if (userId != null) {
-            userSessions.remove(userId);
+            replayRegistry.sessionClosed(ReplayBufferRegistry.RAW_CHANNEL, userId, session.getId());
+        }
+        
+        // 只移除当前会话自身的映射，避免被顶替的旧连接关闭时误删新连接
+        if (userId != null && userSessions.remove(userId, session)) {
+            presenceIndex.markOffline(userId, session.getId());
             log.info("用户 {} 断开连接，状态: {}，当前在线人数: {}", userId, status, userSessions.size());
             
             // 通知其他用户该用户下线
@@ -150,8 +330,8 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
             session.close();
         }
         
-        if (userId != null) {
-            userSessions.remove(userId);
+        if (userId != null && userSessions.remove(userId, session)) {
+            presenceIndex.markOffline(userId, session.getId());
         }
     }
 
@@ -180,36 +360,78 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
                 message.getContent(),
                 System.currentTimeMillis()
             );
-            targetSession.sendMessage(new TextMessage(objectMapper.writeValueAsString(response)));
+            sendFrame(toUserId, targetSession, response);
             log.info("私信已发送: {} -> {}", fromUserId, toUserId);
             
             // 可选：给发送者发送已读回执
-            WebSocketSession senderSession = userSessions.get(fromUserId);
-            if (senderSession != null && senderSession.isOpen()) {
-                MessageResponse receipt = new MessageResponse(
-                    "receipt",
-                    "system",
-                    fromUserId,
-                    "消息已发送给 " + toUserId,
-                    System.currentTimeMillis()
-                );
-                senderSession.sendMessage(new TextMessage(objectMapper.writeValueAsString(receipt)));
-            }
+            sendReceipt(fromUserId, toUserId);
+        } else if (remoteDelivery.isRemote(toUserId)) {
+            // 目标用户连接在其他节点上，转发并根据确认结果回执
+            MessageResponse response = new MessageResponse(
+                "private",
+                fromUserId,
+                toUserId,
+                message.getContent(),
+                System.currentTimeMillis()
+            );
+            remoteDelivery.forwardToUser(toUserId, response).thenAccept(status -> {
+                try {
+                    if (status == DeliveryStatus.DELIVERED) {
+                        log.info("私信已转发: {} -> {}", fromUserId, toUserId);
+                        sendReceipt(fromUserId, toUserId);
+                    } else {
+                        log.info("私信转发未确认，转入离线存储: {} -> {}", fromUserId, toUserId);
+                        notifyStored(fromUserId, toUserId, storeOffline(toUserId, response));
+                    }
+                } catch (IOException e) {
+                    log.error("发送转发回执失败，用户: {}", fromUserId, e);
+                }
+            });
         } else {
-            log.warn("目标用户 {} 不在线", toUserId);
+            log.info("目标用户 {} 不在线，私信转入离线存储", toUserId);
             
-            // 通知发送者目标用户不在线
-            WebSocketSession senderSession = userSessions.get(fromUserId);
-            if (senderSession != null && senderSession.isOpen()) {
-                MessageResponse error = new MessageResponse(
-                    "error",
-                    "system",
-                    fromUserId,
-                    "用户 " + toUserId + " 不在线",
-                    System.currentTimeMillis()
-                );
-                senderSession.sendMessage(new TextMessage(objectMapper.writeValueAsString(error)));
-            }
+            MessageResponse response = new MessageResponse(
+                "private",
+                fromUserId,
+                toUserId,
+                message.getContent(),
+                System.currentTimeMillis()
+            );
+            notifyStored(fromUserId, toUserId, storeOffline(toUserId, response));
+        }
+    }
+    
+    /**
+     * 给发送者发送已送达回执
+     */
+    private void sendReceipt(String fromUserId, String toUserId) throws IOException {
+        WebSocketSession senderSession = userSessions.get(fromUserId);
+        if (senderSession != null && senderSession.isOpen()) {
+            MessageResponse receipt = new MessageResponse(
+                "receipt",
+                "system",
+                fromUserId,
+                "消息已发送给 " + toUserId,
+                System.currentTimeMillis()
+            );
+            sendFrame(fromUserId, senderSession, receipt);
+        }
+    }
+    
+    /**
+     * 通知发送者消息已离线存储（或存储失败）
+     */
+    private void notifyStored(String fromUserId, String toUserId, boolean stored) throws IOException {
+        WebSocketSession senderSession = userSessions.get(fromUserId);
+        if (senderSession != null && senderSession.isOpen()) {
+            MessageResponse notice = new MessageResponse(
+                stored ? "stored" : "error",
+                "system",
+                fromUserId,
+                stored ? "用户 " + toUserId + " 不在线，消息已离线存储，上线后送达" : "用户 " + toUserId + " 不在线",
+                System.currentTimeMillis()
+            );
+            sendFrame(fromUserId, senderSession, notice);
         }
     }
     
@@ -225,20 +447,8 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
             System.currentTimeMillis()
         );
         
-        String jsonMessage = objectMapper.writeValueAsString(response);
-        int successCount = 0;
-        
-        for (Map.Entry<String, WebSocketSession> entry : userSessions.entrySet()) {
-            WebSocketSession session = entry.getValue();
-            if (session.isOpen()) {
-                try {
-                    session.sendMessage(new TextMessage(jsonMessage));
-                    successCount++;
-                } catch (IOException e) {
-                    log.error("广播消息失败，用户: {}", entry.getKey(), e);
-                }
-            }
-        }
+        int successCount = broadcastLocal(new PreEncodedFrame(response));
+        remoteDelivery.broadcastToOtherNodes(response);
         
         log.info("广播消息已发送给 {} 个用户", successCount);
     }
@@ -254,12 +464,12 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
             userSessions.size()
         );
         
-        String jsonMessage = objectMapper.writeValueAsString(notification);
+        PreEncodedFrame frame = new PreEncodedFrame(notification);
         
         for (Map.Entry<String, WebSocketSession> entry : userSessions.entrySet()) {
             // 不通知自己
             if (!entry.getKey().equals(userId) && entry.getValue().isOpen()) {
-                entry.getValue().sendMessage(new TextMessage(jsonMessage));
+                sendFrame(entry.getKey(), entry.getValue(), frame);
             }
         }
     }
@@ -275,54 +485,77 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
             userSessions.size()
         );
         
-        String jsonMessage = objectMapper.writeValueAsString(notification);
+        PreEncodedFrame frame = new PreEncodedFrame(notification);
         
         for (Map.Entry<String, WebSocketSession> entry : userSessions.entrySet()) {
             if (entry.getValue().isOpen()) {
-                entry.getValue().sendMessage(new TextMessage(jsonMessage));
+                sendFrame(entry.getKey(), entry.getValue(), frame);
             }
         }
     }
 
     // ==================== 公共API方法 ====================
     
+    /**
+     * 注册本节点之外的投递（集群路由启动时调用）
+     */
+    public void setRemoteDelivery(RemoteDelivery remoteDelivery) {
+        this.remoteDelivery = remoteDelivery;
+    }
+
     /**
      * 向指定用户发送消息（供外部服务调用）
+     * 用户连接在其他节点上时经集群转发；不在线或转发未确认时写入离线消息日志，上线后送达
+     * 
+     * 转发不阻塞调用线程：结果在目标节点确认（或超时）后完成，批量发送时可并发等待
      * 
      * @param userId 目标用户ID
      * @param content 消息内容
-     * @return 是否发送成功
+     * @return 投递结果
      */
-    public boolean sendToUser(String userId, String content) {
+    public CompletableFuture<DeliveryStatus> sendToUser(String userId, String content) {
         WebSocketSession session = userSessions.get(userId);
+        MessageResponse response = new MessageResponse(
+            "system",
+            "system",
+            userId,
+            content,
+            System.currentTimeMillis()
+        );
         
         if (session != null && session.isOpen()) {
             try {
-                MessageResponse response = new MessageResponse(
-                    "system",
-                    "system",
-                    userId,
-                    content,
-                    System.currentTimeMillis()
-                );
-                session.sendMessage(new TextMessage(objectMapper.writeValueAsString(response)));
+                sendFrame(userId, session, response);
                 log.info("系统消息已发送给用户: {}", userId);
-                return true;
+                return CompletableFuture.completedFuture(DeliveryStatus.DELIVERED);
             } catch (IOException e) {
                 log.error("发送消息失败，用户: {}", userId, e);
-                return false;
+                return CompletableFuture.completedFuture(DeliveryStatus.FAILED);
             }
         }
         
-        log.warn("用户 {} 不在线，无法发送消息", userId);
-        return false;
+        // 用户连接在其他节点上时转发，目标节点确认后完成（超时由转发器控制）
+        if (remoteDelivery.isRemote(userId)) {
+            return remoteDelivery.forwardToUser(userId, response).thenApply(status -> {
+                if (status == DeliveryStatus.DELIVERED) {
+                    log.info("系统消息已转发给用户: {}", userId);
+                    return status;
+                }
+                log.info("系统消息转发未确认，转入离线存储: {}", userId);
+                return storeOffline(userId, response) ? DeliveryStatus.STORED : DeliveryStatus.FAILED;
+            });
+        }
+        
+        log.info("用户 {} 不在线，系统消息转入离线存储", userId);
+        return CompletableFuture.completedFuture(
+            storeOffline(userId, response) ? DeliveryStatus.STORED : DeliveryStatus.FAILED);
     }
     
     /**
-     * 广播消息给所有在线用户
+     * 广播消息给所有在线用户（集群内其他节点各自向本地连接广播）
      * 
      * @param content 消息内容
-     * @return 成功发送的用户数量
+     * @return 本节点成功发送的用户数量
      */
     public int broadcastToAll(String content) {
         MessageResponse response = new MessageResponse(
@@ -333,26 +566,67 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
             System.currentTimeMillis()
         );
         
-        int successCount = 0;
+        int successCount = broadcastLocal(new PreEncodedFrame(response));
+        int nodes = remoteDelivery.broadcastToOtherNodes(response);
         
+        log.info("系统广播已发送给 {} 个用户，并转发到 {} 个节点", successCount, nodes);
+        return successCount;
+    }
+    
+    /**
+     * 投递其他节点转发来的消息（JSON 消息体）
+     * 
+     * @return 用户在本节点在线并发送成功时为 DELIVERED，否则 FAILED（由发送节点降级处理）
+     */
+    public DeliveryStatus deliverForwarded(String userId, byte[] jsonBody) {
+        WebSocketSession session = userSessions.get(userId);
+        if (session == null || !session.isOpen()) {
+            return DeliveryStatus.FAILED;
+        }
         try {
-            String jsonMessage = objectMapper.writeValueAsString(response);
-            
-            for (Map.Entry<String, WebSocketSession> entry : userSessions.entrySet()) {
-                if (entry.getValue().isOpen()) {
-                    try {
-                        entry.getValue().sendMessage(new TextMessage(jsonMessage));
-                        successCount++;
-                    } catch (IOException e) {
-                        log.error("广播失败，用户: {}", entry.getKey(), e);
-                    }
+            sendEncoded(userId, session, codecRegistry.json(), jsonBody);
+            return DeliveryStatus.DELIVERED;
+        } catch (IOException e) {
+            log.error("投递转发消息失败，用户: {}", userId, e);
+            return DeliveryStatus.FAILED;
+        }
+    }
+    
+    /**
+     * 向本节点连接广播其他节点转发来的消息（JSON 消息体）
+     * 
+     * @return 成功发送的用户数量
+     */
+    public int broadcastForwarded(byte[] jsonBody) {
+        int successCount = 0;
+        for (Map.Entry<String, WebSocketSession> entry : userSessions.entrySet()) {
+            if (entry.getValue().isOpen()) {
+                try {
+                    sendEncoded(entry.getKey(), entry.getValue(), codecRegistry.json(), jsonBody);
+                    successCount++;
+                } catch (IOException e) {
+                    log.error("广播失败，用户: {}", entry.getKey(), e);
+                }
+            }
+        }
+        return successCount;
+    }
+    
+    /**
+     * 向本节点全部连接广播
+     */
+    private int broadcastLocal(PreEncodedFrame frame) {
+        int successCount = 0;
+        for (Map.Entry<String, WebSocketSession> entry : userSessions.entrySet()) {
+            if (entry.getValue().isOpen()) {
+                try {
+                    sendFrame(entry.getKey(), entry.getValue(), frame);
+                    successCount++;
+                } catch (IOException e) {
+                    log.error("广播失败，用户: {}", entry.getKey(), e);
                 }
             }
-        } catch (Exception e) {
-            log.error("广播消息序列化失败", e);
         }
-        
-        log.info("系统广播已发送给 {} 个用户", successCount);
         return successCount;
     }
     
@@ -378,53 +652,176 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
         return session != null && session.isOpen();
     }
 
-    // ==================== 辅助方法 ====================
+    // ==================== 帧编码、序号与重放 ====================
+    
+    /**
+     * 发送带序号的帧（按会话协商的编码序列化）
+     */
+    private void sendFrame(String userId, WebSocketSession session, Object frame) throws IOException {
+        sendFrame(userId, session, new PreEncodedFrame(frame));
+    }
+    
+    /**
+     * 发送带序号的预编码帧（广播时同一编码只序列化一次）
+     */
+    private void sendFrame(String userId, WebSocketSession session, PreEncodedFrame frame) throws IOException {
+        FrameCodec codec = codecRegistry.forSession(session);
+        sendEncoded(userId, session, codec, frame.bodyFor(codec));
+    }
     
     /**
-     * 从 WebSocketSession 中提取 userId
-     * 支持从 URL 查询参数中获取
+     * 发送已编码的消息体
+     * 分配该用户的帧序号并拼接到消息体上，同时记录到重放缓冲区
      * 
-     * @param session WebSocket会话
-     * @return 用户ID，如果未找到则返回 null
+     * @param userId 接收方用户ID
+     * @param session 接收方会话
+     * @param codec 消息体的编码
+     * @param body 不含序号的消息体
      */
+    private void sendEncoded(String userId, WebSocketSession session, FrameCodec codec, byte[] body) throws IOException {
+        ReplayRingBuffer<EncodedFrame> buffer = replayRegistry.buffer(ReplayBufferRegistry.RAW_CHANNEL, userId);
+        buffer.append(
+            seq -> new EncodedFrame(seq, codec, body),
+            frame -> writeFrame(session, frame)
+        );
+    }
+    
     /**
-     * 从 WebSocketSession URI 中提取 userId 参数
-     * 支持 ws://localhost:8080/ws/chat-raw?userId=user123 的场景
-     *
-     * @param session WebSocketSession 对象
-     * @return userId，如果不存在则返回 null
+     * 按会话当前的编码写出帧，编码不同时（跨协议重放）先转码
      */
-    private String getUserIdFromSession(WebSocketSession session) {
+    private void writeFrame(WebSocketSession session, EncodedFrame frame) throws IOException {
+        FrameCodec codec = codecRegistry.forSession(session);
+        byte[] body = codec.transcode(frame.body(), frame.codec());
+        session.sendMessage(codec.toMessage(codec.withSeq(frame.seq(), body)));
+    }
+    
+    /**
+     * 发送不占用序号的帧（连接被拒绝、被顶替、重放重置等控制消息）
+     */
+    private void sendUnsequenced(WebSocketSession session, Object frame) throws IOException {
+        FrameCodec codec = codecRegistry.forSession(session);
+        session.sendMessage(codec.toMessage(codec.encodeBody(frame)));
+    }
+    
+    /**
+     * 断线重连时按 lastSeq 补发缺失的帧
+     * 缺口已超出缓冲区或 epoch 不一致时，通知客户端需要全量同步
+     */
+    private void replayMissedFrames(String userId, WebSocketSession session) throws IOException {
+        String lastSeq = HandshakeContextInterceptor.param(session, HandshakeContextInterceptor.LAST_SEQ);
+        if (lastSeq == null) {
+            return;
+        }
+        
+        ReplayRingBuffer<EncodedFrame> buffer = replayRegistry.buffer(ReplayBufferRegistry.RAW_CHANNEL, userId);
         try {
-            // 获取客户端连接时携带的 URI
-            URI uri = session.getUri();
-            if (uri != null) {
-                // 解析查询参数（?userId=xxx）
-                Map<String, String> queryParams = UriComponentsBuilder.fromUri(uri)
-                        .build()
-                        .getQueryParams()
-                        .toSingleValueMap();
-                // 返回 userId 参数
-                return queryParams.get("userId");
+            String epoch = HandshakeContextInterceptor.param(session, HandshakeContextInterceptor.EPOCH);
+            int replayed = buffer.replay(
+                Long.parseLong(lastSeq),
+                epoch != null ? Long.parseLong(epoch) : buffer.getEpoch(),
+                frame -> writeFrame(session, frame)
+            );
+            if (replayed >= 0) {
+                log.info("用户 {} 重连，补发 {} 帧 (lastSeq={})", userId, replayed, lastSeq);
+                return;
+            }
+        } catch (NumberFormatException e) {
+            log.warn("用户 {} 重连参数格式错误: lastSeq={}", userId, lastSeq);
+        }
+        
+        log.info("用户 {} 重连缺口无法补齐，通知客户端全量同步 (lastSeq={})", userId, lastSeq);
+        sendUnsequenced(session, Map.of(
+            "type", "replay_reset",
+            "epoch", buffer.getEpoch(),
+            "seq", buffer.getLastSeq()
+        ));
+    }
+
+    // ==================== 离线消息 ====================
+    
+    /**
+     * 写入离线消息日志
+     * 
+     * @return 是否写入成功（刷盘由日志组提交异步完成）
+     */
+    private boolean storeOffline(String userId, Object frame) {
+        try {
+            // 离线日志统一以 JSON 存储，投递时再按连接的编码转换
+            String jsonMessage = new String(codecRegistry.json().encodeBody(frame), StandardCharsets.UTF_8);
+            // 超大消息等同步校验失败会以异常完成的 Future 返回
+            if (offlineLog.append(userId, jsonMessage).isCompletedExceptionally()) {
+                return false;
             }
         } catch (Exception e) {
-            // 如果解析出错，记录错误日志
-            log.error("提取 userId 失败", e);
+            log.error("离线消息存储失败，用户: {}", userId, e);
+            return false;
+        }
+        
+        // 判断离线之后目标用户可能已上线并投递完积压消息：写入后再检查一次，避免消息滞留到下次上线
+        WebSocketSession session = userSessions.get(userId);
+        if (session != null && session.isOpen()) {
+            deliverOfflineMessages(userId, session);
         }
-        // 未获取到 userId，返回 null
-        return null;
+        return true;
+    }
+    
+    /**
+     * 分批投递离线消息，每批发送成功后再确认
+     * 中途发送失败时未确认的消息保留，下次上线重新投递
+     * 
+     * 在该用户的发送锁内进行：上线投递与存储后的补投互斥，同一条消息不会被投递两次
+     */
+    private void deliverOfflineMessages(String userId, WebSocketSession session) {
+        int delivered = 0;
+        synchronized (replayRegistry.buffer(ReplayBufferRegistry.RAW_CHANNEL, userId)) {
+            try {
+                List<OfflineMessage> batch = offlineLog.peek(userId, offlineDrainBatchSize);
+                while (!batch.isEmpty() && session.isOpen()) {
+                    for (OfflineMessage offlineMessage : batch) {
+                        byte[] body = offlineMessage.payload().getBytes(StandardCharsets.UTF_8);
+                        sendEncoded(userId, session, codecRegistry.json(), body);
+                    }
+                    offlineLog.acknowledge(userId, batch.get(batch.size() - 1).position());
+                    delivered += batch.size();
+                    batch = offlineLog.peek(userId, offlineDrainBatchSize);
+                }
+            } catch (IOException e) {
+                log.error("离线消息投递中断，用户: {}, 已投递: {}", userId, delivered, e);
+            }
+        }
+        
+        if (delivered > 0) {
+            log.info("已向用户 {} 投递 {} 条离线消息", userId, delivered);
+        }
+    }
+
+    // ==================== 辅助方法 ====================
+    
+    /**
+     * 握手时解析并保存在会话属性中的 userId
+     *
+     * @param session WebSocketSession 对象
+     * @return userId，如果不存在则返回 null
+     */
+    private String getUserIdFromSession(WebSocketSession session) {
+        return HandshakeContextInterceptor.userId(session);
     }
     
     // ==================== 内部消息类 ====================
     
+    /**
+     * 已编码的出站帧（重放缓冲区中保存的形式）
+     */
+    private record EncodedFrame(long seq, FrameCodec codec, byte[] body) {}
+    
     /**
      * 客户端发送的消息格式
      * 
      * Note: Getter/Setter 方法供 Jackson 序列化/反序列化使用
      */
     @SuppressWarnings("unused")
-    private static class ChatMessage {
-        private String type;        // private | broadcast
+    public static class ChatMessage {
+        private String type;        // private | broadcast | ping | 其他已注册类型
         private String fromUserId;  // 发送者ID（服务端会覆盖此值）
         private String toUserId;    // 接收者ID（仅private类型需要）
         private String content;     // 消息内容
@@ -506,12 +903,14 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
         private final String userId;
         private final int onlineCount;
         private final Object onlineUsers;
+        private final long epoch;
         
-        public WelcomeMessage(String message, String userId, int onlineCount, Object onlineUsers) {
+        public WelcomeMessage(String message, String userId, int onlineCount, Object onlineUsers, long epoch) {
             this.message = message;
             this.userId = userId;
             this.onlineCount = onlineCount;
             this.onlineUsers = onlineUsers;
+            this.epoch = epoch;
         }
         
         // Getters
@@ -519,5 +918,6 @@ public class ChatWebSocketHandler extends TextWebSocketHandler {
         public String getUserId() { return userId; }
         public int getOnlineCount() { return onlineCount; }
         public Object getOnlineUsers() { return onlineUsers; }
+        public long getEpoch() { return epoch; }
     }
 }
\ No newline at end of file
@@ -0,0 +1,10 @@
+package com.yihu.agent.websocket;
+
+/**
+ * 消息投递结果
+ */
+public enum DeliveryStatus {
+    DELIVERED,  // 已实时送达
+    STORED,     // 用户不在线，已写入离线消息日志
+    FAILED      // 投递失败
+}
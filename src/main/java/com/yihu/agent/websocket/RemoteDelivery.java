@@ -0,0 +1,48 @@
+package com.yihu.agent.websocket;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 本节点之外的投递
+ *
+ * 由集群路由在启动时注册到 {@link ChatWebSocketHandler}（处理器不直接依赖集群路由，避免循环依赖）；
+ * 未注册时只在本节点投递
+ */
+public interface RemoteDelivery {
+
+    RemoteDelivery LOCAL_ONLY = new RemoteDelivery() {
+        @Override
+        public boolean isRemote(String userId) {
+            return false;
+        }
+
+        @Override
+        public CompletableFuture<DeliveryStatus> forwardToUser(String userId, Object frame) {
+            return CompletableFuture.completedFuture(DeliveryStatus.FAILED);
+        }
+
+        @Override
+        public int broadcastToOtherNodes(Object frame) {
+            return 0;
+        }
+    };
+
+    /**
+     * 用户在本节点没有原生 WebSocket 连接、但连接在其他节点上
+     */
+    boolean isRemote(String userId);
+
+    /**
+     * 转发给其他节点上原生 WebSocket 连接的用户
+     *
+     * @return 目标节点的投递结果
+     */
+    CompletableFuture<DeliveryStatus> forwardToUser(String userId, Object frame);
+
+    /**
+     * 把广播转发给其他所有节点
+     *
+     * @return 转发的节点数
+     */
+    int broadcastToOtherNodes(Object frame);
+}
@@ -1,5 +1,7 @@
 package com.yihu.agent.websocket;
 
+import com.yihu.agent.websocket.delivery.ReplayBufferRegistry;
+import com.yihu.agent.websocket.presence.OnlinePresenceIndex;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.event.EventListener;
@@ -17,7 +19,7 @@ import java.util.concurrent.ConcurrentHashMap;
 /**
  * WebSocket 事件监听器
  * 
- * 监听用户连接和断开事件，维护在线用户列表
+ * 监听用户连接和断开事件，维护在线用户列表与 AI 回复重放缓冲区的在线会话
  */
 @Component
 @Slf4j
@@ -26,6 +28,12 @@ public class WebSocketEventListener {
     @Autowired
     private SimpMessagingTemplate messagingTemplate;
 
+    @Autowired
+    private OnlinePresenceIndex presenceIndex;
+
+    @Autowired
+    private ReplayBufferRegistry replayRegistry;
+
     // 在线用户集合（线程安全）
     private final Set<String> onlineUsers = ConcurrentHashMap.newKeySet();
 
@@ -40,6 +48,8 @@ public class WebSocketEventListener {
         if (user != null) {
             String userId = user.getName();
             onlineUsers.add(userId);
+            presenceIndex.markOnline(userId, headerAccessor.getSessionId());
+            replayRegistry.sessionOpened(ReplayBufferRegistry.AI_CHANNEL, userId, headerAccessor.getSessionId());
             
             log.info("用户上线: {}, 当前在线人数: {}", userId, onlineUsers.size());
             
@@ -62,6 +72,8 @@ public class WebSocketEventListener {
         if (user != null) {
             String userId = user.getName();
             onlineUsers.remove(userId);
+            presenceIndex.markOffline(userId, event.getSessionId());
+            replayRegistry.sessionClosed(ReplayBufferRegistry.AI_CHANNEL, userId, event.getSessionId());
             
             log.info("用户下线: {}, 当前在线人数: {}", userId, onlineUsers.size());
             
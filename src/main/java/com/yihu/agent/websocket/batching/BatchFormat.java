@@ -0,0 +1,95 @@
+package com.yihu.agent.websocket.batching;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * 多帧合并为一条 WebSocket 消息的格式
+ */
+enum BatchFormat {
+
+    /**
+     * STOMP 帧自带 NUL 结束符，文本帧直接首尾拼接
+     */
+    STOMP {
+        @Override
+        boolean canMerge(WebSocketMessage<?> first, WebSocketMessage<?> next) {
+            return first instanceof TextMessage && next instanceof TextMessage;
+        }
+
+        @Override
+        WebSocketMessage<?> merge(List<WebSocketMessage<?>> frames) {
+            StringBuilder builder = new StringBuilder();
+            for (WebSocketMessage<?> frame : frames) {
+                builder.append(((TextMessage) frame).getPayload());
+            }
+            return new TextMessage(builder);
+        }
+    },
+
+    /**
+     * 原生端点：JSON 文本帧合并为 JSON 数组，CBOR 二进制帧合并为 CBOR 定长数组
+     */
+    RAW_ARRAY {
+        @Override
+        boolean canMerge(WebSocketMessage<?> first, WebSocketMessage<?> next) {
+            return first.getClass() == next.getClass()
+                && (first instanceof TextMessage || first instanceof BinaryMessage);
+        }
+
+        @Override
+        WebSocketMessage<?> merge(List<WebSocketMessage<?>> frames) {
+            if (frames.get(0) instanceof TextMessage) {
+                StringBuilder builder = new StringBuilder().append('[');
+                for (int i = 0; i < frames.size(); i++) {
+                    if (i > 0) {
+                        builder.append(',');
+                    }
+                    builder.append(((TextMessage) frames.get(i)).getPayload());
+                }
+                return new TextMessage(builder.append(']'));
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            writeCborArrayHeader(out, frames.size());
+            for (WebSocketMessage<?> frame : frames) {
+                ByteBuffer payload = ((BinaryMessage) frame).getPayload().duplicate();
+                byte[] bytes = new byte[payload.remaining()];
+                payload.get(bytes);
+                out.writeBytes(bytes);
+            }
+            return new BinaryMessage(out.toByteArray());
+        }
+
+        /**
+         * CBOR 主类型 4（数组）的头部，CBOR 数据项自定界，元素直接拼接在头部之后
+         */
+        private void writeCborArrayHeader(ByteArrayOutputStream out, int size) {
+            if (size < 24) {
+                out.write(0x80 | size);
+            } else if (size < 0x100) {
+                out.write(0x98);
+                out.write(size);
+            } else {
+                out.write(0x99);
+                out.write(size >>> 8);
+                out.write(size & 0xff);
+            }
+        }
+    };
+
+    /**
+     * next 能否与以 first 开头的暂存帧合并
+     */
+    abstract boolean canMerge(WebSocketMessage<?> first, WebSocketMessage<?> next);
+
+    /**
+     * 合并两条及以上的帧
+     */
+    abstract WebSocketMessage<?> merge(List<WebSocketMessage<?>> frames);
+}
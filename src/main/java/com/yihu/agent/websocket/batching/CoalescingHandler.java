@@ -0,0 +1,283 @@
+package com.yihu.agent.websocket.batching;
+
+import com.yihu.agent.websocket.handshake.HandshakeContextInterceptor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.NonNull;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 出站帧合并处理器装饰器
+ *
+ * 对需要合并的会话包一层 {@link CoalescingSession}；所有回调都传递同一个装饰后的会话，
+ * 保证下游处理器保存和使用的是同一实例
+ */
+@Slf4j
+class CoalescingHandler extends WebSocketHandlerDecorator {
+
+    private final FrameBatching batching;
+
+    private final BatchFormat format;
+
+    private final Map<String, CoalescingSession> sessions = new ConcurrentHashMap<>();
+
+    CoalescingHandler(WebSocketHandler delegate, FrameBatching batching, BatchFormat format) {
+        super(delegate);
+        this.batching = batching;
+        this.format = format;
+    }
+
+    @Override
+    public void afterConnectionEstablished(@NonNull WebSocketSession session) throws Exception {
+        WebSocketSession target = session;
+        if (shouldCoalesce(session)) {
+            CoalescingSession coalescing = new CoalescingSession(session);
+            sessions.put(session.getId(), coalescing);
+            batching.sessionOpened();
+            target = coalescing;
+        }
+        super.afterConnectionEstablished(target);
+    }
+
+    @Override
+    public void handleMessage(@NonNull WebSocketSession session, @NonNull WebSocketMessage<?> message) throws Exception {
+        super.handleMessage(resolve(session), message);
+    }
+
+    @Override
+    public void handleTransportError(@NonNull WebSocketSession session, @NonNull Throwable exception) throws Exception {
+        super.handleTransportError(resolve(session), exception);
+    }
+
+    @Override
+    public void afterConnectionClosed(@NonNull WebSocketSession session, @NonNull CloseStatus closeStatus) throws Exception {
+        CoalescingSession target = sessions.remove(session.getId());
+        if (target != null) {
+            target.discard();
+            batching.sessionClosed();
+        }
+        super.afterConnectionClosed(target != null ? target : session, closeStatus);
+    }
+
+    private WebSocketSession resolve(WebSocketSession session) {
+        WebSocketSession target = sessions.get(session.getId());
+        return target != null ? target : session;
+    }
+
+    /**
+     * SockJS 会话自带消息数组封装，不再合并；原生端点需要客户端握手时声明 batch=true
+     */
+    private boolean shouldCoalesce(WebSocketSession session) {
+        if (session instanceof SockJsSession) {
+            return false;
+        }
+        return format == BatchFormat.STOMP || HandshakeContextInterceptor.acceptsBatch(session);
+    }
+
+    /**
+     * 暂存出站数据帧、按窗口 / 大小 / 帧数合并写出的会话装饰器
+     *
+     * 暂存与合并在会话锁内进行，合并结果按顺序进入待写队列；写出不持有会话锁，
+     * 同一时刻只有一个线程写底层会话，其他线程把消息留在队列中由正在写的线程一并写出
+     * （与 ConcurrentWebSocketSessionDecorator 相同的做法），并检查发送时间与缓冲上限，超出时断开慢客户端
+     *
+     * 合并窗口到期时定时线程只把暂存帧移入待写队列，写出交给冲刷线程池，
+     * 一个慢客户端不会拖住其他会话的定时冲刷
+     */
+    private class CoalescingSession extends WebSocketSessionDecorator {
+
+        private final List<WebSocketMessage<?>> pending = new ArrayList<>();
+
+        private int pendingBytes;
+
+        private ScheduledFuture<?> flushTask;
+
+        private final Queue<WebSocketMessage<?>> ready = new ConcurrentLinkedQueue<>();
+
+        private final AtomicInteger readyBytes = new AtomicInteger();
+
+        private final ReentrantLock writeLock = new ReentrantLock();
+
+        /**
+         * 当前写出开始的时间（纳秒），未在写出时为 0
+         */
+        private volatile long writeStartNanos;
+
+        private volatile boolean limitExceeded;
+
+        CoalescingSession(WebSocketSession delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void sendMessage(@NonNull WebSocketMessage<?> message) throws IOException {
+            if (limitExceeded) {
+                return;
+            }
+            synchronized (this) {
+                if (!(message instanceof TextMessage) && !(message instanceof BinaryMessage)) {
+                    // 控制帧不合并，排在暂存帧之后写出以保持顺序
+                    moveToReady();
+                    enqueue(message);
+                } else {
+                    if (!pending.isEmpty() && !format.canMerge(pending.get(0), message)) {
+                        moveToReady();
+                    }
+
+                    pending.add(message);
+                    pendingBytes += message.getPayloadLength();
+                    if (pendingBytes >= batching.getMaxBytes() || pending.size() >= batching.getMaxFrames()) {
+                        moveToReady();
+                    } else if (flushTask == null) {
+                        flushTask = batching.getScheduler().schedule(this::flushOnTimer, batching.getWindowMs(), TimeUnit.MILLISECONDS);
+                    }
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void close() throws IOException {
+            close(CloseStatus.NORMAL);
+        }
+
+        @Override
+        public void close(@NonNull CloseStatus status) throws IOException {
+            if (isOpen() && !limitExceeded) {
+                synchronized (this) {
+                    moveToReady();
+                }
+                drain();
+            }
+            super.close(status);
+        }
+
+        /**
+         * 合并窗口到期：只移交，写出在冲刷线程池上进行
+         */
+        private void flushOnTimer() {
+            synchronized (this) {
+                flushTask = null;
+                moveToReady();
+            }
+            if (!ready.isEmpty()) {
+                batching.getFlushExecutor().execute(() -> {
+                    try {
+                        drain();
+                    } catch (IOException e) {
+                        log.warn("合并帧写出失败，会话: {}，错误: {}", getId(), e.getMessage());
+                    }
+                });
+            }
+        }
+
+        /**
+         * 把暂存帧合并后放入待写队列（调用方需持有会话锁）
+         */
+        private void moveToReady() {
+            if (flushTask != null) {
+                flushTask.cancel(false);
+                flushTask = null;
+            }
+            if (pending.isEmpty()) {
+                return;
+            }
+            int frames = pending.size();
+            WebSocketMessage<?> message = frames == 1 ? pending.get(0) : format.merge(pending);
+            pending.clear();
+            pendingBytes = 0;
+            batching.recordWrite(frames);
+            enqueue(message);
+        }
+
+        private void enqueue(WebSocketMessage<?> message) {
+            ready.add(message);
+            readyBytes.addAndGet(message.getPayloadLength());
+        }
+
+        /**
+         * 写出待写队列；已有线程在写时只检查发送时间与缓冲上限
+         */
+        private void drain() throws IOException {
+            while (!ready.isEmpty() && !limitExceeded) {
+                if (!writeLock.tryLock()) {
+                    checkLimits();
+                    return;
+                }
+                try {
+                    writeStartNanos = System.nanoTime();
+                    WebSocketMessage<?> message;
+                    while (!limitExceeded && (message = ready.poll()) != null) {
+                        readyBytes.addAndGet(-message.getPayloadLength());
+                        super.sendMessage(message);
+                    }
+                } finally {
+                    writeStartNanos = 0;
+                    writeLock.unlock();
+                }
+            }
+        }
+
+        private void checkLimits() throws IOException {
+            long started = writeStartNanos;
+            String reason = null;
+            if (started != 0 && System.nanoTime() - started > TimeUnit.MILLISECONDS.toNanos(batching.getSendTimeLimitMs())) {
+                reason = "发送超时 " + batching.getSendTimeLimitMs() + " ms";
+            } else if (readyBytes.get() > batching.getSendBufferSizeLimit()) {
+                reason = "出站缓冲超过 " + batching.getSendBufferSizeLimit() + " 字节";
+            }
+            if (reason == null) {
+                return;
+            }
+            synchronized (this) {
+                if (limitExceeded) {
+                    return;
+                }
+                limitExceeded = true;
+            }
+            discard();
+            log.warn("慢客户端被断开，会话: {}，原因: {}", getId(), reason);
+            try {
+                getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (IOException e) {
+                log.debug("断开慢客户端失败，会话: {}", getId(), e);
+            }
+            throw new IOException("会话已断开: " + reason);
+        }
+
+        /**
+         * 连接已关闭或被断开，丢弃未写出的帧
+         */
+        private void discard() {
+            synchronized (this) {
+                if (flushTask != null) {
+                    flushTask.cancel(false);
+                    flushTask = null;
+                }
+                pending.clear();
+                pendingBytes = 0;
+                ready.clear();
+                readyBytes.set(0);
+            }
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.yihu.agent.websocket.batching;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 出站帧合并（可选开启）
+ *
+ * 同一会话在一个微窗口（window-ms）内发出的多条数据帧先暂存，窗口到期、
+ * 累计达到 max-bytes 或 max-frames 时一次写出，减少系统调用与逐帧开销：
+ * 1. STOMP 端点：多个 STOMP 帧（各以 NUL 结尾）拼接为一条 WebSocket 消息，STOMP 客户端按流解析
+ * 2. 原生端点：客户端握手时带 batch=true 才开启，多帧合并为一个数组帧
+ *    （JSON 为 [f1,f2,...]，CBOR 为定长数组），只有一帧时原样发送
+ *
+ * SockJS 会话自带消息数组封装，不做合并；控制帧（ping/pong）先冲刷暂存帧再立即发送
+ *
+ * 合并后的写出与 STOMP 传输层使用相同的发送时间与缓冲上限（healthcare.broker.*），超出时断开慢客户端；
+ * 窗口到期由定时线程触发，实际写出在冲刷线程池上进行
+ */
+@Slf4j
+@Component
+public class FrameBatching implements WebSocketHandlerDecoratorFactory {
+
+    @Value("${healthcare.websocket.batching.enabled:false}")
+    private boolean enabled;
+
+    @Value("${healthcare.websocket.batching.window-ms:5}")
+    private long windowMs;
+
+    @Value("${healthcare.websocket.batching.max-bytes:16384}")
+    private int maxBytes;
+
+    @Value("${healthcare.websocket.batching.max-frames:32}")
+    private int maxFrames;
+
+    @Value("${healthcare.broker.send-time-limit-ms:10000}")
+    private long sendTimeLimitMs;
+
+    @Value("${healthcare.broker.send-buffer-size-kb:512}")
+    private int sendBufferSizeKb;
+
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * 窗口到期后的写出线程（按需创建，空闲回收），慢客户端只占用自己的写出线程
+     */
+    private final ExecutorService flushExecutor;
+
+    private final AtomicInteger batchingSessions = new AtomicInteger();
+
+    private final LongAdder framesIn = new LongAdder();
+
+    private final LongAdder writesOut = new LongAdder();
+
+    private final LongAdder mergedWrites = new LongAdder();
+
+    public FrameBatching() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.scheduler = Executors.newScheduledThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "frame-batching-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        AtomicInteger flushIndex = new AtomicInteger();
+        this.flushExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "frame-batching-flush-" + flushIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 测试用：指定合并窗口与上限
+     */
+    FrameBatching(long windowMs, int maxBytes, int maxFrames, long sendTimeLimitMs, int sendBufferSizeKb) {
+        this();
+        this.enabled = true;
+        this.windowMs = windowMs;
+        this.maxBytes = maxBytes;
+        this.maxFrames = maxFrames;
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.sendBufferSizeKb = sendBufferSizeKb;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.shutdown();
+        flushExecutor.shutdown();
+    }
+
+    /**
+     * 包装 STOMP 处理器：帧以 STOMP 流拼接
+     */
+    @Override
+    @NonNull
+    public WebSocketHandler decorate(@NonNull WebSocketHandler handler) {
+        return enabled ? new CoalescingHandler(handler, this, BatchFormat.STOMP) : handler;
+    }
+
+    /**
+     * 包装原生 WebSocket 处理器：帧合并为数组，仅对握手时声明 batch=true 的会话生效
+     */
+    public WebSocketHandler decorateRaw(WebSocketHandler handler) {
+        return enabled ? new CoalescingHandler(handler, this, BatchFormat.RAW_ARRAY) : handler;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // ==================== 供会话装饰器使用 ====================
+
+    ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    ExecutorService getFlushExecutor() {
+        return flushExecutor;
+    }
+
+    long getSendTimeLimitMs() {
+        return sendTimeLimitMs;
+    }
+
+    int getSendBufferSizeLimit() {
+        return sendBufferSizeKb * 1024;
+    }
+
+    long getWindowMs() {
+        return windowMs;
+    }
+
+    int getMaxBytes() {
+        return maxBytes;
+    }
+
+    int getMaxFrames() {
+        return maxFrames;
+    }
+
+    void sessionOpened() {
+        batchingSessions.incrementAndGet();
+    }
+
+    void sessionClosed() {
+        batchingSessions.decrementAndGet();
+    }
+
+    /**
+     * 记录一次写出
+     *
+     * @param frames 本次写出包含的帧数
+     */
+    void recordWrite(int frames) {
+        framesIn.add(frames);
+        writesOut.increment();
+        if (frames > 1) {
+            mergedWrites.increment();
+        }
+    }
+
+    /**
+     * 获取合并统计快照
+     */
+    public Map<String, Object> snapshot() {
+        long frames = framesIn.sum();
+        long writes = writesOut.sum();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("windowMs", windowMs);
+        stats.put("maxBytes", maxBytes);
+        stats.put("maxFrames", maxFrames);
+        stats.put("batchingSessions", batchingSessions.get());
+        stats.put("framesIn", frames);
+        stats.put("writesOut", writes);
+        stats.put("mergedWrites", mergedWrites.sum());
+        // 平均每次写出包含的帧数，越大合并效果越好
+        stats.put("framesPerWrite", writes > 0 ? (double) frames / writes : 0.0);
+        return stats;
+    }
+}
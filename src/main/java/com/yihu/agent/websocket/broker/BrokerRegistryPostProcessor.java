@@ -0,0 +1,50 @@
+package com.yihu.agent.websocket.broker;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.env.Environment;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * 为内置消息代理安装前缀树订阅注册表
+ *
+ * enableSimpleBroker 不提供替换订阅注册表的入口，这里在代理初始化前调用
+ * {@link SimpleBrokerMessageHandler#setSubscriptionRegistry}，/topic 与 /queue 的配置保持不变
+ *
+ * 设置 healthcare.broker.trie-registry.enabled=false 可回退到 Spring 默认实现；
+ * healthcare.broker.selector-header 同时设置到代理与注册表，两种实现对订阅 selector 的处理一致
+ */
+@Slf4j
+@Component
+public class BrokerRegistryPostProcessor implements BeanPostProcessor {
+
+    // BeanPostProcessor 初始化较早，直接读取环境属性而不依赖 @Value 注入
+    private final boolean enabled;
+
+    private final String selectorHeader;
+
+    public BrokerRegistryPostProcessor(Environment environment) {
+        this.enabled = environment.getProperty("healthcare.broker.trie-registry.enabled", Boolean.class, true);
+        String header = environment.getProperty("healthcare.broker.selector-header", "");
+        this.selectorHeader = header.isBlank() ? null : header;
+    }
+
+    @Override
+    public Object postProcessBeforeInitialization(@NonNull Object bean, @NonNull String beanName) throws BeansException {
+        if (bean instanceof SimpleBrokerMessageHandler broker) {
+            if (selectorHeader != null) {
+                broker.setSelectorHeaderName(selectorHeader);
+            }
+            if (enabled) {
+                DestinationTrieSubscriptionRegistry registry = new DestinationTrieSubscriptionRegistry();
+                registry.setSelectorHeaderName(selectorHeader);
+                broker.setSubscriptionRegistry(registry);
+                log.info("消息代理 {} 已启用前缀树订阅注册表, selectorHeader={}", beanName, selectorHeader);
+            }
+        }
+        return bean;
+    }
+}
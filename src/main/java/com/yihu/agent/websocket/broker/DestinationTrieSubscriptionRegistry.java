@@ -0,0 +1,530 @@
+package com.yihu.agent.websocket.broker;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.ParseException;
+import org.springframework.expression.PropertyAccessor;
+import org.springframework.expression.TypedValue;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.SimpleEvaluationContext;
+import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.broker.AbstractSubscriptionRegistry;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.CollectionUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.util.PathMatcher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 基于目的地前缀树的订阅注册表
+ *
+ * 替换 SimpleBrokerMessageHandler 默认的 DefaultSubscriptionRegistry：
+ * 1. 目的地按 "/" 切分为路径段，订阅挂在对应的树节点上，匹配只走与目的地相关的分支
+ * 2. 整段通配符 "*"（单段）和 "**"（任意段）作为特殊子节点参与匹配
+ * 3. 段内含通配符（如 /topic/user-*）的少量订阅退化为 AntPathMatcher 逐条匹配
+ * 4. 每个节点缓存只读的订阅快照，订阅变更时失效，大规模扇出时直接复用
+ * 5. 支持订阅 selector 头（SpEL 表达式，与 DefaultSubscriptionRegistry 语法相同，如 headers.foo == 'bar'），
+ *    默认与 Spring 一样不启用，通过 {@link #setSelectorHeaderName} 开启；带 selector 的订阅在命中后逐条求值过滤
+ *
+ * 读多写少，使用读写锁保护
+ */
+@Slf4j
+public class DestinationTrieSubscriptionRegistry extends AbstractSubscriptionRegistry {
+
+    private static final MultiValueMap<String, String> NO_SUBSCRIPTIONS =
+        CollectionUtils.unmodifiableMultiValueMap(new LinkedMultiValueMap<>());
+
+    private static final String SINGLE_WILDCARD = "*";
+
+    private static final String MULTI_WILDCARD = "**";
+
+    private static final EvaluationContext SELECTOR_CONTEXT =
+        SimpleEvaluationContext.forPropertyAccessors(new MessageHeaderPropertyAccessor()).build();
+
+    /**
+     * 解析失败的 selector 标记（订阅被忽略，与 DefaultSubscriptionRegistry 相同）
+     */
+    private static final Expression INVALID_SELECTOR = new SpelExpressionParser().parseExpression("false");
+
+    private final ExpressionParser expressionParser = new SpelExpressionParser();
+
+    @Nullable
+    private volatile String selectorHeaderName;
+
+    private final PathMatcher pathMatcher = new AntPathMatcher();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final Node root = new Node();
+
+    /**
+     * 段内含通配符、无法放入前缀树的订阅
+     */
+    private final List<PatternSubscription> patternSubscriptions = new ArrayList<>();
+
+    /**
+     * sessionId -> (subscriptionId -> destination)，用于取消订阅时定位节点
+     */
+    private final Map<String, Map<String, String>> sessionSubscriptions = new HashMap<>();
+
+    /**
+     * sessionId -> (subscriptionId -> selector)，只包含带 selector 的订阅
+     */
+    private final Map<String, Map<String, Expression>> selectors = new HashMap<>();
+
+    private int subscriptionCount;
+
+    /**
+     * 订阅 selector 头的名称；为 null 时不解析 selector（Spring 6 的默认行为）
+     */
+    public void setSelectorHeaderName(@Nullable String selectorHeaderName) {
+        this.selectorHeaderName = selectorHeaderName;
+    }
+
+    @Nullable
+    public String getSelectorHeaderName() {
+        return selectorHeaderName;
+    }
+
+    @Override
+    protected void addSubscriptionInternal(@NonNull String sessionId, @NonNull String subscriptionId,
+                                           @NonNull String destination, @NonNull Message<?> message) {
+        Expression selector = selectorOf(message);
+        if (selector == INVALID_SELECTOR) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            String previous = sessionSubscriptions
+                .computeIfAbsent(sessionId, id -> new LinkedHashMap<>())
+                .put(subscriptionId, destination);
+            if (previous != null) {
+                // 同一订阅 ID 重复订阅，先移除旧目的地
+                detach(sessionId, subscriptionId, previous);
+            }
+
+            if (isSegmentPattern(destination)) {
+                patternSubscriptions.add(new PatternSubscription(sessionId, subscriptionId, destination));
+            } else {
+                Node node = root;
+                for (String segment : split(destination)) {
+                    node = node.child(segment, true);
+                }
+                node.add(sessionId, subscriptionId);
+            }
+            if (selector != null) {
+                selectors.computeIfAbsent(sessionId, id -> new HashMap<>()).put(subscriptionId, selector);
+            }
+            subscriptionCount++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    protected void removeSubscriptionInternal(@NonNull String sessionId, @NonNull String subscriptionId,
+                                              @NonNull Message<?> message) {
+        lock.writeLock().lock();
+        try {
+            Map<String, String> subscriptions = sessionSubscriptions.get(sessionId);
+            if (subscriptions == null) {
+                return;
+            }
+            String destination = subscriptions.remove(subscriptionId);
+            if (subscriptions.isEmpty()) {
+                sessionSubscriptions.remove(sessionId);
+            }
+            if (destination != null) {
+                detach(sessionId, subscriptionId, destination);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void unregisterAllSubscriptions(@NonNull String sessionId) {
+        lock.writeLock().lock();
+        try {
+            Map<String, String> subscriptions = sessionSubscriptions.remove(sessionId);
+            if (subscriptions == null) {
+                return;
+            }
+            subscriptions.forEach((subscriptionId, destination) -> detach(sessionId, subscriptionId, destination));
+            selectors.remove(sessionId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    @NonNull
+    protected MultiValueMap<String, String> findSubscriptionsInternal(@NonNull String destination,
+                                                                     @NonNull Message<?> message) {
+        String[] segments = split(destination);
+
+        lock.readLock().lock();
+        try {
+            List<Node> matched = new ArrayList<>(2);
+            match(root, segments, 0, matched);
+
+            List<PatternSubscription> patternMatches = null;
+            for (PatternSubscription subscription : patternSubscriptions) {
+                if (pathMatcher.match(subscription.pattern(), destination)) {
+                    if (patternMatches == null) {
+                        patternMatches = new ArrayList<>();
+                    }
+                    patternMatches.add(subscription);
+                }
+            }
+
+            // 常见情况：只命中一个节点，直接返回该节点的快照
+            if (patternMatches == null && matched.size() <= 1) {
+                return filterBySelectors(matched.isEmpty() ? NO_SUBSCRIPTIONS : matched.get(0).snapshot(), message);
+            }
+
+            MultiValueMap<String, String> result = new LinkedMultiValueMap<>();
+            for (Node node : matched) {
+                node.subscribers.forEach((sessionId, ids) -> result.addAll(sessionId, ids));
+            }
+            if (patternMatches != null) {
+                for (PatternSubscription subscription : patternMatches) {
+                    result.add(subscription.sessionId(), subscription.subscriptionId());
+                }
+            }
+            return filterBySelectors(result, message);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 当前订阅总数
+     */
+    public int getSubscriptionCount() {
+        lock.readLock().lock();
+        try {
+            return subscriptionCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ==================== selector ====================
+
+    /**
+     * 订阅消息中的 selector；未启用或没有 selector 时为 null
+     */
+    @Nullable
+    private Expression selectorOf(Message<?> message) {
+        String headerName = selectorHeaderName;
+        if (headerName == null) {
+            return null;
+        }
+        String selector = SimpMessageHeaderAccessor.getFirstNativeHeader(headerName, message.getHeaders());
+        if (selector == null) {
+            return null;
+        }
+        try {
+            return expressionParser.parseExpression(selector);
+        } catch (ParseException e) {
+            log.error("订阅 selector 无法解析，忽略该订阅: {}", selector, e);
+            return INVALID_SELECTOR;
+        }
+    }
+
+    /**
+     * 去掉 selector 不匹配的订阅（调用方需持有读锁）；没有需要去掉的订阅时原样返回
+     * 只遍历带 selector 的会话，不影响大规模扇出
+     */
+    private MultiValueMap<String, String> filterBySelectors(MultiValueMap<String, String> subscriptions, Message<?> message) {
+        if (selectors.isEmpty() || subscriptions.isEmpty()) {
+            return subscriptions;
+        }
+        MultiValueMap<String, String> result = subscriptions;
+        for (Map.Entry<String, Map<String, Expression>> entry : selectors.entrySet()) {
+            List<String> ids = subscriptions.get(entry.getKey());
+            if (ids == null) {
+                continue;
+            }
+            for (String subscriptionId : ids) {
+                Expression selector = entry.getValue().get(subscriptionId);
+                if (selector == null || matches(selector, message)) {
+                    continue;
+                }
+                if (result == subscriptions) {
+                    result = new LinkedMultiValueMap<>(subscriptions.size());
+                    for (Map.Entry<String, List<String>> copy : subscriptions.entrySet()) {
+                        result.put(copy.getKey(), new ArrayList<>(copy.getValue()));
+                    }
+                }
+                List<String> remaining = result.get(entry.getKey());
+                remaining.remove(subscriptionId);
+                if (remaining.isEmpty()) {
+                    result.remove(entry.getKey());
+                }
+            }
+        }
+        return result;
+    }
+
+    private static boolean matches(Expression selector, Message<?> message) {
+        try {
+            return Boolean.TRUE.equals(selector.getValue(SELECTOR_CONTEXT, message, Boolean.class));
+        } catch (RuntimeException e) {
+            log.debug("订阅 selector 求值失败: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * selector 中 headers.xxx 的取值：destination、STOMP 原生头（取第一个值）、消息头，与 DefaultSubscriptionRegistry 相同
+     */
+    private static final class MessageHeaderPropertyAccessor implements PropertyAccessor {
+
+        @Override
+        public Class<?>[] getSpecificTargetClasses() {
+            return new Class<?>[]{Message.class, MessageHeaders.class};
+        }
+
+        @Override
+        public boolean canRead(@NonNull EvaluationContext context, @Nullable Object target, @NonNull String name) {
+            return true;
+        }
+
+        @Override
+        @NonNull
+        public TypedValue read(@NonNull EvaluationContext context, @Nullable Object target, @NonNull String name) {
+            Object value;
+            if (target instanceof Message<?> message) {
+                value = "headers".equals(name) ? message.getHeaders() : null;
+            } else if (target instanceof MessageHeaders headers) {
+                SimpMessageHeaderAccessor accessor =
+                    MessageHeaderAccessor.getAccessor(headers, SimpMessageHeaderAccessor.class);
+                if ("destination".equalsIgnoreCase(name)) {
+                    value = accessor != null ? accessor.getDestination() : headers.get(name);
+                } else {
+                    value = accessor != null ? accessor.getFirstNativeHeader(name) : null;
+                    if (value == null) {
+                        value = headers.get(name);
+                    }
+                }
+            } else {
+                throw new IllegalStateException("selector 只能读取 Message 或 MessageHeaders");
+            }
+            return new TypedValue(value);
+        }
+
+        @Override
+        public boolean canWrite(@NonNull EvaluationContext context, @Nullable Object target, @NonNull String name) {
+            return false;
+        }
+
+        @Override
+        public void write(@NonNull EvaluationContext context, @Nullable Object target, @NonNull String name,
+                          @Nullable Object newValue) {
+        }
+    }
+
+    // ==================== 前缀树操作 ====================
+
+    /**
+     * 从前缀树或模式列表中移除一条订阅，并回收空节点（调用方需持有写锁）
+     */
+    private void detach(String sessionId, String subscriptionId, String destination) {
+        Map<String, Expression> sessionSelectors = selectors.get(sessionId);
+        if (sessionSelectors != null && sessionSelectors.remove(subscriptionId) != null && sessionSelectors.isEmpty()) {
+            selectors.remove(sessionId);
+        }
+        if (isSegmentPattern(destination)) {
+            Iterator<PatternSubscription> iterator = patternSubscriptions.iterator();
+            while (iterator.hasNext()) {
+                PatternSubscription subscription = iterator.next();
+                if (subscription.sessionId().equals(sessionId) && subscription.subscriptionId().equals(subscriptionId)) {
+                    iterator.remove();
+                    subscriptionCount--;
+                    return;
+                }
+            }
+            return;
+        }
+
+        String[] segments = split(destination);
+        Deque<Node> path = new ArrayDeque<>(segments.length + 1);
+        Node node = root;
+        path.push(node);
+        for (String segment : segments) {
+            node = node.child(segment, false);
+            if (node == null) {
+                return;
+            }
+            path.push(node);
+        }
+        if (!node.remove(sessionId, subscriptionId)) {
+            return;
+        }
+        subscriptionCount--;
+
+        // 自底向上回收空节点（每个会话的 /user 目的地都是独立路径，不回收会持续增长）
+        for (int i = segments.length - 1; i >= 0; i--) {
+            Node child = path.pop();
+            if (!child.isEmpty()) {
+                break;
+            }
+            path.peek().removeChild(segments[i]);
+        }
+    }
+
+    /**
+     * 递归匹配目的地路径段，收集命中的节点
+     * 多个 "**" 可能经不同路径到达同一节点，需去重（节点未重写 equals，按引用比较）
+     */
+    private static void match(Node node, String[] segments, int index, List<Node> matched) {
+        if (index == segments.length) {
+            if (!node.subscribers.isEmpty() && !matched.contains(node)) {
+                matched.add(node);
+            }
+            // "**" 可以匹配零个路径段
+            if (node.multiWildcard != null) {
+                match(node.multiWildcard, segments, index, matched);
+            }
+            return;
+        }
+
+        Node literal = node.children.get(segments[index]);
+        if (literal != null) {
+            match(literal, segments, index + 1, matched);
+        }
+        if (node.singleWildcard != null) {
+            match(node.singleWildcard, segments, index + 1, matched);
+        }
+        if (node.multiWildcard != null) {
+            for (int next = index; next <= segments.length; next++) {
+                match(node.multiWildcard, segments, next, matched);
+            }
+        }
+    }
+
+    /**
+     * 段内含通配符（"*"、"**" 整段除外）时无法放入前缀树
+     */
+    private boolean isSegmentPattern(String destination) {
+        if (!pathMatcher.isPattern(destination)) {
+            return false;
+        }
+        for (String segment : split(destination)) {
+            if (!SINGLE_WILDCARD.equals(segment) && !MULTI_WILDCARD.equals(segment)
+                && (segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0 || segment.indexOf('{') >= 0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String[] split(String destination) {
+        int start = destination.startsWith("/") ? 1 : 0;
+        return destination.substring(start).split("/", -1);
+    }
+
+    /**
+     * 前缀树节点
+     */
+    private static final class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+
+        private Node singleWildcard;
+
+        private Node multiWildcard;
+
+        /**
+         * sessionId -> subscriptionIds
+         */
+        private final Map<String, List<String>> subscribers = new LinkedHashMap<>();
+
+        /**
+         * 只读订阅快照，订阅变更时置空；读锁下可能被并发重建，结果相同
+         */
+        private volatile MultiValueMap<String, String> snapshot;
+
+        Node child(String segment, boolean create) {
+            if (SINGLE_WILDCARD.equals(segment)) {
+                if (singleWildcard == null && create) {
+                    singleWildcard = new Node();
+                }
+                return singleWildcard;
+            }
+            if (MULTI_WILDCARD.equals(segment)) {
+                if (multiWildcard == null && create) {
+                    multiWildcard = new Node();
+                }
+                return multiWildcard;
+            }
+            return create ? children.computeIfAbsent(segment, s -> new Node()) : children.get(segment);
+        }
+
+        void removeChild(String segment) {
+            if (SINGLE_WILDCARD.equals(segment)) {
+                singleWildcard = null;
+            } else if (MULTI_WILDCARD.equals(segment)) {
+                multiWildcard = null;
+            } else {
+                children.remove(segment);
+            }
+        }
+
+        void add(String sessionId, String subscriptionId) {
+            subscribers.computeIfAbsent(sessionId, id -> new ArrayList<>(1)).add(subscriptionId);
+            snapshot = null;
+        }
+
+        boolean remove(String sessionId, String subscriptionId) {
+            List<String> ids = subscribers.get(sessionId);
+            if (ids == null || !ids.remove(subscriptionId)) {
+                return false;
+            }
+            if (ids.isEmpty()) {
+                subscribers.remove(sessionId);
+            }
+            snapshot = null;
+            return true;
+        }
+
+        boolean isEmpty() {
+            return subscribers.isEmpty() && children.isEmpty() && singleWildcard == null && multiWildcard == null;
+        }
+
+        MultiValueMap<String, String> snapshot() {
+            MultiValueMap<String, String> current = snapshot;
+            if (current == null) {
+                LinkedMultiValueMap<String, String> copy = new LinkedMultiValueMap<>(subscribers.size());
+                subscribers.forEach((sessionId, ids) -> copy.put(sessionId, List.copyOf(ids)));
+                current = CollectionUtils.unmodifiableMultiValueMap(copy);
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    /**
+     * 段内通配符订阅
+     */
+    private record PatternSubscription(String sessionId, String subscriptionId, String pattern) {}
+}
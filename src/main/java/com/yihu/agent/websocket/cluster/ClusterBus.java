@@ -0,0 +1,88 @@
+package com.yihu.agent.websocket.cluster;
+
+import com.yihu.agent.websocket.DeliveryStatus;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 集群消息总线
+ *
+ * 节点之间的传输抽象，实现需要保证：
+ * 1. 发往同一节点的批次与在线状态更新按发送顺序到达
+ * 2. sendBatch 返回的 Future 在目标节点处理完整批后完成，结果与批内信封一一对应（投递确认）
+ * 3. 节点加入 / 离开时通知所有存活节点
+ * 4. request 的应答与请求一一对应，应答可以异步产生（不占用目标节点的入站线程）
+ *
+ * 默认实现为 {@link InJvmClusterBus}（单进程多节点替身），接入真实传输时替换该 Bean 即可
+ */
+public interface ClusterBus {
+
+    /**
+     * 本节点ID
+     */
+    String getLocalNodeId();
+
+    /**
+     * 当前存活的节点（含本节点）
+     */
+    Set<String> getMembers();
+
+    /**
+     * 加入集群并开始接收消息
+     */
+    void start(Listener listener);
+
+    /**
+     * 离开集群
+     */
+    void stop();
+
+    /**
+     * 向目标节点发送一批信封
+     *
+     * @return 每个信封的投递结果；目标节点不可达时以异常完成
+     */
+    CompletableFuture<List<DeliveryStatus>> sendBatch(String targetNodeId, List<ClusterEnvelope> batch);
+
+    /**
+     * 向目标节点发送在线状态更新
+     *
+     * @param targetNodeId 目标节点，null 表示所有其他节点
+     */
+    void publishPresence(String targetNodeId, List<PresenceUpdate> updates);
+
+    /**
+     * 向目标节点发送请求并等待应答（如会话轮次转发、会话记忆移交）
+     *
+     * @param topic   请求主题，目标节点据此选择处理器
+     * @param payload 已序列化的 JSON 请求体
+     * @return 目标节点的应答；目标节点不可达或处理失败时以异常完成
+     */
+    CompletableFuture<String> request(String targetNodeId, String topic, String payload);
+
+    /**
+     * 集群消息监听器
+     */
+    interface Listener {
+
+        /**
+         * 处理其他节点转发来的一批信封
+         *
+         * @return 与批内信封一一对应的投递结果
+         */
+        List<DeliveryStatus> onBatch(String fromNodeId, List<ClusterEnvelope> batch);
+
+        void onPresence(String fromNodeId, List<PresenceUpdate> updates);
+
+        /**
+         * 处理其他节点的请求，耗时的处理应切换到其他线程后再完成返回的 Future
+         */
+        CompletableFuture<String> onRequest(String fromNodeId, String topic, String payload);
+
+        void onMemberJoined(String nodeId);
+
+        void onMemberLeft(String nodeId);
+    }
+}
@@ -0,0 +1,35 @@
+package com.yihu.agent.websocket.cluster;
+
+/**
+ * 节点间转发的消息信封
+ *
+ * @param id          信封ID（日志与排查用）
+ * @param kind        转发类型
+ * @param userId      目标用户（BROADCAST、GROUP 时为 null）
+ * @param destination STOMP 用户队列路径（STOMP_USER）或群组ID（GROUP）
+ * @param payload     已序列化的 JSON 消息体
+ */
+public record ClusterEnvelope(String id, Kind kind, String userId, String destination, String payload) {
+
+    public enum Kind {
+        /**
+         * 投递给原生 WebSocket 连接上的用户
+         */
+        RAW_USER,
+
+        /**
+         * 投递给 STOMP 连接上的用户队列
+         */
+        STOMP_USER,
+
+        /**
+         * 目标节点向本地全部原生连接广播
+         */
+        BROADCAST,
+
+        /**
+         * 目标节点向本地代理的群组主题扇出
+         */
+        GROUP
+    }
+}
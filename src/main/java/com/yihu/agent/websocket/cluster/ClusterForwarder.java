@@ -0,0 +1,167 @@
+package com.yihu.agent.websocket.cluster;
+
+import com.yihu.agent.websocket.DeliveryStatus;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 节点间批量转发器
+ *
+ * 每个目标节点一个待发送队列：
+ * 1. 队列攒够 batchSize 条立即发送，否则最多等待 batchIntervalMs 后发送
+ * 2. 同一目标节点同一时刻只有一个批次在途，保证顺序，并在在途期间继续攒批
+ * 3. 目标节点确认后逐条完成 Future；不可达或超时按 FAILED 完成，由调用方降级处理
+ */
+@Slf4j
+public class ClusterForwarder {
+
+    private final ClusterBus bus;
+    private final ScheduledExecutorService scheduler;
+    private final int batchSize;
+    private final long batchIntervalMs;
+    private final long ackTimeoutMs;
+
+    private final Map<String, Outbox> outboxes = new ConcurrentHashMap<>();
+
+    private final LongAdder forwardedEnvelopes = new LongAdder();
+    private final LongAdder sentBatches = new LongAdder();
+    private final LongAdder failedEnvelopes = new LongAdder();
+
+    public ClusterForwarder(ClusterBus bus, ScheduledExecutorService scheduler,
+                            int batchSize, long batchIntervalMs, long ackTimeoutMs) {
+        this.bus = bus;
+        this.scheduler = scheduler;
+        this.batchSize = batchSize;
+        this.batchIntervalMs = batchIntervalMs;
+        this.ackTimeoutMs = ackTimeoutMs;
+    }
+
+    /**
+     * 转发一个信封到目标节点
+     *
+     * @return 目标节点的投递结果
+     */
+    public CompletableFuture<DeliveryStatus> forward(String targetNodeId, ClusterEnvelope envelope) {
+        Outbox outbox = outboxes.computeIfAbsent(targetNodeId, Outbox::new);
+        CompletableFuture<DeliveryStatus> future = new CompletableFuture<>();
+        outbox.pending.add(new Pending(envelope, future));
+        forwardedEnvelopes.increment();
+
+        if (outbox.size.incrementAndGet() >= batchSize) {
+            outbox.flush();
+        } else if (outbox.scheduled.compareAndSet(false, true)) {
+            scheduler.schedule(outbox::flush, batchIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        return future;
+    }
+
+    /**
+     * 目标节点离开集群：丢弃其发送队列，未发送的信封按 FAILED 完成
+     */
+    public void onMemberLeft(String nodeId) {
+        Outbox outbox = outboxes.remove(nodeId);
+        if (outbox != null) {
+            Pending pending;
+            while ((pending = outbox.pending.poll()) != null) {
+                pending.future().complete(DeliveryStatus.FAILED);
+                failedEnvelopes.increment();
+            }
+        }
+    }
+
+    public long getForwardedEnvelopes() {
+        return forwardedEnvelopes.sum();
+    }
+
+    public long getSentBatches() {
+        return sentBatches.sum();
+    }
+
+    public long getFailedEnvelopes() {
+        return failedEnvelopes.sum();
+    }
+
+    private record Pending(ClusterEnvelope envelope, CompletableFuture<DeliveryStatus> future) {}
+
+    /**
+     * 单个目标节点的发送队列
+     */
+    private final class Outbox {
+
+        private final String nodeId;
+        private final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean inFlight = new AtomicBoolean();
+
+        private Outbox(String nodeId) {
+            this.nodeId = nodeId;
+        }
+
+        /**
+         * 取出至多 batchSize 条发送；已有批次在途时由其完成回调继续发送
+         */
+        void flush() {
+            scheduled.set(false);
+            if (!inFlight.compareAndSet(false, true)) {
+                return;
+            }
+
+            List<Pending> batch = new ArrayList<>(Math.min(batchSize, Math.max(size.get(), 1)));
+            Pending next;
+            while (batch.size() < batchSize && (next = pending.poll()) != null) {
+                batch.add(next);
+            }
+            size.addAndGet(-batch.size());
+            if (batch.isEmpty()) {
+                inFlight.set(false);
+                // 释放在途标记与新信封入队之间可能存在竞争，再检查一次
+                if (!pending.isEmpty()) {
+                    flush();
+                }
+                return;
+            }
+
+            List<ClusterEnvelope> envelopes = new ArrayList<>(batch.size());
+            for (Pending item : batch) {
+                envelopes.add(item.envelope());
+            }
+            sentBatches.increment();
+
+            bus.sendBatch(nodeId, envelopes)
+                .orTimeout(ackTimeoutMs, TimeUnit.MILLISECONDS)
+                .whenComplete((statuses, error) -> {
+                    complete(batch, statuses, error);
+                    inFlight.set(false);
+                    if (!pending.isEmpty()) {
+                        flush();
+                    }
+                });
+        }
+
+        private void complete(List<Pending> batch, List<DeliveryStatus> statuses, Throwable error) {
+            if (error != null || statuses == null || statuses.size() != batch.size()) {
+                log.warn("转发到节点 {} 的 {} 条消息未确认: {}", nodeId, batch.size(),
+                    error != null ? error.toString() : "确认数量不匹配");
+                batch.forEach(item -> item.future().complete(DeliveryStatus.FAILED));
+                failedEnvelopes.add(batch.size());
+                return;
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).future().complete(statuses.get(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.yihu.agent.websocket.cluster;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 集群在线目录
+ *
+ * 记录每个用户当前连接在哪些节点上（userId -> 节点集合），由各节点广播的在线状态变化增量维护；
+ * 新节点加入时各节点向其发送全量快照，节点离开时清除该节点的全部记录
+ */
+public class ClusterPresenceDirectory {
+
+    private final Map<String, Set<String>> nodesByUser = new ConcurrentHashMap<>();
+
+    /**
+     * 应用某个节点的一批在线状态变化
+     */
+    public void apply(String nodeId, Collection<PresenceUpdate> updates) {
+        for (PresenceUpdate update : updates) {
+            if (update.online()) {
+                nodesByUser.computeIfAbsent(update.userId(), id -> ConcurrentHashMap.newKeySet()).add(nodeId);
+            } else {
+                nodesByUser.computeIfPresent(update.userId(), (id, nodes) -> {
+                    nodes.remove(nodeId);
+                    return nodes.isEmpty() ? null : nodes;
+                });
+            }
+        }
+    }
+
+    /**
+     * 节点离开集群，移除其上的全部用户
+     */
+    public void removeNode(String nodeId) {
+        nodesByUser.replaceAll((userId, nodes) -> {
+            nodes.remove(nodeId);
+            return nodes;
+        });
+        nodesByUser.values().removeIf(Set::isEmpty);
+    }
+
+    /**
+     * 用户所在的节点
+     */
+    public Set<String> nodesOf(String userId) {
+        Set<String> nodes = nodesByUser.get(userId);
+        return nodes == null ? Set.of() : Set.copyOf(nodes);
+    }
+
+    public boolean isOnline(String userId) {
+        return nodesByUser.containsKey(userId);
+    }
+
+    /**
+     * 目标人群按所在节点分组（离线用户不出现在结果中）
+     */
+    public Map<String, List<String>> groupByNode(Collection<String> userIds) {
+        Map<String, List<String>> result = new HashMap<>();
+        for (String userId : userIds) {
+            Set<String> nodes = nodesByUser.get(userId);
+            if (nodes != null) {
+                for (String node : nodes) {
+                    result.computeIfAbsent(node, n -> new ArrayList<>()).add(userId);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 集群在线用户数
+     */
+    public int getOnlineCount() {
+        return nodesByUser.size();
+    }
+
+    /**
+     * 各节点的在线用户数
+     */
+    public Map<String, Integer> countByNode() {
+        Map<String, Integer> counts = new HashMap<>();
+        nodesByUser.forEach((userId, nodes) -> {
+            for (String node : nodes) {
+                counts.merge(node, 1, Integer::sum);
+            }
+        });
+        return counts;
+    }
+}
@@ -0,0 +1,376 @@
+package com.yihu.agent.websocket.cluster;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yihu.agent.websocket.ChatWebSocketHandler;
+import com.yihu.agent.websocket.DeliveryStatus;
+import com.yihu.agent.websocket.RemoteDelivery;
+import com.yihu.agent.websocket.group.GroupForwarder;
+import com.yihu.agent.websocket.group.GroupMessagingService;
+import com.yihu.agent.websocket.presence.OnlinePresenceIndex;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.user.SimpUser;
+import org.springframework.messaging.simp.user.SimpUserRegistry;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * 集群路由
+ *
+ * 1. 本节点的上线 / 下线通过 {@link ClusterBus} 广播，汇总为集群在线目录
+ * 2. 目标用户不在本节点时，查目录找到所在节点，经 {@link ClusterForwarder} 批量转发并等待确认
+ * 3. 接收其他节点转发来的信封，投递给本节点的原生 / STOMP 连接，并回传投递结果；
+ *    STOMP 信封只在用户有本节点的 STOMP 会话时才算送达（只连原生 WebSocket 的用户收不到用户队列消息）
+ * 4. 启动时作为 {@link RemoteDelivery} 注册到 {@link ChatWebSocketHandler}、作为 {@link GroupForwarder} 注册到
+ *    {@link GroupMessagingService}，二者经此转发而不直接依赖本类
+ * 5. 按主题分发节点间请求（{@link #registerRequestHandler}），成员变化时通知 {@link #addMembershipListener} 注册的监听器
+ */
+@Slf4j
+@Component
+public class ClusterRouter implements ClusterBus.Listener, RemoteDelivery {
+
+    private final ClusterBus bus;
+    private final ChatWebSocketHandler webSocketHandler;
+    private final OnlinePresenceIndex presenceIndex;
+    private final GroupMessagingService groupMessagingService;
+    private final SimpUserRegistry simpUserRegistry;
+    private final ObjectMapper objectMapper;
+
+    private final ClusterPresenceDirectory directory = new ClusterPresenceDirectory();
+
+    @Value("${healthcare.cluster.batch-size:64}")
+    private int batchSize;
+
+    @Value("${healthcare.cluster.batch-interval-ms:2}")
+    private long batchIntervalMs;
+
+    @Value("${healthcare.cluster.ack-timeout-ms:3000}")
+    private long ackTimeoutMs;
+
+    private ScheduledExecutorService scheduler;
+
+    private ClusterForwarder forwarder;
+
+    /**
+     * 请求处理器：topic -> (fromNodeId, payload) -> 应答
+     */
+    private final Map<String, BiFunction<String, String, CompletableFuture<String>>> requestHandlers = new ConcurrentHashMap<>();
+
+    private final List<Consumer<Set<String>>> membershipListeners = new CopyOnWriteArrayList<>();
+
+    public ClusterRouter(ClusterBus bus, ChatWebSocketHandler webSocketHandler, OnlinePresenceIndex presenceIndex,
+                         GroupMessagingService groupMessagingService, SimpUserRegistry simpUserRegistry,
+                         ObjectMapper objectMapper) {
+        this.bus = bus;
+        this.webSocketHandler = webSocketHandler;
+        this.presenceIndex = presenceIndex;
+        this.groupMessagingService = groupMessagingService;
+        this.simpUserRegistry = simpUserRegistry;
+        this.objectMapper = objectMapper;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-forwarder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        forwarder = new ClusterForwarder(bus, scheduler, batchSize, batchIntervalMs, ackTimeoutMs);
+
+        presenceIndex.addListener(this::onLocalPresenceChanged);
+        directory.apply(bus.getLocalNodeId(), toUpdates(presenceIndex.getOnlineUserIds()));
+        bus.start(this);
+        webSocketHandler.setRemoteDelivery(this);
+        groupMessagingService.setGroupForwarder(this::forwardToGroup);
+        notifyMembership();
+    }
+
+    @PreDestroy
+    public void stop() {
+        webSocketHandler.setRemoteDelivery(RemoteDelivery.LOCAL_ONLY);
+        groupMessagingService.setGroupForwarder(GroupForwarder.LOCAL_ONLY);
+        bus.stop();
+        scheduler.shutdown();
+    }
+
+    // ==================== 发送方 ====================
+
+    /**
+     * 用户在本节点没有原生 WebSocket 连接、但连接在其他节点上
+     *
+     * 按传输判断：在线索引同时包含 STOMP 连接，只连了本节点 STOMP 的用户发原生消息时仍需转发
+     */
+    @Override
+    public boolean isRemote(String userId) {
+        return !webSocketHandler.isUserOnline(userId) && !remoteNodesOf(userId).isEmpty();
+    }
+
+    /**
+     * 用户在本节点没有 STOMP 会话、但连接在其他节点上（只连了本节点原生 WebSocket 的用户同样需要转发）
+     */
+    public boolean isRemoteStompUser(String userId) {
+        return !hasLocalStompSession(userId) && !remoteNodesOf(userId).isEmpty();
+    }
+
+    /**
+     * 用户在本节点是否有 STOMP 会话
+     */
+    public boolean hasLocalStompSession(String userId) {
+        SimpUser user = simpUserRegistry.getUser(userId);
+        return user != null && user.hasSessions();
+    }
+
+    /**
+     * 转发给其他节点上原生 WebSocket 连接的用户
+     *
+     * @param frame 消息对象（序列化为 JSON 转发）
+     * @return 目标节点的投递结果；用户不在任何其他节点上时为 FAILED
+     */
+    @Override
+    public CompletableFuture<DeliveryStatus> forwardToUser(String userId, Object frame) {
+        return forward(userId, ClusterEnvelope.Kind.RAW_USER, null, frame);
+    }
+
+    /**
+     * 转发给其他节点上 STOMP 连接的用户队列
+     */
+    public CompletableFuture<DeliveryStatus> forwardToStompUser(String userId, String destination, Object payload) {
+        return forward(userId, ClusterEnvelope.Kind.STOMP_USER, destination, payload);
+    }
+
+    /**
+     * 把广播转发给其他所有节点，各节点只向本地连接广播
+     *
+     * @return 转发的节点数
+     */
+    @Override
+    public int broadcastToOtherNodes(Object frame) {
+        return toOtherNodes(ClusterEnvelope.Kind.BROADCAST, null, serialize(frame));
+    }
+
+    /**
+     * 把群组消息转发给其他所有节点，各节点向本地代理的群组主题扇出（成员可能连在任意节点上）
+     *
+     * @return 转发的节点数
+     */
+    public int forwardToGroup(String groupId, byte[] body) {
+        return toOtherNodes(ClusterEnvelope.Kind.GROUP, groupId, new String(body, StandardCharsets.UTF_8));
+    }
+
+    private int toOtherNodes(ClusterEnvelope.Kind kind, String destination, String payload) {
+        int nodes = 0;
+        for (String nodeId : bus.getMembers()) {
+            if (!nodeId.equals(bus.getLocalNodeId())) {
+                forwarder.forward(nodeId, envelope(kind, null, destination, payload));
+                nodes++;
+            }
+        }
+        return nodes;
+    }
+
+    private CompletableFuture<DeliveryStatus> forward(String userId, ClusterEnvelope.Kind kind,
+                                                      String destination, Object payload) {
+        List<String> nodes = remoteNodesOf(userId);
+        if (nodes.isEmpty()) {
+            return CompletableFuture.completedFuture(DeliveryStatus.FAILED);
+        }
+        // 同一用户同时连在多个节点时，投递给最先确认送达的节点即可
+        ClusterEnvelope envelope = envelope(kind, userId, destination, serialize(payload));
+        CompletableFuture<DeliveryStatus> result = forwarder.forward(nodes.get(0), envelope);
+        for (int i = 1; i < nodes.size(); i++) {
+            String nodeId = nodes.get(i);
+            result = result.thenCompose(status -> status == DeliveryStatus.DELIVERED
+                ? CompletableFuture.completedFuture(status)
+                : forwarder.forward(nodeId, envelope));
+        }
+        return result;
+    }
+
+    /**
+     * 向其他节点发送请求，超时按失败处理
+     */
+    public CompletableFuture<String> request(String nodeId, String topic, String payload, long timeoutMs) {
+        return bus.request(nodeId, topic, payload).orTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 注册请求处理器，同一主题只保留最后一次注册
+     */
+    public void registerRequestHandler(String topic, BiFunction<String, String, CompletableFuture<String>> handler) {
+        requestHandlers.put(topic, handler);
+    }
+
+    /**
+     * 注册成员变化监听器，注册时立即以当前成员回调一次
+     */
+    public void addMembershipListener(Consumer<Set<String>> listener) {
+        membershipListeners.add(listener);
+        listener.accept(bus.getMembers());
+    }
+
+    private List<String> remoteNodesOf(String userId) {
+        List<String> nodes = new ArrayList<>(directory.nodesOf(userId));
+        nodes.remove(bus.getLocalNodeId());
+        return nodes;
+    }
+
+    // ==================== 接收方 ====================
+
+    @Override
+    public List<DeliveryStatus> onBatch(String fromNodeId, List<ClusterEnvelope> batch) {
+        List<DeliveryStatus> statuses = new ArrayList<>(batch.size());
+        for (ClusterEnvelope envelope : batch) {
+            try {
+                statuses.add(deliverLocally(envelope));
+            } catch (Exception e) {
+                log.error("处理节点 {} 转发的消息失败: {}", fromNodeId, envelope.id(), e);
+                statuses.add(DeliveryStatus.FAILED);
+            }
+        }
+        return statuses;
+    }
+
+    private DeliveryStatus deliverLocally(ClusterEnvelope envelope) {
+        byte[] body = envelope.payload().getBytes(StandardCharsets.UTF_8);
+        return switch (envelope.kind()) {
+            case RAW_USER -> webSocketHandler.deliverForwarded(envelope.userId(), body);
+            case STOMP_USER -> {
+                // 在线索引同时包含原生 WebSocket 连接，须确认用户在本节点有 STOMP 会话
+                if (!hasLocalStompSession(envelope.userId())) {
+                    yield DeliveryStatus.FAILED;
+                }
+                groupMessagingService.sendBytesToUser(envelope.userId(), envelope.destination(), body);
+                yield DeliveryStatus.DELIVERED;
+            }
+            case BROADCAST -> {
+                webSocketHandler.broadcastForwarded(body);
+                yield DeliveryStatus.DELIVERED;
+            }
+            case GROUP -> {
+                groupMessagingService.sendBytesToGroup(envelope.destination(), body);
+                yield DeliveryStatus.DELIVERED;
+            }
+        };
+    }
+
+    @Override
+    public void onPresence(String fromNodeId, List<PresenceUpdate> updates) {
+        directory.apply(fromNodeId, updates);
+    }
+
+    @Override
+    public CompletableFuture<String> onRequest(String fromNodeId, String topic, String payload) {
+        BiFunction<String, String, CompletableFuture<String>> handler = requestHandlers.get(topic);
+        if (handler == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("未注册的请求主题: " + topic));
+        }
+        try {
+            return handler.apply(fromNodeId, payload);
+        } catch (Exception e) {
+            log.error("处理节点 {} 的请求失败: topic={}", fromNodeId, topic, e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public void onMemberJoined(String nodeId) {
+        // 向新节点发送本节点的全量在线快照
+        bus.publishPresence(nodeId, toUpdates(presenceIndex.getOnlineUserIds()));
+        log.info("集群节点加入: {}，当前节点: {}", nodeId, bus.getMembers());
+        notifyMembership();
+    }
+
+    @Override
+    public void onMemberLeft(String nodeId) {
+        directory.removeNode(nodeId);
+        forwarder.onMemberLeft(nodeId);
+        log.info("集群节点离开: {}，当前节点: {}", nodeId, bus.getMembers());
+        notifyMembership();
+    }
+
+    private void notifyMembership() {
+        Set<String> members = bus.getMembers();
+        for (Consumer<Set<String>> listener : membershipListeners) {
+            try {
+                listener.accept(members);
+            } catch (Exception e) {
+                log.error("成员变化监听器执行失败", e);
+            }
+        }
+    }
+
+    /**
+     * 本节点在线状态变化，以当前状态为准广播（监听通知在锁外，可能乱序到达）
+     */
+    private void onLocalPresenceChanged(String userId, boolean online) {
+        List<PresenceUpdate> updates = List.of(new PresenceUpdate(userId, presenceIndex.isOnline(userId)));
+        directory.apply(bus.getLocalNodeId(), updates);
+        bus.publishPresence(null, updates);
+    }
+
+    // ==================== 查询 ====================
+
+    public String getLocalNodeId() {
+        return bus.getLocalNodeId();
+    }
+
+    public ClusterPresenceDirectory getDirectory() {
+        return directory;
+    }
+
+    /**
+     * 集群状态
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("localNodeId", bus.getLocalNodeId());
+        stats.put("members", bus.getMembers());
+        stats.put("clusterOnlineCount", directory.getOnlineCount());
+        stats.put("onlineByNode", directory.countByNode());
+        stats.put("forwardedEnvelopes", forwarder.getForwardedEnvelopes());
+        stats.put("sentBatches", forwarder.getSentBatches());
+        stats.put("failedEnvelopes", forwarder.getFailedEnvelopes());
+        return stats;
+    }
+
+    // ==================== 辅助方法 ====================
+
+    private static List<PresenceUpdate> toUpdates(List<String> onlineUserIds) {
+        List<PresenceUpdate> updates = new ArrayList<>(onlineUserIds.size());
+        for (String userId : onlineUserIds) {
+            updates.add(new PresenceUpdate(userId, true));
+        }
+        return updates;
+    }
+
+    private static ClusterEnvelope envelope(ClusterEnvelope.Kind kind, String userId, String destination, String payload) {
+        return new ClusterEnvelope(UUID.randomUUID().toString(), kind, userId, destination, payload);
+    }
+
+    private String serialize(Object payload) {
+        try {
+            return objectMapper.writeValueAsString(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("消息序列化失败", e);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.yihu.agent.websocket.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 一致性哈希环
+ *
+ * 1. 每个节点在环上放置 virtualNodes 个虚拟节点，key 顺时针找到的第一个虚拟节点即为归属节点
+ * 2. 节点加入 / 离开时只有约 1/N 的 key 改变归属，其余 key 原地不动
+ * 3. 环以排好序的数组保存，成员变化时整体替换；读取无锁，二分查找定位
+ */
+public class ConsistentHashRing {
+
+    private final int virtualNodes;
+
+    private volatile Snapshot snapshot = new Snapshot(Set.of(), new long[0], new String[0]);
+
+    public ConsistentHashRing(int virtualNodes) {
+        if (virtualNodes <= 0) {
+            throw new IllegalArgumentException("virtualNodes 必须大于 0");
+        }
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * 以给定成员重建哈希环
+     *
+     * @return 成员是否发生变化
+     */
+    public synchronized boolean setMembers(Collection<String> members) {
+        Set<String> sorted = new TreeSet<>(members);
+        if (sorted.equals(snapshot.members())) {
+            return false;
+        }
+
+        long[] points = new long[sorted.size() * virtualNodes];
+        String[] owners = new String[points.length];
+        int n = 0;
+        for (String member : sorted) {
+            for (int i = 0; i < virtualNodes; i++) {
+                points[n] = hash(member + "#" + i);
+                owners[n] = member;
+                n++;
+            }
+        }
+        sortByPoint(points, owners);
+        snapshot = new Snapshot(Set.copyOf(sorted), points, owners);
+        return true;
+    }
+
+    /**
+     * key 的归属节点；环为空时返回 null
+     */
+    public String ownerOf(String key) {
+        return snapshot.ownerOf(hash(key));
+    }
+
+    /**
+     * 当前成员
+     */
+    public Set<String> getMembers() {
+        return snapshot.members();
+    }
+
+    /**
+     * 去掉指定节点后 key 的归属节点（节点主动下线前计算移交目标用）
+     */
+    public String ownerOfExcluding(String key, String excludedNode) {
+        Snapshot current = snapshot;
+        long[] points = current.points();
+        String[] owners = current.owners();
+        if (points.length == 0) {
+            return null;
+        }
+        int start = current.indexOf(hash(key));
+        for (int i = 0; i < points.length; i++) {
+            String owner = owners[(start + i) % points.length];
+            if (!owner.equals(excludedNode)) {
+                return owner;
+            }
+        }
+        return null;
+    }
+
+    // ==================== 辅助方法 ====================
+
+    /**
+     * 64 位 FNV-1a 再做一次 murmur3 fmix64 混淆，使相近的字符串在环上充分打散
+     */
+    static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static void sortByPoint(long[] points, String[] owners) {
+        Integer[] order = new Integer[points.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // 哈希值相同时按节点ID排序，保证各节点算出的环完全一致
+        Arrays.sort(order, (a, b) -> {
+            int cmp = Long.compare(points[a], points[b]);
+            return cmp != 0 ? cmp : owners[a].compareTo(owners[b]);
+        });
+        long[] sortedPoints = new long[points.length];
+        String[] sortedOwners = new String[owners.length];
+        for (int i = 0; i < order.length; i++) {
+            sortedPoints[i] = points[order[i]];
+            sortedOwners[i] = owners[order[i]];
+        }
+        System.arraycopy(sortedPoints, 0, points, 0, points.length);
+        System.arraycopy(sortedOwners, 0, owners, 0, owners.length);
+    }
+
+    private record Snapshot(Set<String> members, long[] points, String[] owners) {
+
+        /**
+         * 顺时针第一个不小于 point 的虚拟节点下标，越过末尾回到 0
+         */
+        int indexOf(long point) {
+            int index = Arrays.binarySearch(points, point);
+            if (index < 0) {
+                index = -index - 1;
+            } else {
+                // 哈希值相同的虚拟节点取第一个
+                while (index > 0 && points[index - 1] == point) {
+                    index--;
+                }
+            }
+            return index == points.length ? 0 : index;
+        }
+
+        String ownerOf(long point) {
+            return points.length == 0 ? null : owners[indexOf(point)];
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.yihu.agent.websocket.cluster;
+
+import com.yihu.agent.websocket.DeliveryStatus;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * 进程内集群总线（单机多节点替身）
+ *
+ * 同名集群的节点共享一个进程内"网络"，每个节点有一个单线程入站执行器，
+ * 模拟网络传输的异步性和单连接上的顺序性，不依赖任何外部服务
+ *
+ * 单实例部署时集群只有本节点，所有路由都在本地完成。
+ * 同一 JVM 中的多个 Spring 上下文（如测试）使用相同的 healthcare.cluster.name 时会组成同一个集群，
+ * 互不相关的上下文须使用不同的集群名称
+ */
+@Slf4j
+public class InJvmClusterBus implements ClusterBus {
+
+    private static final Map<String, Map<String, InJvmClusterBus>> NETWORKS = new ConcurrentHashMap<>();
+
+    private final String clusterName;
+    private final String nodeId;
+    private final Map<String, InJvmClusterBus> network;
+
+    private volatile Listener listener;
+    private volatile ExecutorService inbound;
+
+    public InJvmClusterBus(String clusterName, String nodeId) {
+        this.clusterName = clusterName;
+        this.nodeId = nodeId;
+        this.network = NETWORKS.computeIfAbsent(clusterName, name -> new ConcurrentHashMap<>());
+    }
+
+    @Override
+    public String getLocalNodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public Set<String> getMembers() {
+        return Set.copyOf(network.keySet());
+    }
+
+    @Override
+    public void start(Listener listener) {
+        this.listener = listener;
+        this.inbound = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "cluster-inbound-" + nodeId);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        synchronized (network) {
+            if (network.putIfAbsent(nodeId, this) != null) {
+                throw new IllegalStateException("集群 " + clusterName + " 中已存在节点 " + nodeId);
+            }
+            for (InJvmClusterBus peer : network.values()) {
+                if (peer != this) {
+                    peer.dispatch(() -> peer.listener.onMemberJoined(nodeId));
+                    dispatch(() -> listener.onMemberJoined(peer.nodeId));
+                }
+            }
+        }
+        log.info("节点 {} 已加入进程内集群 {}，当前节点数: {}", nodeId, clusterName, network.size());
+    }
+
+    @Override
+    public void stop() {
+        synchronized (network) {
+            if (!network.remove(nodeId, this)) {
+                return;
+            }
+            for (InJvmClusterBus peer : network.values()) {
+                peer.dispatch(() -> peer.listener.onMemberLeft(nodeId));
+            }
+        }
+        inbound.shutdown();
+        log.info("节点 {} 已离开进程内集群 {}", nodeId, clusterName);
+    }
+
+    @Override
+    public CompletableFuture<List<DeliveryStatus>> sendBatch(String targetNodeId, List<ClusterEnvelope> batch) {
+        InJvmClusterBus peer = network.get(targetNodeId);
+        if (peer == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("节点不可达: " + targetNodeId));
+        }
+        List<ClusterEnvelope> copy = List.copyOf(batch);
+        try {
+            return CompletableFuture.supplyAsync(() -> peer.listener.onBatch(nodeId, copy), peer.inbound);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new IllegalStateException("节点正在下线: " + targetNodeId, e));
+        }
+    }
+
+    @Override
+    public void publishPresence(String targetNodeId, List<PresenceUpdate> updates) {
+        List<PresenceUpdate> copy = List.copyOf(updates);
+        for (InJvmClusterBus peer : network.values()) {
+            if (peer != this && (targetNodeId == null || peer.nodeId.equals(targetNodeId))) {
+                peer.dispatch(() -> peer.listener.onPresence(nodeId, copy));
+            }
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> request(String targetNodeId, String topic, String payload) {
+        InJvmClusterBus peer = network.get(targetNodeId);
+        if (peer == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("节点不可达: " + targetNodeId));
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> peer.listener.onRequest(nodeId, topic, payload), peer.inbound)
+                .thenCompose(reply -> reply);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(new IllegalStateException("节点正在下线: " + targetNodeId, e));
+        }
+    }
+
+    private void dispatch(Runnable task) {
+        try {
+            inbound.execute(task);
+        } catch (RejectedExecutionException e) {
+            log.debug("节点 {} 已下线，丢弃集群事件", nodeId);
+        }
+    }
+}
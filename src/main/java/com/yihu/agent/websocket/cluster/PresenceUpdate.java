@@ -0,0 +1,9 @@
+package com.yihu.agent.websocket.cluster;
+
+/**
+ * 节点间同步的在线状态变化
+ *
+ * @param userId 用户ID
+ * @param online 在发送节点上是否在线
+ */
+public record PresenceUpdate(String userId, boolean online) {}
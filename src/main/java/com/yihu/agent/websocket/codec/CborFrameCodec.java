@@ -0,0 +1,83 @@
+package com.yihu.agent.websocket.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+/**
+ * CBOR 二进制帧编解码器（RFC 8949）
+ *
+ * 出站格式为两个字段的 CBOR map：{"seq": N, "frame": 帧对象}
+ * 帧对象只编码一次，序号信封按 CBOR 规则直接拼接字节，无需重新序列化
+ */
+public class CborFrameCodec implements FrameCodec {
+
+    public static final String SUB_PROTOCOL = "healthcare.cbor.v1";
+
+    /**
+     * CBOR map(2) + text(3) "seq"
+     */
+    private static final byte[] ENVELOPE_HEAD = {(byte) 0xA2, 0x63, 's', 'e', 'q'};
+
+    /**
+     * text(5) "frame"
+     */
+    private static final byte[] FRAME_KEY = {0x65, 'f', 'r', 'a', 'm', 'e'};
+
+    private final ObjectMapper mapper = new CBORMapper();
+
+    @Override
+    public String getSubProtocol() {
+        return SUB_PROTOCOL;
+    }
+
+    @Override
+    public ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    @Override
+    public byte[] withSeq(long seq, byte[] body) {
+        byte[] seqBytes = encodeUnsigned(seq);
+        byte[] result = new byte[ENVELOPE_HEAD.length + seqBytes.length + FRAME_KEY.length + body.length];
+        int offset = 0;
+        System.arraycopy(ENVELOPE_HEAD, 0, result, offset, ENVELOPE_HEAD.length);
+        offset += ENVELOPE_HEAD.length;
+        System.arraycopy(seqBytes, 0, result, offset, seqBytes.length);
+        offset += seqBytes.length;
+        System.arraycopy(FRAME_KEY, 0, result, offset, FRAME_KEY.length);
+        offset += FRAME_KEY.length;
+        System.arraycopy(body, 0, result, offset, body.length);
+        return result;
+    }
+
+    @Override
+    public WebSocketMessage<?> toMessage(byte[] data) {
+        return new BinaryMessage(data);
+    }
+
+    /**
+     * 按 CBOR 主类型 0（无符号整数）编码
+     */
+    private static byte[] encodeUnsigned(long value) {
+        if (value < 24) {
+            return new byte[]{(byte) value};
+        }
+        if (value <= 0xFFL) {
+            return new byte[]{0x18, (byte) value};
+        }
+        if (value <= 0xFFFFL) {
+            return new byte[]{0x19, (byte) (value >>> 8), (byte) value};
+        }
+        if (value <= 0xFFFFFFFFL) {
+            return new byte[]{0x1A, (byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        }
+        byte[] result = new byte[9];
+        result[0] = 0x1B;
+        for (int i = 0; i < 8; i++) {
+            result[8 - i] = (byte) (value >>> (8 * i));
+        }
+        return result;
+    }
+}
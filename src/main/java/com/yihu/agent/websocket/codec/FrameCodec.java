@@ -0,0 +1,55 @@
+package com.yihu.agent.websocket.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.IOException;
+
+/**
+ * 原生 WebSocket 帧编解码器
+ *
+ * 每种编码对应一个 WebSocket 子协议，握手时由客户端通过 Sec-WebSocket-Protocol 协商。
+ * 出站帧分两步编码：
+ * 1. encodeBody 把帧对象编码为消息体（广播时每种编码只需执行一次）
+ * 2. withSeq 为消息体加上该用户的帧序号（字节级拼接，不重新序列化）
+ * 入站帧由 {@link FrameReader} 解码
+ */
+public interface FrameCodec {
+
+    /**
+     * 对应的 WebSocket 子协议名
+     */
+    String getSubProtocol();
+
+    /**
+     * 编解码使用的 ObjectMapper
+     */
+    ObjectMapper getMapper();
+
+    /**
+     * 把帧对象编码为消息体（不含序号）
+     */
+    default byte[] encodeBody(Object frame) throws IOException {
+        return getMapper().writeValueAsBytes(frame);
+    }
+
+    /**
+     * 为消息体加上帧序号
+     */
+    byte[] withSeq(long seq, byte[] body);
+
+    /**
+     * 把编码好的数据包装为 WebSocket 消息（文本帧或二进制帧）
+     */
+    WebSocketMessage<?> toMessage(byte[] data);
+
+    /**
+     * 把其他编码的消息体转换为本编码（用于离线消息与跨协议重放）
+     */
+    default byte[] transcode(byte[] body, FrameCodec source) throws IOException {
+        if (source == this) {
+            return body;
+        }
+        return getMapper().writeValueAsBytes(source.getMapper().readTree(body));
+    }
+}
@@ -0,0 +1,47 @@
+package com.yihu.agent.websocket.codec;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.List;
+
+/**
+ * 帧编解码器注册表
+ *
+ * 按握手协商出的子协议选择编解码器，未协商时使用 JSON
+ */
+@Component
+public class FrameCodecRegistry {
+
+    private final JsonFrameCodec jsonCodec = new JsonFrameCodec();
+
+    private final CborFrameCodec cborCodec = new CborFrameCodec();
+
+    /**
+     * 服务端支持的子协议，按优先级排列
+     */
+    public List<String> getSubProtocols() {
+        return List.of(CborFrameCodec.SUB_PROTOCOL, JsonFrameCodec.SUB_PROTOCOL);
+    }
+
+    /**
+     * 获取会话对应的编解码器
+     */
+    public FrameCodec forSession(WebSocketSession session) {
+        return CborFrameCodec.SUB_PROTOCOL.equals(session.getAcceptedProtocol()) ? cborCodec : jsonCodec;
+    }
+
+    /**
+     * 为目标类型创建预构建的读取器（调用方持有并复用）
+     */
+    public <T> FrameReader<T> readerFor(Class<T> type) {
+        return new FrameReader<>(type, jsonCodec, cborCodec);
+    }
+
+    /**
+     * JSON 编解码器（离线消息日志以 JSON 存储）
+     */
+    public FrameCodec json() {
+        return jsonCodec;
+    }
+}
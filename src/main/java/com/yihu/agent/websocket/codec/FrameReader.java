@@ -0,0 +1,53 @@
+package com.yihu.agent.websocket.codec;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 预构建的入站帧读取器
+ *
+ * 为固定的目标类型预先创建 JSON 与 CBOR 的 {@link ObjectReader}（线程安全、可复用），
+ * 每条消息不再按类型查找反序列化器：
+ * 1. 文本帧一律按 JSON 读取（兼容在 CBOR 连接上发送 JSON 的客户端）
+ * 2. 二进制帧按会话协商的编码读取
+ *
+ * @param <T> 目标类型
+ */
+public class FrameReader<T> {
+
+    private final FrameCodec jsonCodec;
+
+    private final ObjectReader jsonReader;
+
+    private final ObjectReader cborReader;
+
+    FrameReader(Class<T> type, FrameCodec jsonCodec, FrameCodec cborCodec) {
+        this.jsonCodec = jsonCodec;
+        this.jsonReader = jsonCodec.getMapper().readerFor(type);
+        this.cborReader = cborCodec.getMapper().readerFor(type);
+    }
+
+    /**
+     * 读取入站消息
+     *
+     * @param codec 会话协商的编解码器
+     */
+    public T read(FrameCodec codec, WebSocketMessage<?> message) throws IOException {
+        if (message instanceof TextMessage textMessage) {
+            return jsonReader.readValue(textMessage.getPayload());
+        }
+        ByteBuffer payload = ((BinaryMessage) message).getPayload();
+        ObjectReader reader = codec == jsonCodec ? jsonReader : cborReader;
+        if (payload.hasArray()) {
+            return reader.readValue(payload.array(), payload.arrayOffset() + payload.position(), payload.remaining());
+        }
+        byte[] bytes = new byte[payload.remaining()];
+        payload.duplicate().get(bytes);
+        return reader.readValue(bytes);
+    }
+}
@@ -0,0 +1,52 @@
+package com.yihu.agent.websocket.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSON 文本帧编解码器（默认协议，未协商子协议的客户端使用）
+ *
+ * 出站格式：{"seq":1,"type":"private",...}，序号作为对象的第一个字段
+ */
+public class JsonFrameCodec implements FrameCodec {
+
+    public static final String SUB_PROTOCOL = "healthcare.json.v1";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Override
+    public String getSubProtocol() {
+        return SUB_PROTOCOL;
+    }
+
+    @Override
+    public ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    /**
+     * 在对象起始的 { 之后插入 "seq":N,（空对象不加逗号）
+     *
+     * @throws IllegalArgumentException 消息体不是 JSON 对象（序号只能作为对象字段）
+     */
+    @Override
+    public byte[] withSeq(long seq, byte[] body) {
+        if (body.length < 2 || body[0] != '{' || body[body.length - 1] != '}') {
+            throw new IllegalArgumentException("JSON 帧必须是对象才能加序号");
+        }
+        boolean empty = body.length == 2;
+        byte[] prefix = ("{\"seq\":" + seq + (empty ? "" : ",")).getBytes(StandardCharsets.US_ASCII);
+        byte[] result = new byte[prefix.length + body.length - 1];
+        System.arraycopy(prefix, 0, result, 0, prefix.length);
+        System.arraycopy(body, 1, result, prefix.length, body.length - 1);
+        return result;
+    }
+
+    @Override
+    public WebSocketMessage<?> toMessage(byte[] data) {
+        return new TextMessage(data);
+    }
+}
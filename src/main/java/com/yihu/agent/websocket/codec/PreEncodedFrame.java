@@ -0,0 +1,36 @@
+package com.yihu.agent.websocket.codec;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * 预编码帧
+ *
+ * 广播等一对多场景下，同一帧按接收方的编解码器各编码一次并缓存，
+ * 之后每个接收方只需拼接自己的序号
+ *
+ * 注意：非线程安全，只在单次发送循环内使用
+ */
+public class PreEncodedFrame {
+
+    private final Object frame;
+
+    private final Map<FrameCodec, byte[]> bodies = new IdentityHashMap<>(2);
+
+    public PreEncodedFrame(Object frame) {
+        this.frame = frame;
+    }
+
+    /**
+     * 获取指定编解码器下的消息体，首次调用时编码
+     */
+    public byte[] bodyFor(FrameCodec codec) throws IOException {
+        byte[] body = bodies.get(codec);
+        if (body == null) {
+            body = codec.encodeBody(frame);
+            bodies.put(codec, body);
+        }
+        return body;
+    }
+}
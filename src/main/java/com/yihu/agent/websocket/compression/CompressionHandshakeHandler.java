@@ -0,0 +1,57 @@
+package com.yihu.agent.websocket.compression;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * permessage-deflate 协商握手处理器
+ *
+ * 压缩本身由容器（Tomcat）的 permessage-deflate 实现完成，这里只控制是否接受：
+ * 关闭压缩时从客户端提议中剔除 permessage-deflate。
+ *
+ * 扩展参数（server_no_context_takeover 等）由 Tomcat 按客户端请求头重新协商，
+ * 这里追加的参数不会生效，因此不提供上下文接管配置：客户端提议了哪些参数，Tomcat 就按哪些参数协商
+ *
+ * 原生端点与 STOMP 端点共用同一个实例
+ */
+@Slf4j
+@Component
+public class CompressionHandshakeHandler extends DefaultHandshakeHandler {
+
+    public static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+    @Value("${healthcare.websocket.compression.enabled:true}")
+    private boolean enabled;
+
+    @Override
+    @NonNull
+    protected List<WebSocketExtension> filterRequestedExtensions(@NonNull ServerHttpRequest request,
+                                                                 @NonNull List<WebSocketExtension> requestedExtensions,
+                                                                 @NonNull List<WebSocketExtension> supportedExtensions) {
+        List<WebSocketExtension> filtered = super.filterRequestedExtensions(request, requestedExtensions, supportedExtensions);
+        List<WebSocketExtension> result = new ArrayList<>(filtered.size());
+
+        for (WebSocketExtension extension : filtered) {
+            if (enabled || !PERMESSAGE_DEFLATE.equalsIgnoreCase(extension.getName())) {
+                result.add(extension);
+            }
+        }
+
+        if (log.isDebugEnabled() && !requestedExtensions.isEmpty()) {
+            log.debug("WebSocket 扩展协商: 请求 {} -> 接受 {}", requestedExtensions, result);
+        }
+        return result;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+}
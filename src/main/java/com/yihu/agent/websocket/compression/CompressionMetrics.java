@@ -0,0 +1,218 @@
+package com.yihu.agent.websocket.compression;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+/**
+ * WebSocket 压缩指标
+ *
+ * 出站数据帧按大小分类：
+ * 1. 小于阈值的帧计入小帧统计，不做任何额外计算
+ * 2. 达到阈值的帧每 sample-rate 个抽样一次，且每秒最多 max-samples-per-second 个，
+ *    只对抽中的帧用与容器相同的 raw deflate 再压缩一遍，记录压缩前后字节数和耗时；
+ *    其余帧只累加字节数，按抽样得到的压缩率估算实际写出的字节数
+ *
+ * 抽样压缩不保留上下文，结果是启用上下文接管时压缩率的保守估计
+ * 未协商 permessage-deflate 的会话（含 SockJS 降级传输）不计入
+ */
+@Slf4j
+@Component
+public class CompressionMetrics implements WebSocketHandlerDecoratorFactory {
+
+    @Value("${healthcare.websocket.compression.min-size-bytes:256}")
+    private int minSizeBytes;
+
+    @Value("${healthcare.websocket.compression.sample-rate:16}")
+    private int sampleRate;
+
+    @Value("${healthcare.websocket.compression.max-samples-per-second:20}")
+    private int maxSamplesPerSecond;
+
+    private final AtomicInteger compressedSessions = new AtomicInteger();
+
+    private final LongAdder framesTotal = new LongAdder();
+
+    private final LongAdder framesBelowThreshold = new LongAdder();
+
+    private final LongAdder bytesTotal = new LongAdder();
+
+    private final LongAdder bytesAboveThreshold = new LongAdder();
+
+    private final AtomicInteger sampleCounter = new AtomicInteger();
+
+    private final AtomicLong sampleWindowSecond = new AtomicLong();
+
+    private final AtomicInteger samplesInWindow = new AtomicInteger();
+
+    private final LongAdder samplesSkipped = new LongAdder();
+
+    private final LongAdder sampledFrames = new LongAdder();
+
+    private final LongAdder sampledRawBytes = new LongAdder();
+
+    private final LongAdder sampledCompressedBytes = new LongAdder();
+
+    private final LongAdder sampledCompressNanos = new LongAdder();
+
+    /**
+     * 抽样压缩用的 Deflater，每个线程一个，避免反复分配本地内存
+     */
+    private final ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(
+        () -> new Deflater(Deflater.DEFAULT_COMPRESSION, true));
+
+    private final ThreadLocal<byte[]> outputBuffers = ThreadLocal.withInitial(() -> new byte[8192]);
+
+    /**
+     * 包装端点处理器，使其发出的消息经过指标统计
+     */
+    @Override
+    @NonNull
+    public WebSocketHandler decorate(@NonNull WebSocketHandler handler) {
+        return new CompressionMetricsHandler(handler, this);
+    }
+
+    /**
+     * 会话是否协商了 permessage-deflate
+     */
+    public static boolean isCompressed(WebSocketSession session) {
+        for (WebSocketExtension extension : session.getExtensions()) {
+            if (CompressionHandshakeHandler.PERMESSAGE_DEFLATE.equalsIgnoreCase(extension.getName())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void sessionOpened() {
+        compressedSessions.incrementAndGet();
+    }
+
+    void sessionClosed() {
+        compressedSessions.decrementAndGet();
+    }
+
+    /**
+     * 记录一条出站数据帧（仅在已协商压缩的会话上调用）
+     */
+    void recordOutbound(WebSocketMessage<?> message) {
+        int length = message.getPayloadLength();
+        framesTotal.increment();
+        bytesTotal.add(length);
+
+        if (length < minSizeBytes) {
+            framesBelowThreshold.increment();
+            return;
+        }
+        bytesAboveThreshold.add(length);
+        if (!takeSample()) {
+            return;
+        }
+
+        byte[] payload = payloadBytes(message);
+        if (payload != null) {
+            sample(payload);
+        }
+    }
+
+    /**
+     * 是否抽样这一帧：每 sample-rate 帧一次，且当前这一秒的抽样数未超过上限
+     */
+    private boolean takeSample() {
+        if (sampleCounter.incrementAndGet() % Math.max(1, sampleRate) != 0) {
+            return false;
+        }
+        long second = System.currentTimeMillis() / 1000;
+        long window = sampleWindowSecond.get();
+        if (window != second && sampleWindowSecond.compareAndSet(window, second)) {
+            samplesInWindow.set(0);
+        }
+        if (samplesInWindow.incrementAndGet() > maxSamplesPerSecond) {
+            samplesSkipped.increment();
+            return false;
+        }
+        return true;
+    }
+
+    private void sample(byte[] payload) {
+        Deflater deflater = deflaters.get();
+        byte[] buffer = outputBuffers.get();
+
+        long start = System.nanoTime();
+        deflater.reset();
+        deflater.setInput(payload);
+        deflater.finish();
+        int compressed = 0;
+        while (!deflater.finished()) {
+            compressed += deflater.deflate(buffer);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        sampledFrames.increment();
+        sampledRawBytes.add(payload.length);
+        sampledCompressedBytes.add(compressed);
+        sampledCompressNanos.add(elapsed);
+    }
+
+    private static byte[] payloadBytes(WebSocketMessage<?> message) {
+        if (message instanceof TextMessage textMessage) {
+            return textMessage.getPayload().getBytes(StandardCharsets.UTF_8);
+        }
+        if (message instanceof BinaryMessage binaryMessage) {
+            ByteBuffer buffer = binaryMessage.getPayload().duplicate();
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return bytes;
+        }
+        return null;
+    }
+
+    /**
+     * 获取压缩统计快照
+     */
+    public Map<String, Object> snapshot() {
+        long rawBytes = sampledRawBytes.sum();
+        long compressedBytes = sampledCompressedBytes.sum();
+        long samples = sampledFrames.sum();
+
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("minSizeBytes", minSizeBytes);
+        stats.put("sampleRate", sampleRate);
+        stats.put("maxSamplesPerSecond", maxSamplesPerSecond);
+        stats.put("compressedSessions", compressedSessions.get());
+        stats.put("framesTotal", framesTotal.sum());
+        stats.put("framesBelowThreshold", framesBelowThreshold.sum());
+        stats.put("bytesTotal", bytesTotal.sum());
+        stats.put("sampledFrames", samples);
+        stats.put("samplesSkipped", samplesSkipped.sum());
+        stats.put("sampledRawBytes", rawBytes);
+        stats.put("sampledCompressedBytes", compressedBytes);
+        // 压缩后 / 压缩前，越小越好
+        double ratio = rawBytes > 0 ? (double) compressedBytes / rawBytes : 1.0;
+        stats.put("compressionRatio", ratio);
+        // 按抽样压缩率估算的写出字节数（小帧按原大小计）
+        long above = bytesAboveThreshold.sum();
+        stats.put("estimatedWireBytes", bytesTotal.sum() - above + Math.round(above * ratio));
+        stats.put("avgCompressMicros", samples > 0 ? sampledCompressNanos.sum() / 1000.0 / samples : 0.0);
+        // 每压缩 1 MB 耗费的 CPU 毫秒数
+        stats.put("cpuMillisPerMb", rawBytes > 0 ? sampledCompressNanos.sum() / 1e6 / (rawBytes / 1048576.0) : 0.0);
+        return stats;
+    }
+}
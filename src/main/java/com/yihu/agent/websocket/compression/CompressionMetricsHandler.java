@@ -0,0 +1,85 @@
+package com.yihu.agent.websocket.compression;
+
+import org.springframework.lang.NonNull;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.PongMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 压缩指标处理器装饰器
+ *
+ * 对已协商 permessage-deflate 的会话包一层会话装饰器，统计出站数据帧；
+ * 所有回调都传递同一个装饰后的会话，保证下游处理器保存和使用的是同一实例
+ */
+class CompressionMetricsHandler extends WebSocketHandlerDecorator {
+
+    private final CompressionMetrics metrics;
+
+    private final Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+
+    CompressionMetricsHandler(WebSocketHandler delegate, CompressionMetrics metrics) {
+        super(delegate);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void afterConnectionEstablished(@NonNull WebSocketSession session) throws Exception {
+        WebSocketSession target = session;
+        if (CompressionMetrics.isCompressed(session)) {
+            target = new MeteredSession(session);
+            sessions.put(session.getId(), target);
+            metrics.sessionOpened();
+        }
+        super.afterConnectionEstablished(target);
+    }
+
+    @Override
+    public void handleMessage(@NonNull WebSocketSession session, @NonNull WebSocketMessage<?> message) throws Exception {
+        super.handleMessage(resolve(session), message);
+    }
+
+    @Override
+    public void handleTransportError(@NonNull WebSocketSession session, @NonNull Throwable exception) throws Exception {
+        super.handleTransportError(resolve(session), exception);
+    }
+
+    @Override
+    public void afterConnectionClosed(@NonNull WebSocketSession session, @NonNull CloseStatus closeStatus) throws Exception {
+        WebSocketSession target = sessions.remove(session.getId());
+        if (target != null) {
+            metrics.sessionClosed();
+        }
+        super.afterConnectionClosed(target != null ? target : session, closeStatus);
+    }
+
+    private WebSocketSession resolve(WebSocketSession session) {
+        return sessions.getOrDefault(session.getId(), session);
+    }
+
+    /**
+     * 统计出站数据帧的会话装饰器，控制帧不计入
+     */
+    private class MeteredSession extends WebSocketSessionDecorator {
+
+        MeteredSession(WebSocketSession delegate) {
+            super(delegate);
+        }
+
+        @Override
+        public void sendMessage(@NonNull WebSocketMessage<?> message) throws IOException {
+            if (!(message instanceof PingMessage) && !(message instanceof PongMessage)) {
+                metrics.recordOutbound(message);
+            }
+            super.sendMessage(message);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.yihu.agent.websocket.delivery;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 重放缓冲区注册表
+ *
+ * 按 通道 + userId 管理 {@link ReplayRingBuffer}，原生 WebSocket 与 STOMP 各自独立编号。
+ * 用户在该通道上没有在线会话、且断开后（或最后一次发送、重放后）超过空闲时长的缓冲区会被回收，
+ * 避免内存随历史用户数增长；在线但长时间没有消息的用户保留缓冲区，重连时仍可按序号补发。
+ */
+@Slf4j
+@Component
+public class ReplayBufferRegistry {
+
+    /**
+     * 原生 WebSocket 通道
+     */
+    public static final String RAW_CHANNEL = "raw";
+
+    /**
+     * STOMP AI 回复通道
+     */
+    public static final String AI_CHANNEL = "ai";
+
+    private final Map<String, ReplayRingBuffer<?>> buffers = new ConcurrentHashMap<>();
+
+    /**
+     * 通道 + userId -> 在线会话ID（断开事件可能重复触发，按会话ID记录保证幂等）
+     */
+    private final Map<String, Set<String>> liveSessions = new ConcurrentHashMap<>();
+
+    private final int capacity;
+
+    private final long idleTimeoutMillis;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "replay-buffer-evictor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ReplayBufferRegistry(@Value("${healthcare.delivery.replay-capacity:128}") int capacity,
+                                @Value("${healthcare.delivery.replay-idle-timeout-minutes:10}") long idleTimeoutMinutes) {
+        this.capacity = capacity;
+        this.idleTimeoutMillis = TimeUnit.MINUTES.toMillis(idleTimeoutMinutes);
+        // 每分钟回收一次空闲缓冲区
+        scheduler.scheduleAtFixedRate(() -> evictIdleBuffers(System.currentTimeMillis()), 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdown();
+    }
+
+    /**
+     * 获取或创建用户在指定通道上的重放缓冲区
+     */
+    @SuppressWarnings("unchecked")
+    public <T> ReplayRingBuffer<T> buffer(String channel, String userId) {
+        return (ReplayRingBuffer<T>) buffers.computeIfAbsent(key(channel, userId),
+                key -> new ReplayRingBuffer<>(capacity, System.currentTimeMillis()));
+    }
+
+    /**
+     * 用户在通道上建立了会话：会话在线期间不回收该缓冲区
+     */
+    public void sessionOpened(String channel, String userId, String sessionId) {
+        liveSessions.computeIfAbsent(key(channel, userId), key -> ConcurrentHashMap.newKeySet()).add(sessionId);
+    }
+
+    /**
+     * 用户在通道上的会话断开：最后一个会话断开时开始计算空闲时长
+     */
+    public void sessionClosed(String channel, String userId, String sessionId) {
+        String key = key(channel, userId);
+        boolean[] lastClosed = new boolean[1];
+        liveSessions.computeIfPresent(key, (id, sessions) -> {
+            if (!sessions.remove(sessionId) || !sessions.isEmpty()) {
+                return sessions;
+            }
+            lastClosed[0] = true;
+            return null;
+        });
+        ReplayRingBuffer<?> buffer = buffers.get(key);
+        if (lastClosed[0] && buffer != null) {
+            buffer.touch();
+        }
+    }
+
+    /**
+     * 当前缓冲区数量
+     */
+    public int getBufferCount() {
+        return buffers.size();
+    }
+
+    /**
+     * 回收没有在线会话且空闲超时的缓冲区
+     */
+    void evictIdleBuffers(long now) {
+        int before = buffers.size();
+        buffers.entrySet().removeIf(entry -> !liveSessions.containsKey(entry.getKey())
+                && now - entry.getValue().getLastActivityAt() > idleTimeoutMillis);
+        int evicted = before - buffers.size();
+        if (evicted > 0) {
+            log.debug("回收空闲重放缓冲区: {} 个", evicted);
+        }
+    }
+
+    private static String key(String channel, String userId) {
+        return channel + ":" + userId;
+    }
+}
@@ -0,0 +1,95 @@
+package com.yihu.agent.websocket.delivery;
+
+import java.io.IOException;
+import java.util.function.LongFunction;
+
+/**
+ * 单个用户的出站帧序号与重放环形缓冲区
+ *
+ * 1. 每个出站帧分配单调递增的序号（从 1 开始）
+ * 2. 最近 capacity 个帧保留在环形缓冲区中，客户端断线重连时携带 lastSeq 只重放缺失部分
+ * 3. epoch 标识缓冲区实例，缓冲区因空闲被回收后重建时 epoch 变化，客户端据此判断需要全量同步
+ *
+ * 分配序号、写入缓冲区、发送三步在同一把锁内完成，保证同一用户的帧按序号顺序发出
+ * 锁即缓冲区对象本身，调用方可以在 synchronized (buffer) 内连续发送多帧，期间其他发送方等待
+ *
+ * @param <T> 帧类型（原生 WebSocket 为 JSON 字符串，STOMP 为响应对象）
+ */
+public class ReplayRingBuffer<T> {
+
+    private final long epoch;
+    private final Object[] frames;
+    private long lastSeq;
+    private volatile long lastActivityAt;
+
+    public ReplayRingBuffer(int capacity, long epoch) {
+        this.frames = new Object[capacity];
+        this.epoch = epoch;
+        this.lastActivityAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 分配序号、构造帧、写入缓冲区并发送
+     * 发送失败时帧仍保留在缓冲区中，客户端重连后可重放
+     *
+     * @param frameFactory 根据序号构造帧
+     * @param sender       实际发送帧
+     * @return 分配的序号
+     */
+    public synchronized long append(LongFunction<T> frameFactory, FrameSender<T> sender) throws IOException {
+        long seq = ++lastSeq;
+        T frame = frameFactory.apply(seq);
+        frames[(int) (seq % frames.length)] = frame;
+        lastActivityAt = System.currentTimeMillis();
+        sender.send(frame);
+        return seq;
+    }
+
+    /**
+     * 重放序号大于 afterSeq 的所有帧（按序号升序）
+     * 在同一把锁内完成，保证重放帧不会与新帧交错
+     *
+     * @param afterSeq    客户端已收到的最大序号
+     * @param clientEpoch 客户端记录的 epoch
+     * @param sender      实际发送帧
+     * @return 重放的帧数；epoch 不一致或缺口已被覆盖时返回 -1，调用方需通知客户端全量同步
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized int replay(long afterSeq, long clientEpoch, FrameSender<T> sender) throws IOException {
+        lastActivityAt = System.currentTimeMillis();
+        if (clientEpoch != epoch || afterSeq > lastSeq || lastSeq - afterSeq > frames.length) {
+            return -1;
+        }
+        for (long seq = afterSeq + 1; seq <= lastSeq; seq++) {
+            sender.send((T) frames[(int) (seq % frames.length)]);
+        }
+        return (int) (lastSeq - afterSeq);
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public synchronized long getLastSeq() {
+        return lastSeq;
+    }
+
+    public long getLastActivityAt() {
+        return lastActivityAt;
+    }
+
+    /**
+     * 记录一次活动（如最后一个会话断开），空闲回收从此刻重新计时
+     */
+    public void touch() {
+        lastActivityAt = System.currentTimeMillis();
+    }
+
+    /**
+     * 帧发送器
+     */
+    @FunctionalInterface
+    public interface FrameSender<T> {
+        void send(T frame) throws IOException;
+    }
+}
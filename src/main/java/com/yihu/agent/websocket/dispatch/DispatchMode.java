@@ -0,0 +1,22 @@
+package com.yihu.agent.websocket.dispatch;
+
+/**
+ * 消息处理器的执行方式
+ */
+public enum DispatchMode {
+
+    /**
+     * 在容器的接收线程上直接执行（同一会话天然有序），只适合极轻量的处理
+     */
+    INLINE,
+
+    /**
+     * 在处理器自己的分段线程池上执行，同一会话的消息落到同一线程，保持会话内顺序
+     */
+    SESSION_ORDERED,
+
+    /**
+     * 在处理器自己的线程池上并发执行，不保证顺序
+     */
+    UNORDERED
+}
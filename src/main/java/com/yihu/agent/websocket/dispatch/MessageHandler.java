@@ -0,0 +1,14 @@
+package com.yihu.agent.websocket.dispatch;
+
+import org.springframework.web.socket.WebSocketSession;
+
+/**
+ * 按消息类型注册的处理器
+ *
+ * @param <M> 入站消息类型
+ */
+@FunctionalInterface
+public interface MessageHandler<M> {
+
+    void handle(WebSocketSession session, M message) throws Exception;
+}
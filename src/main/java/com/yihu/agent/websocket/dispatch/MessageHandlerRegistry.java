@@ -0,0 +1,180 @@
+package com.yihu.agent.websocket.dispatch;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * 按消息类型分发的处理器注册表
+ *
+ * 1. 每种消息类型注册一个处理器，新增类型只需注册，不改动分发代码
+ * 2. 每个处理器有自己的执行方式与线程池（见 {@link DispatchMode}），慢处理器不会拖住其他类型
+ * 3. 每种类型单独统计处理数、失败数、排队耗时与处理耗时
+ *
+ * 处理器抛出的异常由注册表记录并交给错误回调（如给客户端回复错误帧）
+ *
+ * @param <M> 入站消息类型
+ */
+@Slf4j
+public class MessageHandlerRegistry<M> {
+
+    private final String name;
+
+    private final BiConsumer<WebSocketSession, Exception> errorCallback;
+
+    private final Map<String, Registration<M>> registrations = new ConcurrentHashMap<>();
+
+    /**
+     * @param name          注册表名称（线程名与日志用）
+     * @param errorCallback 处理器抛出异常时的回调
+     */
+    public MessageHandlerRegistry(String name, BiConsumer<WebSocketSession, Exception> errorCallback) {
+        this.name = name;
+        this.errorCallback = errorCallback;
+    }
+
+    /**
+     * 注册消息处理器，同一类型重复注册时替换旧处理器
+     *
+     * @param type    消息类型
+     * @param mode    执行方式
+     * @param threads 线程数（INLINE 时忽略）
+     * @param handler 处理器
+     */
+    public void register(String type, DispatchMode mode, int threads, MessageHandler<M> handler) {
+        Registration<M> previous = registrations.put(type, new Registration<>(name + "-" + type, mode, threads, handler));
+        if (previous != null) {
+            previous.shutdown();
+        }
+        log.info("注册消息处理器: {}/{}，执行方式: {}", name, type, mode);
+    }
+
+    /**
+     * 分发消息
+     *
+     * @return 该类型是否有处理器
+     */
+    public boolean dispatch(String type, WebSocketSession session, M message) {
+        Registration<M> registration = type != null ? registrations.get(type) : null;
+        if (registration == null) {
+            return false;
+        }
+
+        long submittedAt = System.nanoTime();
+        Runnable task = () -> run(registration, session, message, submittedAt);
+        Executor executor = registration.executorFor(session);
+        if (executor == null) {
+            task.run();
+            return true;
+        }
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException e) {
+            registration.failed.increment();
+            errorCallback.accept(session, e);
+        }
+        return true;
+    }
+
+    private void run(Registration<M> registration, WebSocketSession session, M message, long submittedAt) {
+        long startedAt = System.nanoTime();
+        registration.queueNanos.add(startedAt - submittedAt);
+        try {
+            registration.handler.handle(session, message);
+        } catch (Exception e) {
+            registration.failed.increment();
+            log.error("消息处理失败: {}，会话: {}", registration.name, session.getId(), e);
+            errorCallback.accept(session, e);
+        } finally {
+            registration.handled.increment();
+            registration.handleNanos.add(System.nanoTime() - startedAt);
+        }
+    }
+
+    public void shutdown() {
+        registrations.values().forEach(Registration::shutdown);
+    }
+
+    /**
+     * 各消息类型的处理统计
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new HashMap<>();
+        registrations.forEach((type, registration) -> {
+            long handled = registration.handled.sum();
+            Map<String, Object> typeStats = new HashMap<>();
+            typeStats.put("mode", registration.mode);
+            typeStats.put("handled", handled);
+            typeStats.put("failed", registration.failed.sum());
+            typeStats.put("avgQueueMicros", handled > 0 ? registration.queueNanos.sum() / 1000.0 / handled : 0.0);
+            typeStats.put("avgHandleMicros", handled > 0 ? registration.handleNanos.sum() / 1000.0 / handled : 0.0);
+            stats.put(type, typeStats);
+        });
+        return stats;
+    }
+
+    /**
+     * 一种消息类型的处理器、线程池与统计
+     */
+    private static final class Registration<M> {
+
+        private final String name;
+        private final DispatchMode mode;
+        private final MessageHandler<M> handler;
+        private final StripedExecutor orderedExecutor;
+        private final ExecutorService unorderedExecutor;
+
+        private final LongAdder handled = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LongAdder queueNanos = new LongAdder();
+        private final LongAdder handleNanos = new LongAdder();
+
+        private Registration(String name, DispatchMode mode, int threads, MessageHandler<M> handler) {
+            this.name = name;
+            this.mode = mode;
+            this.handler = handler;
+            int poolSize = Math.max(1, threads);
+            this.orderedExecutor = mode == DispatchMode.SESSION_ORDERED ? new StripedExecutor(poolSize, name + "-") : null;
+            if (mode == DispatchMode.UNORDERED) {
+                AtomicInteger threadIndex = new AtomicInteger();
+                this.unorderedExecutor = Executors.newFixedThreadPool(poolSize, runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + threadIndex.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            } else {
+                this.unorderedExecutor = null;
+            }
+        }
+
+        /**
+         * 会话对应的执行器，INLINE 时为 null
+         */
+        private Executor executorFor(WebSocketSession session) {
+            return switch (mode) {
+                case INLINE -> null;
+                case SESSION_ORDERED -> orderedExecutor.stripeFor(session.getId());
+                case UNORDERED -> unorderedExecutor;
+            };
+        }
+
+        private void shutdown() {
+            if (orderedExecutor != null) {
+                orderedExecutor.shutdown();
+            }
+            if (unorderedExecutor != null) {
+                unorderedExecutor.shutdown();
+            }
+        }
+    }
+}
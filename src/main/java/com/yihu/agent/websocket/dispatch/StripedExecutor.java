@@ -0,0 +1,41 @@
+package com.yihu.agent.websocket.dispatch;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 分段单线程执行器
+ *
+ * 由若干单线程执行器组成，按 key 的哈希选择其中一个：
+ * 同一 key 的任务按提交顺序串行执行，不同 key 的任务在各分段间并行
+ */
+class StripedExecutor {
+
+    private final ExecutorService[] stripes;
+
+    StripedExecutor(int stripeCount, String threadNamePrefix) {
+        this.stripes = new ExecutorService[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            String threadName = threadNamePrefix + i;
+            stripes[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * 获取 key 对应的分段
+     */
+    Executor stripeFor(String key) {
+        return stripes[Math.floorMod(key.hashCode(), stripes.length)];
+    }
+
+    void shutdown() {
+        for (ExecutorService stripe : stripes) {
+            stripe.shutdown();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.yihu.agent.websocket.group;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 聊天群组
+ *
+ * 成员集合支持并发读取，写入由 {@link GroupRegistry} 串行完成
+ */
+public class ChatGroup {
+
+    private final String id;
+    private final String name;
+    private final GroupType type;
+    private final Set<String> members = ConcurrentHashMap.newKeySet();
+
+    ChatGroup(String id, String name, GroupType type) {
+        this.id = id;
+        this.name = name;
+        this.type = type;
+    }
+
+    public String getId() { return id; }
+    public String getName() { return name; }
+    public GroupType getType() { return type; }
+
+    /**
+     * 成员只读视图
+     */
+    public Set<String> getMembers() { return Collections.unmodifiableSet(members); }
+
+    public int getMemberCount() { return members.size(); }
+
+    public boolean hasMember(String userId) { return members.contains(userId); }
+
+    Set<String> memberSet() { return members; }
+}
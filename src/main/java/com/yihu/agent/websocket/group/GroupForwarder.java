@@ -0,0 +1,22 @@
+package com.yihu.agent.websocket.group;
+
+/**
+ * 群组消息的跨节点转发
+ *
+ * 群组成员可能连在集群的任意节点上，各节点的内置代理只向本地订阅扇出；
+ * 由集群路由在启动时注册到 {@link GroupMessagingService}（避免循环依赖），未注册时只在本节点扇出
+ */
+@FunctionalInterface
+public interface GroupForwarder {
+
+    GroupForwarder LOCAL_ONLY = (groupId, body) -> 0;
+
+    /**
+     * 把已序列化的群组消息转发给其他所有节点，各节点向本地的群组主题扇出
+     *
+     * @param groupId 群组ID
+     * @param body    JSON 消息体
+     * @return 转发的节点数
+     */
+    int forwardToOtherNodes(String groupId, byte[] body);
+}
@@ -0,0 +1,168 @@
+package com.yihu.agent.websocket.group;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Service;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StringUtils;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 群组消息服务
+ *
+ * 1. 群组消息发到 /topic/group/{groupId}：只序列化一次，由本节点代理一次扇出给在线成员，
+ *    同一份消息体经 {@link GroupForwarder} 转发给其他节点，各自向本地订阅扇出
+ * 2. 临时用户列表：消息体序列化一次，每个用户只构造消息头，复用同一份字节
+ * 3. 成员被移除时向代理发送 UNSUBSCRIBE，立即停止其接收群组消息
+ */
+@Slf4j
+@Service
+public class GroupMessagingService {
+
+    public static final String GROUP_TOPIC_PREFIX = "/topic/group/";
+
+    private static final String GROUP_EVENT_DESTINATION = "/queue/group-events";
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final GroupRegistry groupRegistry;
+    private final ObjectMapper objectMapper;
+
+    private volatile GroupForwarder groupForwarder = GroupForwarder.LOCAL_ONLY;
+
+    public GroupMessagingService(SimpMessagingTemplate messagingTemplate, GroupRegistry groupRegistry,
+                                 ObjectMapper objectMapper) {
+        this.messagingTemplate = messagingTemplate;
+        this.groupRegistry = groupRegistry;
+        this.objectMapper = objectMapper;
+    }
+
+    /**
+     * 注册跨节点转发（集群路由启动时调用）
+     */
+    public void setGroupForwarder(GroupForwarder groupForwarder) {
+        this.groupForwarder = groupForwarder;
+    }
+
+    /**
+     * 发送群组消息：本节点扇出，并转发给其他节点
+     *
+     * @return 本节点当前在线订阅数
+     */
+    public int sendToGroup(String groupId, Object payload) {
+        byte[] body = serialize(payload);
+        sendBytesToGroup(groupId, body);
+        groupForwarder.forwardToOtherNodes(groupId, body);
+        return groupRegistry.getSubscriberCount(groupId);
+    }
+
+    /**
+     * 客户端直接 SEND 到群组主题的消息已由本节点代理扇出，只需转发给其他节点
+     */
+    public void forwardToOtherNodes(String groupId, byte[] body) {
+        groupForwarder.forwardToOtherNodes(groupId, body);
+    }
+
+    /**
+     * 把已序列化的 JSON 消息体发到本节点代理的群组主题（其他节点转发来的群组消息同样经此扇出，不再转发）
+     */
+    public void sendBytesToGroup(String groupId, byte[] body) {
+        messagingTemplate.send(GROUP_TOPIC_PREFIX + groupId, jsonMessage(body));
+    }
+
+    /**
+     * 发送给一组用户的专属队列，消息体只序列化一次
+     *
+     * @param userIds 目标用户
+     * @param destination 用户队列路径（如 /queue/private）
+     * @param payload 消息内容
+     * @return 成功提交给代理的用户数
+     */
+    public int sendToUsers(Collection<String> userIds, String destination, Object payload) {
+        byte[] body = serialize(payload);
+
+        int successCount = 0;
+        for (String userId : userIds) {
+            try {
+                sendBytesToUser(userId, destination, body);
+                successCount++;
+            } catch (Exception e) {
+                log.error("发送消息失败，目标用户: {}", userId, e);
+            }
+        }
+        return successCount;
+    }
+
+    /**
+     * 发送已序列化的 JSON 消息体到用户队列（只构造消息头，复用同一份字节）
+     *
+     * @param userId 目标用户
+     * @param destination 用户队列路径（如 /queue/private）
+     * @param body JSON 消息体
+     */
+    public void sendBytesToUser(String userId, String destination, byte[] body) {
+        // 与 convertAndSendToUser 相同的用户目的地格式
+        messagingTemplate.send("/user/" + StringUtils.replace(userId, "/", "%2F") + destination, jsonMessage(body));
+    }
+
+    /**
+     * 移除群组成员，并撤销其已有的群组订阅
+     *
+     * @return 被撤销的订阅数
+     */
+    public int removeMembers(String groupId, Collection<String> userIds) {
+        List<GroupRegistry.GroupSubscription> revoked = groupRegistry.removeMembers(groupId, userIds);
+        revoke(revoked);
+        return revoked.size();
+    }
+
+    /**
+     * 删除群组，并撤销全部订阅
+     */
+    public void deleteGroup(String groupId) {
+        revoke(groupRegistry.deleteGroup(groupId));
+    }
+
+    /**
+     * 只构造消息头，复用已序列化的消息体
+     */
+    private static Message<byte[]> jsonMessage(byte[] body) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(body, accessor.getMessageHeaders());
+    }
+
+    private byte[] serialize(Object payload) {
+        try {
+            return objectMapper.writeValueAsBytes(payload);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("消息序列化失败", e);
+        }
+    }
+
+    private void revoke(List<GroupRegistry.GroupSubscription> subscriptions) {
+        for (GroupRegistry.GroupSubscription subscription : subscriptions) {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+            accessor.setSessionId(subscription.sessionId());
+            accessor.setSubscriptionId(subscription.subscriptionId());
+            messagingTemplate.getMessageChannel().send(
+                MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()));
+
+            messagingTemplate.convertAndSendToUser(subscription.userId(), GROUP_EVENT_DESTINATION, Map.of(
+                "type", "group_removed",
+                "groupId", subscription.groupId(),
+                "timestamp", System.currentTimeMillis()
+            ));
+            log.info("已撤销用户 {} 在群组 {} 的订阅", subscription.userId(), subscription.groupId());
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package com.yihu.agent.websocket.group;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 群组注册表
+ *
+ * 1. 群组与成员关系常驻内存：groupId -> 成员集合，userId -> 所在群组集合
+ * 2. 每次成员变更只追加一行到日志文件（增量持久化），启动时重放日志恢复；
+ *    日志中失效记录过多时（启动时或运行中追加之后）按当前状态整体重写
+ * 3. 记录每个成员在 /topic/group/{groupId} 上的 STOMP 订阅，成员被移除时据此撤销订阅；
+ *    记录订阅与移除成员在同一把锁内进行，已被移除的成员不会留下撤销不掉的订阅
+ *
+ * 读操作无锁，写操作串行
+ *
+ * 日志格式（制表符分隔，每行一条）：
+ *   G  groupId  type  name   创建群组
+ *   X  groupId               删除群组
+ *   +  groupId  userId       添加成员
+ *   -  groupId  userId       移除成员
+ */
+@Slf4j
+@Component
+public class GroupRegistry {
+
+    /**
+     * 失效记录超过有效记录数加上该值时重写日志
+     */
+    private static final int REWRITE_SLACK = 1000;
+
+    @Value("${healthcare.group.journal-file:./data/groups/membership.journal}")
+    private String journalFile;
+
+    private final Map<String, ChatGroup> groups = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<String>> userGroups = new ConcurrentHashMap<>();
+
+    /**
+     * groupId -> (sessionId/subscriptionId -> 订阅)
+     */
+    private final Map<String, Map<String, GroupSubscription>> subscriptionsByGroup = new ConcurrentHashMap<>();
+
+    /**
+     * sessionId/subscriptionId -> groupId，处理 UNSUBSCRIBE 时定位群组
+     */
+    private final Map<String, String> groupBySubscription = new ConcurrentHashMap<>();
+
+    /**
+     * sessionId -> 该会话在群组主题上的订阅（sessionId/subscriptionId），断开连接时只清理该会话的订阅
+     */
+    private final Map<String, Set<String>> subscriptionsBySession = new ConcurrentHashMap<>();
+
+    private Path journalPath;
+
+    private BufferedWriter journal;
+
+    /**
+     * 日志中的记录数
+     */
+    private int journalRecords;
+
+    /**
+     * 当前状态对应的有效记录数（群组数 + 成员关系数）
+     */
+    private int liveRecords;
+
+    public GroupRegistry() {
+    }
+
+    /**
+     * 测试用：指定日志文件
+     */
+    GroupRegistry(String journalFile) {
+        this.journalFile = journalFile;
+    }
+
+    @PostConstruct
+    public synchronized void open() throws IOException {
+        journalPath = Paths.get(journalFile);
+        Files.createDirectories(journalPath.toAbsolutePath().getParent());
+
+        journalRecords = 0;
+        if (Files.exists(journalPath)) {
+            for (String line : Files.readAllLines(journalPath, StandardCharsets.UTF_8)) {
+                if (!line.isEmpty()) {
+                    apply(line.split("\t", -1));
+                    journalRecords++;
+                }
+            }
+        }
+
+        liveRecords = groups.size() + groups.values().stream().mapToInt(ChatGroup::getMemberCount).sum();
+        if (needsRewrite()) {
+            rewriteJournal();
+        }
+
+        journal = openWriter();
+        log.info("群组注册表已加载: 群组数={}, 成员关系数={}, 日志={}", groups.size(), liveRecords - groups.size(),
+            journalPath.toAbsolutePath());
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    // ==================== 群组与成员 ====================
+
+    /**
+     * 创建群组，已存在时返回原群组
+     */
+    public synchronized ChatGroup createGroup(String groupId, String name, GroupType type) {
+        validateId(groupId);
+        ChatGroup existing = groups.get(groupId);
+        if (existing != null) {
+            return existing;
+        }
+        String safeName = name == null ? groupId : name.replaceAll("[\\t\\r\\n]", " ");
+        append("G", groupId, type.name(), safeName);
+        ChatGroup group = new ChatGroup(groupId, safeName, type);
+        groups.put(groupId, group);
+        liveRecords++;
+        return group;
+    }
+
+    /**
+     * 删除群组，返回需要撤销的订阅
+     */
+    public synchronized List<GroupSubscription> deleteGroup(String groupId) {
+        ChatGroup group = groups.get(groupId);
+        if (group == null) {
+            return List.of();
+        }
+        append("X", groupId);
+        groups.remove(groupId);
+        for (String userId : group.memberSet()) {
+            unindexUser(userId, groupId);
+        }
+        liveRecords -= 1 + group.getMemberCount();
+        rewriteIfNeeded();
+        Map<String, GroupSubscription> subscriptions = subscriptionsByGroup.remove(groupId);
+        if (subscriptions == null) {
+            return List.of();
+        }
+        subscriptions.values().forEach(this::unindexSubscription);
+        return new ArrayList<>(subscriptions.values());
+    }
+
+    /**
+     * 增量添加成员
+     *
+     * @return 实际新增的成员数
+     */
+    public synchronized int addMembers(String groupId, Collection<String> userIds) {
+        ChatGroup group = requireGroup(groupId);
+        int added = 0;
+        for (String userId : userIds) {
+            validateId(userId);
+            if (!group.hasMember(userId)) {
+                append("+", groupId, userId);
+                group.memberSet().add(userId);
+                userGroups.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(groupId);
+                liveRecords++;
+                added++;
+            }
+        }
+        return added;
+    }
+
+    /**
+     * 增量移除成员
+     *
+     * @return 被移除成员在该群组上的订阅，调用方负责通知代理撤销
+     */
+    public synchronized List<GroupSubscription> removeMembers(String groupId, Collection<String> userIds) {
+        ChatGroup group = requireGroup(groupId);
+        List<GroupSubscription> revoked = new ArrayList<>();
+        Map<String, GroupSubscription> subscriptions = subscriptionsByGroup.getOrDefault(groupId, Map.of());
+
+        for (String userId : userIds) {
+            if (group.memberSet().remove(userId)) {
+                append("-", groupId, userId);
+                unindexUser(userId, groupId);
+                liveRecords--;
+                subscriptions.values().stream()
+                    .filter(subscription -> subscription.userId().equals(userId))
+                    .forEach(revoked::add);
+            }
+        }
+        for (GroupSubscription subscription : revoked) {
+            subscriptions.remove(subscription.key());
+            unindexSubscription(subscription);
+        }
+        rewriteIfNeeded();
+        return revoked;
+    }
+
+    public Optional<ChatGroup> getGroup(String groupId) {
+        return Optional.ofNullable(groups.get(groupId));
+    }
+
+    public Collection<ChatGroup> getGroups() {
+        return Collections.unmodifiableCollection(groups.values());
+    }
+
+    public boolean isMember(String groupId, String userId) {
+        ChatGroup group = groups.get(groupId);
+        return group != null && userId != null && group.hasMember(userId);
+    }
+
+    /**
+     * 用户所在的群组
+     */
+    public Set<String> groupsOf(String userId) {
+        Set<String> ids = userGroups.get(userId);
+        return ids == null ? Set.of() : Collections.unmodifiableSet(ids);
+    }
+
+    // ==================== 订阅跟踪 ====================
+
+    /**
+     * 记录成员的订阅；与移除成员串行，锁内再次校验成员身份，
+     * 避免校验通过后成员被移除、订阅却在撤销之后才登记
+     *
+     * @return 是否登记成功；用户已不是成员时为 false，调用方应拒绝订阅
+     */
+    public synchronized boolean onSubscribe(String groupId, String userId, String sessionId, String subscriptionId) {
+        if (!isMember(groupId, userId)) {
+            return false;
+        }
+        GroupSubscription subscription = new GroupSubscription(groupId, userId, sessionId, subscriptionId);
+        subscriptionsByGroup.computeIfAbsent(groupId, id -> new ConcurrentHashMap<>()).put(subscription.key(), subscription);
+        groupBySubscription.put(subscription.key(), groupId);
+        subscriptionsBySession.computeIfAbsent(sessionId, id -> ConcurrentHashMap.newKeySet()).add(subscription.key());
+        return true;
+    }
+
+    public synchronized void onUnsubscribe(String sessionId, String subscriptionId) {
+        String key = GroupSubscription.key(sessionId, subscriptionId);
+        Set<String> keys = subscriptionsBySession.get(sessionId);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                subscriptionsBySession.remove(sessionId);
+            }
+        }
+        removeSubscription(key);
+    }
+
+    /**
+     * 清理会话的全部群组订阅，只访问该会话自己的订阅
+     */
+    public synchronized void onDisconnect(String sessionId) {
+        Set<String> keys = subscriptionsBySession.remove(sessionId);
+        if (keys != null) {
+            keys.forEach(this::removeSubscription);
+        }
+    }
+
+    private void removeSubscription(String key) {
+        String groupId = groupBySubscription.remove(key);
+        if (groupId != null) {
+            Map<String, GroupSubscription> subscriptions = subscriptionsByGroup.get(groupId);
+            if (subscriptions != null) {
+                subscriptions.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 从订阅索引中移除（调用方已从 subscriptionsByGroup 中移除，需持有对象锁）
+     */
+    private void unindexSubscription(GroupSubscription subscription) {
+        groupBySubscription.remove(subscription.key());
+        Set<String> keys = subscriptionsBySession.get(subscription.sessionId());
+        if (keys != null) {
+            keys.remove(subscription.key());
+            if (keys.isEmpty()) {
+                subscriptionsBySession.remove(subscription.sessionId());
+            }
+        }
+    }
+
+    /**
+     * 群组当前的在线订阅数
+     */
+    public int getSubscriberCount(String groupId) {
+        Map<String, GroupSubscription> subscriptions = subscriptionsByGroup.get(groupId);
+        return subscriptions == null ? 0 : subscriptions.size();
+    }
+
+    // ==================== 日志 ====================
+
+    /**
+     * 重放一条日志记录（启动阶段，单线程）
+     */
+    private void apply(String[] fields) {
+        String groupId = fields.length > 1 ? fields[1] : null;
+        switch (fields[0]) {
+            case "G" -> groups.putIfAbsent(groupId, new ChatGroup(groupId, fields[3], GroupType.valueOf(fields[2])));
+            case "X" -> {
+                ChatGroup group = groups.remove(groupId);
+                if (group != null) {
+                    group.memberSet().forEach(userId -> unindexUser(userId, groupId));
+                }
+            }
+            case "+" -> {
+                ChatGroup group = groups.get(groupId);
+                if (group != null && group.memberSet().add(fields[2])) {
+                    userGroups.computeIfAbsent(fields[2], id -> ConcurrentHashMap.newKeySet()).add(groupId);
+                }
+            }
+            case "-" -> {
+                ChatGroup group = groups.get(groupId);
+                if (group != null && group.memberSet().remove(fields[2])) {
+                    unindexUser(fields[2], groupId);
+                }
+            }
+            default -> log.warn("忽略无法识别的群组日志记录: {}", String.join("\t", fields));
+        }
+    }
+
+    private boolean needsRewrite() {
+        return journalRecords > liveRecords * 2 + REWRITE_SLACK;
+    }
+
+    /**
+     * 运行中失效记录过多时重写日志（调用方需持有对象锁）
+     * 重写失败时继续追加到原日志，下次变更再尝试
+     */
+    private void rewriteIfNeeded() {
+        if (!needsRewrite()) {
+            return;
+        }
+        try {
+            journal.close();
+            rewriteJournal();
+        } catch (IOException e) {
+            log.error("群组日志重写失败，继续追加到原日志", e);
+        } finally {
+            try {
+                journal = openWriter();
+            } catch (IOException e) {
+                throw new UncheckedIOException("群组日志打开失败", e);
+            }
+        }
+    }
+
+    private BufferedWriter openWriter() throws IOException {
+        return Files.newBufferedWriter(journalPath, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * 按当前状态重写日志，丢弃已失效的记录
+     */
+    private void rewriteJournal() throws IOException {
+        Path temp = journalPath.resolveSibling(journalPath.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (ChatGroup group : groups.values()) {
+                writer.write(String.join("\t", "G", group.getId(), group.getType().name(), group.getName()));
+                writer.newLine();
+                for (String userId : group.memberSet()) {
+                    writer.write(String.join("\t", "+", group.getId(), userId));
+                    writer.newLine();
+                }
+            }
+        }
+        Files.move(temp, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.info("群组日志已重写: {} -> {} 条记录, {}", journalRecords, liveRecords, journalPath.toAbsolutePath());
+        journalRecords = liveRecords;
+    }
+
+    /**
+     * 追加一条日志记录并刷盘（调用方需持有对象锁，且在修改内存索引之前调用）
+     */
+    private void append(String... fields) {
+        try {
+            journal.write(String.join("\t", fields));
+            journal.newLine();
+            journal.flush();
+            journalRecords++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("群组日志写入失败", e);
+        }
+    }
+
+    private void unindexUser(String userId, String groupId) {
+        Set<String> ids = userGroups.get(userId);
+        if (ids != null) {
+            ids.remove(groupId);
+            if (ids.isEmpty()) {
+                userGroups.remove(userId);
+            }
+        }
+    }
+
+    private ChatGroup requireGroup(String groupId) {
+        ChatGroup group = groups.get(groupId);
+        if (group == null) {
+            throw new IllegalArgumentException("群组不存在: " + groupId);
+        }
+        return group;
+    }
+
+    private static void validateId(String id) {
+        if (id == null || id.isEmpty() || id.indexOf('\t') >= 0 || id.indexOf('\n') >= 0 || id.indexOf('\r') >= 0
+            || id.indexOf('/') >= 0) {
+            throw new IllegalArgumentException("非法的标识: " + id);
+        }
+    }
+
+    /**
+     * 群组主题上的一条 STOMP 订阅
+     */
+    public record GroupSubscription(String groupId, String userId, String sessionId, String subscriptionId) {
+
+        String key() {
+            return key(sessionId, subscriptionId);
+        }
+
+        static String key(String sessionId, String subscriptionId) {
+            return sessionId + "/" + subscriptionId;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.yihu.agent.websocket.group;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.lang.NonNull;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+import java.security.Principal;
+
+/**
+ * 群组主题订阅拦截器
+ *
+ * 1. SUBSCRIBE /topic/group/{groupId} 时校验订阅者是群组成员，非成员拒绝
+ * 2. SEND /topic/group/{groupId}（客户端直接发往群组主题）同样只允许成员，本节点代理扇出的同时转发给其他节点
+ * 3. 记录成员的订阅，成员被移除时据此撤销
+ * 4. UNSUBSCRIBE / DISCONNECT 时清理订阅记录
+ */
+@Slf4j
+@Component
+public class GroupSubscriptionInterceptor implements ChannelInterceptor {
+
+    private final GroupRegistry groupRegistry;
+
+    /**
+     * 延迟获取：消息服务依赖代理的消息模板，而本拦截器在代理配置阶段注册
+     */
+    private final ObjectProvider<GroupMessagingService> groupMessagingService;
+
+    public GroupSubscriptionInterceptor(GroupRegistry groupRegistry,
+                                        ObjectProvider<GroupMessagingService> groupMessagingService) {
+        this.groupRegistry = groupRegistry;
+        this.groupMessagingService = groupMessagingService;
+    }
+
+    @Override
+    public Message<?> preSend(@NonNull Message<?> message, @NonNull MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+
+        switch (accessor.getCommand()) {
+            case SUBSCRIBE -> {
+                String groupId = groupIdOf(accessor);
+                if (groupId != null) {
+                    authorize(message, accessor, groupId);
+                }
+            }
+            case SEND -> {
+                String groupId = groupIdOf(accessor);
+                if (groupId != null) {
+                    requireMember(message, accessor, groupId, "发送到");
+                    if (message.getPayload() instanceof byte[] body) {
+                        groupMessagingService.getObject().forwardToOtherNodes(groupId, body);
+                    }
+                }
+            }
+            case UNSUBSCRIBE -> groupRegistry.onUnsubscribe(accessor.getSessionId(), accessor.getSubscriptionId());
+            case DISCONNECT -> groupRegistry.onDisconnect(accessor.getSessionId());
+            default -> {
+            }
+        }
+        return message;
+    }
+
+    private static String groupIdOf(StompHeaderAccessor accessor) {
+        String destination = accessor.getDestination();
+        if (destination == null || !destination.startsWith(GroupMessagingService.GROUP_TOPIC_PREFIX)) {
+            return null;
+        }
+        return destination.substring(GroupMessagingService.GROUP_TOPIC_PREFIX.length());
+    }
+
+    private void authorize(Message<?> message, StompHeaderAccessor accessor, String groupId) {
+        String userId = requireMember(message, accessor, groupId, "订阅");
+        // 登记时在锁内再次校验，成员在两次校验之间被移除时同样拒绝
+        if (!groupRegistry.onSubscribe(groupId, userId, accessor.getSessionId(), accessor.getSubscriptionId())) {
+            log.warn("拒绝订阅群组 {}：用户 {} 已被移除", groupId, userId);
+            throw new MessageDeliveryException(message, "无权订阅群组: " + groupId);
+        }
+        log.debug("用户 {} 订阅群组 {}", userId, groupId);
+    }
+
+    /**
+     * 校验发起者是群组成员，非成员拒绝
+     *
+     * @return 发起者 userId
+     */
+    private String requireMember(Message<?> message, StompHeaderAccessor accessor, String groupId, String action) {
+        Principal user = accessor.getUser();
+        String userId = user != null ? user.getName() : null;
+
+        if (!groupRegistry.isMember(groupId, userId)) {
+            log.warn("拒绝{}群组 {}：用户 {} 不是成员", action, groupId, userId);
+            throw new MessageDeliveryException(message, "无权" + action + "群组: " + groupId);
+        }
+        return userId;
+    }
+}
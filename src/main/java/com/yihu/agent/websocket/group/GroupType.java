@@ -0,0 +1,22 @@
+package com.yihu.agent.websocket.group;
+
+/**
+ * 群组类型
+ */
+public enum GroupType {
+
+    /**
+     * 护理团队（医生、护士、照护者）
+     */
+    CARE_TEAM,
+
+    /**
+     * 患者队列（同一病种 / 随访计划的患者）
+     */
+    PATIENT_COHORT,
+
+    /**
+     * 其他自定义群组
+     */
+    CUSTOM
+}
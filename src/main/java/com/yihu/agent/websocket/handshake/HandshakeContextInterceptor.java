@@ -0,0 +1,126 @@
+package com.yihu.agent.websocket.handshake;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.net.InetSocketAddress;
+import java.util.Map;
+
+/**
+ * 握手时解析会话上下文
+ *
+ * 连接参数（userId、lastSeq、epoch、batch）与客户端 IP 在握手时解析一次，
+ * 保存到会话属性中，之后每条消息、关闭与错误回调直接读取属性，不再重复解析 URI
+ *
+ * 原生端点：ws://localhost:8080/ws/chat-raw?userId=user123&lastSeq=42&epoch=1700000000000&batch=true
+ * STOMP 端点只使用客户端 IP（用户身份来自 CONNECT 帧）
+ */
+@Slf4j
+@Component
+public class HandshakeContextInterceptor implements HandshakeInterceptor {
+
+    public static final String USER_ID = "healthcare.userId";
+
+    public static final String CLIENT_IP = "healthcare.clientIp";
+
+    public static final String LAST_SEQ = "healthcare.lastSeq";
+
+    public static final String EPOCH = "healthcare.epoch";
+
+    public static final String BATCH = "healthcare.batch";
+
+    /**
+     * 部署在反向代理之后时信任 X-Forwarded-For 的第一个地址，否则使用 TCP 对端地址
+     */
+    @Value("${healthcare.websocket.trust-forwarded-for:false}")
+    private boolean trustForwardedFor;
+
+    @Override
+    public boolean beforeHandshake(@NonNull ServerHttpRequest request, @NonNull ServerHttpResponse response,
+                                   @NonNull WebSocketHandler wsHandler, @NonNull Map<String, Object> attributes) {
+        MultiValueMap<String, String> params = UriComponentsBuilder.fromUri(request.getURI()).build().getQueryParams();
+        putIfPresent(attributes, USER_ID, params.getFirst("userId"));
+        putIfPresent(attributes, LAST_SEQ, params.getFirst("lastSeq"));
+        putIfPresent(attributes, EPOCH, params.getFirst("epoch"));
+        attributes.put(BATCH, "true".equalsIgnoreCase(params.getFirst("batch")));
+        putIfPresent(attributes, CLIENT_IP, resolveClientIp(request));
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(@NonNull ServerHttpRequest request, @NonNull ServerHttpResponse response,
+                               @NonNull WebSocketHandler wsHandler, Exception exception) {
+    }
+
+    // ==================== 读取会话上下文 ====================
+
+    /**
+     * 握手时携带的 userId，未携带时为 null
+     */
+    public static String userId(WebSocketSession session) {
+        return (String) session.getAttributes().get(USER_ID);
+    }
+
+    /**
+     * 客户端 IP
+     */
+    public static String clientIp(WebSocketSession session) {
+        return clientIp(session.getAttributes());
+    }
+
+    /**
+     * 从会话属性读取客户端 IP（STOMP 消息头中的 sessionAttributes 即握手时的属性）
+     */
+    public static String clientIp(Map<String, Object> attributes) {
+        return attributes != null ? (String) attributes.get(CLIENT_IP) : null;
+    }
+
+    /**
+     * 字符串类型的连接参数（lastSeq、epoch）
+     */
+    public static String param(WebSocketSession session, String attribute) {
+        return (String) session.getAttributes().get(attribute);
+    }
+
+    /**
+     * 握手时是否声明接受合并帧
+     */
+    public static boolean acceptsBatch(WebSocketSession session) {
+        return Boolean.TRUE.equals(session.getAttributes().get(BATCH));
+    }
+
+    /**
+     * 解析客户端 IP（HTTP 接口同样使用，与握手时的规则一致）
+     */
+    public String resolveClientIp(ServerHttpRequest request) {
+        if (trustForwardedFor) {
+            String forwardedFor = request.getHeaders().getFirst("X-Forwarded-For");
+            if (forwardedFor != null && !forwardedFor.isBlank()) {
+                int comma = forwardedFor.indexOf(',');
+                return (comma >= 0 ? forwardedFor.substring(0, comma) : forwardedFor).trim();
+            }
+        }
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        if (remoteAddress == null) {
+            return null;
+        }
+        return remoteAddress.getAddress() != null ? remoteAddress.getAddress().getHostAddress() : remoteAddress.getHostString();
+    }
+
+    // ==================== 辅助方法 ====================
+
+    private static void putIfPresent(Map<String, Object> attributes, String key, String value) {
+        if (value != null && !value.isEmpty()) {
+            attributes.put(key, value);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.yihu.agent.websocket.heartbeat;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 哈希时间轮
+ *
+ * 1. 时间按 tick 划分，wheelSize 个槽位组成一圈，定时任务按到期 tick 落入 (tick & mask) 槽位，
+ *    超过一圈的任务记录剩余圈数
+ * 2. 工作线程每个 tick 只处理当前槽位：圈数未到的减一，到期的回调，已取消的丢弃；
+ *    新增定时任务的开销为 O(1)，每个 tick 的开销只与当前槽位的任务数有关，与总任务数无关
+ * 3. 新增任务先进入无锁队列，由工作线程在每个 tick 开始时转入槽位，槽位只被工作线程访问
+ *
+ * 到期回调在工作线程上执行，必须足够轻量（耗时操作应转交其他线程）
+ *
+ * @param <T> 定时任务携带的对象
+ */
+@Slf4j
+public class HashedTimingWheel<T> {
+
+    private final long tickNanos;
+    private final int mask;
+    private final List<Timeout<T>>[] buckets;
+    private final Queue<Timeout<T>> pending = new ConcurrentLinkedQueue<>();
+    private final Consumer<T> onExpired;
+    private final Thread worker;
+
+    private final long startNanos = System.nanoTime();
+    private long currentTick;
+
+    private volatile boolean running;
+
+    public HashedTimingWheel(long tickMillis, int wheelSize, String threadName, Consumer<T> onExpired) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis 必须大于 0");
+        }
+        if (wheelSize <= 0 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheelSize 必须是 2 的幂: " + wheelSize);
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.mask = wheelSize - 1;
+        this.buckets = newBuckets(wheelSize);
+        this.onExpired = onExpired;
+        this.worker = new Thread(this::run, threadName);
+        this.worker.setDaemon(true);
+    }
+
+    /**
+     * 创建各槽位的列表
+     *
+     * 不能直接创建泛型数组：数组只在本类内部使用，且只放入 Timeout<T>，转换是安全的
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> List<Timeout<T>>[] newBuckets(int wheelSize) {
+        List<Timeout<T>>[] buckets = (List<Timeout<T>>[]) new List<?>[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        return buckets;
+    }
+
+    public void start() {
+        running = true;
+        worker.start();
+    }
+
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    /**
+     * 新增定时任务
+     *
+     * @param task        到期时回调的对象
+     * @param delayMillis 延迟（毫秒），实际到期时间向上取整到 tick
+     */
+    public Timeout<T> schedule(T task, long delayMillis) {
+        long deadline = System.nanoTime() - startNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis));
+        Timeout<T> timeout = new Timeout<>(task, (deadline + tickNanos - 1) / tickNanos);
+        pending.add(timeout);
+        return timeout;
+    }
+
+    // ==================== 工作线程 ====================
+
+    private void run() {
+        while (running) {
+            long nextTickAt = (currentTick + 1) * tickNanos;
+            long sleepNanos = nextTickAt - (System.nanoTime() - startNanos);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+            currentTick++;
+            transferPending();
+            expireBucket(buckets[(int) (currentTick & mask)]);
+        }
+    }
+
+    /**
+     * 把新增任务转入槽位；已过期的任务放入当前槽位，本 tick 内回调
+     */
+    private void transferPending() {
+        Timeout<T> timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long ticks = Math.max(timeout.deadlineTick, currentTick);
+            timeout.remainingRounds = (ticks - currentTick) / buckets.length;
+            buckets[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void expireBucket(List<Timeout<T>> bucket) {
+        if (bucket.isEmpty()) {
+            return;
+        }
+        List<Timeout<T>> expired = new ArrayList<>();
+        bucket.removeIf(timeout -> {
+            if (timeout.cancelled) {
+                return true;
+            }
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                return false;
+            }
+            expired.add(timeout);
+            return true;
+        });
+        for (Timeout<T> timeout : expired) {
+            try {
+                onExpired.accept(timeout.task);
+            } catch (Exception e) {
+                log.error("时间轮到期回调执行失败", e);
+            }
+        }
+    }
+
+    /**
+     * 定时任务句柄
+     */
+    public static final class Timeout<T> {
+
+        private final T task;
+        private final long deadlineTick;
+        private long remainingRounds;
+        private volatile boolean cancelled;
+
+        private Timeout(T task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        /**
+         * 取消定时任务，槽位中的记录在下次经过时丢弃
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.yihu.agent.websocket.heartbeat;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.NonNull;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 心跳处理器装饰器
+ *
+ * 连接建立时登记到 {@link HeartbeatMonitor}，收到任何入站消息时刷新活跃时间，
+ * 连接关闭时注销；死连接被回收时先通知下游处理器，容器随后的关闭回调不再重复传递。
+ * STOMP 连接从 CONNECT 帧的 heart-beat 头读取客户端心跳间隔，交给监控器设置回收期限
+ */
+@Slf4j
+class HeartbeatHandler extends WebSocketHandlerDecorator {
+
+    private final HeartbeatMonitor monitor;
+
+    private final boolean sendsPing;
+
+    private final Map<String, TrackedSession> tracked = new ConcurrentHashMap<>();
+
+    HeartbeatHandler(WebSocketHandler delegate, HeartbeatMonitor monitor, boolean sendsPing) {
+        super(delegate);
+        this.monitor = monitor;
+        this.sendsPing = sendsPing;
+    }
+
+    @Override
+    public void afterConnectionEstablished(@NonNull WebSocketSession session) throws Exception {
+        TrackedSession connection = new TrackedSession(session);
+        tracked.put(session.getId(), connection);
+        monitor.track(connection);
+        super.afterConnectionEstablished(session);
+    }
+
+    @Override
+    public void handleMessage(@NonNull WebSocketSession session, @NonNull WebSocketMessage<?> message) throws Exception {
+        TrackedSession connection = tracked.get(session.getId());
+        if (connection != null) {
+            connection.touch();
+            if (connection.awaitingConnect && message instanceof TextMessage text) {
+                long clientSendMs = clientHeartbeatMs(text.getPayload());
+                if (clientSendMs >= 0) {
+                    connection.awaitingConnect = false;
+                    monitor.negotiated(connection, clientSendMs);
+                }
+            }
+        }
+        super.handleMessage(session, message);
+    }
+
+    @Override
+    public void afterConnectionClosed(@NonNull WebSocketSession session, @NonNull CloseStatus closeStatus) throws Exception {
+        TrackedSession connection = tracked.remove(session.getId());
+        if (connection != null) {
+            monitor.untrack(connection);
+            if (connection.reaped) {
+                // 回收时已经通知过下游处理器
+                return;
+            }
+        }
+        super.afterConnectionClosed(session, closeStatus);
+    }
+
+    /**
+     * 读取 CONNECT / STOMP 帧 heart-beat 头中客户端的发送间隔
+     *
+     * @return 客户端发送间隔（毫秒），没有该头或格式不对时为 0（按 STOMP 规范即不发心跳）；
+     *         不是 CONNECT 帧时为 -1
+     */
+    static long clientHeartbeatMs(String frame) {
+        int start = 0;
+        // 跳过 CONNECT 之前可能出现的心跳换行
+        while (start < frame.length() && (frame.charAt(start) == '\n' || frame.charAt(start) == '\r')) {
+            start++;
+        }
+        int lineEnd = frame.indexOf('\n', start);
+        if (lineEnd < 0) {
+            return -1;
+        }
+        String command = frame.substring(start, lineEnd).strip();
+        if (!"CONNECT".equals(command) && !"STOMP".equals(command)) {
+            return -1;
+        }
+        while (lineEnd + 1 < frame.length()) {
+            int next = frame.indexOf('\n', lineEnd + 1);
+            String line = frame.substring(lineEnd + 1, next < 0 ? frame.length() : next).strip();
+            if (line.isEmpty() || next < 0) {
+                break;
+            }
+            if (line.startsWith("heart-beat:")) {
+                String[] values = line.substring("heart-beat:".length()).split(",");
+                try {
+                    return Math.max(0, Long.parseLong(values[0].strip()));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+            lineEnd = next;
+        }
+        return 0;
+    }
+
+    private class TrackedSession extends HeartbeatMonitor.Connection {
+
+        private final WebSocketSession session;
+
+        private volatile boolean reaped;
+
+        /**
+         * STOMP 连接尚未收到 CONNECT 帧
+         */
+        private volatile boolean awaitingConnect = !sendsPing;
+
+        TrackedSession(WebSocketSession session) {
+            super(sendsPing);
+            this.session = session;
+        }
+
+        @Override
+        String getId() {
+            return session.getId();
+        }
+
+        @Override
+        void ping() {
+            try {
+                if (session.isOpen()) {
+                    session.sendMessage(new PingMessage(ByteBuffer.allocate(0)));
+                }
+            } catch (Exception e) {
+                log.debug("发送 ping 失败，会话: {}，错误: {}", session.getId(), e.getMessage());
+            }
+        }
+
+        /**
+         * 先让下游处理器把连接从在线表中移除，再关闭可能已半开的底层连接
+         */
+        @Override
+        void reap() {
+            reaped = true;
+            try {
+                HeartbeatHandler.super.afterConnectionClosed(session, CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (Exception e) {
+                log.warn("回收连接时通知处理器失败，会话: {}", session.getId(), e);
+            }
+            try {
+                session.close(CloseStatus.SESSION_NOT_RELIABLE);
+            } catch (Exception e) {
+                log.debug("关闭死连接失败，会话: {}，错误: {}", session.getId(), e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package com.yihu.agent.websocket.heartbeat;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 连接心跳监控与死连接回收
+ *
+ * 每个连接在时间轮上只挂一个定时任务，入站任何消息只更新"最后活跃时间"（不动时间轮）：
+ * 1. 定时任务到期时按空闲时长判断：未超时则按最后活跃时间重新挂到时间轮上
+ * 2. 原生端点空闲达到 ping-interval-ms 时发送一次 WebSocket ping（浏览器自动回 pong，
+ *    客户端也可以发送 {"type":"ping"} 应用层心跳）
+ * 3. STOMP 端点由代理心跳保活，这里只负责超时回收：CONNECT 帧协商了客户端心跳时，
+ *    空闲超过协商间隔 + stomp-grace-ms 即回收；协商为 0（heart-beat:0,0，即默认值）的客户端不发心跳，
+ *    空闲再久也不回收；收到 CONNECT 之前按 idle-timeout-ms 回收
+ * 4. 原生端点空闲达到 idle-timeout-ms 判定为死连接（如半开的移动端连接）：先通知下游处理器连接已关闭，
+ *    立即从在线表与广播目标中移除，再关闭底层连接
+ *
+ * 发送 ping 与关闭连接可能阻塞，放到单独的线程池执行，不占用时间轮线程
+ */
+@Slf4j
+@Component
+public class HeartbeatMonitor implements WebSocketHandlerDecoratorFactory {
+
+    @Value("${healthcare.websocket.heartbeat.tick-ms:500}")
+    private long tickMs;
+
+    @Value("${healthcare.websocket.heartbeat.wheel-size:512}")
+    private int wheelSize;
+
+    @Value("${healthcare.websocket.heartbeat.ping-interval-ms:20000}")
+    private long pingIntervalMs;
+
+    @Value("${healthcare.websocket.heartbeat.idle-timeout-ms:60000}")
+    private long idleTimeoutMs;
+
+    @Value("${healthcare.websocket.heartbeat.stomp-heartbeat-ms:10000}")
+    private long stompHeartbeatMs;
+
+    @Value("${healthcare.websocket.heartbeat.stomp-grace-ms:20000}")
+    private long stompGraceMs;
+
+    private HashedTimingWheel<Check> wheel;
+
+    private ExecutorService ioExecutor;
+
+    private final AtomicInteger activeConnections = new AtomicInteger();
+
+    private final LongAdder pingsSent = new LongAdder();
+
+    private final LongAdder reapedConnections = new LongAdder();
+
+    private final LongAdder rescheduled = new LongAdder();
+
+    public HeartbeatMonitor() {
+    }
+
+    /**
+     * 测试用：直接指定参数
+     */
+    HeartbeatMonitor(long tickMs, long pingIntervalMs, long idleTimeoutMs, long stompHeartbeatMs, long stompGraceMs) {
+        this.tickMs = tickMs;
+        this.wheelSize = 64;
+        this.pingIntervalMs = pingIntervalMs;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.stompHeartbeatMs = stompHeartbeatMs;
+        this.stompGraceMs = stompGraceMs;
+    }
+
+    @PostConstruct
+    public void start() {
+        wheel = new HashedTimingWheel<>(tickMs, wheelSize, "heartbeat-wheel", this::onExpired);
+        AtomicInteger threadIndex = new AtomicInteger();
+        ioExecutor = Executors.newFixedThreadPool(2, runnable -> {
+            Thread thread = new Thread(runnable, "heartbeat-io-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        wheel.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        wheel.stop();
+        ioExecutor.shutdown();
+    }
+
+    /**
+     * 包装 STOMP 处理器：只按 CONNECT 协商的客户端心跳做超时回收，保活交给代理心跳
+     */
+    @Override
+    @NonNull
+    public WebSocketHandler decorate(@NonNull WebSocketHandler handler) {
+        return new HeartbeatHandler(handler, this, false);
+    }
+
+    /**
+     * 包装原生 WebSocket 处理器：空闲时发送 ping，超时回收
+     */
+    public WebSocketHandler decorateRaw(WebSocketHandler handler) {
+        return new HeartbeatHandler(handler, this, true);
+    }
+
+    // ==================== 连接登记 ====================
+
+    void track(Connection connection) {
+        activeConnections.incrementAndGet();
+        connection.timeoutMs = idleTimeoutMs;
+        synchronized (connection) {
+            schedule(connection, connection.sendsPing ? pingIntervalMs : idleTimeoutMs);
+        }
+    }
+
+    void untrack(Connection connection) {
+        if (connection.closed.compareAndSet(false, true)) {
+            synchronized (connection) {
+                connection.check.timeout.cancel();
+            }
+            activeConnections.decrementAndGet();
+        }
+    }
+
+    /**
+     * STOMP 连接收到 CONNECT 帧：按协商的客户端心跳间隔重新设置回收期限
+     *
+     * 与 Spring 代理的协商规则一致：客户端声明的发送间隔与服务端期望的接收间隔都大于 0 时，
+     * 客户端按两者中较大的间隔发送心跳；任一为 0 表示不发心跳，连接不再因空闲被回收
+     *
+     * @param clientSendMs CONNECT 帧 heart-beat 头的第一个值，没有该头时为 0
+     */
+    void negotiated(Connection connection, long clientSendMs) {
+        long timeoutMs = clientSendMs > 0 && stompHeartbeatMs > 0
+            ? Math.max(clientSendMs, stompHeartbeatMs) + stompGraceMs
+            : 0;
+        synchronized (connection) {
+            if (connection.closed.get()) {
+                return;
+            }
+            connection.timeoutMs = timeoutMs;
+            connection.check.timeout.cancel();
+            if (timeoutMs > 0) {
+                schedule(connection, timeoutMs - connection.idleMs());
+            }
+        }
+        log.debug("STOMP 心跳协商: 会话 {}，客户端间隔 {}ms，回收期限 {}ms", connection.getId(), clientSendMs, timeoutMs);
+    }
+
+    /**
+     * 挂一个新的检查任务（调用方持有连接锁）；之前的检查任务随之失效
+     */
+    private void schedule(Connection connection, long delayMs) {
+        Check check = new Check(connection);
+        check.timeout = wheel.schedule(check, delayMs);
+        connection.check = check;
+    }
+
+    /**
+     * 时间轮到期回调（时间轮线程）
+     */
+    private void onExpired(Check check) {
+        Connection connection = check.connection;
+        synchronized (connection) {
+            // 已关闭，或 CONNECT 协商后换了新的检查任务
+            if (connection.closed.get() || connection.check != check || connection.timeoutMs <= 0) {
+                return;
+            }
+            long idleMs = connection.idleMs();
+            long timeoutMs = connection.timeoutMs;
+
+            if (idleMs >= timeoutMs) {
+                untrack(connection);
+                reapedConnections.increment();
+                log.info("回收死连接: 会话 {}，空闲 {}ms", connection.getId(), idleMs);
+                ioExecutor.execute(connection::reap);
+                return;
+            }
+
+            long nextCheckMs;
+            if (connection.sendsPing && !connection.pingSent && idleMs >= pingIntervalMs) {
+                connection.pingSent = true;
+                pingsSent.increment();
+                ioExecutor.execute(connection::ping);
+                nextCheckMs = timeoutMs - idleMs;
+            } else if (connection.sendsPing && !connection.pingSent) {
+                nextCheckMs = pingIntervalMs - idleMs;
+            } else {
+                nextCheckMs = timeoutMs - idleMs;
+            }
+            rescheduled.increment();
+            schedule(connection, nextCheckMs);
+        }
+    }
+
+    /**
+     * 获取心跳统计快照
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("tickMs", tickMs);
+        stats.put("wheelSize", wheelSize);
+        stats.put("pingIntervalMs", pingIntervalMs);
+        stats.put("idleTimeoutMs", idleTimeoutMs);
+        stats.put("stompHeartbeatMs", stompHeartbeatMs);
+        stats.put("stompGraceMs", stompGraceMs);
+        stats.put("activeConnections", activeConnections.get());
+        stats.put("pingsSent", pingsSent.sum());
+        stats.put("reapedConnections", reapedConnections.sum());
+        stats.put("rescheduledChecks", rescheduled.sum());
+        return stats;
+    }
+
+    /**
+     * 时间轮上的一次检查；每次重新挂任务都新建，到期时据此识别已被替换的旧任务
+     */
+    private static final class Check {
+
+        private final Connection connection;
+
+        private HashedTimingWheel.Timeout<Check> timeout;
+
+        private Check(Connection connection) {
+            this.connection = connection;
+        }
+    }
+
+    /**
+     * 被监控的连接
+     */
+    abstract static class Connection {
+
+        private final boolean sendsPing;
+
+        private volatile long lastSeenNanos = System.nanoTime();
+
+        private volatile boolean pingSent;
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        /**
+         * 空闲多久回收；0 表示不因空闲回收（STOMP 客户端未协商心跳）
+         */
+        private volatile long timeoutMs;
+
+        /**
+         * 当前有效的检查任务，读写都持有连接锁
+         */
+        private Check check;
+
+        Connection(boolean sendsPing) {
+            this.sendsPing = sendsPing;
+        }
+
+        /**
+         * 收到入站消息（含 pong 与 STOMP 心跳帧）
+         */
+        void touch() {
+            lastSeenNanos = System.nanoTime();
+            pingSent = false;
+        }
+
+        long idleMs() {
+            return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastSeenNanos);
+        }
+
+        abstract String getId();
+
+        abstract void ping();
+
+        abstract void reap();
+    }
+}
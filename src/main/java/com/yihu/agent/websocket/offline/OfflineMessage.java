@@ -0,0 +1,10 @@
+package com.yihu.agent.websocket.offline;
+
+/**
+ * 离线消息
+ *
+ * @param position  在离线日志中的位置，投递成功后用于确认
+ * @param timestamp 写入时间
+ * @param payload   已序列化好的消息帧
+ */
+public record OfflineMessage(long position, long timestamp, String payload) {}
@@ -0,0 +1,512 @@
+package com.yihu.agent.websocket.offline;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 离线消息存储 - 分段内存映射追加日志
+ *
+ * 目标用户不在线时，消息写入磁盘日志，用户上线后批量投递：
+ * 1. 日志按固定大小分段，每段通过 mmap 映射，追加写入只是内存拷贝，消息体不占用堆内存
+ * 2. 堆上只保留每个用户的待投递位置索引（userId -> 位置队列）
+ * 3. 刷盘采用组提交：后台线程按固定间隔统一 force，一次 fsync 覆盖期间所有写入
+ * 4. 投递成功后追加 ACK 记录，重启时重放 MESSAGE/ACK 记录恢复索引
+ * 5. 只从最旧的分段开始压缩：全部已确认或超过保留期的分段整段删除
+ *
+ * 记录格式（大端）：
+ * [int 记录长度][byte 类型][long 时间戳][short userId长度][userId]
+ *   MESSAGE: [int 消息长度][消息内容]
+ *   ACK:     [long 已确认的最大位置]
+ * 记录长度最后写入，长度为 0 表示分段尾部尚未写入的区域
+ */
+@Slf4j
+@Component
+public class OfflineMessageLog {
+
+    private static final byte TYPE_MESSAGE = 1;
+    private static final byte TYPE_ACK = 2;
+
+    /**
+     * 记录头长度：长度 + 类型 + 时间戳 + userId长度
+     */
+    private static final int HEADER_SIZE = 4 + 1 + 8 + 2;
+
+    @Value("${healthcare.offline.dir:./data/offline-inbox}")
+    private String directory;
+
+    @Value("${healthcare.offline.segment-size-mb:64}")
+    private int segmentSizeMb;
+
+    @Value("${healthcare.offline.flush-interval-ms:20}")
+    private long flushIntervalMs;
+
+    @Value("${healthcare.offline.retention-hours:168}")
+    private long retentionHours;
+
+    @Value("${healthcare.offline.compaction-interval-minutes:10}")
+    private long compactionIntervalMinutes;
+
+    /**
+     * 分段：segmentId -> 分段，按 id 升序
+     */
+    private final TreeMap<Integer, Segment> segments = new TreeMap<>();
+
+    /**
+     * 每个用户的待投递位置（升序）
+     */
+    private final Map<String, ArrayDeque<Long>> pendingByUser = new HashMap<>();
+
+    /**
+     * 等待下一次刷盘的写入
+     */
+    private List<CompletableFuture<Void>> pendingFlush = new ArrayList<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "offline-log-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Path root;
+    private int segmentSize;
+    private Segment active;
+    private boolean dirty;
+
+    public OfflineMessageLog() {
+    }
+
+    /**
+     * 测试用：按字节指定分段大小，便于触发分段滚动
+     */
+    OfflineMessageLog(String directory, int segmentSizeBytes, long retentionHours) {
+        this.directory = directory;
+        this.segmentSize = segmentSizeBytes;
+        this.retentionHours = retentionHours;
+        this.flushIntervalMs = 20;
+        this.compactionIntervalMinutes = 10;
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        root = Paths.get(directory);
+        if (segmentSize <= 0) {
+            segmentSize = segmentSizeMb * 1024 * 1024;
+        }
+        Files.createDirectories(root);
+
+        synchronized (this) {
+            try (Stream<Path> files = Files.list(root)) {
+                List<Path> logFiles = files.filter(p -> p.getFileName().toString().endsWith(".log")).sorted().toList();
+                for (Path file : logFiles) {
+                    int id = Integer.parseInt(file.getFileName().toString().replace(".log", ""));
+                    Segment segment = Segment.open(file, id, segmentSize);
+                    segments.put(id, segment);
+                    recover(segment);
+                }
+            }
+            if (segments.isEmpty()) {
+                active = rollSegment(0);
+            } else {
+                active = segments.lastEntry().getValue();
+                clearTail(active);
+            }
+        }
+
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::compact, compactionIntervalMinutes, compactionIntervalMinutes, TimeUnit.MINUTES);
+
+        log.info("离线消息日志已加载: dir={}, 分段数={}, 待投递用户数={}", root.toAbsolutePath(), segments.size(), pendingByUser.size());
+    }
+
+    @PreDestroy
+    public void close() {
+        scheduler.shutdown();
+        flush();
+        synchronized (this) {
+            for (Segment segment : segments.values()) {
+                segment.close();
+            }
+        }
+    }
+
+    // ==================== 写入 ====================
+
+    /**
+     * 追加一条离线消息
+     *
+     * @param userId  目标用户ID
+     * @param payload 已序列化好的消息帧
+     * @return 在下一次组提交刷盘后完成的 Future
+     */
+    public synchronized CompletableFuture<Void> append(String userId, String payload) {
+        byte[] user = userId.getBytes(StandardCharsets.UTF_8);
+        byte[] body = payload.getBytes(StandardCharsets.UTF_8);
+        int recordSize = HEADER_SIZE + user.length + 4 + body.length;
+        if (recordSize > segmentSize) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("离线消息过大: " + recordSize + " 字节"));
+        }
+
+        Segment segment = segmentFor(recordSize);
+        int offset = segment.writePosition;
+        MappedByteBuffer buffer = segment.buffer;
+        int cursor = writeHeader(buffer, offset, TYPE_MESSAGE, user);
+        buffer.putInt(cursor, body.length);
+        buffer.put(cursor + 4, body);
+        // 长度最后写入，保证崩溃时不会读到半条记录
+        buffer.putInt(offset, recordSize - 4);
+
+        segment.writePosition += recordSize;
+        segment.liveCount++;
+        segment.lastWriteAt = System.currentTimeMillis();
+        pendingByUser.computeIfAbsent(userId, k -> new ArrayDeque<>()).addLast(position(segment.id, offset));
+        dirty = true;
+
+        CompletableFuture<Void> durable = new CompletableFuture<>();
+        pendingFlush.add(durable);
+        return durable;
+    }
+
+    /**
+     * 确认投递：标记该用户位置 <= upToPosition 的消息均已送达
+     */
+    public synchronized void acknowledge(String userId, long upToPosition) {
+        if (!applyAck(userId, upToPosition)) {
+            return;
+        }
+
+        byte[] user = userId.getBytes(StandardCharsets.UTF_8);
+        int recordSize = HEADER_SIZE + user.length + 8;
+        Segment segment = segmentFor(recordSize);
+        int offset = segment.writePosition;
+        int cursor = writeHeader(segment.buffer, offset, TYPE_ACK, user);
+        segment.buffer.putLong(cursor, upToPosition);
+        segment.buffer.putInt(offset, recordSize - 4);
+
+        segment.writePosition += recordSize;
+        segment.lastWriteAt = System.currentTimeMillis();
+        dirty = true;
+    }
+
+    // ==================== 读取 ====================
+
+    /**
+     * 读取用户最早的一批待投递消息（不删除，投递成功后需调用 acknowledge）
+     *
+     * @param userId 用户ID
+     * @param max    最多读取条数
+     */
+    public List<OfflineMessage> peek(String userId, int max) {
+        List<Long> positions = new ArrayList<>();
+        Map<Integer, Segment> snapshot;
+        synchronized (this) {
+            ArrayDeque<Long> pending = pendingByUser.get(userId);
+            if (pending == null || pending.isEmpty()) {
+                return List.of();
+            }
+            Iterator<Long> iterator = pending.iterator();
+            while (iterator.hasNext() && positions.size() < max) {
+                positions.add(iterator.next());
+            }
+            snapshot = new HashMap<>(segments);
+        }
+
+        // 读取在锁外进行，mmap 绝对位置读取互不干扰
+        List<OfflineMessage> messages = new ArrayList<>(positions.size());
+        for (long position : positions) {
+            Segment segment = snapshot.get(segmentId(position));
+            if (segment == null) {
+                continue;
+            }
+            try {
+                messages.add(readMessage(segment, position));
+            } catch (RuntimeException e) {
+                log.warn("读取离线消息失败，分段可能已被压缩: position={}", position, e);
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * 用户是否有待投递的离线消息
+     */
+    public synchronized boolean hasPending(String userId) {
+        ArrayDeque<Long> pending = pendingByUser.get(userId);
+        return pending != null && !pending.isEmpty();
+    }
+
+    /**
+     * 待投递的离线消息总数
+     */
+    public synchronized int getPendingCount() {
+        int total = 0;
+        for (ArrayDeque<Long> pending : pendingByUser.values()) {
+            total += pending.size();
+        }
+        return total;
+    }
+
+    // ==================== 组提交与压缩 ====================
+
+    /**
+     * 组提交：一次 force 覆盖上次刷盘以来的全部写入
+     */
+    private void flush() {
+        List<CompletableFuture<Void>> waiting;
+        List<Segment> toForce;
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            waiting = pendingFlush;
+            pendingFlush = new ArrayList<>();
+            toForce = new ArrayList<>(segments.values());
+            toForce.removeIf(segment -> !segment.unflushed);
+            toForce.forEach(segment -> segment.unflushed = false);
+            dirty = false;
+        }
+        try {
+            for (Segment segment : toForce) {
+                segment.buffer.force();
+            }
+            waiting.forEach(future -> future.complete(null));
+        } catch (RuntimeException e) {
+            log.error("离线消息日志刷盘失败", e);
+            waiting.forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * 压缩：从最旧的分段开始，删除全部已确认或超过保留期的分段
+     *
+     * 只删除前缀分段，保证 ACK 记录不会先于它所确认的消息被删除
+     */
+    void compact() {
+        long expireBefore = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(retentionHours);
+        synchronized (this) {
+            while (segments.size() > 1) {
+                Segment oldest = segments.firstEntry().getValue();
+                boolean expired = oldest.lastWriteAt < expireBefore;
+                if (oldest == active || (oldest.liveCount > 0 && !expired)) {
+                    break;
+                }
+                if (oldest.liveCount > 0) {
+                    dropPositionsIn(oldest.id);
+                    log.warn("离线消息超过保留期被丢弃: segment={}, 条数={}", oldest.id, oldest.liveCount);
+                }
+                segments.remove(oldest.id);
+                oldest.close();
+                try {
+                    Files.deleteIfExists(oldest.file);
+                } catch (IOException e) {
+                    log.error("删除离线消息分段失败: {}", oldest.file, e);
+                }
+                log.info("离线消息分段已压缩: segment={}", oldest.id);
+            }
+        }
+    }
+
+    // ==================== 辅助方法 ====================
+
+    /**
+     * 获取能容纳指定大小记录的分段，空间不足时滚动到新分段（调用方需持有锁）
+     */
+    private Segment segmentFor(int recordSize) {
+        if (active.writePosition + recordSize > segmentSize) {
+            active = rollSegment(active.id + 1);
+        }
+        active.unflushed = true;
+        return active;
+    }
+
+    private Segment rollSegment(int id) {
+        try {
+            Segment segment = Segment.open(root.resolve(String.format("%010d.log", id)), id, segmentSize);
+            segments.put(id, segment);
+            log.info("创建离线消息分段: segment={}", id);
+            return segment;
+        } catch (IOException e) {
+            throw new IllegalStateException("创建离线消息分段失败: " + id, e);
+        }
+    }
+
+    private static int writeHeader(MappedByteBuffer buffer, int offset, byte type, byte[] user) {
+        buffer.put(offset + 4, type);
+        buffer.putLong(offset + 5, System.currentTimeMillis());
+        buffer.putShort(offset + 13, (short) user.length);
+        buffer.put(offset + HEADER_SIZE, user);
+        return offset + HEADER_SIZE + user.length;
+    }
+
+    /**
+     * 扫描分段重建索引（启动时调用，调用方需持有锁）
+     */
+    private void recover(Segment segment) {
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = 0;
+        segment.lastWriteAt = 0;
+        while (offset + HEADER_SIZE <= segmentSize) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + 4 + length > segmentSize) {
+                break;
+            }
+            byte type = buffer.get(offset + 4);
+            long timestamp = buffer.getLong(offset + 5);
+            byte[] user = new byte[buffer.getShort(offset + 13)];
+            buffer.get(offset + HEADER_SIZE, user);
+            String userId = new String(user, StandardCharsets.UTF_8);
+            int cursor = offset + HEADER_SIZE + user.length;
+
+            if (type == TYPE_MESSAGE) {
+                pendingByUser.computeIfAbsent(userId, k -> new ArrayDeque<>()).addLast(position(segment.id, offset));
+                segment.liveCount++;
+            } else if (type == TYPE_ACK) {
+                applyAck(userId, buffer.getLong(cursor));
+            }
+            segment.lastWriteAt = Math.max(segment.lastWriteAt, timestamp);
+            offset += 4 + length;
+        }
+        segment.writePosition = offset;
+        if (segment.lastWriteAt == 0) {
+            segment.lastWriteAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * 清零活跃分段写入位置之后的区域（启动时调用，调用方需持有锁）
+     *
+     * 崩溃时可能留下未写长度的半条记录，新记录只覆盖其开头，
+     * 残留的字节在下次重启时可能被当作记录解析，因此追加前先清零
+     */
+    private void clearTail(Segment segment) {
+        byte[] zeros = new byte[8192];
+        for (int offset = segment.writePosition; offset < segmentSize; offset += zeros.length) {
+            segment.buffer.put(offset, zeros, 0, Math.min(zeros.length, segmentSize - offset));
+        }
+        segment.unflushed = true;
+        dirty = true;
+    }
+
+    /**
+     * 从索引中移除已确认的位置并更新分段存活计数（调用方需持有锁）
+     *
+     * @return 是否有位置被确认
+     */
+    private boolean applyAck(String userId, long upToPosition) {
+        ArrayDeque<Long> pending = pendingByUser.get(userId);
+        if (pending == null) {
+            return false;
+        }
+        boolean acknowledged = false;
+        while (!pending.isEmpty() && pending.peekFirst() <= upToPosition) {
+            Segment segment = segments.get(segmentId(pending.pollFirst()));
+            if (segment != null) {
+                segment.liveCount--;
+            }
+            acknowledged = true;
+        }
+        if (pending.isEmpty()) {
+            pendingByUser.remove(userId);
+        }
+        return acknowledged;
+    }
+
+    /**
+     * 丢弃位于指定分段及之前分段的索引（调用方需持有锁）
+     */
+    private void dropPositionsIn(int segmentId) {
+        Iterator<Map.Entry<String, ArrayDeque<Long>>> iterator = pendingByUser.entrySet().iterator();
+        while (iterator.hasNext()) {
+            ArrayDeque<Long> pending = iterator.next().getValue();
+            while (!pending.isEmpty() && segmentId(pending.peekFirst()) <= segmentId) {
+                pending.pollFirst();
+            }
+            if (pending.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static OfflineMessage readMessage(Segment segment, long position) {
+        MappedByteBuffer buffer = segment.buffer;
+        int offset = offsetOf(position);
+        long timestamp = buffer.getLong(offset + 5);
+        int cursor = offset + HEADER_SIZE + buffer.getShort(offset + 13);
+        byte[] body = new byte[buffer.getInt(cursor)];
+        buffer.get(cursor + 4, body);
+        return new OfflineMessage(position, timestamp, new String(body, StandardCharsets.UTF_8));
+    }
+
+    private static long position(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentId(long position) {
+        return (int) (position >>> 32);
+    }
+
+    private static int offsetOf(long position) {
+        return (int) position;
+    }
+
+    /**
+     * 日志分段：一个定长文件及其内存映射
+     */
+    private static final class Segment {
+
+        private final int id;
+        private final Path file;
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+        private int liveCount;
+        private long lastWriteAt;
+        private boolean unflushed;
+
+        private Segment(int id, Path file, FileChannel channel, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.channel = channel;
+            this.buffer = buffer;
+            this.lastWriteAt = System.currentTimeMillis();
+        }
+
+        static Segment open(Path file, int id, int size) throws IOException {
+            FileChannel channel = FileChannel.open(file,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            return new Segment(id, file, channel, buffer);
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("关闭离线消息分段失败: {}", file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,612 @@
+package com.yihu.agent.websocket.presence;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * 压缩位图（Roaring 风格）
+ *
+ * 按整数高 16 位分桶，每个桶内根据基数自动切换容器：
+ * 1. 稀疏（<= 4096 个元素）：有序 char[] 数组容器
+ * 2. 稠密（> 4096 个元素）：1024 个 long 组成的位图容器
+ *
+ * 用于在线用户索引，集合运算（交集、差集、并集）按桶逐个进行，
+ * 不需要把用户集合展开成字符串列表。
+ *
+ * 注意：非线程安全，并发访问由调用方加锁
+ */
+public class CompactBitmap {
+
+    /**
+     * 数组容器的最大元素数，超过后转换为位图容器
+     */
+    static final int ARRAY_MAX = 4096;
+
+    private char[] keys = new char[4];
+    private Container[] containers = new Container[4];
+    private int size;
+
+    /**
+     * 由一组整数构建位图
+     */
+    public static CompactBitmap of(int... values) {
+        CompactBitmap bitmap = new CompactBitmap();
+        for (int value : values) {
+            bitmap.add(value);
+        }
+        return bitmap;
+    }
+
+    /**
+     * 添加元素
+     *
+     * @return 元素原先不存在时返回 true
+     */
+    public boolean add(int value) {
+        char high = highBits(value);
+        char low = lowBits(value);
+        int i = indexOfKey(high);
+        if (i >= 0) {
+            if (containers[i].contains(low)) {
+                return false;
+            }
+            containers[i] = containers[i].add(low);
+            return true;
+        }
+        insertContainer(-i - 1, high, new ArrayContainer().add(low));
+        return true;
+    }
+
+    /**
+     * 删除元素
+     *
+     * @return 元素原先存在时返回 true
+     */
+    public boolean remove(int value) {
+        int i = indexOfKey(highBits(value));
+        if (i < 0) {
+            return false;
+        }
+        char low = lowBits(value);
+        if (!containers[i].contains(low)) {
+            return false;
+        }
+        Container container = containers[i].remove(low);
+        if (container.cardinality() == 0) {
+            removeContainer(i);
+        } else {
+            containers[i] = container;
+        }
+        return true;
+    }
+
+    /**
+     * 是否包含元素
+     */
+    public boolean contains(int value) {
+        int i = indexOfKey(highBits(value));
+        return i >= 0 && containers[i].contains(lowBits(value));
+    }
+
+    /**
+     * 元素总数
+     */
+    public int cardinality() {
+        int total = 0;
+        for (int i = 0; i < size; i++) {
+            total += containers[i].cardinality();
+        }
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 交集：this ∩ other
+     */
+    public CompactBitmap and(CompactBitmap other) {
+        CompactBitmap result = new CompactBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container c = containers[i].and(other.containers[j]);
+                if (c.cardinality() > 0) {
+                    result.appendContainer(keys[i], c);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 交集基数：|this ∩ other|，不生成中间结果
+     */
+    public int andCardinality(CompactBitmap other) {
+        int total = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size) {
+            if (keys[i] < other.keys[j]) {
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                total += containers[i].andCardinality(other.containers[j]);
+                i++;
+                j++;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 差集：this \ other
+     */
+    public CompactBitmap andNot(CompactBitmap other) {
+        CompactBitmap result = new CompactBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size) {
+            if (j >= other.size || keys[i] < other.keys[j]) {
+                result.appendContainer(keys[i], containers[i].copy());
+                i++;
+            } else if (keys[i] > other.keys[j]) {
+                j++;
+            } else {
+                Container c = containers[i].andNot(other.containers[j]);
+                if (c.cardinality() > 0) {
+                    result.appendContainer(keys[i], c);
+                }
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 并集：this ∪ other
+     */
+    public CompactBitmap or(CompactBitmap other) {
+        CompactBitmap result = new CompactBitmap();
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j >= other.size || (i < size && keys[i] < other.keys[j])) {
+                result.appendContainer(keys[i], containers[i].copy());
+                i++;
+            } else if (i >= size || keys[i] > other.keys[j]) {
+                result.appendContainer(other.keys[j], other.containers[j].copy());
+                j++;
+            } else {
+                result.appendContainer(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按升序遍历所有元素
+     */
+    public void forEach(IntConsumer consumer) {
+        for (int i = 0; i < size; i++) {
+            containers[i].forEach(keys[i] << 16, consumer);
+        }
+    }
+
+    /**
+     * 按升序导出所有元素
+     */
+    public int[] toArray() {
+        int[] result = new int[cardinality()];
+        int[] position = {0};
+        forEach(value -> result[position[0]++] = value);
+        return result;
+    }
+
+    /**
+     * 深拷贝
+     */
+    public CompactBitmap copy() {
+        CompactBitmap result = new CompactBitmap();
+        result.keys = Arrays.copyOf(keys, Math.max(4, size));
+        result.containers = new Container[result.keys.length];
+        for (int i = 0; i < size; i++) {
+            result.containers[i] = containers[i].copy();
+        }
+        result.size = size;
+        return result;
+    }
+
+    // ==================== 桶管理 ====================
+
+    private static char highBits(int value) {
+        return (char) (value >>> 16);
+    }
+
+    private static char lowBits(int value) {
+        return (char) value;
+    }
+
+    private int indexOfKey(char key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insertContainer(int index, char key, Container container) {
+        ensureCapacity(size + 1);
+        System.arraycopy(keys, index, keys, index + 1, size - index);
+        System.arraycopy(containers, index, containers, index + 1, size - index);
+        keys[index] = key;
+        containers[index] = container;
+        size++;
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, size - index - 1);
+        size--;
+        containers[size] = null;
+    }
+
+    /**
+     * 按键升序追加桶（仅用于集合运算构造结果）
+     */
+    private void appendContainer(char key, Container container) {
+        ensureCapacity(size + 1);
+        keys[size] = key;
+        containers[size] = container;
+        size++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > keys.length) {
+            int newLength = Math.max(capacity, keys.length * 2);
+            keys = Arrays.copyOf(keys, newLength);
+            containers = Arrays.copyOf(containers, newLength);
+        }
+    }
+
+    // ==================== 容器实现 ====================
+
+    /**
+     * 桶容器：保存一个桶内的低 16 位
+     * 修改操作可能返回新的容器实例（数组与位图之间转换）
+     */
+    private abstract static class Container {
+
+        abstract boolean contains(char value);
+
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        abstract int cardinality();
+
+        abstract Container and(Container other);
+
+        abstract int andCardinality(Container other);
+
+        abstract Container andNot(Container other);
+
+        abstract Container or(Container other);
+
+        abstract void forEach(int base, IntConsumer consumer);
+
+        abstract Container copy();
+    }
+
+    /**
+     * 稀疏容器：有序 char 数组
+     */
+    private static final class ArrayContainer extends Container {
+
+        private char[] content;
+        private int cardinality;
+
+        ArrayContainer() {
+            this.content = new char[4];
+        }
+
+        ArrayContainer(char[] content, int cardinality) {
+            this.content = content;
+            this.cardinality = cardinality;
+        }
+
+        @Override
+        boolean contains(char value) {
+            return Arrays.binarySearch(content, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        Container add(char value) {
+            int i = Arrays.binarySearch(content, 0, cardinality, value);
+            if (i >= 0) {
+                return this;
+            }
+            if (cardinality >= ARRAY_MAX) {
+                return toBitmap().add(value);
+            }
+            i = -i - 1;
+            if (cardinality == content.length) {
+                content = Arrays.copyOf(content, Math.min(ARRAY_MAX, content.length * 2));
+            }
+            System.arraycopy(content, i, content, i + 1, cardinality - i);
+            content[i] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            int i = Arrays.binarySearch(content, 0, cardinality, value);
+            if (i >= 0) {
+                System.arraycopy(content, i + 1, content, i, cardinality - i - 1);
+                cardinality--;
+            }
+            return this;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+            char[] result = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(content[i])) {
+                    result[count++] = content[i];
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        int andCardinality(Container other) {
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (other.contains(content[i])) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        Container andNot(Container other) {
+            char[] result = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++) {
+                if (!other.contains(content[i])) {
+                    result[count++] = content[i];
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container or(Container other) {
+            if (other instanceof BitmapContainer) {
+                return other.or(this);
+            }
+            ArrayContainer that = (ArrayContainer) other;
+            char[] merged = new char[cardinality + that.cardinality];
+            int i = 0;
+            int j = 0;
+            int count = 0;
+            while (i < cardinality && j < that.cardinality) {
+                if (content[i] < that.content[j]) {
+                    merged[count++] = content[i++];
+                } else if (content[i] > that.content[j]) {
+                    merged[count++] = that.content[j++];
+                } else {
+                    merged[count++] = content[i++];
+                    j++;
+                }
+            }
+            while (i < cardinality) {
+                merged[count++] = content[i++];
+            }
+            while (j < that.cardinality) {
+                merged[count++] = that.content[j++];
+            }
+            ArrayContainer result = new ArrayContainer(merged, count);
+            return count > ARRAY_MAX ? result.toBitmap() : result;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer consumer) {
+            for (int i = 0; i < cardinality; i++) {
+                consumer.accept(base | content[i]);
+            }
+        }
+
+        @Override
+        Container copy() {
+            return new ArrayContainer(Arrays.copyOf(content, Math.max(4, cardinality)), cardinality);
+        }
+
+        BitmapContainer toBitmap() {
+            BitmapContainer bitmap = new BitmapContainer();
+            for (int i = 0; i < cardinality; i++) {
+                bitmap.set(content[i]);
+            }
+            return bitmap;
+        }
+    }
+
+    /**
+     * 稠密容器：65536 位的位图
+     */
+    private static final class BitmapContainer extends Container {
+
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer() {
+            this.words = new long[1024];
+        }
+
+        BitmapContainer(long[] words, int cardinality) {
+            this.words = words;
+            this.cardinality = cardinality;
+        }
+
+        void set(char value) {
+            long mask = 1L << value;
+            int index = value >>> 6;
+            if ((words[index] & mask) == 0) {
+                words[index] |= mask;
+                cardinality++;
+            }
+        }
+
+        @Override
+        boolean contains(char value) {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        Container add(char value) {
+            set(value);
+            return this;
+        }
+
+        @Override
+        Container remove(char value) {
+            long mask = 1L << value;
+            int index = value >>> 6;
+            if ((words[index] & mask) != 0) {
+                words[index] &= ~mask;
+                cardinality--;
+            }
+            return cardinality <= ARRAY_MAX ? toArrayContainer() : this;
+        }
+
+        @Override
+        int cardinality() {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.and(this);
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            long[] result = new long[1024];
+            int count = 0;
+            for (int i = 0; i < 1024; i++) {
+                result[i] = words[i] & otherWords[i];
+                count += Long.bitCount(result[i]);
+            }
+            return normalize(result, count);
+        }
+
+        @Override
+        int andCardinality(Container other) {
+            if (other instanceof ArrayContainer) {
+                return other.andCardinality(this);
+            }
+            long[] otherWords = ((BitmapContainer) other).words;
+            int count = 0;
+            for (int i = 0; i < 1024; i++) {
+                count += Long.bitCount(words[i] & otherWords[i]);
+            }
+            return count;
+        }
+
+        @Override
+        Container andNot(Container other) {
+            long[] result = words.clone();
+            int count;
+            if (other instanceof BitmapContainer) {
+                long[] otherWords = ((BitmapContainer) other).words;
+                count = 0;
+                for (int i = 0; i < 1024; i++) {
+                    result[i] &= ~otherWords[i];
+                    count += Long.bitCount(result[i]);
+                }
+            } else {
+                ArrayContainer array = (ArrayContainer) other;
+                count = cardinality;
+                for (int i = 0; i < array.cardinality; i++) {
+                    char value = array.content[i];
+                    long mask = 1L << value;
+                    if ((result[value >>> 6] & mask) != 0) {
+                        result[value >>> 6] &= ~mask;
+                        count--;
+                    }
+                }
+            }
+            return normalize(result, count);
+        }
+
+        @Override
+        Container or(Container other) {
+            BitmapContainer result = new BitmapContainer(words.clone(), cardinality);
+            if (other instanceof BitmapContainer) {
+                long[] otherWords = ((BitmapContainer) other).words;
+                int count = 0;
+                for (int i = 0; i < 1024; i++) {
+                    result.words[i] |= otherWords[i];
+                    count += Long.bitCount(result.words[i]);
+                }
+                result.cardinality = count;
+            } else {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++) {
+                    result.set(array.content[i]);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        void forEach(int base, IntConsumer consumer) {
+            for (int i = 0; i < 1024; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    consumer.accept(base | (i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+        }
+
+        @Override
+        Container copy() {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        private static Container normalize(long[] words, int cardinality) {
+            BitmapContainer bitmap = new BitmapContainer(words, cardinality);
+            return cardinality <= ARRAY_MAX ? bitmap.toArrayContainer() : bitmap;
+        }
+
+        private ArrayContainer toArrayContainer() {
+            char[] content = new char[Math.max(4, cardinality)];
+            int count = 0;
+            for (int i = 0; i < 1024; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    content[count++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                    word &= word - 1;
+                }
+            }
+            return new ArrayContainer(content, count);
+        }
+    }
+}
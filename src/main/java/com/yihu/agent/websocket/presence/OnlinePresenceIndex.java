@@ -0,0 +1,232 @@
+package com.yihu.agent.websocket.presence;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * 在线状态位图索引
+ *
+ * 同时覆盖原生 WebSocket 与 STOMP 两种连接方式：
+ * 1. 每个 userId 驻留为整数下标，在线用户集合保存在 {@link CompactBitmap} 中
+ * 2. 按用户记录连接的 sessionId，同一用户多个连接全部断开后才算下线；
+ *    按 sessionId 移除，同一连接的断开事件重复发布时不会重复扣减
+ * 3. 批量查询时先把目标人群转换为位图，再做交集/差集，避免逐个查询
+ *
+ * 读多写少，使用读写锁保护
+ * 用户上线（首个连接）/下线（最后一个连接）时通知 {@link PresenceListener}，通知在锁外进行
+ */
+@Slf4j
+@Component
+public class OnlinePresenceIndex {
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final UserIdInterner interner = new UserIdInterner();
+
+    private final CompactBitmap online = new CompactBitmap();
+
+    /**
+     * 每个用户当前活跃连接的 sessionId
+     */
+    private final Map<String, Set<String>> connections = new HashMap<>();
+
+    private final List<PresenceListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 注册在线状态变化监听器
+     */
+    public void addListener(PresenceListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 记录用户新建立一个连接（同一 sessionId 重复记录时忽略）
+     */
+    public void markOnline(String userId, String sessionId) {
+        boolean changed;
+        lock.writeLock().lock();
+        try {
+            int index = interner.intern(userId);
+            Set<String> sessions = connections.computeIfAbsent(userId, id -> new HashSet<>());
+            changed = sessions.add(sessionId) && sessions.size() == 1;
+            if (changed) {
+                online.add(index);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (changed) {
+            listeners.forEach(listener -> listener.onPresenceChanged(userId, true));
+        }
+    }
+
+    /**
+     * 记录用户断开一个连接（该 sessionId 已移除时忽略）
+     */
+    public void markOffline(String userId, String sessionId) {
+        boolean changed;
+        lock.writeLock().lock();
+        try {
+            Set<String> sessions = connections.get(userId);
+            if (sessions == null || !sessions.remove(sessionId)) {
+                log.debug("用户 {} 的连接 {} 没有在线记录，忽略下线事件", userId, sessionId);
+                return;
+            }
+            changed = sessions.isEmpty();
+            if (changed) {
+                connections.remove(userId);
+                online.remove(interner.indexOf(userId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (changed) {
+            listeners.forEach(listener -> listener.onPresenceChanged(userId, false));
+        }
+    }
+
+    /**
+     * 检查单个用户是否在线
+     */
+    public boolean isOnline(String userId) {
+        lock.readLock().lock();
+        try {
+            int index = interner.indexOf(userId);
+            return index >= 0 && online.contains(index);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 当前在线用户数
+     */
+    public int getOnlineCount() {
+        lock.readLock().lock();
+        try {
+            return online.cardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 在线用户 ∩ 目标人群
+     *
+     * @param cohort 目标人群（如患者队列、护理小组）
+     * @return 目标人群中在线的用户，按驻留顺序排列
+     */
+    public List<String> onlineAmong(Collection<String> cohort) {
+        lock.readLock().lock();
+        try {
+            return resolve(toBitmap(cohort).and(online));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 在线人数 |在线用户 ∩ 目标人群|，不生成用户列表
+     */
+    public int countOnlineAmong(Collection<String> cohort) {
+        lock.readLock().lock();
+        try {
+            return toBitmap(cohort).andCardinality(online);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 批量查询目标人群的在线状态
+     * 一次加锁完成交集与差集，从未连接过的用户视为离线
+     */
+    public CohortPresence query(Collection<String> cohort) {
+        lock.readLock().lock();
+        try {
+            CompactBitmap cohortBitmap = toBitmap(cohort);
+            List<String> onlineUsers = resolve(cohortBitmap.and(online));
+
+            List<String> offlineUsers = resolve(cohortBitmap.andNot(online));
+            for (String userId : cohort) {
+                if (userId != null && interner.indexOf(userId) < 0) {
+                    offlineUsers.add(userId);
+                }
+            }
+            return new CohortPresence(onlineUsers, offlineUsers);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 当前在线的全部用户
+     */
+    public List<String> getOnlineUserIds() {
+        lock.readLock().lock();
+        try {
+            return resolve(online);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 获取当前在线用户位图的快照，供调用方做进一步的集合运算
+     */
+    public CompactBitmap snapshot() {
+        lock.readLock().lock();
+        try {
+            return online.copy();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // ==================== 辅助方法 ====================
+
+    /**
+     * 把 userId 集合转换为位图（调用方需持有锁）
+     * 未驻留过的 userId 不会分配下标，直接跳过
+     */
+    private CompactBitmap toBitmap(Collection<String> userIds) {
+        CompactBitmap bitmap = new CompactBitmap();
+        for (String userId : userIds) {
+            if (userId == null) {
+                continue;
+            }
+            int index = interner.indexOf(userId);
+            if (index >= 0) {
+                bitmap.add(index);
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * 把位图转换回 userId 列表（调用方需持有锁）
+     */
+    private List<String> resolve(CompactBitmap bitmap) {
+        List<String> userIds = new ArrayList<>(bitmap.cardinality());
+        bitmap.forEach(index -> userIds.add(interner.userIdOf(index)));
+        return userIds;
+    }
+
+    /**
+     * 批量在线状态查询结果
+     *
+     * @param onlineUserIds  在线的用户
+     * @param offlineUserIds 离线的用户
+     */
+    public record CohortPresence(List<String> onlineUserIds, List<String> offlineUserIds) {}
+}
@@ -0,0 +1,16 @@
+package com.yihu.agent.websocket.presence;
+
+/**
+ * 在线状态变化监听器
+ */
+@FunctionalInterface
+public interface PresenceListener {
+
+    /**
+     * 用户在本节点上线（首个连接建立）或下线（最后一个连接断开）
+     *
+     * @param userId 用户ID
+     * @param online true 上线，false 下线
+     */
+    void onPresenceChanged(String userId, boolean online);
+}
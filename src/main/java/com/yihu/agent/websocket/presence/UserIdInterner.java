@@ -0,0 +1,60 @@
+package com.yihu.agent.websocket.presence;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 用户ID驻留表
+ *
+ * 为每个字符串 userId 分配一个稳定的、从 0 开始连续递增的整数下标，
+ * 使在线状态可以用 {@link CompactBitmap} 表示。
+ * 下标一经分配不会回收，同一 userId 始终映射到同一下标。
+ *
+ * 注意：非线程安全，并发访问由调用方加锁
+ */
+public class UserIdInterner {
+
+    private final Map<String, Integer> indexByUserId = new HashMap<>();
+
+    private final List<String> userIdByIndex = new ArrayList<>();
+
+    /**
+     * 获取 userId 的下标，不存在时分配新下标
+     */
+    public int intern(String userId) {
+        Integer index = indexByUserId.get(userId);
+        if (index != null) {
+            return index;
+        }
+        int newIndex = userIdByIndex.size();
+        indexByUserId.put(userId, newIndex);
+        userIdByIndex.add(userId);
+        return newIndex;
+    }
+
+    /**
+     * 查询 userId 的下标，不分配新下标
+     *
+     * @return 下标，未驻留过时返回 -1
+     */
+    public int indexOf(String userId) {
+        Integer index = indexByUserId.get(userId);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * 根据下标反查 userId
+     */
+    public String userIdOf(int index) {
+        return userIdByIndex.get(index);
+    }
+
+    /**
+     * 已驻留的用户数量
+     */
+    public int size() {
+        return userIdByIndex.size();
+    }
+}
@@ -0,0 +1,17 @@
+package com.yihu.agent.websocket.ratelimit;
+
+/**
+ * 限流预算类别，各类别的令牌桶互相独立
+ */
+public enum RateLimitCategory {
+
+    /**
+     * 需要调用大模型的消息（/app/chat/ai），成本高，预算小
+     */
+    LLM,
+
+    /**
+     * 普通聊天消息（原生端点的私信 / 广播）
+     */
+    CHAT
+}
@@ -0,0 +1,220 @@
+package com.yihu.agent.websocket.ratelimit;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按用户与 IP 的令牌桶限流
+ *
+ * 1. 每个类别（见 {@link RateLimitCategory}）分别有用户桶与 IP 桶，大模型消息与普通聊天互不占用预算
+ * 2. 一条消息需同时通过用户桶与 IP 桶：用户桶防止单个账号刷接口，IP 桶防止脚本轮换 userId
+ * 3. 令牌桶无锁（见 {@link TokenBucket}），限流判断不会成为热点
+ * 4. 桶回满且空闲超过 idle-expire-ms 的状态定期回收，状态规模只与活跃用户 / IP 数相关
+ */
+@Slf4j
+@Component
+public class RateLimiter {
+
+    @Value("${healthcare.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${healthcare.rate-limit.idle-expire-ms:600000}")
+    private long idleExpireMs;
+
+    @Value("${healthcare.rate-limit.sweep-interval-ms:60000}")
+    private long sweepIntervalMs;
+
+    @Value("${healthcare.rate-limit.llm.user-per-minute:10}")
+    private double llmUserPerMinute;
+
+    @Value("${healthcare.rate-limit.llm.user-burst:5}")
+    private int llmUserBurst;
+
+    @Value("${healthcare.rate-limit.llm.ip-per-minute:30}")
+    private double llmIpPerMinute;
+
+    @Value("${healthcare.rate-limit.llm.ip-burst:15}")
+    private int llmIpBurst;
+
+    @Value("${healthcare.rate-limit.chat.user-per-minute:120}")
+    private double chatUserPerMinute;
+
+    @Value("${healthcare.rate-limit.chat.user-burst:30}")
+    private int chatUserBurst;
+
+    @Value("${healthcare.rate-limit.chat.ip-per-minute:600}")
+    private double chatIpPerMinute;
+
+    @Value("${healthcare.rate-limit.chat.ip-burst:100}")
+    private int chatIpBurst;
+
+    private final Map<RateLimitCategory, Budget> userBudgets = new EnumMap<>(RateLimitCategory.class);
+
+    private final Map<RateLimitCategory, Budget> ipBudgets = new EnumMap<>(RateLimitCategory.class);
+
+    private ScheduledExecutorService sweeper;
+
+    @PostConstruct
+    public void start() {
+        userBudgets.put(RateLimitCategory.LLM, new Budget(llmUserPerMinute, llmUserBurst));
+        userBudgets.put(RateLimitCategory.CHAT, new Budget(chatUserPerMinute, chatUserBurst));
+        ipBudgets.put(RateLimitCategory.LLM, new Budget(llmIpPerMinute, llmIpBurst));
+        ipBudgets.put(RateLimitCategory.CHAT, new Budget(chatIpPerMinute, chatIpBurst));
+
+        sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "rate-limit-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sweeper.scheduleWithFixedDelay(this::sweep, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+        log.info("限流已{}，空闲回收: {}ms", enabled ? "开启" : "关闭", idleExpireMs);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sweeper.shutdown();
+    }
+
+    /**
+     * 为一条消息取令牌
+     *
+     * @param category 预算类别
+     * @param userId   用户ID，为 null 时只按 IP 限流
+     * @param clientIp 客户端 IP，为 null 时只按用户限流
+     */
+    public Decision acquire(RateLimitCategory category, String userId, String clientIp) {
+        if (!enabled) {
+            return Decision.ALLOWED;
+        }
+        long now = System.nanoTime();
+
+        Budget userBudget = userBudgets.get(category);
+        TokenBucket userBucket = userId != null ? userBudget.bucket(userId, now) : null;
+        if (userBucket != null) {
+            long waitNanos = userBucket.tryAcquire(now);
+            if (waitNanos > 0) {
+                userBudget.rejected.increment();
+                return Decision.rejected("user", waitNanos);
+            }
+        }
+
+        Budget ipBudget = ipBudgets.get(category);
+        if (clientIp != null) {
+            long waitNanos = ipBudget.bucket(clientIp, now).tryAcquire(now);
+            if (waitNanos > 0) {
+                if (userBucket != null) {
+                    userBucket.refund();
+                }
+                ipBudget.rejected.increment();
+                return Decision.rejected("ip", waitNanos);
+            }
+        }
+
+        userBudget.allowed.increment();
+        return Decision.ALLOWED;
+    }
+
+    /**
+     * 回收已回满且空闲的桶
+     */
+    private void sweep() {
+        long now = System.nanoTime();
+        long idleNanos = TimeUnit.MILLISECONDS.toNanos(idleExpireMs);
+        int removed = 0;
+        for (Budget budget : userBudgets.values()) {
+            removed += budget.sweep(now, idleNanos);
+        }
+        for (Budget budget : ipBudgets.values()) {
+            removed += budget.sweep(now, idleNanos);
+        }
+        if (removed > 0) {
+            log.debug("回收空闲限流状态: {} 个", removed);
+        }
+    }
+
+    /**
+     * 限流统计
+     */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        for (RateLimitCategory category : RateLimitCategory.values()) {
+            Budget userBudget = userBudgets.get(category);
+            Budget ipBudget = ipBudgets.get(category);
+            Map<String, Object> categoryStats = new HashMap<>();
+            categoryStats.put("allowed", userBudget.allowed.sum());
+            categoryStats.put("rejectedByUser", userBudget.rejected.sum());
+            categoryStats.put("rejectedByIp", ipBudget.rejected.sum());
+            categoryStats.put("activeUserBuckets", userBudget.buckets.size());
+            categoryStats.put("activeIpBuckets", ipBudget.buckets.size());
+            stats.put(category.name().toLowerCase(), categoryStats);
+        }
+        return stats;
+    }
+
+    /**
+     * 限流结果
+     *
+     * @param allowed      是否放行
+     * @param limitedBy    拒绝时触发限流的维度（user / ip）
+     * @param retryAfterMs 拒绝时建议的重试等待时间（毫秒）
+     */
+    public record Decision(boolean allowed, String limitedBy, long retryAfterMs) {
+
+        static final Decision ALLOWED = new Decision(true, null, 0);
+
+        static Decision rejected(String limitedBy, long waitNanos) {
+            return new Decision(false, limitedBy, Math.max(1, TimeUnit.NANOSECONDS.toMillis(waitNanos)));
+        }
+    }
+
+    /**
+     * 一个维度（用户或 IP）在一个类别下的预算与各键的令牌桶
+     */
+    private static final class Budget {
+
+        private final double permitsPerMinute;
+        private final int burst;
+        private final Map<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+        private final LongAdder allowed = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+
+        private Budget(double permitsPerMinute, int burst) {
+            this.permitsPerMinute = permitsPerMinute;
+            this.burst = burst;
+        }
+
+        private TokenBucket bucket(String key, long now) {
+            TokenBucket bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(permitsPerMinute, burst, now));
+            }
+            return bucket;
+        }
+
+        /**
+         * 回满的桶与新建的桶等价；与并发取令牌竞争时最多多放行一个突发，可以接受
+         */
+        private int sweep(long now, long idleNanos) {
+            int removed = 0;
+            for (Map.Entry<String, TokenBucket> entry : buckets.entrySet()) {
+                if (entry.getValue().isIdle(now, idleNanos) && buckets.remove(entry.getKey(), entry.getValue())) {
+                    removed++;
+                }
+            }
+            return removed;
+        }
+    }
+}
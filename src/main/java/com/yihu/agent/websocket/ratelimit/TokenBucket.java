@@ -0,0 +1,66 @@
+package com.yihu.agent.websocket.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶
+ *
+ * 以"理论到达时间"（GCRA）表示桶状态，整个桶只有一个 long，取令牌只需一次 CAS：
+ * 1. 每个令牌对应 interval 纳秒，理论到达时间 tat 之前的令牌都已被预支
+ * 2. 取令牌：tat' = max(tat, now) + interval；tat' - now 超过桶容量对应的时长则拒绝
+ * 3. tat 早于 now 即桶已回满，此时丢弃状态与保留状态等价，可安全回收
+ */
+public final class TokenBucket {
+
+    private final long intervalNanos;
+
+    private final long capacityNanos;
+
+    private final AtomicLong theoreticalArrival;
+
+    /**
+     * @param permitsPerMinute 每分钟补充的令牌数
+     * @param burst            桶容量（允许的突发请求数）
+     */
+    public TokenBucket(double permitsPerMinute, int burst, long nowNanos) {
+        if (permitsPerMinute <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("permitsPerMinute 与 burst 必须大于 0");
+        }
+        this.intervalNanos = Math.max(1L, (long) (60_000_000_000L / permitsPerMinute));
+        this.capacityNanos = intervalNanos * burst;
+        this.theoreticalArrival = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * 尝试取一个令牌
+     *
+     * @return 0 表示成功；否则为还需等待的纳秒数
+     */
+    public long tryAcquire(long nowNanos) {
+        while (true) {
+            long tat = theoreticalArrival.get();
+            long next = Math.max(tat, nowNanos) + intervalNanos;
+            long ahead = next - nowNanos;
+            if (ahead > capacityNanos) {
+                return ahead - capacityNanos;
+            }
+            if (theoreticalArrival.compareAndSet(tat, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * 归还一个令牌（组合限流中后续维度拒绝时撤销本维度的扣减）
+     */
+    public void refund() {
+        theoreticalArrival.addAndGet(-intervalNanos);
+    }
+
+    /**
+     * 桶已回满且至少空闲 idleNanos
+     */
+    public boolean isIdle(long nowNanos, long idleNanos) {
+        return nowNanos - theoreticalArrival.get() >= idleNanos;
+    }
+}
@@ -3,7 +3,8 @@ package com.yihu.agent;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// 进程内集群按名称共享网络，每个测试上下文使用独立的集群，避免互相转发
+@SpringBootTest(properties = "healthcare.cluster.name=${random.uuid}")
 class HealthCareApplicationTests {
 
     @Test
@@ -0,0 +1,43 @@
+package com.yihu.agent.ai.batch;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchCheckpointTest {
+
+    @Test
+    void missingResultsFileMeansNothingDone() throws Exception {
+        Path dir = Files.createTempDirectory("batch-checkpoint");
+        assertTrue(BatchCheckpoint.load(dir.resolve("results.ndjson")).isEmpty());
+    }
+
+    @Test
+    void completedLinesAreReadAndTornTailIsTruncated() throws Exception {
+        Path results = Files.createTempDirectory("batch-checkpoint").resolve("results.ndjson");
+        String complete = "{\"line\":3,\"id\":\"a\",\"status\":\"ok\"}\n{\"line\":1,\"id\":\"b\",\"status\":\"error\"}\n";
+        Files.writeString(results, complete + "{\"line\":7,\"id\":\"c\",\"sta", StandardCharsets.UTF_8);
+
+        BitSet done = BatchCheckpoint.load(results);
+
+        assertEquals(2, done.cardinality());
+        assertTrue(done.get(1));
+        assertTrue(done.get(3));
+        assertFalse(done.get(7));
+        assertEquals(complete, Files.readString(results, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void lineNumberIsParsedFromResultPrefixOnly() {
+        assertEquals(12, BatchCheckpoint.lineNumberOf("{\"line\":12,\"id\":\"x\"}"));
+        assertEquals(-1, BatchCheckpoint.lineNumberOf("{\"id\":\"x\",\"line\":12}"));
+        assertEquals(-1, BatchCheckpoint.lineNumberOf("{\"line\":,\"id\":\"x\"}"));
+    }
+}
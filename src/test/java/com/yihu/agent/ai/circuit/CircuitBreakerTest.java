@@ -0,0 +1,81 @@
+package com.yihu.agent.ai.circuit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证熔断器的打开条件、半开探测与恢复
+ */
+class CircuitBreakerTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    // 窗口 10 次，至少 4 次后判定；失败率 50%，慢调用率 80%（超过 100ms），打开 1s，半开探测 2 次
+    private CircuitBreaker newBreaker() {
+        return new CircuitBreaker("qwen", 10, 4, 50, 80, 100 * MS, 1000 * MS, 2);
+    }
+
+    @Test
+    void opensWhenFailureRateReached() {
+        CircuitBreaker breaker = newBreaker();
+        long now = 0;
+
+        breaker.onFailure(10 * MS, now);
+        breaker.onFailure(10 * MS, now);
+        breaker.onSuccess(10 * MS, now);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onFailure(10 * MS, now);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire(now + 500 * MS));
+    }
+
+    @Test
+    void opensWhenSlowCallRateReached() {
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 3; i++) {
+            breaker.onSuccess(200 * MS, 0);
+        }
+        breaker.onSuccess(10 * MS, 0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        breaker.onSuccess(200 * MS, 0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void halfOpenProbesCloseOrReopen() {
+        CircuitBreaker breaker = newBreaker();
+        for (int i = 0; i < 4; i++) {
+            breaker.onFailure(10 * MS, 0);
+        }
+        long later = 1000 * MS;
+
+        // 半开只放行 2 个探测
+        assertTrue(breaker.tryAcquire(later));
+        assertTrue(breaker.tryAcquire(later));
+        assertFalse(breaker.tryAcquire(later));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+        // 探测失败重新打开
+        breaker.onSuccess(10 * MS, later);
+        breaker.onFailure(10 * MS, later);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        // 再次半开，取消的探测归还许可，两次成功后关闭
+        long again = later + 1000 * MS;
+        assertTrue(breaker.tryAcquire(again));
+        breaker.release();
+        assertTrue(breaker.tryAcquire(again));
+        assertTrue(breaker.tryAcquire(again));
+        breaker.onSuccess(10 * MS, again);
+        breaker.onSuccess(10 * MS, again);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire(again));
+    }
+}
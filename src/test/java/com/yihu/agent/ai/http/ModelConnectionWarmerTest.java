@@ -0,0 +1,189 @@
+package com.yihu.agent.ai.http;
+
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.http.client.HttpClient;
+import dev.langchain4j.http.client.HttpMethod;
+import dev.langchain4j.http.client.HttpRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 用本地 HttpServer 代替模型服务，验证预热请求的地址、鉴权头、结果统计，
+ * 以及之后的模型调用复用预热建立的连接
+ */
+class ModelConnectionWarmerTest {
+
+    private HttpServer server;
+
+    private final ExecutorService serverExecutor = Executors.newFixedThreadPool(4);
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private final Set<String> authorizations = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 每个请求的客户端端口，端口相同即同一条连接
+     */
+    private final List<Integer> clientPorts = new CopyOnWriteArrayList<>();
+
+    private volatile int status = 200;
+
+    /**
+     * 不为 null 时，请求在此等待直到并发请求都已到达（保证预热请求同时占用各自的连接）
+     */
+    private volatile CountDownLatch arrivals;
+
+    private HttpClient httpClient;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/models", exchange -> {
+            requests.incrementAndGet();
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            CountDownLatch latch = arrivals;
+            if (latch != null) {
+                latch.countDown();
+                try {
+                    latch.await(500, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            byte[] body = "{\"data\":[]}".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.setExecutor(serverExecutor);
+        server.start();
+        httpClient = client(0);
+    }
+
+    @AfterEach
+    void stopServer() {
+        ((PooledModelHttpClient) httpClient).close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private static HttpClient client(int maxConnections) {
+        return PooledModelHttpClient.builder()
+                .http2(false)
+                .maxConnections(maxConnections)
+                .maxIdleTime(Duration.ofMinutes(1))
+                .connectTimeout(Duration.ofSeconds(2))
+                .readTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    private ModelConnectionWarmer warmer(String baseUrl) {
+        return new ModelConnectionWarmer(httpClient, baseUrl, "test-key", 3, 0, 5000);
+    }
+
+    private String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/v1";
+    }
+
+    @Test
+    void warmsUpConcurrentConnectionsWithApiKey() {
+        ModelConnectionWarmer warmer = warmer("http://127.0.0.1:" + server.getAddress().getPort() + "/v1");
+        try {
+            assertEquals(3, warmer.warmUp());
+            assertEquals(3, requests.get());
+            assertEquals(Set.of("Bearer test-key"), authorizations);
+        } finally {
+            warmer.stop();
+        }
+    }
+
+    @Test
+    void startWarmsUpBeforeReturningAndLaterCallsReuseThoseConnections() {
+        arrivals = new CountDownLatch(3);
+        ModelConnectionWarmer warmer = warmer(baseUrl());
+        try {
+            // 生命周期启动阶段同步预热，早于 Web 服务器开始监听
+            assertTrue(warmer.getPhase() < org.springframework.context.SmartLifecycle.DEFAULT_PHASE - 2048);
+            warmer.start();
+            assertEquals(3, requests.get());
+            Set<Integer> warmed = Set.copyOf(clientPorts);
+            assertEquals(3, warmed.size());
+
+            arrivals = null;
+            for (int i = 0; i < 6; i++) {
+                httpClient.execute(modelCall());
+            }
+            assertEquals(9, requests.get());
+            assertEquals(warmed, Set.copyOf(clientPorts), "模型调用应复用预热建立的连接，不再新建");
+        } finally {
+            warmer.stop();
+        }
+    }
+
+    @Test
+    void poolSizeIsSetOnTheClientBuilder() {
+        ((PooledModelHttpClient) httpClient).close();
+        httpClient = client(2);
+        arrivals = new CountDownLatch(3);
+        ModelConnectionWarmer warmer = warmer(baseUrl());
+        try {
+            assertEquals(3, warmer.warmUp());
+            // 第三个预热请求等待连接池中的连接，不新建第三条连接
+            assertEquals(2, Set.copyOf(clientPorts).size());
+        } finally {
+            warmer.stop();
+        }
+    }
+
+    private HttpRequest modelCall() {
+        return HttpRequest.builder()
+                .method(HttpMethod.GET)
+                .url(baseUrl() + "/models")
+                .addHeader("Authorization", "Bearer test-key")
+                .build();
+    }
+
+    @Test
+    void errorStatusStillCountsAsConnected() {
+        status = 401;
+        ModelConnectionWarmer warmer = warmer("http://127.0.0.1:" + server.getAddress().getPort() + "/v1/");
+        try {
+            assertEquals(3, warmer.warmUp());
+        } finally {
+            warmer.stop();
+        }
+    }
+
+    @Test
+    void unreachableServerReportsNoConnections() {
+        int port = server.getAddress().getPort();
+        server.stop(0);
+        ModelConnectionWarmer warmer = warmer("http://127.0.0.1:" + port + "/v1");
+        try {
+            assertEquals(0, warmer.warmUp());
+        } finally {
+            warmer.stop();
+        }
+    }
+}
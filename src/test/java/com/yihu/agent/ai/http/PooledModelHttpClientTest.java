@@ -0,0 +1,173 @@
+package com.yihu.agent.ai.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import dev.langchain4j.http.client.HttpMethod;
+import dev.langchain4j.http.client.HttpRequest;
+import dev.langchain4j.http.client.sse.ServerSentEvent;
+import dev.langchain4j.http.client.sse.ServerSentEventListener;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 流式调用：事件循环上增量解析 SSE，取消后中止上游响应
+ */
+class PooledModelHttpClientTest {
+
+    private HttpServer server;
+
+    private final ExecutorService serverExecutor = Executors.newFixedThreadPool(2);
+
+    /**
+     * 服务端在 execute 返回之后才开始输出，验证调用方线程不等待响应
+     */
+    private final CountDownLatch executeReturned = new CountDownLatch(1);
+
+    /**
+     * 服务端写出失败（客户端已关闭连接）
+     */
+    private final CountDownLatch upstreamAborted = new CountDownLatch(1);
+
+    private PooledModelHttpClient httpClient;
+
+    @BeforeEach
+    void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/stream", this::stream);
+        server.createContext("/v1/endless", this::endless);
+        server.setExecutor(serverExecutor);
+        server.start();
+        httpClient = PooledModelHttpClient.builder()
+                .http2(false)
+                .connectTimeout(Duration.ofSeconds(2))
+                .readTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    @AfterEach
+    void stopServer() {
+        httpClient.close();
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    private void stream(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            executeReturned.await(2, TimeUnit.SECONDS);
+            byte[] first = "data: 你好\n\n".getBytes(StandardCharsets.UTF_8);
+            // 在"你"的 UTF-8 编码中间切开，分两块发送
+            out.write(Arrays.copyOfRange(first, 0, 7));
+            out.flush();
+            out.write(Arrays.copyOfRange(first, 7, first.length));
+            out.flush();
+            out.write("event: usage\r\ndata: a\r\ndata: b\r\n\r\n: comment\n\ndata: [DONE]".getBytes(StandardCharsets.UTF_8));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void endless(HttpExchange exchange) throws IOException {
+        exchange.sendResponseHeaders(200, 0);
+        try (OutputStream out = exchange.getResponseBody()) {
+            for (int i = 0; i < 500; i++) {
+                out.write(("data: " + i + "\n\n").getBytes(StandardCharsets.UTF_8));
+                out.flush();
+                Thread.sleep(10);
+            }
+        } catch (IOException e) {
+            upstreamAborted.countDown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void parsesEventsSplitAcrossChunksWithoutBlockingTheCaller() throws Exception {
+        RecordingListener listener = new RecordingListener();
+
+        httpClient.execute(request("/stream"), listener);
+        executeReturned.countDown();
+
+        assertTrue(listener.closed.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(
+                new ServerSentEvent(null, "你好"),
+                new ServerSentEvent("usage", "a\nb"),
+                new ServerSentEvent(null, "[DONE]")), listener.events);
+        assertTrue(listener.errors.isEmpty());
+        assertFalse(listener.threads.contains(Thread.currentThread().getName()));
+    }
+
+    @Test
+    void disposingTheBoundCancellationAbortsTheUpstreamResponse() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        Disposable.Composite cancellation = Disposables.composite();
+
+        StreamCancellation.bind(cancellation, () -> httpClient.execute(request("/endless"), listener));
+        assertTrue(listener.firstEvent.await(5, TimeUnit.SECONDS));
+        cancellation.dispose();
+
+        assertTrue(upstreamAborted.await(5, TimeUnit.SECONDS), "取消后服务端应检测到连接关闭");
+        assertEquals(1, listener.closed.getCount(), "取消的流不回调 onClose");
+        assertTrue(listener.events.size() < 500);
+    }
+
+    private HttpRequest request(String path) {
+        return HttpRequest.builder()
+                .method(HttpMethod.POST)
+                .url("http://127.0.0.1:" + server.getAddress().getPort() + "/v1" + path)
+                .addHeader("Content-Type", "application/json")
+                .body("{\"stream\":true}")
+                .build();
+    }
+
+    private static final class RecordingListener implements ServerSentEventListener {
+
+        final List<ServerSentEvent> events = new CopyOnWriteArrayList<>();
+
+        final List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+        final List<String> threads = new CopyOnWriteArrayList<>();
+
+        final CountDownLatch firstEvent = new CountDownLatch(1);
+
+        final CountDownLatch closed = new CountDownLatch(1);
+
+        @Override
+        public void onEvent(ServerSentEvent event) {
+            events.add(event);
+            threads.add(Thread.currentThread().getName());
+            firstEvent.countDown();
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            errors.add(error);
+        }
+
+        @Override
+        public void onClose() {
+            closed.countDown();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.yihu.agent.ai.overload;
+
+import com.yihu.agent.ai.graph.AgentState;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证缓存答案的归一化命中，以及熔断时答案与急救指引之间的分隔
+ */
+class DegradedAnswersTest {
+
+    @Test
+    void cachedAnswerMatchesDifferentlyPunctuatedQuestion() {
+        DegradedAnswers answers = new DegradedAnswers(10);
+        answers.remember("头痛怎么办？", "注意休息");
+
+        assertEquals("注意休息", answers.answer(state(" 头痛 怎么办")));
+    }
+
+    @Test
+    void unavailableAnswerSeparatesEmergencyGuidanceInBothBranches() {
+        DegradedAnswers answers = new DegradedAnswers(10);
+        answers.remember("头痛怎么办", "注意休息");
+
+        String cached = answers.unavailable(state("头痛怎么办"));
+        String template = answers.unavailable(state("腰疼怎么办"));
+
+        assertTrue(cached.startsWith("注意休息\n\n如出现"), cached);
+        String guidance = cached.substring("注意休息\n\n".length());
+        assertTrue(template.endsWith("\n\n" + guidance), template);
+        assertEquals(-1, template.indexOf("\n\n\n"));
+    }
+
+    private static AgentState state(String input) {
+        return AgentState.builder().userInput(input).build();
+    }
+}
@@ -0,0 +1,103 @@
+package com.yihu.agent.ai.overload;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 验证信号到降级级别的映射、逐级恢复的滞后，以及紧急轮次不受降级影响
+ */
+class OverloadControllerTest {
+
+    private static final long[] QUEUE_WAIT_MS = {2000, 5000, 10000, 20000};
+
+    private static final long RECOVER_AFTER_MS = 10_000;
+
+    // 在途与堆使用率阈值与默认配置相同，排队等待作为主要信号
+    private OverloadController newController() {
+        OverloadController controller = new OverloadController();
+        ReflectionTestUtils.setField(controller, "enabled", true);
+        ReflectionTestUtils.setField(controller, "recoverAfterMs", RECOVER_AFTER_MS);
+        ReflectionTestUtils.setField(controller, "queueWaitThresholds", QUEUE_WAIT_MS);
+        ReflectionTestUtils.setField(controller, "inFlightThresholds", new long[]{32, 64, 160, 320});
+        ReflectionTestUtils.setField(controller, "heapPercentThresholds", new long[]{75, 82, 88, 94});
+        return controller;
+    }
+
+    @Test
+    void signalMapsToTheHighestThresholdReached() {
+        assertEquals(0, OverloadController.levelFor(0, QUEUE_WAIT_MS));
+        assertEquals(0, OverloadController.levelFor(1999, QUEUE_WAIT_MS));
+        assertEquals(1, OverloadController.levelFor(2000, QUEUE_WAIT_MS));
+        assertEquals(2, OverloadController.levelFor(9999, QUEUE_WAIT_MS));
+        assertEquals(3, OverloadController.levelFor(10000, QUEUE_WAIT_MS));
+        assertEquals(4, OverloadController.levelFor(Long.MAX_VALUE, QUEUE_WAIT_MS));
+        // 多余的阈值不会超出最高级别
+        assertEquals(4, OverloadController.levelFor(100, new long[]{1, 2, 3, 4, 5, 6}));
+    }
+
+    @Test
+    void targetIsTheWorstOfTheThreeSignals() {
+        OverloadController controller = newController();
+
+        controller.sample(0, 70, 50, 1_000);
+        assertEquals(DegradationLevel.ECONOMY_MODEL, controller.getLevel());
+
+        controller.sample(0, 0, 95, 1_000);
+        assertEquals(DegradationLevel.SHED, controller.getLevel());
+    }
+
+    @Test
+    void escalatesImmediatelyButRecoversOneLevelAtATime() {
+        OverloadController controller = newController();
+        long now = 1_000;
+
+        controller.sample(25_000, 0, 0, now);
+        assertEquals(DegradationLevel.SHED, controller.getLevel());
+
+        // 信号回落后持续 recover-after-ms 才降一级
+        controller.sample(0, 0, 0, now += 500);
+        controller.sample(0, 0, 0, now += RECOVER_AFTER_MS - 1);
+        assertEquals(DegradationLevel.SHED, controller.getLevel());
+        controller.sample(0, 0, 0, now += 1);
+        assertEquals(DegradationLevel.TEMPLATE_ONLY, controller.getLevel());
+
+        // 下一级同样要再等满 recover-after-ms
+        controller.sample(0, 0, 0, now += RECOVER_AFTER_MS - 1);
+        assertEquals(DegradationLevel.TEMPLATE_ONLY, controller.getLevel());
+        controller.sample(0, 0, 0, now += 1);
+        assertEquals(DegradationLevel.ECONOMY_MODEL, controller.getLevel());
+
+        // 目标回到当前级别时重新计时
+        controller.sample(6_000, 0, 0, now += RECOVER_AFTER_MS - 1);
+        controller.sample(0, 0, 0, now += 1);
+        controller.sample(0, 0, 0, now += RECOVER_AFTER_MS - 1);
+        assertEquals(DegradationLevel.ECONOMY_MODEL, controller.getLevel());
+        controller.sample(0, 0, 0, now += 1);
+        assertEquals(DegradationLevel.REDUCED_TOKENS, controller.getLevel());
+
+        // 恢复途中再次过载时立即升级
+        controller.sample(12_000, 0, 0, now += 1);
+        assertEquals(DegradationLevel.TEMPLATE_ONLY, controller.getLevel());
+    }
+
+    @Test
+    void emergencyTurnsBypassDegradation() {
+        OverloadController controller = newController();
+        controller.sample(25_000, 0, 0, 1_000);
+
+        assertEquals(DegradationLevel.SHED, controller.getLevel(false));
+        assertEquals(DegradationLevel.NORMAL, controller.getLevel(true));
+    }
+
+    @Test
+    void disabledControllerAlwaysReportsNormal() {
+        OverloadController controller = newController();
+        controller.sample(25_000, 400, 99, 1_000);
+        ReflectionTestUtils.setField(controller, "enabled", false);
+
+        assertEquals(DegradationLevel.NORMAL, controller.getLevel());
+        assertEquals(DegradationLevel.NORMAL, controller.getLevel(false));
+    }
+}
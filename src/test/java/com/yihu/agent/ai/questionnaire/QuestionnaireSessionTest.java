@@ -0,0 +1,106 @@
+package com.yihu.agent.ai.questionnaire;
+
+import com.yihu.agent.ai.questionnaire.QuestionnaireDefinition.Answer;
+import com.yihu.agent.ai.questionnaire.QuestionnaireDefinition.Question;
+import com.yihu.agent.ai.questionnaire.QuestionnaireDefinition.QuestionType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QuestionnaireSessionTest {
+
+    private static final QuestionnaireRegistry REGISTRY = new QuestionnaireRegistry(List.of(
+        new QuestionnaireDefinition("headache", "头痛", List.of("头痛", "头疼"), "duration", List.of(
+            new Question("duration", "持续时间", "头痛持续多久了？", QuestionType.CHOICE, List.of(
+                new Answer("不到1天", List.of("今天", "小时"), null, null, null, false),
+                new Answer("1-3天", List.of("两天", "三天"), null, null, null, false)), "fever"),
+            new Question("fever", "是否发热", "有没有发烧？", QuestionType.YES_NO, List.of(
+                new Answer("是", null, "发热", "MEDIUM", null, false),
+                new Answer("否", null, null, null, null, false)), "weakness"),
+            new Question("weakness", "肢体无力", "有没有手脚无力？", QuestionType.YES_NO, List.of(
+                new Answer("是", List.of("无力"), "肢体无力", "EMERGENCY", null, true),
+                new Answer("否", null, null, null, null, false)), "END")))));
+
+    private static final QuestionnaireDefinition HEADACHE = REGISTRY.match("头疼");
+
+    @Test
+    void prefillsFromFirstMessageThenAsksRemainingQuestions() {
+        QuestionnaireSession session = new QuestionnaireSession(HEADACHE, "头疼三天了", 0);
+
+        QuestionnaireSession.Step step = session.start();
+        assertEquals(QuestionnaireSession.Kind.ASK, step.kind());
+        assertEquals("有没有发烧？", step.text());
+
+        step = session.answer("有点发烧", 1, 0);
+        assertEquals(QuestionnaireSession.Kind.ASK, step.kind());
+        step = session.answer("没有", 1, 0);
+        assertEquals(QuestionnaireSession.Kind.DONE, step.kind());
+
+        assertEquals(List.of("头痛", "发热"), session.getSymptoms());
+        assertEquals("MEDIUM", session.getRiskLevel());
+        assertEquals("1-3天", session.getAnswers().get("持续时间"));
+        assertEquals("否", session.getAnswers().get("肢体无力"));
+        assertTrue(session.summary().contains("- 是否发热：是"));
+    }
+
+    @Test
+    void negationBeatsShorterAffirmativeKeyword() {
+        Question fever = HEADACHE.question("fever");
+        assertEquals("否", QuestionnaireSession.match(fever, "没有发烧").value());
+        assertEquals("否", QuestionnaireSession.match(fever, "不是").value());
+        assertEquals("是", QuestionnaireSession.match(fever, "是的").value());
+        assertEquals("1-3天", QuestionnaireSession.match(HEADACHE.question("duration"), "2").value());
+    }
+
+    @Test
+    void emergencyAnswerEndsQuestionnaireImmediately() {
+        QuestionnaireSession session = new QuestionnaireSession(HEADACHE, "头疼", 0);
+        session.start();
+        session.answer("1", 1, 0);
+        session.answer("没有", 1, 0);
+
+        QuestionnaireSession.Step step = session.answer("左手没力气，感觉无力", 1, 0);
+
+        assertEquals(QuestionnaireSession.Kind.DONE, step.kind());
+        assertTrue(session.isEmergency());
+        assertEquals("EMERGENCY", session.getRiskLevel());
+    }
+
+    @Test
+    void unrecognizedAnswerIsReaskedThenAbandoned() {
+        QuestionnaireSession session = new QuestionnaireSession(HEADACHE, "头疼", 0);
+        session.start();
+
+        QuestionnaireSession.Step step = session.answer("请问布洛芬能吃吗", 1, 0);
+        assertEquals(QuestionnaireSession.Kind.REASK, step.kind());
+        assertTrue(step.text().contains("1. 不到1天"));
+
+        step = session.answer("布洛芬呢", 1, 0);
+        assertEquals(QuestionnaireSession.Kind.ABANDONED, step.kind());
+        assertTrue(session.isFinished());
+    }
+
+    @Test
+    void retryOfFinishingTurnIsSummarizedAgainUntilNextTurn() {
+        QuestionnaireService service = new QuestionnaireService(REGISTRY, true, 30, 1);
+        service.handle("s1", "头疼三天了", true, false);
+        service.handle("s1", "有点发烧", true, false);
+        QuestionnaireService.Turn done = service.handle("s1", "没有", true, false);
+        assertEquals(QuestionnaireSession.Kind.DONE, done.step().kind());
+
+        // 模型调用失败后从原始请求重新执行：仍返回 DONE，交给模型的是同一份摘要
+        QuestionnaireService.Turn retried = service.handle("s1", "没有", true, true);
+        assertEquals(QuestionnaireSession.Kind.DONE, retried.step().kind());
+        assertEquals(done.session().summary(), retried.session().summary());
+        assertEquals(List.of("头痛", "发热"), retried.session().getSymptoms());
+
+        // 新的一轮按普通对话处理，之后的重试也不再使用摘要
+        assertNull(service.handle("s1", "没有", true, false));
+        assertNull(service.handle("s1", "没有", true, true));
+        assertEquals(1L, service.snapshot().get("completed"));
+    }
+}
@@ -0,0 +1,62 @@
+package com.yihu.agent.ai.retry;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证重试策略的错误分类、次数上限、预算与退避范围
+ */
+class RetryPolicyTest {
+
+    @Test
+    void retriesOnlyRetryableFailuresWithinAttempts() {
+        RetryPolicy policy = new RetryPolicy(3, 100, 1000, 0.1, 10);
+
+        assertEquals(-1, policy.retryDelay(0, LlmFailure.NOT_RETRYABLE));
+        assertTrue(policy.retryDelay(0, LlmFailure.SERVER_ERROR) >= 0);
+        assertTrue(policy.retryDelay(1, LlmFailure.TIMEOUT) >= 0);
+        assertEquals(-1, policy.retryDelay(2, LlmFailure.SERVER_ERROR));
+    }
+
+    @Test
+    void budgetCapsRetriesToRatioOfCalls() {
+        RetryPolicy policy = new RetryPolicy(3, 100, 1000, 0.1, 2);
+
+        // 初始突发额度 2 次
+        assertTrue(policy.retryDelay(0, LlmFailure.SERVER_ERROR) >= 0);
+        assertTrue(policy.retryDelay(0, LlmFailure.SERVER_ERROR) >= 0);
+        assertEquals(-1, policy.retryDelay(0, LlmFailure.SERVER_ERROR));
+
+        // 每 10 次首次调用攒出 1 次重试
+        for (int i = 0; i < 9; i++) {
+            policy.recordCall();
+        }
+        assertEquals(-1, policy.retryDelay(0, LlmFailure.SERVER_ERROR));
+        policy.recordCall();
+        assertTrue(policy.retryDelay(0, LlmFailure.SERVER_ERROR) >= 0);
+        assertEquals(-1, policy.retryDelay(0, LlmFailure.SERVER_ERROR));
+    }
+
+    @Test
+    void backoffGrowsExponentiallyWithinCap() {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000, 0.1, 10);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(policy.backoff(0, LlmFailure.SERVER_ERROR) <= 100);
+            assertTrue(policy.backoff(2, LlmFailure.SERVER_ERROR) <= 400);
+            assertTrue(policy.backoff(1, LlmFailure.RATE_LIMITED) <= 400);
+            assertTrue(policy.backoff(8, LlmFailure.SERVER_ERROR) <= 1000);
+        }
+    }
+
+    @Test
+    void classifiesHttpStatus() {
+        assertEquals(LlmFailure.RATE_LIMITED, LlmFailure.ofStatus(429));
+        assertEquals(LlmFailure.TIMEOUT, LlmFailure.ofStatus(408));
+        assertEquals(LlmFailure.SERVER_ERROR, LlmFailure.ofStatus(503));
+        assertEquals(LlmFailure.NOT_RETRYABLE, LlmFailure.ofStatus(401));
+        assertEquals(LlmFailure.TIMEOUT, LlmFailure.classify(new RuntimeException(new java.net.http.HttpTimeoutException("timeout"))));
+    }
+}
@@ -0,0 +1,78 @@
+package com.yihu.agent.ai.routing;
+
+import com.yihu.agent.ai.graph.AgentState;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * 按意图、风险、症状与输入长度逐条验证路由到的档位与依据
+ */
+class ModelRouterTest {
+
+    private static final String LONG_INPUT = "最近工作压力很大，".repeat(40);
+
+    private final ModelRouter router = newRouter();
+
+    private static ModelRouter newRouter() {
+        ModelRouter router = new ModelRouter(new ModelRegistry(Map.of(
+            ModelTier.STRONG, "strong-model",
+            ModelTier.FAST, "fast-model",
+            ModelTier.ECONOMY, "economy-model")));
+        // 与 application.yml 的默认值相同
+        ReflectionTestUtils.setField(router, "medicalSymptomCount", 2);
+        ReflectionTestUtils.setField(router, "medicalDetailChars", 20);
+        ReflectionTestUtils.setField(router, "longInputChars", 300);
+        return router;
+    }
+
+    private record Case(String name, AgentState.IntentType intent, String risk, List<String> symptoms, String input,
+                        ModelTier tier, String reason) {}
+
+    @Test
+    void routesByIntentRiskSymptomsAndLength() {
+        List<Case> cases = List.of(
+            new Case("紧急情况", AgentState.IntentType.EMERGENCY, "EMERGENCY", List.of(), "胸痛", ModelTier.STRONG, "emergency"),
+            new Case("紧急情况不看长度", AgentState.IntentType.EMERGENCY, "LOW", List.of(), LONG_INPUT, ModelTier.STRONG, "emergency"),
+            new Case("高风险", AgentState.IntentType.MEDICAL, "HIGH", List.of("头痛"), "头痛", ModelTier.STRONG, "high-risk"),
+            new Case("通用意图的高风险", AgentState.IntentType.GENERAL, "HIGH", List.of(), "你好", ModelTier.STRONG, "high-risk"),
+            new Case("医疗无症状的简短问题", AgentState.IntentType.MEDICAL, "MEDIUM", List.of(), "降压药饭前吃吗", ModelTier.FAST, "medical-brief"),
+            new Case("医疗单个症状的简短问题", AgentState.IntentType.MEDICAL, "MEDIUM", List.of("头痛"), "头疼怎么办", ModelTier.FAST, "medical-brief"),
+            new Case("医疗多个症状", AgentState.IntentType.MEDICAL, "MEDIUM", List.of("发热", "咳嗽"), "发烧咳嗽", ModelTier.STRONG, "medical-symptoms"),
+            new Case("医疗详细描述", AgentState.IntentType.MEDICAL, "MEDIUM", List.of("头痛"),
+                "头疼三天了，主要在太阳穴附近，下午比上午严重", ModelTier.STRONG, "medical-detail"),
+            new Case("通用短输入", AgentState.IntentType.GENERAL, "LOW", List.of(), "你好", ModelTier.FAST, "general"),
+            new Case("未分诊按通用处理", null, null, null, null, ModelTier.FAST, "general"),
+            new Case("通用长输入", AgentState.IntentType.GENERAL, "LOW", List.of(), LONG_INPUT, ModelTier.STRONG, "long-input"));
+
+        for (Case c : cases) {
+            ModelRouter.Route route = router.route(state(c));
+            assertEquals(c.tier(), route.tier(), c.name());
+            assertEquals(c.reason(), route.reason(), c.name());
+            assertEquals(c.tier().name().toLowerCase() + "-model", route.model(), c.name());
+        }
+    }
+
+    @Test
+    void routeCarriesTheModelConfiguredForTheTier() {
+        AgentState state = AgentState.builder().intent(AgentState.IntentType.EMERGENCY).userInput("胸痛").build();
+
+        assertEquals("strong-model", router.route(state).model());
+        assertEquals(new ModelRouter.Route(ModelTier.ECONOMY, "economy-model", "overload"), router.economy());
+    }
+
+    private static AgentState state(Case c) {
+        AgentState state = AgentState.builder()
+            .intent(c.intent())
+            .riskLevel(c.risk())
+            .userInput(c.input())
+            .build();
+        state.setSymptoms(c.symptoms() != null ? new ArrayList<>(c.symptoms()) : null);
+        return state;
+    }
+}
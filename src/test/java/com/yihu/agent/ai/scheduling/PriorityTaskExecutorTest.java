@@ -0,0 +1,105 @@
+package com.yihu.agent.ai.scheduling;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证紧急任务走预留线程、按优先级出队、低优先级老化与取消
+ */
+class PriorityTaskExecutorTest {
+
+    private PriorityTaskExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdown();
+    }
+
+    @Test
+    void emergencyRunsOnReservedWorkerWhileSharedWorkersAreBusy() throws Exception {
+        executor = new PriorityTaskExecutor("test", 1, 1, 10, Map.of());
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(TurnPriority.LOW, () -> release.await(5, TimeUnit.SECONDS));
+        waitUntilStarted();
+
+        CompletableFuture<String> emergency = executor.submit(TurnPriority.EMERGENCY, () -> "ok");
+        assertEquals("ok", emergency.get(1, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    void higherPriorityFirstButOldLowPriorityIsNotStarved() throws Exception {
+        executor = new PriorityTaskExecutor("test", 1, 0, 10,
+            Map.of(TurnPriority.NORMAL, 0L, TurnPriority.LOW, 100L));
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(TurnPriority.LOW, () -> release.await(5, TimeUnit.SECONDS));
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        executor.submit(TurnPriority.LOW, () -> order.add("old-low"));
+        Thread.sleep(200);
+        executor.submit(TurnPriority.LOW, () -> order.add("new-low"));
+        executor.submit(TurnPriority.NORMAL, () -> order.add("normal"));
+        CompletableFuture<Boolean> last = executor.submit(TurnPriority.LOW, () -> order.add("last-low"));
+
+        release.countDown();
+        last.get(2, TimeUnit.SECONDS);
+        // old-low 已等待超过宽限期差值，排在新到的 normal 之前；normal 排在同时到达的 low 之前
+        assertEquals(List.of("old-low", "normal", "new-low", "last-low"), order);
+    }
+
+    @Test
+    void rejectsNonEmergencyWhenFull() {
+        executor = new PriorityTaskExecutor("test", 1, 0, 1, Map.of());
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(TurnPriority.LOW, () -> release.await(5, TimeUnit.SECONDS));
+        waitUntilStarted();
+
+        executor.submit(TurnPriority.LOW, () -> "queued");
+        assertTrue(executor.submit(TurnPriority.NORMAL, () -> "rejected").isCompletedExceptionally());
+        assertFalse(executor.submit(TurnPriority.EMERGENCY, () -> "emergency").isCompletedExceptionally());
+        release.countDown();
+    }
+
+    @Test
+    void cancelInterruptsRunningTaskAndDropsQueuedTask() throws Exception {
+        executor = new PriorityTaskExecutor("test", 1, 0, 10, Map.of());
+        CountDownLatch interrupted = new CountDownLatch(1);
+        CompletableFuture<Object> running = executor.submit(TurnPriority.LOW, () -> {
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                assertTrue(PriorityTaskExecutor.isCurrentTaskCancelled());
+                interrupted.countDown();
+            }
+            return null;
+        });
+        waitUntilStarted();
+        List<String> ran = new CopyOnWriteArrayList<>();
+        CompletableFuture<Boolean> queued = executor.submit(TurnPriority.LOW, () -> ran.add("queued"));
+
+        queued.cancel(true);
+        running.cancel(true);
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+
+        assertEquals("next", executor.submit(TurnPriority.LOW, () -> "next").get(1, TimeUnit.SECONDS));
+        assertTrue(ran.isEmpty());
+    }
+
+    private void waitUntilStarted() {
+        long deadline = System.currentTimeMillis() + 1000;
+        while (!Integer.valueOf(1).equals(executor.snapshot().get("busySharedWorkers")) && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+    }
+}
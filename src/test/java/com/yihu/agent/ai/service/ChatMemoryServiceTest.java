@@ -0,0 +1,80 @@
+package com.yihu.agent.ai.service;
+
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.memory.chat.MessageWindowChatMemory;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 用两个记忆服务模拟原归属节点与新归属节点，验证会话记忆移交
+ */
+class ChatMemoryServiceTest {
+
+    @Test
+    void handOffWithoutConcurrentWritesMovesWholeSession() {
+        ChatMemoryService source = newService();
+        ChatMemoryService target = newService();
+        source.addUserMessage("s1", "头痛三天");
+        source.addAiMessage("s1", "有没有发烧？");
+
+        target.importMessages("s1", source.beginExport("s1"));
+        assertTrue(source.finishExport("s1").isEmpty());
+
+        assertFalse(source.getSessionIds().contains("s1"));
+        assertEquals(List.of("头痛三天", "有没有发烧？"), texts(target, "s1"));
+    }
+
+    @Test
+    void writesAfterExportAreReturnedUntilTheTargetHasThem() {
+        ChatMemoryService source = newService();
+        ChatMemoryService target = newService();
+        source.addUserMessage("s1", "头痛三天");
+
+        // 轮次在导出前取得记忆引用，模型回复后才写入
+        ChatMemory inFlight = source.getOrCreateMemory("s1");
+        List<ChatMessage> exported = source.beginExport("s1");
+        inFlight.add(UserMessage.from("还有点恶心"));
+        inFlight.add(AiMessage.from("建议就医"));
+        target.importMessages("s1", exported);
+
+        List<ChatMessage> tail = source.finishExport("s1");
+        assertEquals(2, tail.size());
+        assertTrue(source.getSessionIds().contains("s1"));
+
+        target.appendMessages("s1", tail);
+        assertTrue(source.finishExport("s1").isEmpty());
+        assertFalse(source.getSessionIds().contains("s1"));
+        assertEquals(List.of("头痛三天", "还有点恶心", "建议就医"), texts(target, "s1"));
+    }
+
+    @Test
+    void abortedHandOffKeepsLocalCopy() {
+        ChatMemoryService source = newService();
+        source.addUserMessage("s1", "头痛三天");
+        source.beginExport("s1");
+        source.abortExport("s1");
+        source.addAiMessage("s1", "有没有发烧？");
+
+        assertEquals(List.of("头痛三天", "有没有发烧？"), texts(source, "s1"));
+        assertNull(source.beginExport("s2"));
+    }
+
+    private static ChatMemoryService newService() {
+        return new ChatMemoryService(() -> MessageWindowChatMemory.withMaxMessages(10));
+    }
+
+    private static List<String> texts(ChatMemoryService service, String sessionId) {
+        return service.getOrCreateMemory(sessionId).messages().stream()
+            .map(message -> message instanceof UserMessage user ? user.singleText() : ((AiMessage) message).text())
+            .toList();
+    }
+}
@@ -0,0 +1,245 @@
+package com.yihu.agent.ai.service;
+
+import com.sun.net.httpserver.HttpServer;
+import com.yihu.agent.ai.overload.DegradationLevel;
+import com.yihu.agent.ai.overload.OverloadController;
+import dev.langchain4j.data.message.ChatMessage;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 经 /api/chat/stream 验证流式对话：繁忙拒绝、并发上限、在途登记，以及取消后不写入会话记忆
+ *
+ * 模型端点由本地模拟的 OpenAI 兼容流式接口代替：输入含 SHORT 时输出两段后结束，否则慢速输出直到连接断开
+ */
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        "healthcare.ai.stream.max-concurrent=1",
+        "healthcare.offline.dir=target/test-offline-inbox",
+        // 进程内集群按名称共享网络，每个测试上下文使用独立的集群，避免互相转发
+        "healthcare.cluster.name=${random.uuid}"
+    }
+)
+class ChatStreamServiceTest {
+
+    private static HttpServer stubModel;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ChatStreamService chatStreamService;
+
+    @Autowired
+    private SessionAffinityService sessionAffinityService;
+
+    @Autowired
+    private ChatMemoryService memoryService;
+
+    @Autowired
+    private OverloadController overloadController;
+
+    private final HttpClient client = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofSeconds(5))
+        .build();
+
+    @DynamicPropertySource
+    static void stubModelUrl(DynamicPropertyRegistry registry) throws IOException {
+        stubModel = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        stubModel.setExecutor(Executors.newCachedThreadPool());
+        stubModel.createContext("/v1/chat/completions", exchange -> {
+            try (exchange) {
+                boolean shortAnswer = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8)
+                    .contains("SHORT");
+                exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = exchange.getResponseBody();
+                for (int i = 0; i < (shortAnswer ? 2 : 400); i++) {
+                    out.write(chunk("片段" + i, null));
+                    out.flush();
+                    Thread.sleep(shortAnswer ? 0 : 25);
+                }
+                out.write(chunk("", "stop"));
+                out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                // 客户端取消后上游连接被关闭
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        stubModel.start();
+        registry.add("langchain4j.open-ai.chat-model.base-url",
+            () -> "http://127.0.0.1:" + stubModel.getAddress().getPort() + "/v1");
+    }
+
+    @AfterAll
+    static void stopStubModel() {
+        stubModel.stop(0);
+    }
+
+    @AfterEach
+    void awaitStreamsFinished() {
+        await(() -> ((Number) chatStreamService.getStats().get("activeStreams")).intValue() == 0);
+    }
+
+    @Test
+    void completedStreamIsWrittenToMemory() {
+        String sessionId = UUID.randomUUID().toString();
+
+        try (SseStream stream = open(sessionId, "SHORT 平时怎么保持好的作息")) {
+            assertEquals("delta", stream.nextEvent());
+            assertEquals("delta", stream.nextEvent());
+            assertEquals("normal", stream.nextEvent());
+        }
+
+        List<ChatMessage> messages = memoryService.getOrCreateMemory(sessionId).messages();
+        assertEquals(3, messages.size(), "系统提示词、用户消息与回复");
+    }
+
+    @Test
+    void cancelledStreamIsNotWrittenToMemoryAndLeavesNoInFlightTurn() {
+        String sessionId = UUID.randomUUID().toString();
+        long cancelledBefore = (long) chatStreamService.getStats().get("cancelledStreams");
+
+        try (SseStream stream = open(sessionId, "平时怎么保持好的作息")) {
+            assertEquals("delta", stream.nextEvent());
+            assertEquals(1, sessionAffinityService.getStats().get("inFlightSessions"), "进行中的流登记为在途轮次");
+        }
+
+        await(() -> (long) chatStreamService.getStats().get("cancelledStreams") == cancelledBefore + 1);
+        assertEquals(0, sessionAffinityService.getStats().get("inFlightSessions"));
+        assertTrue(memoryService.getOrCreateMemory(sessionId).messages().isEmpty());
+    }
+
+    @Test
+    void streamsBeyondTheConcurrencyCapAreBusy() {
+        try (SseStream first = open(UUID.randomUUID().toString(), "平时怎么保持好的作息")) {
+            assertEquals("delta", first.nextEvent());
+
+            try (SseStream second = open(UUID.randomUUID().toString(), "平时怎么保持好的作息")) {
+                assertEquals("busy", second.nextEvent());
+            }
+        }
+    }
+
+    @Test
+    void shedRejectsAllButEmergencies() {
+        ReflectionTestUtils.setField(overloadController, "level", DegradationLevel.SHED);
+        try {
+            try (SseStream stream = open(UUID.randomUUID().toString(), "平时怎么保持好的作息")) {
+                assertEquals("busy", stream.nextEvent());
+            }
+            try (SseStream stream = open(UUID.randomUUID().toString(), "突然胸痛喘不上气")) {
+                assertNotEquals("busy", stream.nextEvent());
+            }
+        } finally {
+            ReflectionTestUtils.setField(overloadController, "level", DegradationLevel.NORMAL);
+        }
+    }
+
+    private SseStream open(String sessionId, String message) {
+        String body = "{\"userId\":\"stream-test\",\"sessionId\":\"" + sessionId + "\",\"message\":\"" + message + "\"}";
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/chat/stream"))
+            .header("Content-Type", "application/json")
+            .header("Accept", "text/event-stream")
+            .timeout(Duration.ofSeconds(10))
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+        try {
+            return new SseStream(client.send(request, HttpResponse.BodyHandlers.ofInputStream()).body());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] chunk(String content, String finishReason) {
+        String json = "{\"id\":\"stub\",\"object\":\"chat.completion.chunk\",\"created\":0,\"model\":\"stub\","
+            + "\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + content + "\"},\"finish_reason\":"
+            + (finishReason == null ? "null" : "\"" + finishReason + "\"") + "}]}";
+        return ("data: " + json + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void await(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待超时");
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * 逐个读取 SSE 事件名；关闭即断开连接
+     */
+    private static final class SseStream implements AutoCloseable {
+
+        private final InputStream body;
+
+        private final BufferedReader reader;
+
+        SseStream(InputStream body) {
+            this.body = body;
+            this.reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        }
+
+        String nextEvent() {
+            try {
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    if (line.startsWith("event:")) {
+                        return line.substring("event:".length()).trim();
+                    }
+                }
+                return null;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            try {
+                body.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
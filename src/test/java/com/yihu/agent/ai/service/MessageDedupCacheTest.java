@@ -0,0 +1,118 @@
+package com.yihu.agent.ai.service;
+
+import com.yihu.agent.ai.model.ChatRequest;
+import com.yihu.agent.ai.model.ChatResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * 验证重发消息在原消息处理中、已完成与过期后的去重行为
+ */
+class MessageDedupCacheTest {
+
+    @Test
+    void duplicateWhileInFlightWaitsForTheSameTurn() {
+        MessageDedupCache cache = new MessageDedupCache(60_000, 100);
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<ChatResponse> model = new CompletableFuture<>();
+
+        CompletableFuture<ChatResponse> first = cache.computeIfAbsent(request("m1"), "u1", () -> {
+            calls.incrementAndGet();
+            return model;
+        });
+        CompletableFuture<ChatResponse> resent = cache.computeIfAbsent(request("m1"), "u1", () -> {
+            calls.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+
+        assertSame(first, resent);
+        assertSame(first, cache.lookup(request("m1"), "u1"));
+        assertFalse(resent.isDone());
+        model.complete(ChatResponse.normal("s1", "多喝水，注意休息"));
+        assertEquals("多喝水，注意休息", resent.join().getMessage());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void duplicateAfterCompletionReplaysWithoutCallingAgain() {
+        MessageDedupCache cache = new MessageDedupCache(60_000, 100);
+        AtomicInteger calls = new AtomicInteger();
+
+        cache.computeIfAbsent(request("m1"), "u1", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(ChatResponse.normal("s1", "建议就医"));
+        }).join();
+        ChatResponse replayed = cache.computeIfAbsent(request("m1"), "u1", () -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture(ChatResponse.normal("s1", "第二次调用"));
+        }).join();
+
+        assertEquals("建议就医", replayed.getMessage());
+        assertEquals(1, calls.get());
+        assertEquals(1L, cache.snapshot().get("hits"));
+
+        // 繁忙回复不保留，重发时重新处理
+        cache.computeIfAbsent(request("m2"), "u1", () -> CompletableFuture.completedFuture(ChatResponse.busy("s1"))).join();
+        assertNull(cache.lookup(request("m2"), "u1"));
+    }
+
+    @Test
+    void expiredEntryIsProcessedAgain() throws Exception {
+        MessageDedupCache cache = new MessageDedupCache(50, 100);
+        CompletableFuture<ChatResponse> first = cache.computeIfAbsent(request("m1"), "u1",
+            () -> CompletableFuture.completedFuture(ChatResponse.normal("s1", "第一次")));
+        first.join();
+        assertNotNull(cache.lookup(request("m1"), "u1"));
+
+        Thread.sleep(100);
+
+        assertNull(cache.lookup(request("m1"), "u1"));
+        CompletableFuture<ChatResponse> again = cache.computeIfAbsent(request("m1"), "u1",
+            () -> CompletableFuture.completedFuture(ChatResponse.normal("s1", "第二次")));
+        assertNotSame(first, again);
+        assertEquals("第二次", again.join().getMessage());
+    }
+
+    @Test
+    void duplicatesAreScopedToTheAuthenticatedOwner() {
+        MessageDedupCache cache = new MessageDedupCache(60_000, 100);
+        cache.computeIfAbsent(request("m1"), "u1",
+            () -> CompletableFuture.completedFuture(ChatResponse.normal("s1", "本人的回复"))).join();
+
+        // 消息体中的 userId、sessionId 与 messageId 相同，但身份不同，不能取走他人的回复
+        assertNull(cache.lookup(request("m1"), "connection:attacker"));
+        ChatResponse other = cache.computeIfAbsent(request("m1"), "connection:attacker",
+            () -> CompletableFuture.completedFuture(ChatResponse.normal("s1", "重新处理"))).join();
+        assertEquals("重新处理", other.getMessage());
+        assertEquals("本人的回复", cache.lookup(request("m1"), "u1").join().getMessage());
+
+        // 没有身份时不去重
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            cache.computeIfAbsent(request("m2"), null, () -> {
+                calls.incrementAndGet();
+                return CompletableFuture.completedFuture(ChatResponse.normal("s1", "匿名"));
+            }).join();
+        }
+        assertEquals(2, calls.get());
+        assertNull(cache.lookup(request("m2"), null));
+    }
+
+    private static ChatRequest request(String messageId) {
+        ChatRequest request = new ChatRequest();
+        request.setUserId("u1");
+        request.setSessionId("s1");
+        request.setMessage("头痛怎么办");
+        request.setMessageId(messageId);
+        return request;
+    }
+}
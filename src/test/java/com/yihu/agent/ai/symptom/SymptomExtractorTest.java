@@ -0,0 +1,81 @@
+package com.yihu.agent.ai.symptom;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SymptomExtractorTest {
+
+    private static final SymptomExtractor EXTRACTOR = load();
+
+    private static SymptomExtractor load() {
+        try (InputStream in = SymptomExtractorTest.class.getClassLoader().getResourceAsStream("symptoms/lexicon.txt")) {
+            return new SymptomExtractor(SymptomLexicon.load(in), true);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Test
+    void trieReturnsLongestMatch() {
+        DoubleArrayTrie trie = new DoubleArrayTrie(Map.of("头", 0, "头痛", 1, "头晕目眩", 2, "咳", 3));
+
+        assertEquals(1, trie.get("头痛"));
+        assertEquals(-1, trie.get("头晕"));
+        assertEquals(-1, trie.get("发热"));
+        long match = trie.longestMatch("我头晕目眩", 1);
+        assertEquals(5, (int) (match >>> 32));
+        assertEquals(2, (int) match);
+        assertEquals(-1, trie.longestMatch("头晕", 1));
+    }
+
+    @Test
+    void normalizesSynonymsAndScopesNegationToClause() {
+        SymptomMatches matches = new SymptomMatches();
+        EXTRACTOR.extract("脑袋疼，没有发烧也不咳嗽，但是一直拉肚子", matches);
+
+        assertEquals(List.of("头痛", "腹泻"), symptoms(matches, false));
+        assertEquals(List.of("发热", "咳嗽"), symptoms(matches, true));
+    }
+
+    @Test
+    void combinesBodyPartsAndReadsDurationAndTemperature() {
+        SymptomMatches matches = new SymptomMatches();
+        EXTRACTOR.extract("膝盖有点疼，两个多星期了，昨晚烧到38.5度", matches);
+
+        assertEquals(List.of("膝盖疼痛", "发热"), symptoms(matches, false));
+        assertEquals(2 * 7 * 24 * 60, matches.durationMinutes());
+        assertEquals(385, matches.temperatureTenths());
+
+        EXTRACTOR.extract("不停咳嗽半个月，2024年体检正常", matches);
+        assertEquals(List.of("咳嗽"), symptoms(matches, false));
+        assertEquals(15 * 24 * 60, matches.durationMinutes());
+    }
+
+    @Test
+    void reusesMatchesWithoutKeepingPreviousResults() {
+        SymptomMatches matches = new SymptomMatches();
+        EXTRACTOR.extract("胸口疼，喘不上气", matches);
+        assertEquals("HIGH", EXTRACTOR.getLexicon().risk(matches.term(0)));
+
+        EXTRACTOR.extract("请问医保怎么报销", matches);
+        assertTrue(matches.isEmpty());
+    }
+
+    private static List<String> symptoms(SymptomMatches matches, boolean negated) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < matches.size(); i++) {
+            if (matches.isNegated(i) == negated) {
+                names.add(EXTRACTOR.symptomName(matches, i));
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,175 @@
+package com.yihu.agent.benchmark;
+
+import com.yihu.agent.websocket.broker.DestinationTrieSubscriptionRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 内置 STOMP 代理基准测试：Spring 默认订阅注册表 vs 前缀树订阅注册表
+ *
+ * 场景：50000 个会话，每个会话订阅 /topic/user-status 与 /topic/messages（共 100k 订阅），
+ * 另外各自订阅一个 /user 解析后的专属队列
+ *
+ * 1. fanoutUserStatus / fanoutMessages：一条消息扇出给 50000 个订阅者
+ * 2. userQueue：点对点消息，只命中一个订阅者
+ * 3. churnThenPublish：订阅、取消订阅后立即发送（模拟连接抖动）
+ *
+ * 吞吐模式给出 messages/s，采样模式给出每条消息从发布到最后一个订阅者出站的 p99 延迟
+ *
+ * 所有会话先发送 CONNECT（代理忽略未连接会话的订阅与消息）；出站通道统计实际投递的帧数，
+ * 结束时与"发布次数 × 订阅者数"核对，不一致时本轮失败，避免只测到一次没有投递的查找
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class BrokerFanoutBenchmark {
+
+    private static final int SESSIONS = 50_000;
+
+    private static final int CHURN_SESSIONS = 1024;
+
+    private static final byte[] PAYLOAD = ("{\"type\":\"user_status\",\"content\":\"" + "在线状态更新".repeat(60) + "\"}")
+        .getBytes(StandardCharsets.UTF_8);
+
+    @Param({"default", "trie"})
+    private String registry;
+
+    private SimpleBrokerMessageHandler broker;
+
+    private final LongAdder delivered = new LongAdder();
+
+    /**
+     * 按发布的消息与目的地订阅者数累计的应投递帧数
+     */
+    private final LongAdder expected = new LongAdder();
+
+    private long churnCounter;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // 出站通道只计数，隔离掉网络写出的开销
+        MessageChannel outbound = (message, timeout) -> {
+            if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+                delivered.increment();
+            }
+            return true;
+        };
+        broker = new SimpleBrokerMessageHandler(
+            new ExecutorSubscribableChannel(), outbound, new ExecutorSubscribableChannel(), List.of("/topic", "/queue"));
+        if ("trie".equals(registry)) {
+            broker.setSubscriptionRegistry(new DestinationTrieSubscriptionRegistry());
+        }
+        broker.start();
+
+        for (int i = 0; i < CHURN_SESSIONS; i++) {
+            broker.handleMessage(connect("churn" + i));
+        }
+        for (int i = 0; i < SESSIONS; i++) {
+            String sessionId = "s" + i;
+            broker.handleMessage(connect(sessionId));
+            broker.handleMessage(subscribe(sessionId, "sub-status", "/topic/user-status"));
+            broker.handleMessage(subscribe(sessionId, "sub-messages", "/topic/messages"));
+            broker.handleMessage(subscribe(sessionId, "sub-reply", "/queue/ai-reply-user" + sessionId));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        broker.stop();
+        System.out.printf("[%s] 累计出站 %d 帧，应投递 %d 帧%n", registry, delivered.sum(), expected.sum());
+        if (delivered.sum() != expected.sum()) {
+            throw new IllegalStateException("投递帧数与订阅者数不符: delivered=" + delivered.sum()
+                + ", expected=" + expected.sum());
+        }
+    }
+
+    @Benchmark
+    public void fanoutUserStatus() {
+        broker.handleMessage(publish("/topic/user-status"));
+        expected.add(SESSIONS);
+    }
+
+    @Benchmark
+    public void fanoutMessages() {
+        broker.handleMessage(publish("/topic/messages"));
+        expected.add(SESSIONS);
+    }
+
+    @Benchmark
+    public void userQueue() {
+        int target = ThreadLocalRandom.current().nextInt(SESSIONS);
+        broker.handleMessage(publish("/queue/ai-reply-user" + "s" + target));
+        expected.increment();
+    }
+
+    @Benchmark
+    public void churnThenPublish() {
+        String sessionId = "churn" + (churnCounter++ % CHURN_SESSIONS);
+        broker.handleMessage(subscribe(sessionId, "sub-reply", "/queue/ai-reply-user" + sessionId));
+        broker.handleMessage(publish("/queue/ai-reply-user" + sessionId));
+        broker.handleMessage(unsubscribe(sessionId, "sub-reply"));
+        expected.increment();
+    }
+
+    private static Message<byte[]> connect(String sessionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+        accessor.setSessionId(sessionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> subscribe(String sessionId, String subscriptionId, String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> unsubscribe(String sessionId, String subscriptionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> publish(String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(PAYLOAD, accessor.getMessageHeaders());
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .include(BrokerFanoutBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+}
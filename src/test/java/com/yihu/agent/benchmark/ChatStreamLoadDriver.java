@@ -0,0 +1,239 @@
+package com.yihu.agent.benchmark;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * /api/chat/stream 负载驱动：同时打开大量 SSE 连接，统计首个事件延迟、完成耗时与服务端线程数
+ *
+ * 客户端只用少量线程（--client-threads）驱动全部连接，证明连接数不受客户端线程数限制；
+ * 压测期间与结束后读取 /api/websocket/chat-stream/stats，对比服务端 activeStreams 与 jvmThreads
+ *
+ * 为了只测量服务端的连接处理，可以用 --stub-port 启动一个模拟的 OpenAI 兼容流式端点
+ * （每段输出间隔 --chunk-delay-ms），再以
+ * --langchain4j.open-ai.chat-model.base-url=http://localhost:{stub-port}/v1 启动应用
+ *
+ * 用法：
+ * java ChatStreamLoadDriver --url=http://localhost:8080 --connections=2000 --client-threads=4 --stub-port=18080
+ *
+ * 注意调高 healthcare.rate-limit.llm.* 或关闭限流，否则大部分连接会收到 throttled 事件
+ *
+ * 默认输入（--message）不含任何问诊表触发词（头疼、咳嗽、发烧、腹痛等），请求会走到 GeneralChatNode 调用模型；
+ * 含触发词的输入会由问诊表在本地追问，不经过模型，此时需以 --healthcare.questionnaire.enabled=false 启动应用
+ */
+public class ChatStreamLoadDriver {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        String url = options.getOrDefault("url", "http://localhost:8080");
+        int connections = Integer.parseInt(options.getOrDefault("connections", "2000"));
+        int clientThreads = Integer.parseInt(options.getOrDefault("client-threads", "4"));
+        int stubPort = Integer.parseInt(options.getOrDefault("stub-port", "0"));
+        int chunks = Integer.parseInt(options.getOrDefault("chunks", "40"));
+        long chunkDelayMs = Long.parseLong(options.getOrDefault("chunk-delay-ms", "50"));
+        String message = options.getOrDefault("message", "晚上总是睡不好，白天没精神，平时该怎么调理");
+
+        HttpServer stub = stubPort > 0 ? startStubModel(stubPort, chunks, chunkDelayMs) : null;
+
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(clientThreads, runnable -> {
+            Thread thread = new Thread(runnable, "load-driver");
+            thread.setDaemon(true);
+            return thread;
+        });
+        HttpClient client = HttpClient.newBuilder()
+            .executor(clientExecutor)
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+
+        long[] firstEventMs = new long[connections];
+        long[] completeMs = new long[connections];
+        AtomicInteger failed = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(connections);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            int index = i;
+            String body = "{\"userId\":\"load-" + i + "\",\"sessionId\":\"load-session-" + i
+                + "\",\"message\":\"" + message + "\"}";
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/api/chat/stream"))
+                .header("Content-Type", "application/json")
+                .header("Accept", "text/event-stream")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+            long sent = System.nanoTime();
+            // 行订阅者逐行回调，不阻塞客户端线程（ofLines 的 forEach 会让每个连接占住一个线程）
+            client.sendAsync(request, HttpResponse.BodyHandlers.fromLineSubscriber(new EventSubscriber(line -> {
+                    if (!line.startsWith("event:")) {
+                        return;
+                    }
+                    long elapsed = (System.nanoTime() - sent) / 1_000_000;
+                    if (firstEventMs[index] == 0) {
+                        firstEventMs[index] = Math.max(elapsed, 1);
+                    }
+                    String event = line.substring("event:".length()).trim();
+                    if (event.equals("busy") || event.equals("throttled") || event.equals("error")) {
+                        rejected.incrementAndGet();
+                    }
+                    completeMs[index] = elapsed;
+                })))
+                .whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        failed.incrementAndGet();
+                    }
+                    done.countDown();
+                });
+        }
+
+        // 压测期间采样一次服务端统计
+        Thread.sleep(Math.min(2000, chunks * chunkDelayMs / 2));
+        System.out.println("压测中服务端统计: " + fetchStats(client, url));
+        done.await(10, TimeUnit.MINUTES);
+        long totalMs = (System.nanoTime() - start) / 1_000_000;
+
+        System.out.printf("连接数 %d，客户端线程 %d，总耗时 %d ms，失败 %d，被拒绝 %d%n",
+            connections, clientThreads, totalMs, failed.get(), rejected.get());
+        System.out.println("首个事件延迟(ms): " + percentiles(firstEventMs));
+        System.out.println("完成耗时(ms):     " + percentiles(completeMs));
+        System.out.println("结束后服务端统计: " + fetchStats(client, url));
+        System.out.println("驱动进程线程数: " + ManagementFactory.getThreadMXBean().getThreadCount());
+
+        clientExecutor.shutdownNow();
+        if (stub != null) {
+            stub.stop(0);
+        }
+    }
+
+    /**
+     * 模拟的 OpenAI 兼容流式端点：固定输出 chunks 段，每段间隔 chunkDelayMs
+     */
+    private static HttpServer startStubModel(int port, int chunks, long chunkDelayMs) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), 4096);
+        server.setExecutor(Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "stub-model");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.createContext("/v1/chat/completions", exchange -> {
+            try (exchange) {
+                exchange.getRequestBody().readAllBytes();
+                exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream out = exchange.getResponseBody();
+                for (int i = 0; i < chunks; i++) {
+                    out.write(chunk("片段" + i + "。", null));
+                    out.flush();
+                    Thread.sleep(chunkDelayMs);
+                }
+                out.write(chunk("", "stop"));
+                out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        server.createContext("/v1/models", exchange -> {
+            try (exchange) {
+                byte[] body = "{\"object\":\"list\",\"data\":[]}".getBytes(StandardCharsets.UTF_8);
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+            }
+        });
+        server.start();
+        System.out.println("模拟模型端点已启动: http://localhost:" + port + "/v1");
+        return server;
+    }
+
+    private static byte[] chunk(String content, String finishReason) {
+        String json = "{\"id\":\"stub\",\"object\":\"chat.completion.chunk\",\"created\":0,\"model\":\"stub\","
+            + "\"choices\":[{\"index\":0,\"delta\":{\"content\":\"" + content + "\"},\"finish_reason\":"
+            + (finishReason == null ? "null" : "\"" + finishReason + "\"") + "}]}";
+        return ("data: " + json + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String fetchStats(HttpClient client, String url) {
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(url + "/api/websocket/chat-stream/stats")).build();
+            CompletableFuture<HttpResponse<String>> response = client.sendAsync(request, HttpResponse.BodyHandlers.ofString());
+            return response.get(10, TimeUnit.SECONDS).body();
+        } catch (Exception e) {
+            return "获取失败: " + e;
+        }
+    }
+
+    private static String percentiles(long[] values) {
+        long[] sorted = Arrays.stream(values).filter(v -> v > 0).sorted().toArray();
+        if (sorted.length == 0) {
+            return "无数据";
+        }
+        return String.format("p50=%d p90=%d p99=%d max=%d",
+            sorted[sorted.length / 2], sorted[(int) (sorted.length * 0.9)],
+            sorted[(int) (sorted.length * 0.99)], sorted[sorted.length - 1]);
+    }
+
+    /**
+     * 逐行处理 SSE 响应，每次请求一行
+     */
+    private static final class EventSubscriber implements Flow.Subscriber<String> {
+
+        private final Consumer<String> onLine;
+
+        private Flow.Subscription subscription;
+
+        EventSubscriber(Consumer<String> onLine) {
+            this.onLine = onLine;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onNext(String line) {
+            onLine.accept(line);
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+
+    private static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (arg.startsWith("--") && arg.contains("=")) {
+                options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+            }
+        }
+        return options;
+    }
+}
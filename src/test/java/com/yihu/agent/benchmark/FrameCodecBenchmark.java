@@ -0,0 +1,143 @@
+package com.yihu.agent.benchmark;
+
+import com.yihu.agent.websocket.codec.CborFrameCodec;
+import com.yihu.agent.websocket.codec.FrameCodec;
+import com.yihu.agent.websocket.codec.FrameCodecRegistry;
+import com.yihu.agent.websocket.codec.FrameReader;
+import com.yihu.agent.websocket.codec.JsonFrameCodec;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * WebSocket 帧编解码基准测试：JSON 与 CBOR 对比
+ *
+ * 帧内容模拟 1~3 KB 的中文问诊回复，衡量：
+ * 1. 编码：对象 -> 消息体 -> 拼接序号 -> WebSocketMessage
+ * 2. 解码：WebSocketMessage -> 对象（与 ChatWebSocketHandler 相同，经预构建的 FrameReader 读取）
+ *
+ * 运行方式：直接执行 main 方法（先打印每帧字节数，再运行 JMH）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrameCodecBenchmark {
+
+    private static final String PARAGRAPH =
+        "根据您描述的症状，持续低热伴有咽喉疼痛、轻微咳嗽，目前更倾向于上呼吸道感染。"
+        + "建议多饮温水、注意休息，体温超过38.5℃时可按说明书服用退热药物。"
+        + "如出现呼吸困难、胸痛或高热持续三天以上，请及时前往医院就诊。";
+
+    @Param({"1024", "3072"})
+    private int frameBytes;
+
+    @Param({"json", "cbor"})
+    private String codecName;
+
+    private FrameCodec codec;
+
+    private FrameReader<BenchmarkFrame> reader;
+
+    private BenchmarkFrame frame;
+
+    private WebSocketMessage<?> encoded;
+
+    private long seq;
+
+    @Setup
+    public void setUp() throws Exception {
+        FrameCodecRegistry registry = new FrameCodecRegistry();
+        // FrameReader 按实例识别 JSON 编解码器，JSON 需使用注册表自己的实例
+        codec = "cbor".equals(codecName) ? new CborFrameCodec() : registry.json();
+        reader = registry.readerFor(BenchmarkFrame.class);
+        frame = sampleFrame(frameBytes);
+        // 入站帧（客户端 -> 服务端）不带序号
+        encoded = codec.toMessage(codec.encodeBody(frame));
+    }
+
+    @Benchmark
+    public WebSocketMessage<?> encode() throws Exception {
+        return codec.toMessage(codec.withSeq(++seq, codec.encodeBody(frame)));
+    }
+
+    @Benchmark
+    public BenchmarkFrame decode() throws Exception {
+        return reader.read(codec, encoded);
+    }
+
+    /**
+     * 构造指定 UTF-8 字节数左右的回复帧
+     */
+    static BenchmarkFrame sampleFrame(int targetBytes) {
+        StringBuilder content = new StringBuilder();
+        while (content.toString().getBytes(StandardCharsets.UTF_8).length < targetBytes) {
+            content.append(PARAGRAPH);
+        }
+        return new BenchmarkFrame("private", "doctor_1024", "patient_20481", content.toString(), 1760000000000L);
+    }
+
+    public static void main(String[] args) throws Exception {
+        FrameCodec[] codecs = {new JsonFrameCodec(), new CborFrameCodec()};
+        for (int size : new int[]{1024, 3072}) {
+            BenchmarkFrame frame = sampleFrame(size);
+            for (FrameCodec codec : codecs) {
+                int length = codec.withSeq(1, codec.encodeBody(frame)).length;
+                System.out.printf("%-20s 目标 %d 字节 -> 实际帧 %d 字节%n", codec.getSubProtocol(), size, length);
+            }
+        }
+
+        new Runner(new OptionsBuilder()
+            .include(FrameCodecBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+
+    /**
+     * 与 ChatWebSocketHandler.MessageResponse 字段一致的帧结构
+     */
+    public static class BenchmarkFrame {
+        private String type;
+        private String fromUserId;
+        private String toUserId;
+        private String content;
+        private long timestamp;
+
+        public BenchmarkFrame() {
+        }
+
+        public BenchmarkFrame(String type, String fromUserId, String toUserId, String content, long timestamp) {
+            this.type = type;
+            this.fromUserId = fromUserId;
+            this.toUserId = toUserId;
+            this.content = content;
+            this.timestamp = timestamp;
+        }
+
+        public String getType() { return type; }
+        public void setType(String type) { this.type = type; }
+        public String getFromUserId() { return fromUserId; }
+        public void setFromUserId(String fromUserId) { this.fromUserId = fromUserId; }
+        public String getToUserId() { return toUserId; }
+        public void setToUserId(String toUserId) { this.toUserId = toUserId; }
+        public String getContent() { return content; }
+        public void setContent(String content) { this.content = content; }
+        public long getTimestamp() { return timestamp; }
+        public void setTimestamp(long timestamp) { this.timestamp = timestamp; }
+    }
+}
@@ -0,0 +1,147 @@
+package com.yihu.agent.benchmark;
+
+import com.yihu.agent.ai.symptom.SymptomExtractor;
+import com.yihu.agent.ai.symptom.SymptomLexicon;
+import com.yihu.agent.ai.symptom.SymptomMatches;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地症状提取基准测试：双数组 Trie 单遍扫描与逐词 contains 对比
+ *
+ * 输入为真实问诊风格的中文描述：
+ * 1. short：一句话主诉（约 20 字）
+ * 2. long：带否定、部位、病程与体温的完整病情描述（约 150 字）
+ *
+ * contains 基线对词典中每个词调用一次 String.contains（与 TriageClassifier 的关键词匹配方式相同），
+ * 只判断是否出现，不做最长匹配与否定处理；Trie 提取复用同一个 SymptomMatches，
+ * GC 分析器中 gc.alloc.rate.norm 应接近 0 B/op
+ *
+ * 运行方式：直接执行 main 方法（先打印每条输入的提取结果，再运行 JMH）
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SymptomExtractorBenchmark {
+
+    private static final String SHORT_INPUT = "脑袋疼了三天，没有发烧，就是有点恶心";
+
+    private static final String LONG_INPUT =
+        "医生您好，我最近两个多星期一直不停咳嗽，晚上尤其厉害，有黄痰，昨晚开始烧到38.5度，"
+        + "今天早上量还是38度左右。没有胸痛，也不喘，但是喉咙疼，吃不下饭，浑身酸痛没力气。"
+        + "右边膝盖以前受过伤，这几天走路也有点疼。之前在社区医院开过止咳药，吃了半个月效果不明显，"
+        + "否认高血压糖尿病，请问需要去医院拍片吗？";
+
+    private static final String LEXICON = "symptoms/lexicon.txt";
+
+    @Param({"short", "long"})
+    private String input;
+
+    private String text;
+
+    private SymptomExtractor extractor;
+
+    private SymptomMatches matches;
+
+    private String[] words;
+
+    @Setup
+    public void setUp() throws IOException {
+        text = "long".equals(input) ? LONG_INPUT : SHORT_INPUT;
+        extractor = loadExtractor();
+        matches = new SymptomMatches();
+        words = loadWords().toArray(new String[0]);
+    }
+
+    @Benchmark
+    public int trie() {
+        extractor.extract(text, matches);
+        return matches.size();
+    }
+
+    @Benchmark
+    public int containsScan() {
+        int found = 0;
+        for (String word : words) {
+            if (text.contains(word)) {
+                found++;
+            }
+        }
+        return found;
+    }
+
+    static SymptomExtractor loadExtractor() throws IOException {
+        try (InputStream in = openLexicon()) {
+            return new SymptomExtractor(SymptomLexicon.load(in), true);
+        }
+    }
+
+    /**
+     * 词典中的所有词（标准名与同义词），作为 contains 基线的关键词表
+     */
+    static List<String> loadWords() throws IOException {
+        List<String> words = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(openLexicon(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.replaceAll("[#!].*", "").strip();
+                if (line.isEmpty() || line.startsWith("[")) {
+                    continue;
+                }
+                for (String word : line.split("[=,]")) {
+                    if (!word.isBlank() && !word.strip().chars().allMatch(Character::isDigit)) {
+                        words.add(word.strip());
+                    }
+                }
+            }
+        }
+        return words;
+    }
+
+    private static InputStream openLexicon() {
+        return SymptomExtractorBenchmark.class.getClassLoader().getResourceAsStream(LEXICON);
+    }
+
+    public static void main(String[] args) throws Exception {
+        SymptomExtractor extractor = loadExtractor();
+        SymptomMatches matches = new SymptomMatches();
+        for (String text : new String[]{SHORT_INPUT, LONG_INPUT}) {
+            extractor.extract(text, matches);
+            List<String> symptoms = new ArrayList<>();
+            for (int i = 0; i < matches.size(); i++) {
+                symptoms.add((matches.isNegated(i) ? "否认" : "") + extractor.symptomName(matches, i));
+            }
+            System.out.printf("%d 字 -> 症状 %s, 病程 %d 分钟, 体温 %.1f%n", text.length(), symptoms,
+                matches.durationMinutes(), matches.temperatureTenths() / 10.0);
+        }
+
+        new Runner(new OptionsBuilder()
+            .include(SymptomExtractorBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+}
@@ -0,0 +1,66 @@
+package com.yihu.agent.websocket.batching;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证合并后的帧能被客户端按 STOMP 流 / JSON 数组 / CBOR 数组还原
+ */
+class BatchFormatTest {
+
+    @Test
+    void stompFramesAreConcatenated() {
+        WebSocketMessage<?> merged = BatchFormat.STOMP.merge(List.of(
+            new TextMessage("MESSAGE\ndestination:/topic/a\n\nfirst\0"),
+            new TextMessage("MESSAGE\ndestination:/topic/b\n\nsecond\0")));
+
+        String payload = ((TextMessage) merged).getPayload();
+        assertEquals(2, payload.split("\0").length);
+        assertTrue(payload.startsWith("MESSAGE\ndestination:/topic/a"));
+        assertFalse(BatchFormat.STOMP.canMerge(new TextMessage("a"), new BinaryMessage(new byte[1])));
+    }
+
+    @Test
+    void jsonFramesBecomeArray() throws Exception {
+        ObjectMapper json = new ObjectMapper();
+        WebSocketMessage<?> merged = BatchFormat.RAW_ARRAY.merge(List.of(
+            new TextMessage(json.writeValueAsString(Map.of("seq", 1))),
+            new TextMessage(json.writeValueAsString(Map.of("seq", 2)))));
+
+        JsonNode array = json.readTree(((TextMessage) merged).getPayload());
+        assertEquals(2, array.size());
+        assertEquals(2, array.get(1).get("seq").asInt());
+    }
+
+    @Test
+    void cborFramesBecomeArray() throws Exception {
+        ObjectMapper cbor = new CBORMapper();
+        // 超过 23 个元素时数组头部改用一字节长度
+        List<WebSocketMessage<?>> frames = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            frames.add(new BinaryMessage(cbor.writeValueAsBytes(Map.of("seq", i))));
+        }
+
+        ByteBuffer payload = ((BinaryMessage) BatchFormat.RAW_ARRAY.merge(frames)).getPayload();
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+
+        JsonNode array = cbor.readTree(bytes);
+        assertEquals(30, array.size());
+        assertEquals(29, array.get(29).get("seq").asInt());
+    }
+}
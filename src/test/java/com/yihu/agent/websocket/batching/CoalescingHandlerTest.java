@@ -0,0 +1,247 @@
+package com.yihu.agent.websocket.batching;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证按帧数立即写出、窗口到期写出，以及慢客户端不拖住其他会话的定时冲刷
+ */
+class CoalescingHandlerTest {
+
+    private final List<FrameBatching> batchings = new ArrayList<>();
+
+    private final CountDownLatch unblock = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        unblock.countDown();
+        batchings.forEach(FrameBatching::shutdown);
+    }
+
+    @Test
+    void flushesImmediatelyWhenFrameLimitReached() throws Exception {
+        FrameBatching batching = batching(60_000, 3, 10_000);
+        RecordingSession raw = new RecordingSession("s1", null);
+        WebSocketSession session = open(batching, raw);
+
+        session.sendMessage(stomp("a"));
+        session.sendMessage(stomp("b"));
+        assertEquals(0, raw.sent.size());
+        session.sendMessage(stomp("c"));
+
+        assertEquals(1, raw.sent.size());
+        assertEquals(stomp("a").getPayload() + stomp("b").getPayload() + stomp("c").getPayload(),
+            ((TextMessage) raw.sent.get(0)).getPayload());
+    }
+
+    @Test
+    void flushesOnTimerOffTheSchedulerThread() throws Exception {
+        FrameBatching batching = batching(20, 32, 10_000);
+        RecordingSession raw = new RecordingSession("s1", null);
+        WebSocketSession session = open(batching, raw);
+
+        session.sendMessage(stomp("a"));
+        session.sendMessage(stomp("b"));
+        assertEquals(0, raw.sent.size());
+
+        waitUntil(() -> raw.sent.size() == 1);
+        assertTrue(raw.writerThreads.get(0).startsWith("frame-batching-flush-"), raw.writerThreads.toString());
+        assertEquals(2, ((TextMessage) raw.sent.get(0)).getPayload().split("\0").length);
+    }
+
+    @Test
+    void slowClientsDoNotStallTimedFlushesAndAreDisconnected() throws Exception {
+        FrameBatching batching = batching(10, 32, 100);
+        // 阻塞的会话多于定时线程数
+        List<RecordingSession> slowRaw = new ArrayList<>();
+        List<WebSocketSession> slow = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            RecordingSession raw = new RecordingSession("slow-" + i, unblock);
+            slowRaw.add(raw);
+            slow.add(open(batching, raw));
+        }
+        for (WebSocketSession session : slow) {
+            session.sendMessage(stomp("stuck"));
+        }
+        waitUntil(() -> slowRaw.stream().allMatch(raw -> raw.blocked.getCount() == 0));
+
+        RecordingSession fastRaw = new RecordingSession("fast", null);
+        WebSocketSession fast = open(batching, fastRaw);
+        fast.sendMessage(stomp("hello"));
+        waitUntil(() -> fastRaw.sent.size() == 1);
+
+        // 写出阻塞超过发送时间上限后，再发送的线程断开该会话
+        Thread.sleep(150);
+        assertThrows(IOException.class, () -> slow.get(0).sendMessage(new PingMessage()));
+        assertEquals(CloseStatus.SESSION_NOT_RELIABLE, slowRaw.get(0).closeStatus);
+    }
+
+    private FrameBatching batching(long windowMs, int maxFrames, long sendTimeLimitMs) {
+        FrameBatching batching = new FrameBatching(windowMs, 1 << 20, maxFrames, sendTimeLimitMs, 512);
+        batchings.add(batching);
+        return batching;
+    }
+
+    /**
+     * 建立连接，返回下游处理器拿到的（合并后的）会话
+     */
+    private static WebSocketSession open(FrameBatching batching, RecordingSession raw) throws Exception {
+        List<WebSocketSession> established = new ArrayList<>();
+        batching.decorate(new AbstractWebSocketHandler() {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) {
+                established.add(session);
+            }
+        }).afterConnectionEstablished(raw);
+        return established.get(0);
+    }
+
+    private static TextMessage stomp(String body) {
+        return new TextMessage("MESSAGE\ndestination:/topic/a\n\n" + body + "\0");
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("等待条件超时");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * 记录写出的底层会话；指定 gate 时写出阻塞到 gate 打开（模拟慢客户端）
+     */
+    private static final class RecordingSession implements WebSocketSession {
+
+        private final String id;
+        private final CountDownLatch gate;
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private final List<WebSocketMessage<?>> sent = new CopyOnWriteArrayList<>();
+        private final List<String> writerThreads = new CopyOnWriteArrayList<>();
+        private final Map<String, Object> attributes = new HashMap<>();
+        private volatile CloseStatus closeStatus;
+
+        private RecordingSession(String id, CountDownLatch gate) {
+            this.id = id;
+            this.gate = gate;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            if (gate != null) {
+                blocked.countDown();
+                try {
+                    gate.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            writerThreads.add(Thread.currentThread().getName());
+            sent.add(message);
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public URI getUri() {
+            return null;
+        }
+
+        @Override
+        public HttpHeaders getHandshakeHeaders() {
+            return new HttpHeaders();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public String getAcceptedProtocol() {
+            return null;
+        }
+
+        @Override
+        public void setTextMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getTextMessageSizeLimit() {
+            return 0;
+        }
+
+        @Override
+        public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getBinaryMessageSizeLimit() {
+            return 0;
+        }
+
+        @Override
+        public List<WebSocketExtension> getExtensions() {
+            return List.of();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return closeStatus == null;
+        }
+
+        @Override
+        public void close() {
+            close(CloseStatus.NORMAL);
+        }
+
+        @Override
+        public void close(CloseStatus status) {
+            closeStatus = status;
+        }
+    }
+}
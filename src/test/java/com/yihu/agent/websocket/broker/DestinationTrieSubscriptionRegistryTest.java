@@ -0,0 +1,104 @@
+package com.yihu.agent.websocket.broker;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MultiValueMap;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DestinationTrieSubscriptionRegistryTest {
+
+    private final DestinationTrieSubscriptionRegistry registry = new DestinationTrieSubscriptionRegistry();
+
+    @Test
+    void matchesLiteralAndWildcardSubscriptions() {
+        registry.registerSubscription(subscribe("s1", "a", "/topic/messages"));
+        registry.registerSubscription(subscribe("s2", "b", "/topic/*"));
+        registry.registerSubscription(subscribe("s3", "c", "/topic/**"));
+        registry.registerSubscription(subscribe("s4", "d", "/topic/user-*"));
+
+        MultiValueMap<String, String> result = registry.findSubscriptions(message("/topic/messages"));
+        assertEquals(Set.of("s1", "s2", "s3"), result.keySet());
+
+        result = registry.findSubscriptions(message("/topic/user-status"));
+        assertEquals(Set.of("s2", "s3", "s4"), result.keySet());
+
+        result = registry.findSubscriptions(message("/topic/group/42"));
+        assertEquals(Set.of("s3"), result.keySet());
+    }
+
+    @Test
+    void unsubscribeAndSessionCleanup() {
+        registry.registerSubscription(subscribe("s1", "a", "/queue/ai-reply-users1"));
+        registry.registerSubscription(subscribe("s1", "b", "/topic/messages"));
+        registry.registerSubscription(subscribe("s2", "c", "/topic/messages"));
+        assertEquals(3, registry.getSubscriptionCount());
+
+        registry.unregisterSubscription(unsubscribe("s2", "c"));
+        assertEquals(List.of("b"), registry.findSubscriptions(message("/topic/messages")).get("s1"));
+        assertEquals(1, registry.findSubscriptions(message("/topic/messages")).size());
+
+        registry.unregisterAllSubscriptions("s1");
+        assertEquals(0, registry.getSubscriptionCount());
+        assertTrue(registry.findSubscriptions(message("/queue/ai-reply-users1")).isEmpty());
+    }
+
+    @Test
+    void selectorFiltersSubscriptionsOnlyWhenEnabled() {
+        registry.registerSubscription(subscribe("s1", "a", "/topic/messages", "headers.priority == 'high'"));
+        registry.registerSubscription(subscribe("s2", "b", "/topic/messages"));
+        assertEquals(Set.of("s1", "s2"), registry.findSubscriptions(message("/topic/messages")).keySet());
+
+        registry.setSelectorHeaderName("selector");
+        registry.registerSubscription(subscribe("s3", "c", "/topic/messages", "headers.priority == 'high'"));
+        registry.registerSubscription(subscribe("s4", "d", "/topic/messages", "headers.priority =="));
+        assertEquals(Set.of("s1", "s2"), registry.findSubscriptions(message("/topic/messages")).keySet());
+        assertEquals(Set.of("s1", "s2", "s3"), registry.findSubscriptions(message("/topic/messages", "high")).keySet());
+
+        registry.unregisterSubscription(unsubscribe("s3", "c"));
+        registry.registerSubscription(subscribe("s3", "c", "/topic/messages"));
+        assertEquals(Set.of("s1", "s2", "s3"), registry.findSubscriptions(message("/topic/messages")).keySet());
+    }
+
+    private static Message<byte[]> subscribe(String sessionId, String subscriptionId, String destination) {
+        return subscribe(sessionId, subscriptionId, destination, null);
+    }
+
+    private static Message<byte[]> subscribe(String sessionId, String subscriptionId, String destination, String selector) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        if (selector != null) {
+            accessor.setNativeHeader("selector", selector);
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> unsubscribe(String sessionId, String subscriptionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Message<byte[]> message(String destination) {
+        return message(destination, null);
+    }
+
+    private static Message<byte[]> message(String destination, String priority) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        if (priority != null) {
+            accessor.setNativeHeader("priority", priority);
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,77 @@
+package com.yihu.agent.websocket.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证哈希环的分布均匀性、扩容时的迁移量与各节点计算结果一致
+ */
+class ConsistentHashRingTest {
+
+    private static final int SESSIONS = 20_000;
+
+    @Test
+    void balancesAndMovesOnlyToJoiningNode() {
+        ConsistentHashRing ring = new ConsistentHashRing(160);
+        assertNull(ring.ownerOf("session-1"));
+        ring.setMembers(List.of("node-a", "node-b", "node-c"));
+
+        Map<String, String> before = new HashMap<>();
+        Map<String, Integer> load = new HashMap<>();
+        for (int i = 0; i < SESSIONS; i++) {
+            String owner = ring.ownerOf("session-" + i);
+            before.put("session-" + i, owner);
+            load.merge(owner, 1, Integer::sum);
+        }
+        // 三个节点各分得约 1/3，偏差不超过 20%
+        for (int count : load.values()) {
+            assertTrue(Math.abs(count - SESSIONS / 3) < SESSIONS / 3 * 0.2, "负载: " + load);
+        }
+
+        ring.setMembers(List.of("node-a", "node-b", "node-c", "node-d"));
+        int moved = 0;
+        for (int i = 0; i < SESSIONS; i++) {
+            String owner = ring.ownerOf("session-" + i);
+            if (!owner.equals(before.get("session-" + i))) {
+                // 扩容时只会迁往新节点，老节点之间不发生迁移
+                assertEquals("node-d", owner);
+                moved++;
+            }
+        }
+        // 约 1/4 的会话迁往新节点
+        assertTrue(Math.abs(moved - SESSIONS / 4) < SESSIONS / 4 * 0.25, "迁移数: " + moved);
+    }
+
+    @Test
+    void sameMembersGiveSameOwnersRegardlessOfOrder() {
+        ConsistentHashRing first = new ConsistentHashRing(64);
+        ConsistentHashRing second = new ConsistentHashRing(64);
+        first.setMembers(List.of("node-a", "node-b", "node-c"));
+        second.setMembers(Set.of("node-c", "node-a", "node-b"));
+
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(first.ownerOf("session-" + i), second.ownerOf("session-" + i));
+        }
+    }
+
+    @Test
+    void excludingNodeMatchesRingWithoutIt() {
+        ConsistentHashRing ring = new ConsistentHashRing(64);
+        ring.setMembers(List.of("node-a", "node-b", "node-c"));
+        ConsistentHashRing shrunk = new ConsistentHashRing(64);
+        shrunk.setMembers(List.of("node-a", "node-c"));
+
+        for (int i = 0; i < 1000; i++) {
+            String sessionId = "session-" + i;
+            assertEquals(shrunk.ownerOf(sessionId), ring.ownerOfExcluding(sessionId, "node-b"));
+        }
+    }
+}
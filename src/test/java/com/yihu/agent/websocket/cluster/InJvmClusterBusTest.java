@@ -0,0 +1,142 @@
+package com.yihu.agent.websocket.cluster;
+
+import com.yihu.agent.websocket.DeliveryStatus;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 用进程内总线模拟三个节点，验证在线目录同步、批量转发与投递确认
+ */
+class InJvmClusterBusTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final List<InJvmClusterBus> buses = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        buses.forEach(InJvmClusterBus::stop);
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    void forwardsInBatchesAndAcknowledges() throws Exception {
+        String cluster = "test-" + System.nanoTime();
+        TestNode a = join(cluster, "a", Set.of());
+        TestNode b = join(cluster, "b", Set.of("patient-1"));
+        TestNode c = join(cluster, "c", Set.of("doctor-9"));
+
+        // 节点加入后互相同步在线快照
+        waitUntil(() -> a.directory.nodesOf("patient-1").contains("b") && a.directory.nodesOf("doctor-9").contains("c"));
+        assertEquals(Set.of("a", "b", "c"), a.bus.getMembers());
+
+        ClusterForwarder forwarder = new ClusterForwarder(a.bus, scheduler, 8, 5, 1000);
+        List<CompletableFuture<DeliveryStatus>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            results.add(forwarder.forward("b", envelope("patient-1", i)));
+        }
+        CompletableFuture<DeliveryStatus> missing = forwarder.forward("c", envelope("patient-404", 0));
+
+        for (CompletableFuture<DeliveryStatus> result : results) {
+            assertEquals(DeliveryStatus.DELIVERED, result.get(2, TimeUnit.SECONDS));
+        }
+        assertEquals(DeliveryStatus.FAILED, missing.get(2, TimeUnit.SECONDS));
+
+        // 20 条消息按批次大小 8 最多分 3 批，且按发送顺序到达
+        assertTrue(b.batchSizes.size() <= 3, "批次数: " + b.batchSizes);
+        assertEquals(20, b.received.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals("m" + i, b.received.get(i));
+        }
+
+        // 节点离开后其用户从目录中移除，发往该节点的消息立即失败
+        c.bus.stop();
+        waitUntil(() -> !a.directory.isOnline("doctor-9"));
+        assertEquals(DeliveryStatus.FAILED, forwarder.forward("c", envelope("doctor-9", 1)).get(2, TimeUnit.SECONDS));
+    }
+
+    private TestNode join(String cluster, String nodeId, Set<String> localUsers) {
+        InJvmClusterBus bus = new InJvmClusterBus(cluster, nodeId);
+        buses.add(bus);
+        TestNode node = new TestNode(bus, localUsers);
+        bus.start(node);
+        return node;
+    }
+
+    private static ClusterEnvelope envelope(String userId, int i) {
+        return new ClusterEnvelope("e" + i, ClusterEnvelope.Kind.RAW_USER, userId, null, "m" + i);
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("等待条件超时");
+            }
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * 测试节点：本地用户集合固定，收到的信封按顺序记录
+     */
+    private static final class TestNode implements ClusterBus.Listener {
+
+        private final InJvmClusterBus bus;
+        private final Set<String> localUsers;
+        private final ClusterPresenceDirectory directory = new ClusterPresenceDirectory();
+        private final List<String> received = new CopyOnWriteArrayList<>();
+        private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+
+        private TestNode(InJvmClusterBus bus, Set<String> localUsers) {
+            this.bus = bus;
+            this.localUsers = localUsers;
+        }
+
+        @Override
+        public List<DeliveryStatus> onBatch(String fromNodeId, List<ClusterEnvelope> batch) {
+            batchSizes.add(batch.size());
+            List<DeliveryStatus> statuses = new ArrayList<>();
+            for (ClusterEnvelope envelope : batch) {
+                boolean local = localUsers.contains(envelope.userId());
+                if (local) {
+                    received.add(envelope.payload());
+                }
+                statuses.add(local ? DeliveryStatus.DELIVERED : DeliveryStatus.FAILED);
+            }
+            return statuses;
+        }
+
+        @Override
+        public void onPresence(String fromNodeId, List<PresenceUpdate> updates) {
+            directory.apply(fromNodeId, updates);
+        }
+
+        @Override
+        public CompletableFuture<String> onRequest(String fromNodeId, String topic, String payload) {
+            return CompletableFuture.completedFuture(payload);
+        }
+
+        @Override
+        public void onMemberJoined(String nodeId) {
+            bus.publishPresence(nodeId, localUsers.stream().map(userId -> new PresenceUpdate(userId, true)).toList());
+        }
+
+        @Override
+        public void onMemberLeft(String nodeId) {
+            directory.removeNode(nodeId);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.yihu.agent.websocket.codec;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * 序号信封按字节拼接，用 Jackson 解码验证拼接结果是合法的 JSON / CBOR
+ */
+class FrameCodecTest {
+
+    private static final long[] SEQS = {0, 1, 23, 24, 255, 256, 65535, 65536, 0xFFFFFFFFL, 0x100000000L, Long.MAX_VALUE};
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+
+    private final CBORMapper cborMapper = new CBORMapper();
+
+    private final Map<String, Object> frame = Map.of("type", "private", "content", "头疼三天了");
+
+    @Test
+    void jsonSeqEnvelopeRoundTrips() throws Exception {
+        JsonFrameCodec codec = new JsonFrameCodec();
+        byte[] body = codec.encodeBody(frame);
+
+        for (long seq : SEQS) {
+            JsonNode decoded = jsonMapper.readTree(codec.withSeq(seq, body));
+            assertEquals(seq, decoded.get("seq").asLong());
+            assertEquals("private", decoded.get("type").asText());
+            assertEquals("头疼三天了", decoded.get("content").asText());
+            assertEquals(3, decoded.size());
+        }
+    }
+
+    @Test
+    void jsonSeqOnEmptyObjectHasNoTrailingComma() throws Exception {
+        JsonFrameCodec codec = new JsonFrameCodec();
+
+        byte[] result = codec.withSeq(1, codec.encodeBody(Map.of()));
+
+        assertEquals("{\"seq\":1}", new String(result, StandardCharsets.UTF_8));
+        assertEquals(1, jsonMapper.readTree(result).get("seq").asInt());
+    }
+
+    @Test
+    void jsonSeqRejectsNonObjectBodies() {
+        JsonFrameCodec codec = new JsonFrameCodec();
+
+        for (String body : new String[]{"[1,2]", "\"text\"", "42", "{", ""}) {
+            assertThrows(IllegalArgumentException.class,
+                () -> codec.withSeq(1, body.getBytes(StandardCharsets.UTF_8)), body);
+        }
+    }
+
+    @Test
+    void cborSeqEnvelopeRoundTrips() throws Exception {
+        CborFrameCodec codec = new CborFrameCodec();
+        byte[] body = codec.encodeBody(frame);
+        JsonNode expectedFrame = cborMapper.readTree(body);
+
+        for (long seq : SEQS) {
+            JsonNode decoded = cborMapper.readTree(codec.withSeq(seq, body));
+            assertEquals(2, decoded.size());
+            assertEquals(seq, decoded.get("seq").asLong());
+            assertEquals(expectedFrame, decoded.get("frame"));
+        }
+    }
+
+    @Test
+    void cborSeqWrapsAnyFrameValue() throws Exception {
+        CborFrameCodec codec = new CborFrameCodec();
+
+        for (Object value : new Object[]{Map.of(), "text", 42}) {
+            JsonNode decoded = cborMapper.readTree(codec.withSeq(7, codec.encodeBody(value)));
+            assertEquals(7, decoded.get("seq").asLong());
+            assertEquals(cborMapper.valueToTree(value), decoded.get("frame"));
+        }
+    }
+
+    @Test
+    void transcodedOfflineFrameKeepsItsFieldsUnderTheEnvelope() throws Exception {
+        JsonFrameCodec json = new JsonFrameCodec();
+        CborFrameCodec cbor = new CborFrameCodec();
+
+        byte[] body = cbor.transcode(json.encodeBody(frame), json);
+        JsonNode decoded = cborMapper.readTree(cbor.withSeq(300, body));
+
+        assertEquals(300, decoded.get("seq").asLong());
+        assertEquals("头疼三天了", decoded.get("frame").get("content").asText());
+    }
+}
@@ -0,0 +1,88 @@
+package com.yihu.agent.websocket.compression;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.lang.NonNull;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.TextWebSocketHandler;
+
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 使用本地 WebSocket 客户端验证 permessage-deflate 协商与压缩统计
+ */
+@SpringBootTest(
+    webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = {
+        "healthcare.websocket.compression.sample-rate=1",
+        "healthcare.offline.dir=target/test-offline-inbox",
+        // 进程内集群按名称共享网络，每个测试上下文使用独立的集群，避免互相转发
+        "healthcare.cluster.name=${random.uuid}"
+    }
+)
+class CompressionNegotiationTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private CompressionMetrics compressionMetrics;
+
+    @Test
+    void negotiatesDeflateAndRecordsRatio() throws Exception {
+        BlockingQueue<String> received = new LinkedBlockingQueue<>();
+        WebSocketHttpHeaders headers = new WebSocketHttpHeaders();
+        headers.setSecWebSocketExtensions(List.of(new WebSocketExtension(CompressionHandshakeHandler.PERMESSAGE_DEFLATE)));
+
+        WebSocketSession session = new StandardWebSocketClient().execute(
+            new TextWebSocketHandler() {
+                @Override
+                protected void handleTextMessage(@NonNull WebSocketSession session, @NonNull TextMessage message) {
+                    received.add(message.getPayload());
+                }
+            },
+            headers,
+            URI.create("ws://localhost:" + port + "/ws/chat-raw?userId=deflate-tester")
+        ).get(5, TimeUnit.SECONDS);
+
+        try {
+            WebSocketExtension deflate = session.getExtensions().stream()
+                .filter(extension -> CompressionHandshakeHandler.PERMESSAGE_DEFLATE.equals(extension.getName()))
+                .findFirst()
+                .orElse(null);
+            assertNotNull(deflate, "服务端应接受 permessage-deflate");
+
+            // 欢迎消息
+            assertNotNull(received.poll(5, TimeUnit.SECONDS));
+
+            String content = "持续低热伴咽喉疼痛，建议多饮水、注意休息，必要时及时就医。".repeat(40);
+            session.sendMessage(new TextMessage(
+                "{\"type\":\"private\",\"fromUserId\":\"deflate-tester\",\"toUserId\":\"deflate-tester\",\"content\":\"" + content + "\"}"));
+
+            String echoed = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(echoed);
+            assertTrue(echoed.contains(content));
+        } finally {
+            session.close();
+        }
+
+        Map<String, Object> stats = compressionMetrics.snapshot();
+        assertTrue((long) stats.get("sampledFrames") > 0);
+        assertTrue((double) stats.get("compressionRatio") < 0.5);
+        assertTrue((long) stats.get("estimatedWireBytes") < (long) stats.get("bytesTotal"));
+    }
+}
@@ -0,0 +1,64 @@
+package com.yihu.agent.websocket.delivery;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class ReplayBufferRegistryTest {
+
+    private static final long IDLE_MINUTES = 10;
+
+    private final ReplayBufferRegistry registry = new ReplayBufferRegistry(8, IDLE_MINUTES);
+
+    @AfterEach
+    void stop() {
+        registry.stop();
+    }
+
+    @Test
+    void connectedButQuietUserKeepsBuffer() {
+        ReplayRingBuffer<String> buffer = registry.buffer(ReplayBufferRegistry.RAW_CHANNEL, "u1");
+        registry.sessionOpened(ReplayBufferRegistry.RAW_CHANNEL, "u1", "s1");
+
+        registry.evictIdleBuffers(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+
+        assertSame(buffer, registry.buffer(ReplayBufferRegistry.RAW_CHANNEL, "u1"));
+    }
+
+    @Test
+    void idleTimeoutStartsAtLastDisconnect() {
+        ReplayRingBuffer<String> buffer = registry.buffer(ReplayBufferRegistry.AI_CHANNEL, "u1");
+        registry.sessionOpened(ReplayBufferRegistry.AI_CHANNEL, "u1", "s1");
+        registry.sessionOpened(ReplayBufferRegistry.AI_CHANNEL, "u1", "s2");
+
+        registry.sessionClosed(ReplayBufferRegistry.AI_CHANNEL, "u1", "s1");
+        // 断开事件重复触发不影响仍在线的会话
+        registry.sessionClosed(ReplayBufferRegistry.AI_CHANNEL, "u1", "s1");
+        registry.evictIdleBuffers(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+        assertSame(buffer, registry.buffer(ReplayBufferRegistry.AI_CHANNEL, "u1"));
+
+        registry.sessionClosed(ReplayBufferRegistry.AI_CHANNEL, "u1", "s2");
+        long disconnectedAt = System.currentTimeMillis();
+        registry.evictIdleBuffers(disconnectedAt + TimeUnit.MINUTES.toMillis(IDLE_MINUTES - 1));
+        assertSame(buffer, registry.buffer(ReplayBufferRegistry.AI_CHANNEL, "u1"));
+
+        registry.evictIdleBuffers(disconnectedAt + TimeUnit.MINUTES.toMillis(IDLE_MINUTES + 1));
+        assertNotSame(buffer, registry.buffer(ReplayBufferRegistry.AI_CHANNEL, "u1"));
+    }
+
+    @Test
+    void channelsAreTrackedIndependently() {
+        ReplayRingBuffer<String> raw = registry.buffer(ReplayBufferRegistry.RAW_CHANNEL, "u1");
+        ReplayRingBuffer<String> ai = registry.buffer(ReplayBufferRegistry.AI_CHANNEL, "u1");
+        registry.sessionOpened(ReplayBufferRegistry.AI_CHANNEL, "u1", "s1");
+
+        registry.evictIdleBuffers(System.currentTimeMillis() + TimeUnit.HOURS.toMillis(1));
+
+        assertNotSame(raw, registry.buffer(ReplayBufferRegistry.RAW_CHANNEL, "u1"));
+        assertSame(ai, registry.buffer(ReplayBufferRegistry.AI_CHANNEL, "u1"));
+    }
+}
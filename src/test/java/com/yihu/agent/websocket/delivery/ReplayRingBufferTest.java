@@ -0,0 +1,56 @@
+package com.yihu.agent.websocket.delivery;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReplayRingBufferTest {
+
+    private static final long EPOCH = 7;
+
+    @Test
+    void replaysOnlyFramesAfterLastSeq() throws Exception {
+        ReplayRingBuffer<String> buffer = filled(4, 3);
+        List<String> replayed = new ArrayList<>();
+
+        assertEquals(2, buffer.replay(1, EPOCH, replayed::add));
+        assertEquals(List.of("frame-2", "frame-3"), replayed);
+        assertEquals(0, buffer.replay(3, EPOCH, replayed::add));
+    }
+
+    @Test
+    void wrapsAroundAndKeepsLatestCapacityFrames() throws Exception {
+        ReplayRingBuffer<String> buffer = filled(4, 10);
+        List<String> replayed = new ArrayList<>();
+
+        // 缺口正好等于容量：6 之后的 7~10 仍在缓冲区中
+        assertEquals(4, buffer.replay(6, EPOCH, replayed::add));
+        assertEquals(List.of("frame-7", "frame-8", "frame-9", "frame-10"), replayed);
+        assertEquals(10, buffer.getLastSeq());
+    }
+
+    @Test
+    void gapLargerThanCapacityOrForeignEpochRequiresFullSync() throws Exception {
+        ReplayRingBuffer<String> buffer = filled(4, 10);
+        List<String> replayed = new ArrayList<>();
+
+        assertEquals(-1, buffer.replay(5, EPOCH, replayed::add));
+        assertEquals(-1, buffer.replay(9, EPOCH + 1, replayed::add));
+        assertEquals(-1, buffer.replay(11, EPOCH, replayed::add));
+        assertTrue(replayed.isEmpty());
+    }
+
+    private static ReplayRingBuffer<String> filled(int capacity, int frames) throws Exception {
+        ReplayRingBuffer<String> buffer = new ReplayRingBuffer<>(capacity, EPOCH);
+        List<String> sent = new ArrayList<>();
+        for (int i = 0; i < frames; i++) {
+            buffer.append(seq -> "frame-" + seq, sent::add);
+        }
+        assertEquals(frames, sent.size());
+        return buffer;
+    }
+}
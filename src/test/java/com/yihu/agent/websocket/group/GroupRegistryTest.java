@@ -0,0 +1,111 @@
+package com.yihu.agent.websocket.group;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GroupRegistryTest {
+
+    @Test
+    void replaysJournalAfterRestart() throws Exception {
+        Path journal = Files.createTempDirectory("group-registry").resolve("membership.journal");
+        GroupRegistry registry = open(journal);
+        registry.createGroup("g1", "心内科随访", GroupType.CARE_TEAM);
+        registry.createGroup("g2", "临时群", GroupType.CARE_TEAM);
+        registry.addMembers("g1", List.of("u1", "u2", "u3"));
+        registry.addMembers("g2", List.of("u1"));
+        registry.removeMembers("g1", List.of("u2"));
+        registry.deleteGroup("g2");
+        registry.close();
+
+        registry = open(journal);
+        assertEquals(1, registry.getGroups().size());
+        assertEquals(Set.of("u1", "u3"), registry.getGroup("g1").orElseThrow().getMembers());
+        assertEquals("心内科随访", registry.getGroup("g1").orElseThrow().getName());
+        assertEquals(Set.of("g1"), registry.groupsOf("u1"));
+        assertFalse(registry.isMember("g1", "u2"));
+        registry.close();
+    }
+
+    @Test
+    void rewritesJournalWhenStaleRecordsPileUpAtRuntime() throws Exception {
+        Path journal = Files.createTempDirectory("group-registry").resolve("membership.journal");
+        GroupRegistry registry = open(journal);
+        registry.createGroup("g1", "群", GroupType.CARE_TEAM);
+        registry.addMembers("g1", List.of("u1"));
+        for (int i = 0; i < 1000; i++) {
+            registry.addMembers("g1", List.of("u2"));
+            registry.removeMembers("g1", List.of("u2"));
+        }
+        assertTrue(Files.readAllLines(journal).size() < 1100);
+        registry.addMembers("g1", List.of("u3"));
+        registry.close();
+
+        registry = open(journal);
+        assertEquals(Set.of("u1", "u3"), registry.getGroup("g1").orElseThrow().getMembers());
+        registry.close();
+    }
+
+    @Test
+    void removedMembersLoseSubscriptionsAndCannotSubscribeAgain() throws Exception {
+        Path journal = Files.createTempDirectory("group-registry").resolve("membership.journal");
+        GroupRegistry registry = open(journal);
+        registry.createGroup("g1", "群", GroupType.CARE_TEAM);
+        registry.addMembers("g1", List.of("u1", "u2"));
+
+        assertTrue(registry.onSubscribe("g1", "u1", "s1", "sub-0"));
+        assertTrue(registry.onSubscribe("g1", "u2", "s2", "sub-0"));
+        assertFalse(registry.onSubscribe("g1", "u9", "s9", "sub-0"));
+        assertEquals(2, registry.getSubscriberCount("g1"));
+
+        List<GroupRegistry.GroupSubscription> revoked = registry.removeMembers("g1", List.of("u1"));
+        assertEquals(1, revoked.size());
+        assertEquals("s1", revoked.get(0).sessionId());
+        assertEquals(1, registry.getSubscriberCount("g1"));
+
+        assertFalse(registry.onSubscribe("g1", "u1", "s1", "sub-1"));
+        assertEquals(1, registry.getSubscriberCount("g1"));
+        registry.close();
+    }
+
+    @Test
+    void disconnectRemovesOnlyThatSessionsSubscriptions() throws Exception {
+        Path journal = Files.createTempDirectory("group-registry").resolve("membership.journal");
+        GroupRegistry registry = open(journal);
+        registry.createGroup("g1", "群一", GroupType.CARE_TEAM);
+        registry.createGroup("g2", "群二", GroupType.CARE_TEAM);
+        registry.addMembers("g1", List.of("u1", "u2"));
+        registry.addMembers("g2", List.of("u1"));
+
+        assertTrue(registry.onSubscribe("g1", "u1", "s1", "sub-0"));
+        assertTrue(registry.onSubscribe("g2", "u1", "s1", "sub-1"));
+        assertTrue(registry.onSubscribe("g1", "u2", "s10", "sub-0"));
+        registry.onUnsubscribe("s1", "sub-1");
+        assertEquals(0, registry.getSubscriberCount("g2"));
+        assertTrue(registry.onSubscribe("g2", "u1", "s1", "sub-2"));
+
+        registry.onDisconnect("s1");
+        assertEquals(1, registry.getSubscriberCount("g1"));
+        assertEquals(0, registry.getSubscriberCount("g2"));
+
+        // 已断开的会话不会在移除成员时被再次撤销
+        assertTrue(registry.removeMembers("g2", List.of("u1")).isEmpty());
+        assertEquals(1, registry.removeMembers("g1", List.of("u2")).size());
+        registry.onDisconnect("s10");
+        assertEquals(0, registry.getSubscriberCount("g1"));
+        registry.close();
+    }
+
+    private static GroupRegistry open(Path journal) throws Exception {
+        GroupRegistry registry = new GroupRegistry(journal.toString());
+        registry.open();
+        return registry;
+    }
+}
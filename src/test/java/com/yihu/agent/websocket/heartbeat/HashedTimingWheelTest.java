@@ -0,0 +1,52 @@
+package com.yihu.agent.websocket.heartbeat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证时间轮的到期时间、多圈任务与取消
+ */
+class HashedTimingWheelTest {
+
+    private HashedTimingWheel<String> wheel;
+
+    @AfterEach
+    void tearDown() {
+        wheel.stop();
+    }
+
+    @Test
+    void expiresAfterDelayIncludingMultipleRounds() throws Exception {
+        Map<String, Long> firedAt = new ConcurrentHashMap<>();
+        CountDownLatch latch = new CountDownLatch(2);
+        // 8 个槽位 × 10ms：300ms 的任务需要转好几圈
+        wheel = new HashedTimingWheel<>(10, 8, "test-wheel", task -> {
+            firedAt.put(task, System.nanoTime());
+            latch.countDown();
+        });
+        wheel.start();
+
+        long start = System.nanoTime();
+        wheel.schedule("short", 30);
+        wheel.schedule("long", 300);
+        HashedTimingWheel.Timeout<String> cancelled = wheel.schedule("cancelled", 50);
+        cancelled.cancel();
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        long shortMs = TimeUnit.NANOSECONDS.toMillis(firedAt.get("short") - start);
+        long longMs = TimeUnit.NANOSECONDS.toMillis(firedAt.get("long") - start);
+        assertTrue(shortMs >= 20 && shortMs < 200, "short: " + shortMs);
+        assertTrue(longMs >= 290 && longMs < 600, "long: " + longMs);
+        assertFalse(firedAt.containsKey("cancelled"));
+        assertEquals(2, firedAt.size());
+    }
+}
@@ -0,0 +1,88 @@
+package com.yihu.agent.websocket.heartbeat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证 STOMP 连接只按 CONNECT 协商的客户端心跳回收
+ */
+class HeartbeatMonitorTest {
+
+    private final HeartbeatMonitor monitor = new HeartbeatMonitor(10, 20_000, 200, 100, 100);
+
+    @BeforeEach
+    void setUp() {
+        monitor.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        monitor.stop();
+    }
+
+    @Test
+    void readsClientHeartbeatFromConnectFrame() {
+        assertEquals(5000, HeartbeatHandler.clientHeartbeatMs(
+            "CONNECT\naccept-version:1.2\nheart-beat:5000,10000\n\n\0"));
+        assertEquals(0, HeartbeatHandler.clientHeartbeatMs("\nSTOMP\r\nhost:localhost\r\n\r\n\0"));
+        assertEquals(0, HeartbeatHandler.clientHeartbeatMs("CONNECT\nheart-beat:0,0\n\n\0"));
+        assertEquals(-1, HeartbeatHandler.clientHeartbeatMs("SEND\ndestination:/app/chat\n\nhi\0"));
+        assertEquals(-1, HeartbeatHandler.clientHeartbeatMs("\n"));
+    }
+
+    @Test
+    void idleClientWithoutNegotiatedHeartbeatIsNotReaped() throws Exception {
+        TestConnection connection = new TestConnection();
+        monitor.track(connection);
+        monitor.negotiated(connection, 0);
+
+        // 远超 idle-timeout-ms 与 stomp 心跳期限
+        assertFalse(connection.reaped.await(600, TimeUnit.MILLISECONDS));
+        assertEquals(1, monitor.snapshot().get("activeConnections"));
+    }
+
+    @Test
+    void negotiatedClientIsReapedAfterIntervalPlusGrace() throws Exception {
+        TestConnection connection = new TestConnection();
+        monitor.track(connection);
+        long start = System.nanoTime();
+        monitor.negotiated(connection, 50);
+
+        // 期限为 max(50, 100) + 100 = 200ms，协商后重新挂检查任务
+        assertTrue(connection.reaped.await(2, TimeUnit.SECONDS));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsedMs >= 180 && elapsedMs < 1000, "elapsed: " + elapsedMs);
+        assertEquals(0, monitor.snapshot().get("activeConnections"));
+    }
+
+    private static final class TestConnection extends HeartbeatMonitor.Connection {
+
+        private final CountDownLatch reaped = new CountDownLatch(1);
+
+        private TestConnection() {
+            super(false);
+        }
+
+        @Override
+        String getId() {
+            return "stomp-1";
+        }
+
+        @Override
+        void ping() {
+        }
+
+        @Override
+        void reap() {
+            reaped.countDown();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.yihu.agent.websocket.offline;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OfflineMessageLogTest {
+
+    private static final int SEGMENT_SIZE = 256;
+
+    /**
+     * 用户 "u1" 的一条消息 "a" 占用的字节数：头 15 + userId 2 + 消息长度 4 + 消息 1
+     */
+    private static final int RECORD_SIZE = 22;
+
+    @Test
+    void tornTailIsIgnoredAndClearedBeforeAppending() throws Exception {
+        Path dir = Files.createTempDirectory("offline-log");
+        OfflineMessageLog log = open(dir);
+        log.append("u1", "a").join();
+        log.close();
+
+        // 模拟崩溃：第二条记录只写了内容，长度仍为 0；内容中恰好有一段像合法记录头的字节
+        try (FileChannel channel = FileChannel.open(dir.resolve("0000000000.log"), StandardOpenOption.WRITE)) {
+            ByteBuffer torn = ByteBuffer.allocate(64);
+            torn.putInt(0).put((byte) 1).putLong(0L).putShort((short) 2).put("u9".getBytes());
+            // 追加 "b" 后紧跟在它之后的位置
+            torn.position(RECORD_SIZE);
+            torn.putInt(RECORD_SIZE - 4).put((byte) 1).putLong(0L).putShort((short) 2).put("u9".getBytes())
+                .putInt(1).put((byte) 'x');
+            torn.flip();
+            channel.write(torn, RECORD_SIZE);
+        }
+
+        log = open(dir);
+        assertEquals(1, log.getPendingCount());
+        assertFalse(log.hasPending("u9"));
+        log.append("u1", "b").join();
+        log.close();
+
+        log = open(dir);
+        assertEquals(List.of("a", "b"), payloads(log.peek("u1", 10)));
+        assertFalse(log.hasPending("u9"));
+        log.close();
+    }
+
+    @Test
+    void appendsRollOverToNewSegmentsAndKeepOrderAfterRestart() throws Exception {
+        Path dir = Files.createTempDirectory("offline-log");
+        OfflineMessageLog log = open(dir);
+        for (int i = 0; i < 30; i++) {
+            log.append("u1", "message-" + i);
+        }
+        log.append("u1", "last").join();
+        assertTrue(segmentFiles(dir) > 1);
+        log.close();
+
+        log = open(dir);
+        List<String> payloads = payloads(log.peek("u1", 100));
+        assertEquals(31, payloads.size());
+        assertEquals("message-0", payloads.get(0));
+        assertEquals("last", payloads.get(30));
+        log.close();
+    }
+
+    @Test
+    void acknowledgedSegmentsAreCompactedAndAcksSurviveRestart() throws Exception {
+        Path dir = Files.createTempDirectory("offline-log");
+        OfflineMessageLog log = open(dir);
+        for (int i = 0; i < 20; i++) {
+            log.append("u1", "message-" + i);
+        }
+        log.append("u2", "keep").join();
+        long segments = segmentFiles(dir);
+        assertTrue(segments > 2);
+
+        List<OfflineMessage> pending = log.peek("u1", 100);
+        log.acknowledge("u1", pending.get(pending.size() - 1).position());
+        log.compact();
+
+        assertFalse(Files.exists(dir.resolve("0000000000.log")));
+        assertTrue(segmentFiles(dir) < segments);
+        assertFalse(log.hasPending("u1"));
+        log.close();
+
+        log = open(dir);
+        assertFalse(log.hasPending("u1"));
+        assertEquals(List.of("keep"), payloads(log.peek("u2", 10)));
+        log.close();
+    }
+
+    private static OfflineMessageLog open(Path dir) throws Exception {
+        OfflineMessageLog log = new OfflineMessageLog(dir.toString(), SEGMENT_SIZE, 168);
+        log.open();
+        return log;
+    }
+
+    private static List<String> payloads(List<OfflineMessage> messages) {
+        return messages.stream().map(OfflineMessage::payload).toList();
+    }
+
+    private static long segmentFiles(Path dir) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(".log")).count();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.yihu.agent.websocket.presence;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompactBitmapTest {
+
+    @Test
+    void addRemoveContains() {
+        CompactBitmap bitmap = CompactBitmap.of(1, 70000, 3);
+
+        assertTrue(bitmap.contains(70000));
+        assertFalse(bitmap.add(3));
+        assertTrue(bitmap.remove(1));
+        assertFalse(bitmap.remove(1));
+        assertArrayEquals(new int[]{3, 70000}, bitmap.toArray());
+    }
+
+    @Test
+    void setOperationsMatchTreeSet() {
+        Random random = new Random(42);
+        // 稠密区间触发位图容器，稀疏区间保持数组容器
+        for (int range : new int[]{20_000, 500_000}) {
+            CompactBitmap left = new CompactBitmap();
+            CompactBitmap right = new CompactBitmap();
+            TreeSet<Integer> leftSet = new TreeSet<>();
+            TreeSet<Integer> rightSet = new TreeSet<>();
+            for (int i = 0; i < 15_000; i++) {
+                int a = random.nextInt(range);
+                int b = random.nextInt(range);
+                left.add(a);
+                leftSet.add(a);
+                right.add(b);
+                rightSet.add(b);
+            }
+
+            TreeSet<Integer> and = new TreeSet<>(leftSet);
+            and.retainAll(rightSet);
+            TreeSet<Integer> andNot = new TreeSet<>(leftSet);
+            andNot.removeAll(rightSet);
+            TreeSet<Integer> or = new TreeSet<>(leftSet);
+            or.addAll(rightSet);
+
+            assertArrayEquals(toArray(and), left.and(right).toArray());
+            assertEquals(and.size(), left.andCardinality(right));
+            assertArrayEquals(toArray(andNot), left.andNot(right).toArray());
+            assertArrayEquals(toArray(or), left.or(right).toArray());
+        }
+    }
+
+    private static int[] toArray(TreeSet<Integer> set) {
+        return set.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -0,0 +1,45 @@
+package com.yihu.agent.websocket.presence;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OnlinePresenceIndexTest {
+
+    @Test
+    void repeatedDisconnectOfSameSessionKeepsOtherConnectionsOnline() {
+        OnlinePresenceIndex index = new OnlinePresenceIndex();
+        List<String> events = new ArrayList<>();
+        index.addListener((userId, online) -> events.add(userId + (online ? "+" : "-")));
+
+        index.markOnline("u1", "s1");
+        index.markOnline("u1", "s2");
+        index.markOffline("u1", "s1");
+        // 同一连接的断开事件重复发布
+        index.markOffline("u1", "s1");
+
+        assertTrue(index.isOnline("u1"));
+        assertEquals(List.of("u1+"), events);
+
+        index.markOffline("u1", "s2");
+        assertFalse(index.isOnline("u1"));
+        assertEquals(List.of("u1+", "u1-"), events);
+    }
+
+    @Test
+    void repeatedConnectOfSameSessionCountsOnce() {
+        OnlinePresenceIndex index = new OnlinePresenceIndex();
+
+        index.markOnline("u1", "s1");
+        index.markOnline("u1", "s1");
+        index.markOffline("u1", "s1");
+
+        assertFalse(index.isOnline("u1"));
+        assertEquals(0, index.getOnlineCount());
+    }
+}
@@ -0,0 +1,55 @@
+package com.yihu.agent.websocket.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证令牌桶的突发容量、补充速率、归还与空闲判定
+ */
+class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void allowsBurstThenRefillsAtRate() {
+        long now = 1_000 * SECOND;
+        // 每分钟 60 个 = 每秒 1 个，突发 3 个
+        TokenBucket bucket = new TokenBucket(60, 3, now);
+
+        assertEquals(0, bucket.tryAcquire(now));
+        assertEquals(0, bucket.tryAcquire(now));
+        assertEquals(0, bucket.tryAcquire(now));
+        long wait = bucket.tryAcquire(now);
+        assertEquals(SECOND, wait);
+
+        assertEquals(0, bucket.tryAcquire(now + SECOND));
+        assertTrue(bucket.tryAcquire(now + SECOND) > 0);
+    }
+
+    @Test
+    void refundReturnsToken() {
+        long now = 1_000 * SECOND;
+        TokenBucket bucket = new TokenBucket(60, 1, now);
+
+        assertEquals(0, bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now) > 0);
+        bucket.refund();
+        assertEquals(0, bucket.tryAcquire(now));
+    }
+
+    @Test
+    void idleOnlyAfterFullyRefilled() {
+        long now = 1_000 * SECOND;
+        TokenBucket bucket = new TokenBucket(60, 2, now);
+        bucket.tryAcquire(now);
+        bucket.tryAcquire(now);
+
+        assertFalse(bucket.isIdle(now + SECOND, 10 * SECOND));
+        assertTrue(bucket.isIdle(now + 12 * SECOND, 10 * SECOND));
+    }
+}